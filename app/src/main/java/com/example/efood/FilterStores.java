@@ -2,37 +2,49 @@ package com.example.efood;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.reflect.TypeToken;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 
-import java.io.FileReader;
+import java.io.BufferedReader;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.lang.reflect.Type;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
 import java.util.ArrayList;
 import java.util.List;
 
 public class FilterStores {
+    private static final String MASTER_HOST = "localhost";
+    private static final int MASTER_PORT = 8080;
+
     public static void main(String[] args) {
-        String inputFilePath = "data/stores.json";
         String outputFilePath = "data/filtered_stores.json";
 
-        List<Store> filteredStores = filterStores(inputFilePath, "pizzeria", 4, "$$");
+        List<Store> filteredStores = filterStores("pizzeria", 4, "$$");
         writeFilteredStoresToFile(filteredStores, outputFilePath);
     }
 
-    private static List<Store> filterStores(String filePath, String category, int minStars, String priceCategory) {
+    // Asks Master to SEARCH instead of downloading every store; the workers apply the filters
+    // and Master answers with one store summary per line (up to 100 per page)
+    private static List<Store> filterStores(String category, int minStars, String priceCategory) {
         List<Store> filteredStores = new ArrayList<>();
-        try (FileReader reader = new FileReader(filePath)) {
-            Gson gson = new Gson();
-            Type storeListType = new TypeToken<List<Store>>() {}.getType();
-            List<Store> stores = gson.fromJson(reader, storeListType);
-
-            for (Store store : stores) {
-                if (store.getFoodCategory().equalsIgnoreCase(category) &&
-                        store.getStars() >= minStars &&
-                        store.getPriceCategory().equals(priceCategory)) {
-                    filteredStores.add(store);
+        try (Socket socket = new Socket(MASTER_HOST, MASTER_PORT);
+             PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()))) {
+            for (int page = 0; page >= 0; ) {
+                out.println("SEARCH " + category + ",minStars=" + minStars + ",price=" + priceCategory
+                        + ",page=" + page + ",pageSize=100");
+                int nextPage = -1;
+                String line;
+                while ((line = in.readLine()) != null && !line.equals("END")) {
+                    if (line.startsWith("{")) {
+                        filteredStores.add(toStore(JsonParser.parseString(line).getAsJsonObject()));
+                    } else if (line.startsWith("\"nextPage\"")) {
+                        nextPage = Integer.parseInt(line.substring(line.indexOf(':') + 1).trim());
+                    }
                 }
+                page = nextPage;
             }
         } catch (IOException e) {
             e.printStackTrace();
@@ -40,6 +52,20 @@ public class FilterStores {
         return filteredStores;
     }
 
+    private static Store toStore(JsonObject summary) {
+        Store store = new Store();
+        store.setName(summary.get("StoreName").getAsString());
+        store.setFoodCategory(summary.get("FoodCategory").getAsString());
+        store.setStars(summary.get("Stars").getAsInt());
+        store.setNoOfVotes(summary.get("NoOfVotes").getAsInt());
+        store.setPriceCategory(summary.get("PriceCategory").getAsString());
+        store.setLatitude(summary.get("Latitude").getAsDouble());
+        store.setLongitude(summary.get("Longitude").getAsDouble());
+        store.setStoreLogo(summary.get("StoreLogo").getAsString());
+        if (summary.has("DistanceKm")) store.setDistanceKm(summary.get("DistanceKm").getAsDouble());
+        return store;
+    }
+
     private static void writeFilteredStoresToFile(List<Store> stores, String filePath) {
         try (FileWriter writer = new FileWriter(filePath)) {
             Gson gson = new GsonBuilder().setPrettyPrinting().create();
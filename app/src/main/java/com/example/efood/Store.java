@@ -15,6 +15,7 @@ public class Store {
     private String storeLogo;
     private List<Product> products;
     private String priceCategory;
+    private Double distanceKm; // from the customer, when known
 
     public Store() {
         // Default constructor required for JSON parsing
@@ -89,4 +90,7 @@ public class Store {
 
     public String getPriceCategory() { return priceCategory; }
     public void setPriceCategory(String priceCategory) { this.priceCategory = priceCategory; }
+
+    public Double getDistanceKm() { return distanceKm; }
+    public void setDistanceKm(Double distanceKm) { this.distanceKm = distanceKm; }
 }
@@ -6,10 +6,12 @@ import android.view.ViewGroup;
 import android.widget.TextView;
 import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
+import java.util.Comparator;
 import java.util.List;
 
 public class StoreAdapter extends RecyclerView.Adapter<StoreAdapter.StoreViewHolder> {
 
+    private static final double EARTH_RADIUS_KM = 6371.0088;
     private List<Store> storeList;
 
     public StoreAdapter(List<Store> storeList) {
@@ -28,9 +30,14 @@ public class StoreAdapter extends RecyclerView.Adapter<StoreAdapter.StoreViewHol
         Store store = storeList.get(position);
         holder.textViewName.setText(store.getName());
         
-        // Show coordinates as address (since we don't have actual address in JSON)
-        holder.textViewAddress.setText(String.format("Location: %.6f, %.6f", 
-                store.getLatitude(), store.getLongitude()));
+        // Show the distance when we know where the customer is (NEARBY replies carry it),
+        // otherwise the coordinates, since we don't have actual address in JSON
+        if (store.getDistanceKm() != null) {
+            holder.textViewAddress.setText(String.format("%.1f km away", store.getDistanceKm()));
+        } else {
+            holder.textViewAddress.setText(String.format("Location: %.6f, %.6f",
+                    store.getLatitude(), store.getLongitude()));
+        }
         
         holder.textViewStars.setText(String.format("%d Stars (%d votes)", 
                 store.getStars(), store.getNoOfVotes()));
@@ -39,6 +46,27 @@ public class StoreAdapter extends RecyclerView.Adapter<StoreAdapter.StoreViewHol
         holder.textViewCuisines.setText(store.getFoodCategory());
     }
 
+    // Nearest first from the customer's location, working out distances the server didn't send
+    public void sortByDistance(double latitude, double longitude) {
+        for (Store store : storeList) {
+            if (store.getDistanceKm() == null) {
+                store.setDistanceKm(distanceKm(latitude, longitude, store.getLatitude(), store.getLongitude()));
+            }
+        }
+        storeList.sort(Comparator.comparingDouble(Store::getDistanceKm));
+        notifyDataSetChanged();
+    }
+
+    // Great-circle distance (haversine), as the workers compute it
+    static double distanceKm(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double dLatitude = Math.toRadians(latitude2 - latitude1);
+        double dLongitude = Math.toRadians(longitude2 - longitude1);
+        double a = Math.sin(dLatitude / 2) * Math.sin(dLatitude / 2)
+                + Math.cos(Math.toRadians(latitude1)) * Math.cos(Math.toRadians(latitude2))
+                * Math.sin(dLongitude / 2) * Math.sin(dLongitude / 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
     @Override
     public int getItemCount() {
         return storeList.size();
@@ -15,20 +15,39 @@ public class DummyClient {
              Scanner scanner = new Scanner(System.in)) {
             System.out.println("Connected to Master at " + MASTER_HOST + ":" + MASTER_PORT);
             while (true) {
-                System.out.println("Enter request (SEARCH, BUY, EXIT):");
+                System.out.println("Enter request (SEARCH, NEARBY, BUY, EXIT):");
                 String request = scanner.nextLine();
                 if (request.equalsIgnoreCase("EXIT")) break;
                 String data = "";
                 if (request.equals("SEARCH")) {
                     System.out.println("Enter food category:");
-                    data = scanner.nextLine();
+                    data = scanner.nextLine().trim();
+                    System.out.println("Minimum stars (blank for any):");
+                    String minStars = scanner.nextLine().trim();
+                    if (!minStars.isEmpty()) data += ",minStars=" + minStars;
+                    System.out.println("Price category $, $$ or $$$ (blank for any):");
+                    String price = scanner.nextLine().trim();
+                    if (!price.isEmpty()) data += ",price=" + price;
+                } else if (request.equals("NEARBY")) {
+                    System.out.println("Enter your latitude,longitude:");
+                    data = scanner.nextLine().trim();
+                    System.out.println("Within km (blank for any distance):");
+                    String radius = scanner.nextLine().trim();
+                    if (!radius.isEmpty()) data += ",radiusKm=" + radius;
+                    System.out.println("Enter food category (blank for any):");
+                    String category = scanner.nextLine().trim();
+                    if (!category.isEmpty()) data += ",category=" + category;
                 } else if (request.equals("BUY")) {
                     System.out.println("Enter store name, product name, quantity (space-separated):");
                     data = scanner.nextLine();
                 }
                 out.println(request + " " + data);
-                String response = in.readLine();
-                System.out.println("Response from server: " + response);
+                System.out.println("Response from server:");
+                // Master ends every reply with a line of its own
+                String line;
+                while ((line = in.readLine()) != null && !line.equals("END")) {
+                    System.out.println(line);
+                }
             }
         } catch (IOException e) {
             System.err.println("Error connecting to Master: " + e.getMessage());
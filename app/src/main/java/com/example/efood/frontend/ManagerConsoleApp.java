@@ -17,7 +17,7 @@ package com.example.efood.frontend;
                                      Scanner scanner = new Scanner(System.in)) {
                                     System.out.println("Connected to Master at " + MASTER_HOST + ":" + MASTER_PORT);
                                     while (true) {
-                                        System.out.println("Enter command (ADD_STORE, ADD_PRODUCT, REMOVE_PRODUCT, GET_SALES_BY_STORE_TYPE_CATEGORY, GET_SALES_BY_PRODUCT_CATEGORY, GET_SALES_BY_PRODUCT, BUY, EXIT):");
+                                        System.out.println("Enter command (ADD_STORE, ADD_PRODUCT, REMOVE_PRODUCT, GET_SALES_BY_STORE_TYPE_CATEGORY, GET_SALES_BY_PRODUCT_CATEGORY, GET_SALES_BY_PRODUCT, TOP_SALES, BUY, PLACEMENT_STATS, ADD_WORKER, DRAIN_WORKER, EXIT):");
                                         String command = scanner.nextLine();
                                         if (command.equalsIgnoreCase("EXIT")) break;
                                         String data = "";
@@ -83,25 +83,43 @@ package com.example.efood.frontend;
                                                 out.println("REMOVE_PRODUCT " + data);
                                                 break;
                                             case "GET_SALES_BY_STORE_TYPE_CATEGORY":
-                                                System.out.println("Enter store type category :");
+                                                System.out.println("Enter store type category (prefix WINDOW=5m for the last 5 minutes):");
                                                 data = scanner.nextLine();
                                                 out.println("GET_SALES_BY_STORE_TYPE_CATEGORY " + data);
                                                 break;
                                             case "GET_SALES_BY_PRODUCT_CATEGORY":
-                                                System.out.println("Enter product category:");
+                                                System.out.println("Enter product category (prefix WINDOW=5m for the last 5 minutes):");
                                                 data = scanner.nextLine();
                                                 out.println("GET_SALES_BY_PRODUCT_CATEGORY " + data);
                                                 break;
                                             case "GET_SALES_BY_PRODUCT":
-                                                System.out.println("Enter product name:");
+                                                System.out.println("Enter product name (prefix WINDOW=5m for the last 5 minutes):");
                                                 data = scanner.nextLine();
                                                 out.println("GET_SALES_BY_PRODUCT " + data);
                                                 break;
+                                            case "TOP_SALES":
+                                                System.out.println("Top stores or products, how many, and optional filters (e.g., products,k=10,category=pizzeria,type=pizza):");
+                                                data = scanner.nextLine();
+                                                out.println("TOP_SALES " + data);
+                                                break;
                                             case "BUY":
                                                 System.out.println("Enter store name, product name, and quantity (comma-separated):");
                                                 data = scanner.nextLine();
                                                 out.println("BUY " + data);
                                                 break;
+                                            case "ADD_WORKER":
+                                                System.out.println("Enter the running worker's host:port and optional weight (e.g., localhost:8083 1):");
+                                                data = scanner.nextLine();
+                                                out.println("ADD_WORKER " + data);
+                                                break;
+                                            case "DRAIN_WORKER":
+                                                System.out.println("Enter the worker's host:port:");
+                                                data = scanner.nextLine();
+                                                out.println("DRAIN_WORKER " + data);
+                                                break;
+                                            case "PLACEMENT_STATS":
+                                                out.println("PLACEMENT_STATS");
+                                                break;
                                             default:
                                                 System.out.println("Unknown command: " + command);
                                                 continue;
@@ -0,0 +1,120 @@
+package com.example.backend;
+
+import java.util.*;
+
+// The broad GET_SALES_* scans at a million products: walking Store objects (summing each
+// store's product sales, and reading its rollups, which is what the Worker does by default)
+// vs scanning the ColumnarCatalog's columns (-Dworker.catalog=columnar). Checks that the
+// catalog gives the same per-store numbers, then prints milliseconds per query.
+//
+// Usage: java -Xmx2g -cp backend/build/classes/java/main;backend/build/classes/java/benchmarks com.example.backend.ColumnarCatalogBenchmark
+//            [stores] [productsPerStore] [rounds]
+public class ColumnarCatalogBenchmark {
+    public static void main(String[] args) {
+        int storeCount = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int productsPerStore = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        String[] categories = {"pizzeria", "pizzeria", "pizzeria", "creperie"};
+        String[] types = {"pizza", "salad", "drink", "dessert"};
+        Random random = new Random(42);
+        Map<String, Store> stores = new LinkedHashMap<>();
+        for (int i = 0; i < storeCount; i++) {
+            Store store = new Store("Store " + i, 37.9, 23.7, categories[i % categories.length], 3, 10, "logo.png");
+            for (int p = 0; p < productsPerStore; p++) {
+                store.addProduct(new Product("Product " + p, types[p % types.length], 1000000, 4.5));
+                if (random.nextInt(3) == 0) store.purchaseProduct("Product " + p, 1 + random.nextInt(20));
+            }
+            stores.put(store.getStoreName(), store);
+        }
+        ColumnarCatalog catalog = new ColumnarCatalog();
+        catalog.rebuild(stores.values());
+        System.out.printf("%d stores, %d products each (%d products)%n", storeCount, productsPerStore,
+                (long) storeCount * productsPerStore);
+        System.out.printf("%-24s %12s %12s %12s%n", "ms per query", "summed", "rollups", "columnar");
+
+        for (int round = 0; round < 3; round++) { // the first rounds warm up the JIT
+            boolean print = round == 2;
+            report(print, "category pizzeria", stores.values(), rounds,
+                    s -> s.getFoodCategory().equals("pizzeria") ? summedTotal(s) : -1,
+                    s -> s.getFoodCategory().equals("pizzeria") ? s.getTotalSales() : -1,
+                    result -> catalog.salesByCategory("pizzeria", null, result));
+            report(print, "product type pizza", stores.values(), rounds,
+                    s -> summedType(s, "pizza"),
+                    s -> s.getSalesOfType("pizza"),
+                    result -> catalog.salesByProductType("pizza", null, result));
+            report(print, "product Product 7", stores.values(), rounds,
+                    s -> s.getSalesOf("Product 7"),
+                    s -> s.getSalesOf("Product 7"),
+                    result -> catalog.salesByProductName("Product 7", null, result));
+        }
+    }
+
+    private interface StoreQuery {
+        int sales(Store store); // -1 leaves the store out
+    }
+
+    private interface CatalogQuery {
+        void run(Map<String, Integer> result);
+    }
+
+    private static void report(boolean print, String name, Collection<Store> stores, int rounds,
+                               StoreQuery summed, StoreQuery rollup, CatalogQuery columnar) {
+        Map<String, Integer> expected = objectScan(stores, rollup, name.startsWith("category"));
+        Map<String, Integer> actual = new HashMap<>();
+        columnar.run(actual);
+        if (!expected.equals(new HashMap<>(objectScan(stores, summed, name.startsWith("category"))))
+                || !new HashMap<>(expected).equals(actual)) {
+            throw new IllegalStateException("Results differ for " + name);
+        }
+
+        long sink = 0;
+        long start = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            sink += objectScan(stores, summed, name.startsWith("category")).size();
+        }
+        double summedMillis = (System.nanoTime() - start) / 1e6 / rounds;
+        start = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            sink += objectScan(stores, rollup, name.startsWith("category")).size();
+        }
+        double rollupMillis = (System.nanoTime() - start) / 1e6 / rounds;
+        start = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            Map<String, Integer> result = new LinkedHashMap<>();
+            columnar.run(result);
+            sink += result.size();
+        }
+        double columnarMillis = (System.nanoTime() - start) / 1e6 / rounds;
+        if (sink == 42) System.out.print(""); // keeps the loops from being optimized away
+        if (print) System.out.printf("%-24s %12.2f %12.2f %12.2f%n", name, summedMillis, rollupMillis, columnarMillis);
+    }
+
+    // The Worker's broad scan over the store map: categories list every store, other queries
+    // only stores that sold some
+    private static Map<String, Integer> objectScan(Collection<Store> stores, StoreQuery query, boolean listAll) {
+        Map<String, Integer> result = new LinkedHashMap<>();
+        for (Store s : stores) {
+            int sales = query.sales(s);
+            if (sales > 0 || (listAll && sales == 0)) result.put(s.getStoreName(), sales);
+        }
+        return result;
+    }
+
+    // Summed over the store's products on every query
+    private static int summedTotal(Store store) {
+        int total = 0;
+        for (Product product : store.getProducts()) {
+            total += store.getSalesOf(product.getProductName());
+        }
+        return total;
+    }
+
+    private static int summedType(Store store, String productType) {
+        int total = 0;
+        for (Product product : store.getProducts()) {
+            if (product.getProductType().equals(productType)) total += store.getSalesOf(product.getProductName());
+        }
+        return total;
+    }
+}
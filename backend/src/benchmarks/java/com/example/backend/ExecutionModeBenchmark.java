@@ -0,0 +1,105 @@
+package com.example.backend;
+
+import java.io.*;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Side-by-side client throughput of the Master execution modes. For every mode it starts a
+// Master (and its Workers) from the project root, drives it with concurrent BUY clients
+// and prints requests per second.
+//
+// Usage: java -cp backend/build/classes/java/main;backend/build/classes/java/benchmarks com.example.backend.ExecutionModeBenchmark
+//            [clients] [requestsPerClient] [workers] [modes...]
+public class ExecutionModeBenchmark {
+    private static final String MASTER_HOST = "localhost";
+    private static final int MASTER_PORT = 8080;
+    private static final String REQUEST = "BUY Pizza Palace,Margherita,1";
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int requestsPerClient = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int workers = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+        List<ExecutionMode> modes = new ArrayList<>();
+        for (int i = 3; i < args.length; i++) {
+            modes.add(ExecutionMode.valueOf(args[i].toUpperCase()));
+        }
+        if (modes.isEmpty()) {
+            modes.add(ExecutionMode.PLATFORM);
+            modes.add(ExecutionMode.VIRTUAL);
+            modes.add(ExecutionMode.NIO);
+        }
+
+        List<String> results = new ArrayList<>();
+        for (ExecutionMode mode : modes) {
+            Process master = startMaster(mode, workers);
+            try {
+                waitForMaster();
+                run(clients, 5); // warm-up
+                long start = System.nanoTime();
+                long completed = run(clients, requestsPerClient);
+                double seconds = (System.nanoTime() - start) / 1e9;
+                results.add(String.format("%-9s %8d clients %10d requests %10.0f req/s",
+                        mode, clients, completed, completed / seconds));
+            } finally {
+                master.descendants().forEach(ProcessHandle::destroy);
+                master.destroy();
+                master.waitFor();
+                Thread.sleep(500);
+            }
+        }
+        System.out.println();
+        results.forEach(System.out::println);
+    }
+
+    private static Process startMaster(ExecutionMode mode, int workers) throws IOException {
+        String javaBin = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        ProcessBuilder pb = new ProcessBuilder(javaBin, "-D" + ExecutionMode.PROPERTY + "=" + mode,
+                "-cp", System.getProperty("java.class.path"), Master.class.getName(), String.valueOf(workers));
+        pb.redirectErrorStream(true);
+        pb.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        return pb.start();
+    }
+
+    private static void waitForMaster() throws InterruptedException {
+        for (int attempt = 0; attempt < 100; attempt++) {
+            try {
+                new Socket(MASTER_HOST, MASTER_PORT).close();
+                return;
+            } catch (IOException e) {
+                Thread.sleep(200);
+            }
+        }
+        throw new IllegalStateException("Master did not start on port " + MASTER_PORT);
+    }
+
+    private static long run(int clients, int requestsPerClient) throws InterruptedException {
+        AtomicLong completed = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(clients);
+        for (int i = 0; i < clients; i++) {
+            Thread client = new Thread(() -> {
+                try (Socket socket = new Socket(MASTER_HOST, MASTER_PORT);
+                     PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+                     BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()))) {
+                    for (int r = 0; r < requestsPerClient; r++) {
+                        out.println(REQUEST);
+                        String line;
+                        while ((line = in.readLine()) != null && !line.equals("END")) {
+                            // drain the reply
+                        }
+                        completed.incrementAndGet();
+                    }
+                } catch (IOException e) {
+                    System.err.println("Benchmark client failed: " + e.getMessage());
+                } finally {
+                    done.countDown();
+                }
+            });
+            client.start();
+        }
+        done.await();
+        return completed.get();
+    }
+}
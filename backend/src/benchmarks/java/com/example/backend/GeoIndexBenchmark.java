@@ -0,0 +1,95 @@
+package com.example.backend;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+// NEARBY latency at a million stores on one Worker (a cluster's worth): most of them
+// crowded into a city, the rest spread over the country. Times the GeoIndex's k nearest,
+// the same with a food category filter, and radius queries, from random points in the
+// city, against finding the same stores by scanning every store. Checks that both give
+// the same stores, then prints latency percentiles in milliseconds.
+//
+// Usage: java -Xmx3g -cp backend/build/classes/java/main;backend/build/classes/java/benchmarks com.example.backend.GeoIndexBenchmark
+//            [stores] [queries]
+public class GeoIndexBenchmark {
+    public static void main(String[] args) {
+        int storeCount = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+        String[] categories = {"pizzeria", "burgers", "sushi", "greek", "italian", "mexican", "kebab", "seafood"};
+        Random random = new Random(42);
+        List<Store> stores = new ArrayList<>(storeCount);
+        for (int i = 0; i < storeCount; i++) {
+            boolean city = random.nextInt(10) < 7;
+            double latitude = city ? 37.85 + random.nextDouble() * 0.3 : 35 + random.nextDouble() * 6.5;
+            double longitude = city ? 23.6 + random.nextDouble() * 0.3 : 20 + random.nextDouble() * 8;
+            stores.add(new Store("Store " + i, latitude, longitude, categories[i % categories.length],
+                    1 + random.nextInt(5), random.nextInt(100), "logo.png"));
+        }
+        GeoIndex geo = new GeoIndex();
+        long start = System.nanoTime();
+        geo.rebuild(stores);
+        System.out.printf("%d stores, indexed in %.0f ms%n", storeCount, (System.nanoTime() - start) / 1e6);
+        System.out.printf("%-28s %10s %10s %10s %10s%n", "ms per query", "index p50", "index p99", "scan p50", "scan p99");
+
+        for (int round = 0; round < 2; round++) { // the first round warms up the JIT
+            boolean print = round == 1;
+            report(print, "20 nearest", geo, stores, queries, 20, Double.MAX_VALUE, s -> true);
+            report(print, "20 nearest pizzerias", geo, stores, queries, 20, Double.MAX_VALUE,
+                    s -> s.getFoodCategory().equals("pizzeria"));
+            report(print, "20 nearest 5-star sushi", geo, stores, queries, 20, Double.MAX_VALUE,
+                    s -> s.getStars() == 5 && s.getFoodCategory().equals("sushi"));
+            report(print, "within 0.5 km (100 max)", geo, stores, queries, 100, 0.5, s -> true);
+            report(print, "pizzerias within 2 km", geo, stores, queries, 100, 2, s -> s.getFoodCategory().equals("pizzeria"));
+        }
+    }
+
+    private static void report(boolean print, String name, GeoIndex geo, List<Store> stores, int queries,
+                               int k, double radiusKm, Predicate<Store> filter) {
+        Random random = new Random(7);
+        long[] indexed = new long[queries];
+        long[] scanned = new long[print ? Math.max(1, queries / 20) : 1];
+        for (int q = 0; q < queries; q++) {
+            double latitude = 37.85 + random.nextDouble() * 0.3;
+            double longitude = 23.6 + random.nextDouble() * 0.3;
+            long start = System.nanoTime();
+            List<GeoIndex.Hit> hits = geo.nearest(latitude, longitude, k, radiusKm, filter);
+            indexed[q] = System.nanoTime() - start;
+            if (q < scanned.length) {
+                start = System.nanoTime();
+                List<GeoIndex.Hit> expected = scan(stores, latitude, longitude, k, radiusKm, filter);
+                scanned[q] = System.nanoTime() - start;
+                if (!names(hits).equals(names(expected))) throw new IllegalStateException("Results differ for " + name);
+            }
+        }
+        Arrays.sort(indexed);
+        Arrays.sort(scanned);
+        if (print) {
+            System.out.printf("%-28s %10.3f %10.3f %10.1f %10.1f%n", name, percentile(indexed, 0.5),
+                    percentile(indexed, 0.99), percentile(scanned, 0.5), percentile(scanned, 0.99));
+        }
+    }
+
+    private static List<GeoIndex.Hit> scan(List<Store> stores, double latitude, double longitude, int k,
+                                           double radiusKm, Predicate<Store> filter) {
+        List<GeoIndex.Hit> hits = new ArrayList<>();
+        for (Store store : stores) {
+            double distance = GeoIndex.distanceKm(latitude, longitude, store.getLatitude(), store.getLongitude());
+            if (distance <= radiusKm && filter.test(store)) hits.add(new GeoIndex.Hit(store, distance));
+        }
+        hits.sort(GeoIndex.NEAREST);
+        return hits.subList(0, Math.min(k, hits.size()));
+    }
+
+    private static List<String> names(List<GeoIndex.Hit> hits) {
+        List<String> names = new ArrayList<>();
+        for (GeoIndex.Hit hit : hits) {
+            names.add(hit.store.getStoreName());
+        }
+        return names;
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * p))] / 1e6;
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.backend;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// Compares the old substring-search store parsing (parseStoreJsons + extractField +
+// extractProductsJson + parseProducts, kept here as the baseline) with the single-pass
+// JsonReader. Parses a synthetic stores.json-style array in memory and prints stores/s.
+//
+// Usage: java -cp backend/build/classes/java/main;backend/build/classes/java/benchmarks com.example.backend.JsonParserBenchmark
+//            [stores] [productsPerStore] [rounds]
+public class JsonParserBenchmark {
+    public static void main(String[] args) throws IOException {
+        int stores = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int productsPerStore = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        StringBuilder json = new StringBuilder("[\n");
+        for (int i = 0; i < stores; i++) {
+            Store store = new Store("Store " + i, 37.9 + i * 1e-6, 23.7, i % 2 == 0 ? "pizzeria" : "souvlaki",
+                    1 + i % 5, i % 300, "/usr/bin/images/store_" + i + ".png");
+            for (int p = 0; p < productsPerStore; p++) {
+                store.addProduct(new Product("Product " + p, p % 2 == 0 ? "pizza" : "salad", 100 + p, 5.0 + p));
+            }
+            if (i > 0) json.append(",\n");
+            json.append(StoreJson.write(store, false));
+        }
+        String text = json.append("\n]").toString();
+        double megabytes = text.length() / (1024.0 * 1024.0);
+        System.out.printf("%d stores, %d products each, %.1f MB%n", stores, productsPerStore, megabytes);
+
+        for (int round = 0; round < rounds; round++) { // early rounds warm up the JIT
+            boolean print = round == rounds - 1;
+            long start = System.nanoTime();
+            int legacy = legacyParse(text);
+            report(print, "substring search", legacy, megabytes, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            int streamed = streamingParse(new JsonReader(text));
+            report(print, "JsonReader (String)", streamed, megabytes, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            Reader reader = new InputStreamReader(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8);
+            int fromReader = streamingParse(new JsonReader(reader));
+            report(print, "JsonReader (Reader)", fromReader, megabytes, System.nanoTime() - start);
+        }
+    }
+
+    private static void report(boolean print, String parser, int parsed, double megabytes, long nanos) {
+        if (!print) return;
+        double seconds = nanos / 1e9;
+        System.out.printf("%-22s %8d stores %12.0f stores/s %8.1f MB/s%n", parser, parsed, parsed / seconds, megabytes / seconds);
+    }
+
+    private static int streamingParse(JsonReader reader) throws IOException {
+        int parsed = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (StoreJson.read(reader) != null) parsed++;
+        }
+        reader.endArray();
+        return parsed;
+    }
+
+    // The parsing code Master and WorkerThread used before JsonReader
+
+    private static int legacyParse(String jsonContent) {
+        int parsed = 0;
+        for (String storeJson : parseStoreJsons(jsonContent.trim())) {
+            String storeName = extractField(storeJson, "StoreName").replaceAll("^\"|\"$", "");
+            if (storeName.isEmpty()) continue;
+            Store store = new Store(storeName,
+                    Double.parseDouble(extractField(storeJson, "Latitude")),
+                    Double.parseDouble(extractField(storeJson, "Longitude")),
+                    extractField(storeJson, "FoodCategory"),
+                    Integer.parseInt(extractField(storeJson, "Stars")),
+                    Integer.parseInt(extractField(storeJson, "NoOfVotes")),
+                    extractField(storeJson, "StoreLogo"));
+            for (Product p : parseProducts(extractProductsJson(storeJson))) {
+                store.addProduct(p);
+            }
+            parsed++;
+        }
+        return parsed;
+    }
+
+    private static List<String> parseStoreJsons(String jsonContent) {
+        List<String> stores = new ArrayList<>();
+        jsonContent = jsonContent.substring(1, jsonContent.length() - 1).trim();
+        int braceCount = 0;
+        int start = -1;
+        for (int i = 0; i < jsonContent.length(); i++) {
+            char c = jsonContent.charAt(i);
+            if (c == '{') {
+                if (braceCount == 0) start = i;
+                braceCount++;
+            } else if (c == '}') {
+                braceCount--;
+                if (braceCount == 0 && start != -1) {
+                    stores.add(jsonContent.substring(start, i + 1).trim());
+                    start = -1;
+                }
+            }
+        }
+        return stores;
+    }
+
+    private static String extractField(String json, String field) {
+        String search = "\"" + field + "\":";
+        int start = json.indexOf(search);
+        if (start == -1) return "";
+        start += search.length();
+        if (json.charAt(start) == '"') {
+            start++;
+            int end = json.indexOf("\"", start);
+            return json.substring(start, end);
+        } else {
+            int end = json.indexOf(",", start);
+            if (end == -1) end = json.indexOf("}", start);
+            return json.substring(start, end).trim();
+        }
+    }
+
+    private static String extractProductsJson(String json) {
+        int start = json.indexOf("\"Products\":");
+        if (start == -1) return "[]";
+        start = json.indexOf("[", start);
+        if (start == -1) return "[]";
+        int braceCount = 1;
+        int end = start + 1;
+        while (end < json.length() && braceCount > 0) {
+            char c = json.charAt(end);
+            if (c == '[') braceCount++;
+            else if (c == ']') braceCount--;
+            end++;
+        }
+        return json.substring(start, end);
+    }
+
+    private static List<Product> parseProducts(String productsJson) {
+        List<Product> products = new ArrayList<>();
+        productsJson = productsJson.trim();
+        if (productsJson.startsWith("[")) productsJson = productsJson.substring(1);
+        if (productsJson.endsWith("]")) productsJson = productsJson.substring(0, productsJson.length() - 1);
+
+        int braceCount = 0;
+        StringBuilder currentProduct = new StringBuilder();
+        for (int i = 0; i < productsJson.length(); i++) {
+            char c = productsJson.charAt(i);
+            if (c == '{') braceCount++;
+            else if (c == '}') braceCount--;
+            currentProduct.append(c);
+            if (braceCount == 0 && currentProduct.length() > 0) {
+                String productJson = currentProduct.toString().trim();
+                if (!productJson.isEmpty() && productJson.startsWith("{") && productJson.endsWith("}")) {
+                    String name = extractField(productJson, "ProductName").replaceAll("^\"|\"$", "");
+                    String type = extractField(productJson, "ProductType").replaceAll("^\"|\"$", "");
+                    int amount = Integer.parseInt(extractField(productJson, "Available Amount").trim());
+                    double price = Double.parseDouble(extractField(productJson, "Price").trim());
+                    products.add(new Product(name, type, amount, price));
+                }
+                currentProduct = new StringBuilder();
+            }
+        }
+        return products;
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.backend;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+
+// Heap and BUY latency as a Worker's catalog grows tenfold, with the catalog on the heap
+// (the default) or off it (-Dworker.catalog=offheap): the same stores with productsPerStore
+// products each, then ten times as many. For each size prints the heap in use after a full
+// GC, the direct memory holding products, and BUY latency percentiles, with the GC time
+// spent during the BUYs. Each BUY parses its request line and replies as the Worker does,
+// so the heap sees the Worker's per-request garbage.
+//
+// Usage: java -Xmx2g [-Dworker.catalog=offheap] -cp backend/build/classes/java/main;backend/build/classes/java/benchmarks
+//            com.example.backend.OffHeapCatalogBenchmark [stores] [productsPerStore] [buys]
+public class OffHeapCatalogBenchmark {
+    public static void main(String[] args) {
+        int storeCount = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int productsPerStore = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int buys = args.length > 2 ? Integer.parseInt(args[2]) : 2000000;
+
+        System.out.println("catalog: " + (OffHeapProducts.ENABLED ? "off-heap" : "objects"));
+        System.out.printf("%-10s %10s %10s %9s %9s %9s %9s %9s%n",
+                "products", "heap MB", "direct MB", "p50 us", "p99 us", "p99.9 us", "max us", "GC ms");
+        for (int size : new int[]{productsPerStore, productsPerStore * 10}) {
+            Map<String, Store> stores = catalog(storeCount, size);
+            long heap = heapAfterGc();
+            long[] latencies = new long[buys];
+            long gcMillis = gcMillis();
+            buy(stores, storeCount, size, latencies);
+            gcMillis = gcMillis() - gcMillis;
+            Arrays.sort(latencies);
+            System.out.printf("%-10d %10.1f %10.1f %9.2f %9.2f %9.2f %9.1f %9d%n", (long) storeCount * size,
+                    heap / 1e6, OffHeapProducts.reservedBytes() / 1e6, percentile(latencies, 0.5),
+                    percentile(latencies, 0.99), percentile(latencies, 0.999),
+                    latencies[latencies.length - 1] / 1e3, gcMillis);
+            stores.clear();
+        }
+    }
+
+    private static Map<String, Store> catalog(int storeCount, int productsPerStore) {
+        String[] types = {"pizza", "salad", "drink", "dessert"};
+        Map<String, Store> stores = new HashMap<>();
+        for (int i = 0; i < storeCount; i++) {
+            Store store = new Store("Store " + i, 37.9, 23.7, "pizzeria", 3, 10, "logo.png");
+            for (int p = 0; p < productsPerStore; p++) {
+                // Parsed names are distinct String objects, as they are coming off the wire
+                store.addProduct(new Product(new String("Product " + p), types[p % types.length], Integer.MAX_VALUE, 4.5));
+            }
+            stores.put(store.getStoreName(), store);
+        }
+        return stores;
+    }
+
+    private static void buy(Map<String, Store> stores, int storeCount, int productsPerStore, long[] latencies) {
+        Random random = new Random(42);
+        for (int i = 0; i < latencies.length; i++) {
+            String line = "Store " + random.nextInt(storeCount) + ",Product " + random.nextInt(productsPerStore) + ",1";
+            long start = System.nanoTime();
+            String[] parts = line.split(",");
+            Store store = stores.get(parts[0].trim());
+            Lock purchasing = store.purchaseLock();
+            purchasing.lock();
+            try {
+                if (store.purchaseProduct(parts[1].trim(), Integer.parseInt(parts[2].trim())) != Store.Purchase.COMPLETED) {
+                    throw new IllegalStateException("Purchase failed: " + line);
+                }
+            } finally {
+                purchasing.unlock();
+            }
+            latencies[i] = System.nanoTime() - start;
+        }
+    }
+
+    private static long heapAfterGc() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return millis;
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * p))] / 1e3;
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.backend;
+
+import java.util.*;
+
+// Offline check of how evenly a placement spreads stores and how many it moves when a
+// worker joins. Uses synthetic store names, no workers are started.
+//
+// Usage: java -cp backend/build/classes/java/main;backend/build/classes/java/benchmarks com.example.backend.PlacementBenchmark
+//            [stores] [workers] [replicationFactor]
+public class PlacementBenchmark {
+    public static void main(String[] args) {
+        int stores = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int workers = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int replicationFactor = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+
+        for (String name : new String[]{"consistent", "modulo"}) {
+            Placement<String> placement = Placement.create(name);
+            for (int w = 0; w < workers; w++) {
+                placement.addNode("worker-" + w, "localhost:" + (8081 + w), 1);
+            }
+            Map<String, List<String>> before = place(placement, stores, replicationFactor);
+            System.out.println(name + " placement, " + stores + " stores, " + workers + " workers, RF=" + replicationFactor);
+            printLoad(before, workers);
+
+            placement.addNode("worker-" + workers, "localhost:" + (8081 + workers), 1);
+            Map<String, List<String>> after = place(placement, stores, replicationFactor);
+            int moved = 0;
+            for (Map.Entry<String, List<String>> entry : before.entrySet()) {
+                if (!entry.getValue().equals(after.get(entry.getKey()))) moved++;
+            }
+            System.out.printf("adding worker %d remaps %d of %d stores (%.1f%%)%n%n",
+                    workers, moved, stores, 100.0 * moved / stores);
+        }
+    }
+
+    private static Map<String, List<String>> place(Placement<String> placement, int stores, int replicationFactor) {
+        Map<String, List<String>> result = new HashMap<>();
+        for (int s = 0; s < stores; s++) {
+            String store = "Store " + s;
+            result.put(store, placement.replicasFor(Placement.partitionOf(store), replicationFactor));
+        }
+        return result;
+    }
+
+    private static void printLoad(Map<String, List<String>> placement, int workers) {
+        Map<String, Integer> copies = new TreeMap<>();
+        for (List<String> replicas : placement.values()) {
+            if (new HashSet<>(replicas).size() != replicas.size()) {
+                throw new IllegalStateException("Duplicate replica in " + replicas);
+            }
+            for (String worker : replicas) copies.merge(worker, 1, Integer::sum);
+        }
+        int min = Integer.MAX_VALUE, max = 0, total = 0;
+        for (Map.Entry<String, Integer> entry : copies.entrySet()) {
+            System.out.println("  " + entry.getKey() + ": " + entry.getValue());
+            min = Math.min(min, entry.getValue());
+            max = Math.max(max, entry.getValue());
+            total += entry.getValue();
+        }
+        double mean = (double) total / workers;
+        System.out.printf("  min=%d max=%d mean=%.1f max/mean=%.2f%n", min, max, mean, max / mean);
+    }
+}
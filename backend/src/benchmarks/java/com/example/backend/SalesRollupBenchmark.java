@@ -0,0 +1,102 @@
+package com.example.backend;
+
+import java.util.*;
+
+// Per-store numbers behind the GET_SALES_* queries: summed over the store's sales on every
+// query (as before the rollups, kept here as the baseline) vs read from the counters Store
+// maintains as sales are recorded. Also times BUYs, which now update those counters.
+// Prints nanoseconds per store.
+//
+// Usage: java -cp backend/build/classes/java/main;backend/build/classes/java/benchmarks com.example.backend.SalesRollupBenchmark
+//            [stores] [productsPerStore] [rounds]
+public class SalesRollupBenchmark {
+    public static void main(String[] args) {
+        int storeCount = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int productsPerStore = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        String[] types = {"pizza", "salad", "drink", "dessert"};
+        List<Store> stores = new ArrayList<>();
+        for (int i = 0; i < storeCount; i++) {
+            Store store = new Store("Store " + i, 37.9, 23.7, "pizzeria", 3, 10, "logo.png");
+            for (int p = 0; p < productsPerStore; p++) {
+                store.addProduct(new Product("Product " + p, types[p % types.length], 1000000, 4.5));
+            }
+            stores.add(store);
+        }
+        System.out.printf("%d stores, %d products each%n", storeCount, productsPerStore);
+        System.out.printf("%-28s %12s %12s%n", "per store", "summed ns", "rollup ns");
+
+        for (int round = 0; round < 2; round++) { // the first round warms up the JIT
+            boolean print = round == 1;
+            long start = System.nanoTime();
+            int buys = 0;
+            for (int r = 0; r < rounds; r++) {
+                for (Store store : stores) {
+                    store.purchaseProduct("Product " + (buys++ % productsPerStore), 1);
+                }
+            }
+            if (print) System.out.printf("%-28s %12s %12.0f%n", "BUY", "-", (System.nanoTime() - start) / (double) buys);
+
+            // The summing baseline walks copies of each store's maps, which are what Store iterated
+            Map<Store, Map<String, Integer>> sales = new IdentityHashMap<>();
+            Map<Store, List<Product>> products = new IdentityHashMap<>();
+            for (Store store : stores) {
+                Map<String, Integer> storeSales = new HashMap<>();
+                store.forEachSale(storeSales::put);
+                sales.put(store, storeSales);
+                products.put(store, new ArrayList<>(store.getProducts()));
+            }
+            report(print, "total (store category)", stores, rounds,
+                    s -> summedTotal(sales.get(s)), Store::getTotalSales);
+            report(print, "type pizza (product category)", stores, rounds,
+                    s -> summedType(products.get(s), sales.get(s), "pizza"), s -> s.getSalesOfType("pizza"));
+        }
+    }
+
+    private interface StoreQuery {
+        int sales(Store store);
+    }
+
+    private static void report(boolean print, String name, List<Store> stores, int rounds, StoreQuery summed, StoreQuery rollup) {
+        for (Store store : stores) {
+            if (summed.sales(store) != rollup.sales(store)) throw new IllegalStateException("Rollup differs for " + name);
+        }
+        double summedNanos = time(summed, stores, rounds);
+        double rollupNanos = time(rollup, stores, rounds);
+        if (print) System.out.printf("%-28s %12.1f %12.1f%n", name, summedNanos, rollupNanos);
+    }
+
+    private static double time(StoreQuery query, List<Store> stores, int rounds) {
+        long sink = 0;
+        long start = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            for (Store store : stores) {
+                sink += query.sales(store);
+            }
+        }
+        double nanos = (System.nanoTime() - start) / (double) rounds / stores.size();
+        if (sink == 42) System.out.print(""); // keeps the loop from being optimized away
+        return nanos;
+    }
+
+    // How Store computed these before keeping rollups
+
+    private static int summedTotal(Map<String, Integer> sales) {
+        int total = 0;
+        for (int quantity : sales.values()) {
+            total += quantity;
+        }
+        return total;
+    }
+
+    private static int summedType(List<Product> products, Map<String, Integer> sales, String productType) {
+        int total = 0;
+        for (Product product : products) {
+            if (product.getProductType().equals(productType)) {
+                total += sales.getOrDefault(product.getProductName(), 0);
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.backend;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+
+// Bytes allocated and time per operation on Store's hot paths: a BUY as the Worker runs it
+// (purchase lock, reservation, sales counters) and the per-store reads an aggregation does
+// (total, product type and product sales, the product's stock). Allocation is
+// measured with the JVM's per-thread allocation counter, the number a JMH -prof gc run
+// reports as gc.alloc.rate.norm.
+//
+// Usage: java -cp backend/build/classes/java/main;backend/build/classes/java/benchmarks com.example.backend.StoreAllocationBenchmark
+//            [stores] [productsPerStore] [rounds]
+public class StoreAllocationBenchmark {
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static long sink;
+
+    public static void main(String[] args) {
+        int storeCount = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int productsPerStore = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+
+        String[] types = {"pizza", "salad", "drink", "dessert"};
+        String[] names = new String[productsPerStore];
+        for (int p = 0; p < productsPerStore; p++) {
+            names[p] = "Product " + p;
+        }
+        List<Store> stores = new ArrayList<>();
+        for (int i = 0; i < storeCount; i++) {
+            Store store = new Store("Store " + i, 37.9, 23.7, "pizzeria", 3, 10, "logo.png");
+            for (int p = 0; p < productsPerStore; p++) {
+                store.addProduct(new Product(names[p], types[p % types.length], Integer.MAX_VALUE, 4.5));
+            }
+            stores.add(store);
+        }
+        System.out.printf("%d stores, %d products each%n", storeCount, productsPerStore);
+        System.out.printf("%-12s %12s %12s%n", "operation", "bytes/op", "ns/op");
+
+        for (int round = 0; round < 3; round++) { // the first rounds warm up the JIT
+            boolean print = round == 2;
+            long operations = (long) rounds * storeCount;
+
+            long bytes = allocatedBytes();
+            long start = System.nanoTime();
+            for (int r = 0; r < rounds; r++) {
+                String name = names[r % productsPerStore];
+                for (Store store : stores) {
+                    buy(store, name);
+                }
+            }
+            report(print, "BUY", operations, bytes, start);
+
+            bytes = allocatedBytes();
+            start = System.nanoTime();
+            for (int r = 0; r < rounds; r++) {
+                String name = names[r % productsPerStore];
+                for (Store store : stores) {
+                    sink += aggregate(store, name);
+                }
+            }
+            report(print, "aggregate", operations, bytes, start);
+        }
+    }
+
+    private static void buy(Store store, String productName) {
+        Lock purchasing = store.purchaseLock();
+        purchasing.lock();
+        try {
+            if (store.purchaseProduct(productName, 1) != Store.Purchase.COMPLETED) {
+                throw new IllegalStateException("Purchase failed");
+            }
+        } finally {
+            purchasing.unlock();
+        }
+    }
+
+    private static long aggregate(Store store, String productName) {
+        return store.getTotalSales() + store.getSalesOfType("pizza") + store.getSalesOf(productName)
+                + store.getProduct(productName).getAvailableAmount();
+    }
+
+    private static long allocatedBytes() {
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().threadId());
+    }
+
+    private static void report(boolean print, String operation, long operations, long startBytes, long startNanos) {
+        double nanos = (System.nanoTime() - startNanos) / (double) operations;
+        double bytes = (allocatedBytes() - startBytes) / (double) operations;
+        if (print) System.out.printf("%-12s %12.2f %12.1f%n", operation, bytes, nanos);
+    }
+}
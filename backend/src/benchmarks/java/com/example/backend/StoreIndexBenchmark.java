@@ -0,0 +1,140 @@
+package com.example.backend;
+
+import java.util.*;
+
+// Compares the Worker's GET_SALES_* queries done as full scans over every store (as before
+// StoreIndex, kept here as the baseline) with index lookups, for a selective query (a
+// handful of matching stores) and a broad one of each kind. Prints microseconds per query.
+//
+// Usage: java -cp backend/build/classes/java/main;backend/build/classes/java/benchmarks com.example.backend.StoreIndexBenchmark
+//            [stores] [productsPerStore] [queries]
+public class StoreIndexBenchmark {
+    public static void main(String[] args) {
+        int storeCount = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int productsPerStore = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int queries = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+
+        // Every 10000th store is a "creperie" selling a "crepe"; the rest share a few categories
+        String[] categories = {"pizzeria", "souvlaki", "burger", "coffee"};
+        String[] types = {"pizza", "salad", "drink", "dessert"};
+        Map<String, Store> stores = new HashMap<>();
+        StoreIndex index = new StoreIndex();
+        Random random = new Random(42);
+        for (int i = 0; i < storeCount; i++) {
+            boolean rare = i % 10000 == 0;
+            Store store = new Store("Store " + i, 37.9, 23.7, rare ? "creperie" : categories[i % categories.length],
+                    3, 10, "logo.png");
+            for (int p = 0; p < productsPerStore; p++) {
+                String type = rare && p == 0 ? "crepe" : types[p % types.length];
+                store.addProduct(new Product(type + " " + p, type, 100, 4.5));
+                store.recordSale(type + " " + p, 1 + random.nextInt(20));
+            }
+            stores.put(store.getStoreName(), store);
+        }
+        index.rebuild(stores.values());
+        System.out.printf("%d stores, %d products each%n", storeCount, productsPerStore);
+        System.out.printf("%-44s %12s %12s%n", "query", "scan us", "index us");
+
+        for (int round = 0; round < 2; round++) { // the first round warms up the JIT
+            boolean print = round == 1;
+            report(print, "BY_STORE_TYPE_CATEGORY creperie", queries,
+                    () -> scanCategory(stores, "creperie"), () -> indexCategory(stores, index, "creperie"));
+            report(print, "BY_STORE_TYPE_CATEGORY pizzeria", queries / 10,
+                    () -> scanCategory(stores, "pizzeria"), () -> indexCategory(stores, index, "pizzeria"));
+            report(print, "BY_PRODUCT_CATEGORY crepe", queries,
+                    () -> scanType(stores, "crepe"), () -> indexType(stores, index, "crepe"));
+            report(print, "BY_PRODUCT_CATEGORY pizza", queries / 10,
+                    () -> scanType(stores, "pizza"), () -> indexType(stores, index, "pizza"));
+            report(print, "BY_PRODUCT crepe 0", queries,
+                    () -> scanProduct(stores, "crepe 0"), () -> indexProduct(stores, index, "crepe 0"));
+            report(print, "BY_PRODUCT pizza 0", queries / 10,
+                    () -> scanProduct(stores, "pizza 0"), () -> indexProduct(stores, index, "pizza 0"));
+        }
+    }
+
+    private interface Query {
+        Map<String, Integer> run();
+    }
+
+    private static void report(boolean print, String name, int queries, Query scan, Query indexed) {
+        Map<String, Integer> expected = scan.run();
+        if (!expected.equals(indexed.run())) throw new IllegalStateException("Results differ for " + name);
+        double scanMicros = time(scan, queries);
+        double indexMicros = time(indexed, queries);
+        if (print) {
+            System.out.printf("%-44s %12.1f %12.1f  (%d stores matched)%n", name, scanMicros, indexMicros, expected.size());
+        }
+    }
+
+    private static double time(Query query, int queries) {
+        long start = System.nanoTime();
+        for (int i = 0; i < queries; i++) {
+            query.run();
+        }
+        return (System.nanoTime() - start) / 1e3 / queries;
+    }
+
+    // The scans WorkerThread did before StoreIndex
+
+    private static Map<String, Integer> scanCategory(Map<String, Store> stores, String category) {
+        Map<String, Integer> sales = new LinkedHashMap<>();
+        for (Store s : stores.values()) {
+            if (s.getFoodCategory().replaceAll("^\"|\"$", "").equalsIgnoreCase(category)) {
+                sales.put(s.getStoreName(), s.getTotalSales());
+            }
+        }
+        return sales;
+    }
+
+    private static Map<String, Integer> scanType(Map<String, Store> stores, String type) {
+        Map<String, Integer> sales = new LinkedHashMap<>();
+        for (Store s : stores.values()) {
+            int storeTotal = s.getSalesOfType(type);
+            if (storeTotal > 0) sales.put(s.getStoreName(), storeTotal);
+        }
+        return sales;
+    }
+
+    private static Map<String, Integer> scanProduct(Map<String, Store> stores, String product) {
+        Map<String, Integer> sales = new LinkedHashMap<>();
+        for (Store s : stores.values()) {
+            int storeTotal = s.getSalesOf(product);
+            if (storeTotal > 0) sales.put(s.getStoreName(), storeTotal);
+        }
+        return sales;
+    }
+
+    // The same queries through the index, as WorkerThread runs them now: broad ones fall back to the scan
+
+    private static Map<String, Integer> indexCategory(Map<String, Store> stores, StoreIndex index, String category) {
+        Set<Store> inCategory = index.storesInCategory(category);
+        if (StoreIndex.isBroad(inCategory.size(), stores.size())) return scanCategory(stores, category);
+        Map<String, Integer> sales = new LinkedHashMap<>();
+        for (Store s : inCategory) {
+            sales.put(s.getStoreName(), s.getTotalSales());
+        }
+        return sales;
+    }
+
+    private static Map<String, Integer> indexType(Map<String, Store> stores, StoreIndex index, String type) {
+        Set<Store> withType = index.storesWithType(type);
+        if (StoreIndex.isBroad(withType.size(), stores.size())) return scanType(stores, type);
+        Map<String, Integer> sales = new LinkedHashMap<>();
+        for (Store s : withType) {
+            int storeTotal = s.getSalesOfType(type);
+            if (storeTotal > 0) sales.put(s.getStoreName(), storeTotal);
+        }
+        return sales;
+    }
+
+    private static Map<String, Integer> indexProduct(Map<String, Store> stores, StoreIndex index, String product) {
+        Set<Store> selling = index.storesSelling(product);
+        if (StoreIndex.isBroad(selling.size(), stores.size())) return scanProduct(stores, product);
+        Map<String, Integer> sales = new LinkedHashMap<>();
+        for (Store s : selling) {
+            int storeTotal = s.getSalesOf(product);
+            if (storeTotal > 0) sales.put(s.getStoreName(), storeTotal);
+        }
+        return sales;
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.backend;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+// Times how long a Worker takes to rebuild its stores on restart from each kind of
+// durable state: snapshot.bin (mapped), the snapshot.json older workers wrote, and the
+// write-ahead log alone. Builds a synthetic worker directory, then runs WorkerStorage.recover()
+// the way a restarted Worker does.
+//
+// Usage: java -cp backend/build/classes/java/main;backend/build/classes/java/benchmarks com.example.backend.WarmRestartBenchmark
+//            [stores] [productsPerStore] [rounds]
+public class WarmRestartBenchmark {
+    public static void main(String[] args) throws IOException {
+        int storeCount = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int productsPerStore = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+        Path root = Files.createTempDirectory("warm-restart");
+        Path source = Files.createDirectory(root.resolve("source"));
+        Map<String, Store> stores = new HashMap<>();
+        WorkerStorage storage = new WorkerStorage(source.toString(), stores);
+        storage.recover();
+        storage.start();
+        for (int i = 0; i < storeCount; i++) {
+            Store store = new Store("Store " + i, 37.9 + i * 1e-6, 23.7, i % 2 == 0 ? "pizzeria" : "souvlaki",
+                    1 + i % 5, i % 300, "/usr/bin/images/store_" + i + ".png");
+            for (int p = 0; p < productsPerStore; p++) {
+                store.addProduct(new Product("Product " + p, p % 2 == 0 ? "pizza" : "salad", 100 + p, 5.0 + p));
+                if (p % 10 == 0) store.recordSale("Product " + p, 1 + i % 7);
+            }
+            stores.put(store.getStoreName(), store);
+            store.setWalSeq(storage.logStore(store));
+        }
+        storage.awaitLogged();
+        System.out.printf("%d stores, %d products%n", storeCount, (long) storeCount * productsPerStore);
+
+        Path logOnly = Files.createDirectory(root.resolve("log"));
+        Files.copy(source.resolve("wal-1.log"), logOnly.resolve("wal-1.log")); // a new directory's first segment
+        storage.writeSnapshot();
+        Path binary = Files.createDirectory(root.resolve("binary"));
+        Files.copy(source.resolve("snapshot.bin"), binary.resolve("snapshot.bin"));
+        Path json = Files.createDirectory(root.resolve("json"));
+        writeJsonSnapshot(stores.values(), json.resolve("snapshot.json"));
+        stores.clear(); // only the recovered stores should be live on the heap, as after a real restart
+
+        System.out.printf("%-14s %12s %10s%n", "state", "bytes", "ms");
+        for (int round = 0; round < rounds; round++) { // the first round is a cold JVM, like a real restart
+            report(round, "snapshot.bin", binary, "snapshot.bin", storeCount);
+            report(round, "snapshot.json", json, "snapshot.json", storeCount);
+            report(round, "wal.log only", logOnly, "wal-1.log", storeCount);
+        }
+        System.exit(0); // the storage threads of the source directory keep running
+    }
+
+    private static void report(int round, String state, Path directory, String file, int expected) throws IOException {
+        Map<String, Store> recovered = new HashMap<>();
+        long start = System.nanoTime();
+        new WorkerStorage(directory.toString(), recovered).recover();
+        long millis = (System.nanoTime() - start) / 1000000;
+        if (recovered.size() != expected) throw new IllegalStateException(state + " recovered " + recovered.size());
+        System.out.printf("%-14s %12d %10d  (round %d)%n", state, Files.size(directory.resolve(file)), millis, round + 1);
+    }
+
+    // The layout WorkerStorage wrote before snapshot.bin
+    private static void writeJsonSnapshot(Collection<Store> stores, Path file) throws IOException {
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("{\"Seq\": 0, \"Stores\": [\n");
+            boolean first = true;
+            for (Store store : stores) {
+                if (!first) out.write(",\n");
+                first = false;
+                out.write("{\"WalSeq\": " + store.getWalSeq() + ", \"Store\":\n" + StoreJson.write(store, true) + "}");
+            }
+            out.write("\n]}\n");
+        }
+    }
+}
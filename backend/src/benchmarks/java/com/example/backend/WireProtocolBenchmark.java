@@ -0,0 +1,109 @@
+package com.example.backend;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Offline comparison of the Master-Worker text lines and WireProtocol frames: encodes and
+// decodes typical messages in memory and prints messages per second and bytes per message.
+// No workers are started, so the numbers are codec cost only.
+//
+// Usage: java -cp backend/build/classes/java/main;backend/build/classes/java/benchmarks com.example.backend.WireProtocolBenchmark
+//            [messages] [storesPerSalesReply]
+public class WireProtocolBenchmark {
+    public static void main(String[] args) throws IOException {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        int storesPerReply = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+
+        String buy = "BUY Pizza Palace,Margherita,3";
+        String addStore = "ADD_STORE {\"StoreName\": \"Pizza Palace\", \"Latitude\": 37.9838, \"Longitude\": 23.7275, "
+                + "\"FoodCategory\": \"pizzeria\", \"Stars\": 4, \"NoOfVotes\": 120, \"StoreLogo\": \"logo.png\", "
+                + "\"Products\": [ {\"ProductName\": \"Margherita\", \"ProductType\": \"pizza\", "
+                + "\"Available Amount\": 100, \"Price\": 8.5} ] }";
+        Map<String, Integer> sales = new LinkedHashMap<>();
+        for (int i = 0; i < storesPerReply; i++) {
+            sales.put("Store " + i, 1000 + i * 37);
+        }
+
+        System.out.printf("%-22s %-7s %14s %12s%n", "message", "format", "msgs/s", "bytes/msg");
+        for (int round = 0; round < 2; round++) { // the first round warms up the JIT
+            boolean print = round == 1;
+            report(print, "BUY request", "text", messages, () -> textRequest(buy));
+            report(print, "BUY request", "binary", messages, () -> binaryRequest(buy));
+            report(print, "ADD_STORE request", "text", messages, () -> textRequest(addStore));
+            report(print, "ADD_STORE request", "binary", messages, () -> binaryRequest(addStore));
+            report(print, storesPerReply + "-store sales", "text", messages / 10, () -> textSales(sales));
+            report(print, storesPerReply + "-store sales", "binary", messages / 10, () -> binarySales(sales));
+        }
+    }
+
+    private interface RoundTrip {
+        int run() throws IOException; // returns the encoded size in bytes
+    }
+
+    private static void report(boolean print, String message, String format, int messages, RoundTrip roundTrip)
+            throws IOException {
+        long bytes = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < messages; i++) {
+            bytes += roundTrip.run();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        if (print) {
+            System.out.printf("%-22s %-7s %14.0f %12.1f%n", message, format, messages / seconds, (double) bytes / messages);
+        }
+    }
+
+    // What WorkerConnection and WorkerThread did per text message: id prefix, newline
+    // flattening, UTF-8 encoding, then line splitting and id parsing on the other side
+    private static int textRequest(String request) throws IOException {
+        byte[] encoded = ("42 " + request.replace("\n", " ").replace("\r", "") + "\n").getBytes(StandardCharsets.UTF_8);
+        String line = readLine(encoded);
+        int space = line.indexOf(' ');
+        Long.parseLong(line.substring(0, space));
+        String[] parts = line.substring(space + 1).split(" ", 2);
+        if (parts.length < 2) throw new IllegalStateException();
+        return encoded.length;
+    }
+
+    // The readers are long-lived per connection, so only the line decoding is charged here
+    private static String readLine(byte[] encoded) {
+        int end = encoded.length;
+        while (end > 0 && (encoded[end - 1] == '\n' || encoded[end - 1] == '\r')) end--;
+        return new String(encoded, 0, end, StandardCharsets.UTF_8);
+    }
+
+    private static int binaryRequest(String request) throws IOException {
+        int space = request.indexOf(' ');
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WireProtocol.writeFrame(out, WireProtocol.request(42, request.substring(0, space), List.of(request.substring(space + 1))));
+        byte[] encoded = out.toByteArray();
+        WireProtocol.Decoder payload = new WireProtocol.Decoder(WireProtocol.readFrame(new ByteArrayInputStream(encoded)));
+        payload.varint();
+        payload.string();
+        payload.varint();
+        payload.string();
+        return encoded.length;
+    }
+
+    private static int textSales(Map<String, Integer> sales) throws IOException {
+        byte[] encoded = ("42 " + WireProtocol.formatSales(sales) + "\n").getBytes(StandardCharsets.UTF_8);
+        String line = readLine(encoded);
+        int space = line.indexOf(' ');
+        Long.parseLong(line.substring(0, space));
+        if (WireProtocol.parseSales(line.substring(space + 1)).size() != sales.size()) throw new IllegalStateException();
+        return encoded.length;
+    }
+
+    private static int binarySales(Map<String, Integer> sales) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WireProtocol.writeFrame(out, WireProtocol.salesReply(42, sales));
+        byte[] encoded = out.toByteArray();
+        WireProtocol.Decoder payload = new WireProtocol.Decoder(WireProtocol.readFrame(new ByteArrayInputStream(encoded)));
+        payload.varint();
+        if (WireProtocol.Reply.decode(payload).sales().size() != sales.size()) throw new IllegalStateException();
+        return encoded.length;
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.backend;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Concurrent BUY load against one in-process Worker, the way Master drives it: many
+// threads share one pipelined WorkerConnection and each keeps one BUY in flight. The
+// client count doubles each step; with per-store locking, BUY/s should grow with the
+// cores the Worker's request pool gets. One more thread scans GET_SALES_BY_PRODUCT
+// throughout to show analytics running alongside the BUYs. With hotStores set to 1 every
+// client buys the same product of the same store, the contended case for stock reservation.
+//
+// Usage: java -cp backend/build/classes/java/main;backend/build/classes/java/benchmarks com.example.backend.WorkerLoadBenchmark
+//            [stores] [secondsPerStep] [maxClients] [hotStores]
+// The worker keeps its data under data/temp_workers_data/worker_8099, removed afterwards.
+public class WorkerLoadBenchmark {
+    private static final int PORT = 8099;
+
+    public static void main(String[] args) throws Exception {
+        int storeCount = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int maxClients = args.length > 2 ? Integer.parseInt(args[2]) : 4 * Runtime.getRuntime().availableProcessors();
+        int hotStores = args.length > 3 ? Math.min(Integer.parseInt(args[3]), storeCount) : storeCount;
+
+        Path directory = Paths.get("data/temp_workers_data/worker_" + PORT);
+        deleteRecursively(directory);
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream())); // the Worker logs every request
+        Worker worker = new Worker(PORT);
+        Thread server = new Thread(() -> worker.start(PORT), "benchmark-worker");
+        server.setDaemon(true);
+        server.start();
+
+        WorkerConnection connection = connect();
+        StringBuilder batch = new StringBuilder("ADD_STORES [");
+        for (int i = 0; i < storeCount; i++) {
+            Store store = new Store("S" + i, 37.9, 23.7, "pizzeria", 3, 1, "x.png");
+            store.addProduct(new Product("P", "pizza", 1000000000, 2.5));
+            if (i > 0) batch.append(',');
+            batch.append(StoreJson.write(store, false));
+        }
+        console.println(connection.sendRequest(batch.append(']').toString()));
+        console.printf("%d stores (%d bought from), %d cores%n", storeCount, hotStores, Runtime.getRuntime().availableProcessors());
+        console.printf("%8s %12s %12s%n", "clients", "BUY/s", "scans/s");
+
+        for (int clients = 1; clients <= maxClients; clients *= 2) {
+            AtomicBoolean running = new AtomicBoolean(true);
+            AtomicLong buys = new AtomicLong();
+            AtomicLong scans = new AtomicLong();
+            List<Thread> threads = new ArrayList<>();
+            for (int c = 0; c < clients; c++) {
+                threads.add(start(() -> {
+                    while (running.get()) {
+                        String reply = connection.sendRequest("BUY S" + ThreadLocalRandom.current().nextInt(hotStores) + ",P,1");
+                        if (!reply.startsWith("Purchase")) throw new IllegalStateException(reply);
+                        buys.incrementAndGet();
+                    }
+                }));
+            }
+            threads.add(start(() -> {
+                while (running.get()) {
+                    connection.sendSalesQueryAsync("GET_SALES_BY_PRODUCT P").join();
+                    scans.incrementAndGet();
+                }
+            }));
+            Thread.sleep(1000); // warm-up, not counted
+            long startBuys = buys.get();
+            long startScans = scans.get();
+            long start = System.nanoTime();
+            Thread.sleep(seconds * 1000L);
+            double elapsed = (System.nanoTime() - start) / 1e9;
+            long measuredBuys = buys.get() - startBuys;
+            long measuredScans = scans.get() - startScans;
+            running.set(false);
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            console.printf("%8d %12.0f %12.1f%n", clients, measuredBuys / elapsed, measuredScans / elapsed);
+        }
+        connection.close();
+        deleteRecursively(directory);
+        System.exit(0);
+    }
+
+    private interface Task {
+        void run() throws IOException;
+    }
+
+    private static Thread start(Task task) {
+        Thread thread = new Thread(() -> {
+            try {
+                task.run();
+            } catch (IOException e) {
+                System.err.println("Load thread failed: " + e.getMessage());
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private static WorkerConnection connect() throws IOException, InterruptedException {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return new WorkerConnection("localhost", PORT);
+            } catch (IOException e) {
+                if (attempt == 50) throw e;
+                Thread.sleep(100);
+            }
+        }
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path)) return;
+        List<Path> paths;
+        try (Stream<Path> walk = Files.walk(path)) {
+            paths = walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+        }
+        for (Path p : paths) {
+            Files.delete(p);
+        }
+    }
+}
@@ -0,0 +1,568 @@
+package com.example.backend;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Master's view of the workers and of where every store lives. Stores hash to one of
+// Placement.PARTITIONS partitions and the placement assigns each partition its replicas;
+// storeToWorkers caches the replica list of every store Master has seen.
+//
+// Workers can join or be drained while the cluster runs. The partition table switches to
+// the new placement at once, so new stores go straight to their new owners; existing
+// stores are then copied partition by partition from a current replica to the new ones.
+// A partition's write lock is held only while its own stores move, and client mutations
+// take the read lock, so BUYs wait at most for one partition's copy.
+//
+// Failover uses the same path: a worker the HealthTracker declares DEAD leaves the ring and
+// routing at once, and the next repair pass copies its stores from the surviving replicas
+// onto healthy workers until every store has its replication factor again.
+//
+// Analytics read every store exactly once: for each query one live replica of each
+// partition is its designated reader, rotating between replicas from query to query.
+// Partitions whose stores are not all on the partition's replicas yet (a move or repair
+// in progress) are "unsettled" and scanned by every live worker, with Master de-duplicating.
+//
+// Workers keep their stores on disk across restarts, so copies are made only where they
+// are needed: replicas report a digest per store (GET_DIGESTS) and a store is copied only
+// to workers whose digest differs from a current replica's. A worker that answers PING
+// with a new epoch (it restarted) or that missed pings is re-synced this way, and a
+// restarted Master adopts the stores the workers recovered instead of reloading them.
+class Cluster {
+    private final int replicationFactor;
+    private final Placement<WorkerConnection> placement;
+    private final List<WorkerConnection> workers = new CopyOnWriteArrayList<>();
+    private final Map<String, List<WorkerConnection>> storeToWorkers = new ConcurrentHashMap<>();
+    private volatile List<List<WorkerConnection>> partitionTable = Collections.emptyList();
+    private final ReadWriteLock[] partitionLocks = new ReadWriteLock[Placement.PARTITIONS];
+    private final HealthTracker health = new HealthTracker();
+    private final Map<WorkerConnection, Integer> weights = new ConcurrentHashMap<>();
+    private final Object membershipLock = new Object();
+    private volatile boolean repairPending = false;
+    private final AtomicIntegerArray storesPerPartition = new AtomicIntegerArray(Placement.PARTITIONS);
+    private final BitSet unsettledPartitions = new BitSet(Placement.PARTITIONS);
+    private final AtomicLong queryCounter = new AtomicLong();
+    // Client mutations finished per partition; digests fetched before a count changed are stale
+    private final AtomicLongArray partitionWrites = new AtomicLongArray(Placement.PARTITIONS);
+    private final Map<WorkerConnection, String> epochs = new ConcurrentHashMap<>();
+    private final Set<WorkerConnection> resyncPending = ConcurrentHashMap.newKeySet();
+    private int reusedCopies; // copies a rebalance found already in place, guarded by this
+
+    Cluster(int replicationFactor, Placement<WorkerConnection> placement) {
+        this.replicationFactor = replicationFactor;
+        this.placement = placement;
+        for (int p = 0; p < Placement.PARTITIONS; p++) {
+            partitionLocks[p] = new ReentrantReadWriteLock();
+        }
+    }
+
+    void addWorker(WorkerConnection worker, int weight) {
+        weights.put(worker, weight);
+        updatePlacement(() -> placement.addNode(worker, worker.getId(), weight));
+        workers.add(worker);
+    }
+
+    // Joins a worker to a running cluster and moves to it the stores it now owns
+    synchronized String joinWorker(WorkerConnection worker, int weight) {
+        addWorker(worker, weight);
+        return "Worker " + worker.getId() + " joined: " + rebalance();
+    }
+
+    // Moves every store off the worker, then forgets it and closes its connection. If a store
+    // could not be moved the worker still holds it, so the drain is aborted and the worker
+    // goes back into the ring; the repair pass returns the stores already moved.
+    synchronized String drainWorker(WorkerConnection worker) {
+        if (workers.size() <= 1) {
+            return "Cannot drain the last worker";
+        }
+        updatePlacement(() -> placement.removeNode(worker));
+        Rebalance result = rebalance();
+        if (result.failed > 0) {
+            if (!health.isDead(worker)) {
+                updatePlacement(() -> placement.addNode(worker, worker.getId(), weights.getOrDefault(worker, 1)));
+            }
+            return "Drain of worker " + worker.getId() + " aborted, it keeps its stores: " + result;
+        }
+        workers.remove(worker);
+        weights.remove(worker);
+        health.forget(worker);
+        epochs.remove(worker);
+        resyncPending.remove(worker);
+        try {
+            worker.close();
+        } catch (IOException e) {
+            System.err.println("Error closing worker connection: " + e.getMessage());
+        }
+        return "Worker " + worker.getId() + " drained: " + result;
+    }
+
+    // reply is the worker's answer to PING, or null if it missed the ping
+    void recordHeartbeat(WorkerConnection worker, String reply) {
+        if (!workers.contains(worker)) return;
+        if (reply != null) {
+            String epoch = reply.startsWith("PONG ") ? reply.substring("PONG ".length()).trim() : "";
+            String previousEpoch = epochs.put(worker, epoch);
+            HealthTracker.State before = health.recordSuccess(worker);
+            if (before == HealthTracker.State.DEAD) {
+                System.out.println("Worker at " + worker.getPort() + " is back, rebalancing stores onto it");
+                updatePlacement(() -> placement.addNode(worker, worker.getId(), weights.getOrDefault(worker, 1)));
+                repairPending = true;
+                resyncPending.add(worker);
+            } else if (previousEpoch != null && !previousEpoch.equals(epoch)) {
+                System.out.println("Worker at " + worker.getPort() + " restarted (epoch " + epoch + "), re-syncing its stores");
+                resyncPending.add(worker);
+            } else if (before == HealthTracker.State.SUSPECT) {
+                // Changes sent while it was unreachable may not have reached it
+                resyncPending.add(worker);
+            }
+            return;
+        }
+        HealthTracker.State before = health.state(worker);
+        HealthTracker.State after = health.recordFailure(worker);
+        if (after == HealthTracker.State.SUSPECT) {
+            System.err.println("Worker at " + worker.getPort() + " is down (suspect)");
+        } else if (after == HealthTracker.State.DEAD && before != HealthTracker.State.DEAD) {
+            System.err.println("Worker at " + worker.getPort() + " is dead, re-replicating its stores");
+            updatePlacement(() -> placement.removeNode(worker));
+            repairPending = true;
+            // Fails the requests still waiting on it (BUYs holding partition locks among them);
+            // the next PING reconnects
+            try {
+                worker.close();
+            } catch (IOException e) {
+                System.err.println("Error closing worker connection: " + e.getMessage());
+            }
+        }
+    }
+
+    // Background repair: brings every store back to its placement after failures or recoveries,
+    // then brings returning workers' copies up to date
+    synchronized void repairIfNeeded() {
+        if (repairPending) {
+            repairPending = false;
+            System.out.println("Re-replication: " + rebalance());
+        }
+        for (WorkerConnection worker : new ArrayList<>(resyncPending)) {
+            if (health.state(worker) != HealthTracker.State.ALIVE) continue;
+            resyncPending.remove(worker);
+            System.out.println("Re-sync of worker at " + worker.getPort() + ": " + resync(worker));
+        }
+    }
+
+    // Warm start: registers the stores the workers recovered from disk, keeping on each store
+    // only the copies that agree with its first replica, then moves stores to their placement
+    synchronized String adoptRecoveredStores() {
+        Map<WorkerConnection, Map<String, Integer>> digests = storeDigests(getLiveWorkers());
+        Map<String, List<WorkerConnection>> holders = new HashMap<>();
+        for (Map.Entry<WorkerConnection, Map<String, Integer>> entry : digests.entrySet()) {
+            for (String store : entry.getValue().keySet()) {
+                holders.computeIfAbsent(store, k -> new ArrayList<>()).add(entry.getKey());
+            }
+        }
+        if (holders.isEmpty()) return "no stores recovered";
+        int diverged = 0;
+        for (Map.Entry<String, List<WorkerConnection>> entry : holders.entrySet()) {
+            String store = entry.getKey();
+            int partition = Placement.partitionOf(store);
+            List<WorkerConnection> target = replicasForPartition(partition);
+            List<WorkerConnection> ordered = new ArrayList<>();
+            for (WorkerConnection worker : target) {
+                if (entry.getValue().contains(worker)) ordered.add(worker);
+            }
+            for (WorkerConnection worker : entry.getValue()) {
+                if (!ordered.contains(worker)) ordered.add(worker);
+            }
+            Integer reference = digests.get(ordered.get(0)).get(store);
+            List<WorkerConnection> current = new ArrayList<>();
+            for (WorkerConnection worker : ordered) {
+                if (reference.equals(digests.get(worker).get(store))) {
+                    current.add(worker);
+                    continue;
+                }
+                // A copy that missed changes; if the worker is a replica it gets a fresh one
+                diverged++;
+                dropStore(store, worker);
+            }
+            synchronized (membershipLock) {
+                storeToWorkers.put(store, current);
+                storesPerPartition.incrementAndGet(partition);
+                if (!current.equals(target)) unsettledPartitions.set(partition);
+            }
+        }
+        return "adopted " + holders.size() + " stores (" + diverged + " diverged copies dropped), " + rebalance();
+    }
+
+    WorkerConnection findWorker(String workerId) {
+        for (WorkerConnection worker : workers) {
+            if (worker.getId().equals(workerId)) return worker;
+        }
+        return null;
+    }
+
+    // Held by client mutations of the store so that a migration of its partition waits for them
+    Lock storeLock(String storeName) {
+        return partitionLocks[Placement.partitionOf(storeName)].readLock();
+    }
+
+    private void updatePlacement(Runnable change) {
+        synchronized (membershipLock) {
+            List<List<WorkerConnection>> before = partitionTable;
+            change.run();
+            rebuildPartitionTable();
+            for (int p = 0; p < before.size(); p++) {
+                if (storesPerPartition.get(p) > 0 && !before.get(p).equals(partitionTable.get(p))) {
+                    unsettledPartitions.set(p);
+                }
+            }
+        }
+    }
+
+    private void settle(int partition, List<WorkerConnection> replicas) {
+        synchronized (membershipLock) {
+            if (partitionTable.get(partition).equals(replicas)) {
+                unsettledPartitions.clear(partition);
+            }
+        }
+    }
+
+    // The partitions each live worker has to scan for one analytics query; workers with
+    // nothing to read are left out
+    Map<WorkerConnection, BitSet> assignReaders() {
+        long query = queryCounter.getAndIncrement();
+        List<WorkerConnection> live = getLiveWorkers();
+        List<List<WorkerConnection>> table;
+        BitSet unsettled;
+        synchronized (membershipLock) {
+            table = partitionTable;
+            unsettled = (BitSet) unsettledPartitions.clone();
+        }
+        Map<WorkerConnection, BitSet> assignment = new LinkedHashMap<>();
+        for (WorkerConnection worker : live) {
+            assignment.put(worker, new BitSet(Placement.PARTITIONS));
+        }
+        for (int p = 0; p < table.size(); p++) {
+            if (storesPerPartition.get(p) == 0) continue;
+            List<WorkerConnection> replicas = liveOnly(table.get(p));
+            if (unsettled.get(p) || replicas.isEmpty()) {
+                for (BitSet partitions : assignment.values()) partitions.set(p);
+                continue;
+            }
+            assignment.get(replicas.get((int) (query % replicas.size()))).set(p);
+        }
+        assignment.values().removeIf(BitSet::isEmpty);
+        return assignment;
+    }
+
+    // What a rebalance did; failed stores are still on their old replicas and a repair retries them
+    static final class Rebalance {
+        final int moved;
+        final int reused;
+        final int failed;
+
+        Rebalance(int moved, int reused, int failed) {
+            this.moved = moved;
+            this.reused = reused;
+            this.failed = failed;
+        }
+
+        @Override
+        public String toString() {
+            return "moved " + moved + " stores"
+                    + (reused > 0 ? " (" + reused + " copies already up to date)" : "")
+                    + (failed > 0 ? ", " + failed + " failed" : "");
+        }
+    }
+
+    private Rebalance rebalance() {
+        Map<Integer, List<String>> storesByPartition = new TreeMap<>();
+        for (String store : storeToWorkers.keySet()) {
+            storesByPartition.computeIfAbsent(Placement.partitionOf(store), k -> new ArrayList<>()).add(store);
+        }
+        // Workers may already hold up-to-date copies (e.g. one that restarted with its snapshot).
+        // The write counts are read first so a digest is only trusted if its partition has not
+        // been written since.
+        long[] writesBefore = partitionWrites();
+        Map<WorkerConnection, Map<String, Integer>> digests = storeDigests(getLiveWorkers());
+        int moved = 0;
+        int failed = 0;
+        reusedCopies = 0;
+        for (Map.Entry<Integer, List<String>> entry : storesByPartition.entrySet()) {
+            List<WorkerConnection> target = replicasForPartition(entry.getKey());
+            Lock lock = partitionLocks[entry.getKey()].writeLock();
+            boolean partitionFailed = false;
+            lock.lock();
+            try {
+                Map<WorkerConnection, Map<String, Integer>> partitionDigests =
+                        partitionWrites.get(entry.getKey()) == writesBefore[entry.getKey()] ? digests : Collections.emptyMap();
+                for (String store : entry.getValue()) {
+                    List<WorkerConnection> current = storeToWorkers.get(store);
+                    if (current == null || current.equals(target)) continue;
+                    // Dead replicas can neither serve the copy nor drop theirs
+                    if (migrateStore(store, liveOnly(current), target, partitionDigests)) {
+                        moved++;
+                    } else {
+                        failed++;
+                        partitionFailed = true;
+                    }
+                }
+                if (!partitionFailed) settle(entry.getKey(), target);
+            } finally {
+                lock.unlock();
+            }
+        }
+        if (failed > 0) repairPending = true;
+        return new Rebalance(moved, reusedCopies, failed);
+    }
+
+    // digests are per-worker store digests known to be current; a destination whose digest
+    // matches a source's already has the store and is not sent a copy
+    private boolean migrateStore(String store, List<WorkerConnection> current, List<WorkerConnection> target,
+                                 Map<WorkerConnection, Map<String, Integer>> digests) {
+        List<WorkerConnection> added = new ArrayList<>(target);
+        added.removeAll(current);
+        List<WorkerConnection> removed = new ArrayList<>(current);
+        removed.removeAll(target);
+        for (Iterator<WorkerConnection> it = added.iterator(); it.hasNext(); ) {
+            if (upToDate(store, it.next(), current, digests)) {
+                it.remove();
+                reusedCopies++;
+            }
+        }
+
+        if (!added.isEmpty()) {
+            String storeJson = exportStore(store, current);
+            if (storeJson == null) {
+                return false;
+            }
+            for (WorkerConnection destination : added) {
+                if (!importStore(store, storeJson, destination)) return false;
+            }
+        }
+
+        storeToWorkers.put(store, target);
+        for (WorkerConnection old : removed) {
+            dropStore(store, old);
+        }
+        return true;
+    }
+
+    private static boolean upToDate(String store, WorkerConnection destination, List<WorkerConnection> sources,
+                                    Map<WorkerConnection, Map<String, Integer>> digests) {
+        Integer digest = digests.getOrDefault(destination, Collections.emptyMap()).get(store);
+        if (digest == null) return false;
+        for (WorkerConnection source : sources) {
+            if (digest.equals(digests.getOrDefault(source, Collections.emptyMap()).get(store))) return true;
+        }
+        return false;
+    }
+
+    // Copies onto the worker the stores whose digest differs from another live replica's and
+    // drops the stores it holds that are no longer routed to it
+    private String resync(WorkerConnection worker) {
+        Map<WorkerConnection, Map<String, Integer>> digests = storeDigests(getLiveWorkers());
+        Map<String, Integer> own = digests.get(worker);
+        if (own == null) {
+            resyncPending.add(worker);
+            return "worker did not report its stores, will retry";
+        }
+        Map<Integer, List<String>> stale = new TreeMap<>();
+        for (Map.Entry<String, List<WorkerConnection>> entry : storeToWorkers.entrySet()) {
+            String store = entry.getKey();
+            List<WorkerConnection> replicas = entry.getValue();
+            if (!replicas.contains(worker)) continue;
+            List<WorkerConnection> peers = liveOnly(replicas);
+            peers.remove(worker);
+            if (peers.isEmpty() || upToDate(store, worker, peers, digests)) continue;
+            stale.computeIfAbsent(Placement.partitionOf(store), k -> new ArrayList<>()).add(store);
+        }
+        for (String store : own.keySet()) {
+            List<WorkerConnection> replicas = storeToWorkers.get(store);
+            if (replicas == null || !replicas.contains(worker)) {
+                stale.computeIfAbsent(Placement.partitionOf(store), k -> new ArrayList<>()).add(store);
+            }
+        }
+        int copied = 0;
+        int dropped = 0;
+        int failed = 0;
+        for (Map.Entry<Integer, List<String>> entry : stale.entrySet()) {
+            Lock lock = partitionLocks[entry.getKey()].writeLock();
+            lock.lock();
+            try {
+                for (String store : entry.getValue()) {
+                    List<WorkerConnection> replicas = storeToWorkers.get(store);
+                    if (replicas == null || !replicas.contains(worker)) {
+                        dropStore(store, worker);
+                        dropped++;
+                        continue;
+                    }
+                    List<WorkerConnection> peers = liveOnly(replicas);
+                    peers.remove(worker);
+                    String storeJson = exportStore(store, peers);
+                    if (storeJson != null && importStore(store, storeJson, worker)) {
+                        copied++;
+                    } else {
+                        failed++;
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        if (failed > 0) resyncPending.add(worker);
+        return own.size() + " stores on the worker, " + copied + " re-copied, " + dropped + " dropped"
+                + (failed > 0 ? ", " + failed + " failed" : "");
+    }
+
+    // Store digests of each worker that answered, for the stores of every partition
+    Map<WorkerConnection, Map<String, Integer>> storeDigests(List<WorkerConnection> from) {
+        Map<WorkerConnection, String> requests = new LinkedHashMap<>();
+        for (WorkerConnection worker : from) {
+            requests.put(worker, "GET_DIGESTS");
+        }
+        return ScatterGather.gather(requests,
+                (worker, request) -> worker.sendSalesQueryAsync(request).thenApply(reply -> Map.entry(worker, reply)),
+                ScatterGather.DEFAULT_DEADLINE_MS, new HashMap<WorkerConnection, Map<String, Integer>>(),
+                (digests, reply) -> digests.put(reply.getKey(), reply.getValue()));
+    }
+
+    private String exportStore(String store, List<WorkerConnection> sources) {
+        for (WorkerConnection source : sources) {
+            try {
+                String reply = source.sendRequest("EXPORT_STORE " + store);
+                if (reply.startsWith("{")) {
+                    return reply;
+                }
+            } catch (IOException e) {
+                System.err.println("Failed to export " + store + " from worker at " + source.getPort() + ": " + e.getMessage());
+            }
+        }
+        System.err.println("No replica could export store " + store);
+        return null;
+    }
+
+    private static boolean importStore(String store, String storeJson, WorkerConnection destination) {
+        try {
+            String reply = destination.sendRequest("IMPORT_STORE " + storeJson);
+            if (!reply.startsWith("Store imported")) {
+                System.err.println("Worker at " + destination.getPort() + " rejected " + store + ": " + reply);
+                return false;
+            }
+            return true;
+        } catch (IOException e) {
+            System.err.println("Failed to import " + store + " into worker at " + destination.getPort() + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static void dropStore(String store, WorkerConnection worker) {
+        try {
+            worker.sendRequest("DROP_STORE " + store);
+        } catch (IOException e) {
+            System.err.println("Failed to drop " + store + " from worker at " + worker.getPort() + ": " + e.getMessage());
+        }
+    }
+
+    // Called by client mutations of the store once every replica has answered, before the store lock is released
+    void recordWrite(String storeName) {
+        partitionWrites.incrementAndGet(Placement.partitionOf(storeName));
+    }
+
+    private long[] partitionWrites() {
+        long[] writes = new long[Placement.PARTITIONS];
+        for (int p = 0; p < writes.length; p++) {
+            writes[p] = partitionWrites.get(p);
+        }
+        return writes;
+    }
+
+    private void rebuildPartitionTable() {
+        List<List<WorkerConnection>> table = new ArrayList<>(Placement.PARTITIONS);
+        for (int p = 0; p < Placement.PARTITIONS; p++) {
+            table.add(Collections.unmodifiableList(placement.replicasFor(p, replicationFactor)));
+        }
+        partitionTable = Collections.unmodifiableList(table);
+    }
+
+    List<WorkerConnection> getWorkers() {
+        return workers;
+    }
+
+    List<WorkerConnection> getLiveWorkers() {
+        return liveOnly(workers);
+    }
+
+    private List<WorkerConnection> liveOnly(List<WorkerConnection> candidates) {
+        List<WorkerConnection> live = new ArrayList<>(candidates.size());
+        for (WorkerConnection worker : candidates) {
+            if (!health.isDead(worker)) live.add(worker);
+        }
+        return live;
+    }
+
+    List<WorkerConnection> replicasForPartition(int partition) {
+        return partitionTable.get(partition);
+    }
+
+    // Live replicas of the store, assigning it to its partition's replicas if Master has not seen it before
+    List<WorkerConnection> getWorkersForStore(String storeName) {
+        String name = Placement.normalizeStoreName(storeName);
+        return liveOnly(storeToWorkers.computeIfAbsent(name, k -> {
+            int partition = Placement.partitionOf(k);
+            // Counted and placed atomically with respect to placement changes
+            synchronized (membershipLock) {
+                storesPerPartition.incrementAndGet(partition);
+                return replicasForPartition(partition);
+            }
+        }));
+    }
+
+    // Live replicas of a known store (possibly none), or null if no worker holds it
+    List<WorkerConnection> findWorkersForStore(String storeName) {
+        List<WorkerConnection> replicas = storeToWorkers.get(Placement.normalizeStoreName(storeName));
+        return replicas == null ? null : liveOnly(replicas);
+    }
+
+    // Per-worker partitions and stores, split into primary and replica copies
+    String loadReport() {
+        Map<WorkerConnection, int[]> load = new LinkedHashMap<>();
+        for (WorkerConnection worker : workers) {
+            load.put(worker, new int[4]);
+        }
+        List<List<WorkerConnection>> table = partitionTable;
+        for (List<WorkerConnection> replicas : table) {
+            for (int i = 0; i < replicas.size(); i++) {
+                int[] counts = load.get(replicas.get(i));
+                if (counts != null) counts[i == 0 ? 0 : 1]++;
+            }
+        }
+        for (List<WorkerConnection> replicas : storeToWorkers.values()) {
+            for (int i = 0; i < replicas.size(); i++) {
+                int[] counts = load.get(replicas.get(i));
+                if (counts != null) counts[i == 0 ? 2 : 3]++;
+            }
+        }
+        StringBuilder report = new StringBuilder();
+        int maxStores = 0;
+        for (Map.Entry<WorkerConnection, int[]> entry : load.entrySet()) {
+            int[] c = entry.getValue();
+            report.append(entry.getKey().getId())
+                    .append(" partitions=").append(c[0]).append("+").append(c[1])
+                    .append(" stores=").append(c[2]).append("+").append(c[3])
+                    .append(" state=").append(health.state(entry.getKey())).append("\n");
+            maxStores = Math.max(maxStores, c[2] + c[3]);
+        }
+        int copies = 0;
+        for (List<WorkerConnection> replicas : storeToWorkers.values()) copies += replicas.size();
+        double mean = workers.isEmpty() ? 0 : (double) copies / workers.size();
+        report.append(String.format("stores=%d copies=%d mean=%.1f max=%d max/mean=%.2f",
+                storeToWorkers.size(), copies, mean, maxStores, mean == 0 ? 0 : maxStores / mean));
+        return report.toString();
+    }
+}
@@ -0,0 +1,276 @@
+package com.example.backend;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// The Worker's catalog as columns, for -Dworker.catalog=columnar. One row per product a
+// store lists or has sales of, with primitive columns for price, stock and sales and
+// dictionary-encoded store, category, product type and product name ids. GET_SALES_*
+// queries that match most stores scan these in tight loops over a few int and long arrays
+// instead of walking Store objects and their products.
+//
+// Columns are split into fixed-size chunks that are never copied or moved, so growing the
+// catalog does not lose a purchase counted into a chunk concurrently. Rows are added, retyped
+// or retired by the Worker while it holds the store's lock stripe and exclusive lock; sales
+// and stock change with purchases, under the store's purchase lock, as atomic adds. Scans
+// take no lock and read the columns as they are. Each store also has a row of its own (no
+// product, no sales) so that stores with nothing listed still show up in their category.
+// Rows of replaced or dropped stores are retired (their keys set to NONE) and reused.
+class ColumnarCatalog {
+    static final boolean ENABLED = "columnar".equalsIgnoreCase(System.getProperty("worker.catalog", "objects"));
+    private static final int CHUNK_BITS = 12;
+    private static final int CHUNK = 1 << CHUNK_BITS;
+    private static final int NONE = -1;
+    private static final long MATCHED = 1L << 40;
+    private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final VarHandle INTS = MethodHandles.arrayElementVarHandle(int[].class);
+
+    // Chunk tables; replaced by a longer copy when a chunk is added
+    private static class Columns {
+        final int[][] store;
+        final int[][] category;
+        final int[][] type;    // NONE while the product is not listed
+        final int[][] name;
+        final double[][] price;
+        final int[][] stock;
+        final long[][] sales;
+
+        Columns(int chunks) {
+            store = new int[chunks][];
+            category = new int[chunks][];
+            type = new int[chunks][];
+            name = new int[chunks][];
+            price = new double[chunks][];
+            stock = new int[chunks][];
+            sales = new long[chunks][];
+        }
+    }
+
+    private final Map<String, Integer> categories = new ConcurrentHashMap<>();
+    private final Map<String, Integer> types = new ConcurrentHashMap<>();
+    private final Map<String, Integer> names = new ConcurrentHashMap<>();
+    private final Map<Store, Integer> storeIds = new ConcurrentHashMap<>();
+    private final Map<Store, int[]> rowsByStore = new ConcurrentHashMap<>(); // row of each product id (Store.productId)
+    private volatile Store[] storesById = new Store[16];
+    private volatile Columns columns = new Columns(0);
+    private volatile int rowCount; // published after the row's columns are filled in
+    private int[] storeRows = new int[16]; // the row of each store id
+    private int storeCount;
+    private final Deque<Integer> freeStoreIds = new ArrayDeque<>();
+    private final Deque<Integer> freeRows = new ArrayDeque<>();
+
+    // Called before the Worker serves requests
+    synchronized void rebuild(Collection<Store> stores) {
+        storeIds.clear();
+        rowsByStore.clear();
+        freeStoreIds.clear();
+        freeRows.clear();
+        storesById = new Store[Math.max(16, stores.size())];
+        storeRows = new int[storesById.length];
+        columns = new Columns(0);
+        rowCount = 0;
+        storeCount = 0;
+        for (Store store : stores) {
+            add(store);
+        }
+    }
+
+    // Adds a new store, then retires the one it replaces (if any)
+    synchronized void replace(Store previous, Store store) {
+        if (previous == store) return;
+        add(store);
+        if (previous != null) remove(previous);
+    }
+
+    synchronized void remove(Store store) {
+        Integer id = storeIds.remove(store);
+        int[] rows = rowsByStore.remove(store);
+        if (id == null) return;
+        retire(storeRows[id]);
+        for (int row : rows) {
+            if (row != NONE) retire(row);
+        }
+        storesById[id] = null;
+        freeStoreIds.push(id);
+    }
+
+    private void retire(int row) {
+        Columns c = columns;
+        c.category[row >>> CHUNK_BITS][row & (CHUNK - 1)] = NONE;
+        c.type[row >>> CHUNK_BITS][row & (CHUNK - 1)] = NONE;
+        c.name[row >>> CHUNK_BITS][row & (CHUNK - 1)] = NONE;
+        freeRows.push(row);
+    }
+
+    // Call after the product is added to the store
+    synchronized void addProduct(Store store, Product product) {
+        int row = rowOf(store, product.getProductName());
+        Product listed = store.getProduct(product.getProductName()); // the first of that name
+        Columns c = columns;
+        c.price[row >>> CHUNK_BITS][row & (CHUNK - 1)] = listed.getPrice();
+        c.stock[row >>> CHUNK_BITS][row & (CHUNK - 1)] = listed.getAvailableAmount();
+        c.type[row >>> CHUNK_BITS][row & (CHUNK - 1)] = dictionaryId(types, listed.getProductType());
+    }
+
+    // Call after the product is removed from the store; its sales still count by name
+    synchronized void removeProduct(Store store, String productName) {
+        int row = existingRow(store, productName);
+        if (row == NONE) return;
+        Columns c = columns;
+        c.type[row >>> CHUNK_BITS][row & (CHUNK - 1)] = NONE;
+        c.stock[row >>> CHUNK_BITS][row & (CHUNK - 1)] = 0;
+    }
+
+    // A completed purchase; called under the store's purchase lock
+    void purchase(Store store, String productName, int quantity) {
+        int row = existingRow(store, productName);
+        if (row == NONE) return;
+        Columns c = columns;
+        LONGS.getAndAdd(c.sales[row >>> CHUNK_BITS], row & (CHUNK - 1), (long) quantity);
+        INTS.getAndAdd(c.stock[row >>> CHUNK_BITS], row & (CHUNK - 1), -quantity);
+    }
+
+    // Sales per store of the stores in the category, including stores that sold nothing
+    void salesByCategory(String foodCategory, BitSet partitions, Map<String, Integer> result) {
+        Integer category = categories.get(StoreIndex.categoryKey(foodCategory));
+        if (category != null) scan(Key.CATEGORY, category, partitions, result);
+    }
+
+    // Sales per store of its listed products of the type, for stores that sold any
+    void salesByProductType(String productType, BitSet partitions, Map<String, Integer> result) {
+        Integer type = types.get(productType);
+        if (type != null) scan(Key.TYPE, type, partitions, result);
+    }
+
+    // Sales per store of the product, for stores that sold any
+    void salesByProductName(String productName, BitSet partitions, Map<String, Integer> result) {
+        Integer name = names.get(productName);
+        if (name != null) scan(Key.NAME, name, partitions, result);
+    }
+
+    private enum Key { CATEGORY, TYPE, NAME }
+
+    private void scan(Key key, int id, BitSet partitions, Map<String, Integer> result) {
+        int rows = rowCount;
+        Columns c = columns;
+        Store[] stores = storesById;
+        // Per store: matching rows above MATCHED_SHIFT, their sales below, so the inner loop
+        // does one add per row
+        long[] perStore = new long[stores.length];
+        for (int chunk = 0; chunk << CHUNK_BITS < rows; chunk++) {
+            int[] keys = key == Key.CATEGORY ? c.category[chunk] : key == Key.TYPE ? c.type[chunk] : c.name[chunk];
+            int[] storeColumn = c.store[chunk];
+            long[] salesColumn = c.sales[chunk];
+            int end = Math.min(CHUNK, rows - (chunk << CHUNK_BITS));
+            for (int i = 0; i < end; i++) {
+                // A row reused for a store added after storesById was read is skipped
+                if (keys[i] == id && storeColumn[i] < perStore.length) {
+                    perStore[storeColumn[i]] += MATCHED + salesColumn[i];
+                }
+            }
+        }
+        for (int store = 0; store < perStore.length; store++) {
+            long sales = perStore[store] & (MATCHED - 1);
+            // Every store of a category is listed; otherwise only stores that sold some
+            if (perStore[store] == 0 || (key != Key.CATEGORY && sales == 0)) continue;
+            Store s = stores[store];
+            if (s == null || (partitions != null && !partitions.get(s.getPartition()))) continue;
+            result.put(s.getStoreName(), (int) sales);
+        }
+    }
+
+    // Called with the catalog's monitor held, and with the store's exclusive lock or no
+    // purchases on it yet
+    private void add(Store store) {
+        Integer free = freeStoreIds.poll();
+        int id = free != null ? free : storeCount++;
+        if (id == storesById.length) {
+            storesById = Arrays.copyOf(storesById, id * 2);
+            storeRows = Arrays.copyOf(storeRows, id * 2);
+        }
+        storesById[id] = store;
+        storeIds.put(store, id);
+        rowsByStore.put(store, new int[0]);
+        storeRows[id] = newRow(id, categoryId(store), NONE);
+        store.forEachSale((productName, quantity) -> {
+            int row = rowOf(store, productName);
+            columns.sales[row >>> CHUNK_BITS][row & (CHUNK - 1)] = quantity;
+        });
+        for (Product product : store.getProducts()) {
+            addProduct(store, product);
+        }
+    }
+
+    private int existingRow(Store store, String productName) {
+        int[] rows = rowsByStore.get(store);
+        int productId = store.productId(productName);
+        return rows == null || productId < 0 || productId >= rows.length ? NONE : rows[productId];
+    }
+
+    // The row of one of the store's products, added if it has none; with the monitor held
+    private int rowOf(Store store, String productName) {
+        int productId = store.productId(productName);
+        int[] rows = rowsByStore.get(store);
+        if (productId < rows.length && rows[productId] != NONE) return rows[productId];
+        if (productId >= rows.length) {
+            int oldLength = rows.length;
+            rows = Arrays.copyOf(rows, Math.max(productId + 1, oldLength * 2));
+            Arrays.fill(rows, oldLength, rows.length, NONE);
+            rowsByStore.put(store, rows);
+        }
+        int row = newRow(storeIds.get(store), categoryId(store), dictionaryId(names, productName));
+        rows[productId] = row;
+        return row;
+    }
+
+    // A retired row if there is one, else the next; its keys are written last so scans skip
+    // it until the rest is in place
+    private int newRow(int storeId, int category, int name) {
+        Integer free = freeRows.poll();
+        int row = free != null ? free : rowCount;
+        if (free == null && (row & (CHUNK - 1)) == 0) columns = grow(columns);
+        Columns c = columns;
+        int chunk = row >>> CHUNK_BITS;
+        int slot = row & (CHUNK - 1);
+        c.store[chunk][slot] = storeId;
+        c.sales[chunk][slot] = 0;
+        c.price[chunk][slot] = 0;
+        c.stock[chunk][slot] = 0;
+        c.type[chunk][slot] = NONE;
+        c.name[chunk][slot] = name;
+        c.category[chunk][slot] = category;
+        if (free == null) rowCount = row + 1;
+        return row;
+    }
+
+    private int categoryId(Store store) {
+        return dictionaryId(categories, StoreIndex.categoryKey(store.getFoodCategory()));
+    }
+
+    private static Columns grow(Columns c) {
+        int chunks = c.store.length;
+        Columns grown = new Columns(chunks + 1);
+        System.arraycopy(c.store, 0, grown.store, 0, chunks);
+        System.arraycopy(c.category, 0, grown.category, 0, chunks);
+        System.arraycopy(c.type, 0, grown.type, 0, chunks);
+        System.arraycopy(c.name, 0, grown.name, 0, chunks);
+        System.arraycopy(c.price, 0, grown.price, 0, chunks);
+        System.arraycopy(c.stock, 0, grown.stock, 0, chunks);
+        System.arraycopy(c.sales, 0, grown.sales, 0, chunks);
+        grown.store[chunks] = new int[CHUNK];
+        grown.category[chunks] = new int[CHUNK];
+        grown.type[chunks] = new int[CHUNK];
+        grown.name[chunks] = new int[CHUNK];
+        grown.price[chunks] = new double[CHUNK];
+        grown.stock[chunks] = new int[CHUNK];
+        grown.sales[chunks] = new long[CHUNK];
+        return grown;
+    }
+
+    private static int dictionaryId(Map<String, Integer> dictionary, String value) {
+        Integer id = dictionary.get(value);
+        return id != null ? id : dictionary.computeIfAbsent(value, k -> dictionary.size());
+    }
+}
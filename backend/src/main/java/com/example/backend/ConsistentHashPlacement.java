@@ -0,0 +1,55 @@
+package com.example.backend;
+
+import java.util.*;
+
+// Consistent-hash ring with weighted virtual nodes. Each node owns VNODES_PER_WEIGHT * weight
+// points on the ring; a partition's replicas are the first distinct nodes found walking
+// clockwise from the partition's own point. Adding or removing a node only moves the
+// partitions next to its points.
+class ConsistentHashPlacement<N> implements Placement<N> {
+    static final int VNODES_PER_WEIGHT = 160;
+
+    private final TreeMap<Long, N> ring = new TreeMap<>();
+    private final Map<N, List<Long>> pointsByNode = new HashMap<>();
+
+    @Override
+    public void addNode(N node, String nodeId, int weight) {
+        removeNode(node);
+        List<Long> points = new ArrayList<>();
+        for (int i = 0; i < VNODES_PER_WEIGHT * Math.max(1, weight); i++) {
+            long point = Placement.hash(nodeId + "#" + i);
+            // On the (unlikely) collision the earlier owner keeps the point
+            if (ring.putIfAbsent(point, node) == null) {
+                points.add(point);
+            }
+        }
+        pointsByNode.put(node, points);
+    }
+
+    @Override
+    public void removeNode(N node) {
+        List<Long> points = pointsByNode.remove(node);
+        if (points != null) {
+            for (Long point : points) {
+                ring.remove(point);
+            }
+        }
+    }
+
+    @Override
+    public List<N> replicasFor(int partition, int replicas) {
+        int wanted = Math.min(replicas, pointsByNode.size());
+        List<N> result = new ArrayList<>(wanted);
+        if (wanted == 0) return result;
+        long start = Placement.hash("partition-" + partition);
+        for (N node : ring.tailMap(start, true).values()) {
+            if (!result.contains(node)) result.add(node);
+            if (result.size() == wanted) return result;
+        }
+        for (N node : ring.headMap(start, false).values()) {
+            if (!result.contains(node)) result.add(node);
+            if (result.size() == wanted) return result;
+        }
+        return result;
+    }
+}
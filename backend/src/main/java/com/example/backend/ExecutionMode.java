@@ -0,0 +1,52 @@
+package com.example.backend;
+
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// How Master and Worker run their connections, selected with -Dbackend.executionMode.
+//   NIO      - Master serves clients from selector threads plus a bounded handler pool
+//   PLATFORM - one platform thread per connection
+//   VIRTUAL  - one virtual thread per connection and per worker reply reader
+// Workers have no NIO front end and treat NIO as PLATFORM.
+enum ExecutionMode {
+    NIO,
+    PLATFORM,
+    VIRTUAL;
+
+    static final String PROPERTY = "backend.executionMode";
+
+    static ExecutionMode current() {
+        String value = System.getProperty(PROPERTY, NIO.name());
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown execution mode " + value + ", using " + NIO);
+            return NIO;
+        }
+    }
+
+    Thread newThread(String name, Runnable task) {
+        Thread thread;
+        if (this == VIRTUAL) {
+            thread = Thread.ofVirtual().name(name).unstarted(task);
+        } else {
+            thread = new Thread(task, name);
+            thread.setDaemon(true);
+        }
+        return thread;
+    }
+
+    Thread startThread(String name, Runnable task) {
+        Thread thread = newThread(name, task);
+        thread.start();
+        return thread;
+    }
+
+    ExecutorService newTaskPool(int platformThreads) {
+        if (this == VIRTUAL) {
+            return Executors.newVirtualThreadPerTaskExecutor();
+        }
+        return Executors.newFixedThreadPool(platformThreads, task -> newThread("request-pool", task));
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.backend;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+// A Worker's stores by location, for NEARBY: a grid of cells of -Dworker.geoCellDegrees
+// (0.01 by default, about 1.1 km north to south) keyed by the cell's row and column, each
+// holding the stores inside it. Only non-empty cells exist. A query visits the cells in
+// square rings around the one it starts from, and stops once nothing outside the rings
+// seen so far can be nearer than the k-th store found (or further than the radius asked
+// for). Once the rings cover more cells than there are stores' cells, it walks those instead.
+//
+// Updated like StoreIndex: under the store's lock stripe, new entries before old ones.
+class GeoIndex {
+    static final double EARTH_RADIUS_KM = 6371.0088;
+    private static final double CELL_DEGREES = Double.parseDouble(System.getProperty("worker.geoCellDegrees", "0.01"));
+    private static final int ROWS = (int) Math.ceil(180 / CELL_DEGREES);
+    private static final int COLUMNS = (int) Math.ceil(360 / CELL_DEGREES);
+
+    private final Map<Long, Set<Store>> cells = new ConcurrentHashMap<>();
+
+    // A store and its distance from the point asked about
+    static class Hit {
+        final Store store;
+        final double distanceKm;
+
+        Hit(Store store, double distanceKm) {
+            this.store = store;
+            this.distanceKm = distanceKm;
+        }
+    }
+
+    static final Comparator<Hit> NEAREST = Comparator.comparingDouble((Hit h) -> h.distanceKm)
+            .thenComparing(h -> h.store.getStoreName());
+
+    void rebuild(Collection<Store> stores) {
+        cells.clear();
+        for (Store store : stores) {
+            add(store);
+        }
+    }
+
+    void replace(Store previous, Store store) {
+        add(store);
+        if (previous != null && previous != store) remove(previous);
+    }
+
+    // A cell is created and dropped inside compute, so a store added by another stripe is not
+    // put in a cell that is being dropped
+    void add(Store store) {
+        cells.compute(cellOf(store), (key, cell) -> {
+            if (cell == null) cell = ConcurrentHashMap.newKeySet();
+            cell.add(store);
+            return cell;
+        });
+    }
+
+    void remove(Store store) {
+        cells.computeIfPresent(cellOf(store), (key, cell) -> {
+            cell.remove(store);
+            return cell.isEmpty() ? null : cell;
+        });
+    }
+
+    int cellCount() {
+        return cells.size();
+    }
+
+    // The k stores nearest to the point that are within radiusKm and pass the filter, nearest first
+    List<Hit> nearest(double latitude, double longitude, int k, double radiusKm, Predicate<Store> filter) {
+        // Bounded: the furthest of the nearest so far is on top
+        PriorityQueue<Hit> best = new PriorityQueue<>(k + 1, NEAREST.reversed());
+        longitude = ((longitude + 180) % 360 + 360) % 360 - 180; // 180 east is 180 west
+        int row = row(latitude);
+        int column = column(longitude);
+        for (int ring = 0; ; ring++) {
+            long side = 2 * ring + 1;
+            if (side >= COLUMNS || side * side > cells.size()) {
+                best.clear();
+                for (Set<Store> cell : cells.values()) {
+                    visit(cell, latitude, longitude, k, radiusKm, filter, best);
+                }
+                break;
+            }
+            for (int dr = -ring; dr <= ring; dr++) {
+                int r = row + dr;
+                if (r < 0 || r >= ROWS) continue;
+                boolean edge = dr == -ring || dr == ring;
+                for (int dc = -ring; dc <= ring; dc += edge ? 1 : 2 * ring) {
+                    Set<Store> cell = cells.get(key(r, Math.floorMod(column + dc, COLUMNS)));
+                    if (cell != null) visit(cell, latitude, longitude, k, radiusKm, filter, best);
+                }
+            }
+            double unseen = outsideRingsKm(latitude, longitude, row, column, ring);
+            if (unseen > radiusKm) break;
+            if (best.size() == k && best.peek().distanceKm <= unseen) break;
+        }
+        List<Hit> hits = new ArrayList<>(best);
+        hits.sort(NEAREST);
+        return hits;
+    }
+
+    private static void visit(Set<Store> cell, double latitude, double longitude, int k, double radiusKm,
+                              Predicate<Store> filter, PriorityQueue<Hit> best) {
+        for (Store store : cell) {
+            double distance = distanceKm(latitude, longitude, store.getLatitude(), store.getLongitude());
+            if (distance > radiusKm) continue;
+            if (best.size() == k && distance > best.peek().distanceKm) continue;
+            if (!filter.test(store)) continue;
+            best.add(new Hit(store, distance));
+            if (best.size() > k) best.poll();
+        }
+    }
+
+    // How near a store outside the rings up to this one can be: it is past one of the rings'
+    // rows, so at least that much latitude away, or past one of their columns, so at least as
+    // far as the meridian bounding them
+    private static double outsideRingsKm(double latitude, double longitude, int row, int column, int ring) {
+        double south = (row - ring) * CELL_DEGREES - 90;
+        double north = (row + ring + 1) * CELL_DEGREES - 90;
+        double latitudeGap = Math.min(row - ring <= 0 ? Double.MAX_VALUE : latitude - south,
+                row + ring + 1 >= ROWS ? Double.MAX_VALUE : north - latitude);
+        double west = (column - ring) * CELL_DEGREES - 180;
+        double east = (column + ring + 1) * CELL_DEGREES - 180;
+        double longitudeGap = Math.toRadians(Math.min(longitude - west, east - longitude));
+        double meridianKm = longitudeGap >= Math.PI / 2 ? Double.MAX_VALUE
+                : EARTH_RADIUS_KM * Math.asin(Math.cos(Math.toRadians(latitude)) * Math.sin(longitudeGap));
+        return Math.min(EARTH_RADIUS_KM * Math.toRadians(latitudeGap), meridianKm);
+    }
+
+    // Great-circle distance (haversine)
+    static double distanceKm(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double dLatitude = Math.toRadians(latitude2 - latitude1);
+        double dLongitude = Math.toRadians(longitude2 - longitude1);
+        double a = Math.sin(dLatitude / 2) * Math.sin(dLatitude / 2)
+                + Math.cos(Math.toRadians(latitude1)) * Math.cos(Math.toRadians(latitude2))
+                * Math.sin(dLongitude / 2) * Math.sin(dLongitude / 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    private static long cellOf(Store store) {
+        return key(row(store.getLatitude()), column(store.getLongitude()));
+    }
+
+    private static int row(double latitude) {
+        return Math.max(0, Math.min(ROWS - 1, (int) Math.floor((latitude + 90) / CELL_DEGREES)));
+    }
+
+    private static int column(double longitude) {
+        return Math.floorMod((int) Math.floor((longitude + 180) / CELL_DEGREES), COLUMNS);
+    }
+
+    private static long key(int row, int column) {
+        return ((long) row << 32) | column;
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.backend;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Heartbeat bookkeeping per worker. One missed PING makes a worker SUSPECT, which is
+// still routed to; DEAD_AFTER consecutive misses make it DEAD, after which Master stops
+// routing to it and re-replicates its stores. A DEAD worker that answers again is ALIVE.
+class HealthTracker {
+    enum State { ALIVE, SUSPECT, DEAD }
+
+    static final int DEAD_AFTER = Integer.getInteger("master.deadAfterMissedPings", 3);
+
+    private final Map<WorkerConnection, Integer> missedPings = new ConcurrentHashMap<>();
+
+    State state(WorkerConnection worker) {
+        return stateOf(missedPings.getOrDefault(worker, 0));
+    }
+
+    boolean isDead(WorkerConnection worker) {
+        return state(worker) == State.DEAD;
+    }
+
+    // Returns the state before the PING was answered
+    State recordSuccess(WorkerConnection worker) {
+        State before = state(worker);
+        missedPings.remove(worker);
+        return before;
+    }
+
+    // Returns the state after the PING was missed
+    State recordFailure(WorkerConnection worker) {
+        return stateOf(missedPings.merge(worker, 1, (a, b) -> Math.min(a + b, DEAD_AFTER)));
+    }
+
+    private static State stateOf(int missed) {
+        if (missed >= DEAD_AFTER) return State.DEAD;
+        return missed > 0 ? State.SUSPECT : State.ALIVE;
+    }
+
+    void forget(WorkerConnection worker) {
+        missedPings.remove(worker);
+    }
+}
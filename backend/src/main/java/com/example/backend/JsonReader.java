@@ -0,0 +1,225 @@
+package com.example.backend;
+
+import java.io.*;
+
+// Single-pass pull tokenizer for the JSON the backend exchanges (stores.json, store
+// messages, worker snapshots). The caller walks the structure with beginObject/hasNext/
+// nextName/next*; values it does not care about are skipped without being built.
+// Reading from a Reader keeps only a small window in memory, so a large array can be
+// consumed element by element.
+class JsonReader implements Closeable {
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Reader in;
+    private char[] buffer;
+    private int position;
+    private int limit;
+    private long consumed; // characters before buffer[0], for error offsets
+    private final StringBuilder scratch = new StringBuilder();
+
+    JsonReader(Reader in) {
+        this.in = in;
+        this.buffer = new char[BUFFER_SIZE];
+    }
+
+    JsonReader(String json) {
+        this.in = null;
+        this.buffer = json.toCharArray();
+        this.limit = buffer.length;
+    }
+
+    void beginObject() throws IOException {
+        expect('{');
+    }
+
+    void endObject() throws IOException {
+        expect('}');
+    }
+
+    void beginArray() throws IOException {
+        expect('[');
+    }
+
+    void endArray() throws IOException {
+        expect(']');
+    }
+
+    // True if the current object or array has another member; consumes the separating comma
+    boolean hasNext() throws IOException {
+        int c = peekNonWhitespace();
+        if (c == ',') {
+            position++;
+            c = peekNonWhitespace();
+        }
+        return c != '}' && c != ']' && c != -1;
+    }
+
+    String nextName() throws IOException {
+        if (peekNonWhitespace() != '"') throw syntaxError("Expected a member name");
+        String name = readQuoted();
+        expect(':');
+        return name;
+    }
+
+    // Strings, and numbers or literals as their text; null for a JSON null
+    String nextString() throws IOException {
+        int c = peekNonWhitespace();
+        if (c == '"') return readQuoted();
+        String literal = readLiteral();
+        return literal.equals("null") ? null : literal;
+    }
+
+    double nextDouble() throws IOException {
+        String value = nextString();
+        try {
+            return Double.parseDouble(value == null ? "" : value.trim());
+        } catch (NumberFormatException e) {
+            throw syntaxError("Expected a number but was " + value);
+        }
+    }
+
+    int nextInt() throws IOException {
+        double value = nextDouble();
+        if (value != (int) value) throw syntaxError("Expected an integer but was " + value);
+        return (int) value;
+    }
+
+    void skipValue() throws IOException {
+        int c = peekNonWhitespace();
+        if (c == '"') {
+            skipQuoted();
+        } else if (c == '{' || c == '[') {
+            int depth = 0;
+            do {
+                c = peekNonWhitespace();
+                if (c == '"') {
+                    skipQuoted();
+                    continue;
+                }
+                if (c == -1) throw syntaxError("Unterminated " + (depth > 0 ? "object or array" : "value"));
+                position++;
+                if (c == '{' || c == '[') depth++;
+                else if (c == '}' || c == ']') depth--;
+            } while (depth > 0);
+        } else {
+            readLiteral();
+        }
+    }
+
+    // Characters read so far
+    long offset() {
+        return consumed + position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (in != null) in.close();
+    }
+
+    private void expect(char expected) throws IOException {
+        if (peekNonWhitespace() != expected) throw syntaxError("Expected '" + expected + "'");
+        position++;
+    }
+
+    private int peekNonWhitespace() throws IOException {
+        while (true) {
+            if (position == limit && !fill()) return -1;
+            char c = buffer[position];
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') return c;
+            position++;
+        }
+    }
+
+    private String readQuoted() throws IOException {
+        position++; // opening quote
+        scratch.setLength(0);
+        while (true) {
+            // Copy runs of plain characters in one go
+            int start = position;
+            while (position < limit && buffer[position] != '"' && buffer[position] != '\\') position++;
+            scratch.append(buffer, start, position - start);
+            if (position == limit) {
+                if (!fill()) throw syntaxError("Unterminated string");
+                continue;
+            }
+            char c = buffer[position++];
+            if (c == '"') return scratch.toString();
+            scratch.append(readEscape());
+        }
+    }
+
+    private void skipQuoted() throws IOException {
+        position++;
+        while (true) {
+            if (position == limit && !fill()) throw syntaxError("Unterminated string");
+            char c = buffer[position++];
+            if (c == '"') return;
+            if (c == '\\') readEscape();
+        }
+    }
+
+    private char readEscape() throws IOException {
+        int c = read();
+        switch (c) {
+            case '"':
+            case '\\':
+            case '/':
+                return (char) c;
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u':
+                int code = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(read(), 16);
+                    if (digit < 0) throw syntaxError("Invalid unicode escape");
+                    code = (code << 4) | digit;
+                }
+                return (char) code;
+            default:
+                throw syntaxError("Invalid escape");
+        }
+    }
+
+    // Numbers and true/false/null: everything up to the next delimiter
+    private String readLiteral() throws IOException {
+        scratch.setLength(0);
+        while (true) {
+            if (position == limit && !fill()) break;
+            char c = buffer[position];
+            if (c == ',' || c == '}' || c == ']' || c == ':' || c == ' ' || c == '\n' || c == '\r' || c == '\t') break;
+            if (c == '"' || c == '{' || c == '[') throw syntaxError("Unexpected '" + c + "'");
+            scratch.append(c);
+            position++;
+        }
+        if (scratch.length() == 0) throw syntaxError("Expected a value");
+        return scratch.toString();
+    }
+
+    private int read() throws IOException {
+        if (position == limit && !fill()) return -1;
+        return buffer[position++];
+    }
+
+    private boolean fill() throws IOException {
+        if (in == null) return false;
+        consumed += limit;
+        position = 0;
+        limit = 0;
+        int n = in.read(buffer, 0, buffer.length);
+        if (n <= 0) return false;
+        limit = n;
+        return true;
+    }
+
+    private IOException syntaxError(String message) {
+        return new IOException("Malformed JSON at offset " + (consumed + position) + ": " + message);
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.backend;
+
+// A fixed set of monitors that keys hash onto. Requests for the same store always take the
+// same monitor, so they run one at a time, while requests for different stores rarely share
+// one and run in parallel. Replaces locking the whole stores map. BUYs do not use it (see
+// Store's purchase lock).
+class LockStripes {
+    private final Object[] locks;
+
+    LockStripes(int stripes) {
+        locks = new Object[Integer.highestOneBit(Math.max(1, stripes - 1)) << 1];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    Object forKey(String key) {
+        return forHash(key.hashCode());
+    }
+
+    Object forHash(int h) {
+        return locks[(h ^ (h >>> 16)) & (locks.length - 1)];
+    }
+}
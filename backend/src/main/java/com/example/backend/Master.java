@@ -2,9 +2,9 @@ package com.example.backend;
 
 import java.io.*;
 import java.net.*;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -12,26 +12,46 @@ import java.util.concurrent.TimeUnit;
 public class Master {
     private static final int PORT = 8080;
     private static final int REPLICATION_FACTOR = 2;
-    private List<WorkerConnection> workers;
+    private static final int IO_THREADS = Integer.getInteger("master.ioThreads", 2);
+    private static final int HANDLER_THREADS = Integer.getInteger("master.handlerThreads", 64);
+    private static final int HANDLER_QUEUE = Integer.getInteger("master.handlerQueue", 10000);
+    private static final long HEARTBEAT_INTERVAL_MS = Long.getLong("master.heartbeatMs", 5000);
+    private static final long HEARTBEAT_TIMEOUT_MS = Long.getLong("master.heartbeatTimeoutMs", 2000);
+    private static final int BOOTSTRAP_BATCH = Integer.getInteger("master.bootstrapBatch", 20000);
+    // A batch also stops short of this many bytes so that it fits in one WireProtocol frame
+    private static final int BOOTSTRAP_BATCH_BYTES =
+            Math.min(Integer.getInteger("master.bootstrapBatchBytes", 16 * 1024 * 1024), WireProtocol.MAX_FRAME - 1024);
+    private static final long WORKER_STARTUP_TIMEOUT_MS = Long.getLong("master.workerStartupTimeoutMs", 15000);
+    // Workers recover their stores from data/temp_workers_data; -Dmaster.cleanStart=true wipes it instead
+    private static final boolean CLEAN_START = Boolean.getBoolean("master.cleanStart");
+    private Cluster cluster;
     private List<Process> workerProcesses;
-    private Map<String, List<WorkerConnection>> storeToWorkers;
     private ScheduledExecutorService heartbeatScheduler;
+    private final ExecutionMode executionMode = ExecutionMode.current();
 
     public Master(int workerCount, int startPort) throws IOException {
-        workers = new ArrayList<>();
+        cluster = new Cluster(REPLICATION_FACTOR, Placement.create(System.getProperty("master.placement", "consistent")));
         workerProcesses = new ArrayList<>();
-        storeToWorkers = new HashMap<>();
 
-        deleteDirectory(new File("data/temp_workers_data"));
+        if (CLEAN_START) {
+            deleteDirectory(new File("data/temp_workers_data"));
+        }
 
+        // Start all worker JVMs first so they boot in parallel, then connect to each
+        for (int i = 0; i < workerCount; i++) {
+            spawnWorker(startPort + i);
+        }
         for (int i = 0; i < workerCount; i++) {
             int workerPort = startPort + i;
-            spawnWorker(workerPort);
-            WorkerConnection wc = new WorkerConnection("localhost", workerPort);
-            workers.add(wc);
-            System.out.println("Started and connected to worker at localhost:" + workerPort);
+            WorkerConnection wc = connectToWorker(workerPort);
+            cluster.addWorker(wc, 1);
+            System.out.println("Started and connected to worker at localhost:" + workerPort
+                    + (wc.isBinary() ? " (binary protocol)" : " (text protocol)"));
         }
 
+        long adoptStart = System.currentTimeMillis();
+        String adopted = cluster.adoptRecoveredStores();
+        System.out.println("Warm start: " + adopted + " in " + (System.currentTimeMillis() - adoptStart) + " ms");
         loadInitialStores();
         startHeartbeat();
     }
@@ -58,66 +78,90 @@ public class Master {
             System.out.println("No initial stores found in data/stores.json");
             return;
         }
-        String jsonContent = new String(Files.readAllBytes(Paths.get("data/stores.json"))).trim();
-        if (!jsonContent.startsWith("[") || !jsonContent.endsWith("]")) {
-            System.err.println("Invalid JSON format in stores.json");
-            return;
-        }
-
-        List<String> storeJsons = parseStoreJsons(jsonContent);
-        for (String storeJson : storeJsons) {
-            String storeName = extractField(storeJson, "StoreName");
-            if (storeName.isEmpty()) {
-                System.err.println("Failed to extract StoreName from: " + storeJson);
-                continue;
-            }
 
-            List<WorkerConnection> assignedWorkers = getWorkersForStore(storeName);
-            for (WorkerConnection worker : assignedWorkers) {
-                try {
-                    worker.sendRequest("ADD_STORE " + storeJson);
-                } catch (IOException e) {
-                    System.err.println("Failed to send store to worker: " + e.getMessage());
+        // Streams the file: batches go out to the workers while the rest is still being read
+        long start = System.currentTimeMillis();
+        Map<WorkerConnection, StoreBatch> batches = new LinkedHashMap<>();
+        int storeCount = 0;
+        int recovered = 0;
+        try (JsonReader reader = new JsonReader(new InputStreamReader(new FileInputStream(storesFile), StandardCharsets.UTF_8))) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                Store store = StoreJson.read(reader);
+                if (store == null) {
+                    System.err.println("Skipping store without StoreName in stores.json");
+                    continue;
+                }
+                // Stores the workers recovered keep their products and sales
+                if (cluster.findWorkersForStore(store.getStoreName()) != null) {
+                    recovered++;
+                    continue;
+                }
+                storeCount++;
+                String storeJson = StoreJson.write(store, false);
+                for (WorkerConnection worker : cluster.getWorkersForStore(store.getStoreName())) {
+                    batches.computeIfAbsent(worker, StoreBatch::new).add(storeJson);
                 }
             }
+            reader.endArray();
+        } catch (IOException e) {
+            System.err.println("Invalid JSON format in stores.json: " + e.getMessage());
         }
-    }
 
-    private List<String> parseStoreJsons(String jsonContent) {
-        List<String> stores = new ArrayList<>();
-        jsonContent = jsonContent.substring(1, jsonContent.length() - 1).trim();
-        int braceCount = 0;
-        int start = -1;
-        for (int i = 0; i < jsonContent.length(); i++) {
-            char c = jsonContent.charAt(i);
-            if (c == '{') {
-                if (braceCount == 0) start = i;
-                braceCount++;
-            } else if (c == '}') {
-                braceCount--;
-                if (braceCount == 0 && start != -1) {
-                    String storeJson = jsonContent.substring(start, i + 1).trim();
-                    stores.add(storeJson);
-                    start = -1;
-                }
-            }
+        int copies = 0;
+        for (StoreBatch batch : batches.values()) {
+            copies += batch.finish().join();
         }
-        return stores;
+        System.out.println("Loaded " + storeCount + " stores (" + copies + " copies) onto "
+                + batches.size() + " workers in " + (System.currentTimeMillis() - start) + " ms"
+                + (recovered > 0 ? ", " + recovered + " already on the workers" : ""));
     }
 
-    private String extractField(String json, String field) {
-        String search = "\"" + field + "\":";
-        int start = json.indexOf(search);
-        if (start == -1) return "";
-        start += search.length();
-        if (json.charAt(start) == '"') {
-            start++;
-            int end = json.indexOf("\"", start);
-            return json.substring(start, end);
-        } else {
-            int end = json.indexOf(",", start);
-            if (end == -1) end = json.indexOf("}", start);
-            return json.substring(start, end).trim();
+    // Stores headed for one worker, sent as ADD_STORES batches of at most BOOTSTRAP_BATCH stores
+    // and BOOTSTRAP_BATCH_BYTES bytes, with one batch in flight at a time so the worker's
+    // request pool stays free. Completes with the stores it accepted.
+    private static class StoreBatch {
+        private final WorkerConnection worker;
+        private final List<String> pending = new ArrayList<>();
+        private int pendingBytes;
+        private CompletableFuture<Integer> sent = CompletableFuture.completedFuture(0);
+
+        StoreBatch(WorkerConnection worker) {
+            this.worker = worker;
+        }
+
+        void add(String storeJson) {
+            int bytes = WireProtocol.utf8Length(storeJson) + 1;
+            if (pendingBytes + bytes > BOOTSTRAP_BATCH_BYTES) flush();
+            pending.add(storeJson);
+            pendingBytes += bytes;
+            if (pending.size() >= BOOTSTRAP_BATCH) flush();
+        }
+
+        CompletableFuture<Integer> finish() {
+            flush();
+            return sent;
+        }
+
+        private void flush() {
+            if (pending.isEmpty()) return;
+            String request = "ADD_STORES [" + String.join(",", pending) + "]";
+            pending.clear();
+            pendingBytes = 0;
+            sent = sent.thenCompose(total -> worker.sendRequestAsync(request)
+                    .handle((reply, error) -> total + accepted(reply, error)));
+        }
+
+        private int accepted(String reply, Throwable error) {
+            if (error != null) {
+                System.err.println("Failed to send stores to worker at " + worker.getPort() + ": " + error.getMessage());
+                return 0;
+            }
+            if (!reply.startsWith("Stores added: ")) {
+                System.err.println("Worker at " + worker.getPort() + " rejected store batch: " + reply);
+                return 0;
+            }
+            return Integer.parseInt(reply.substring("Stores added: ".length()).trim());
         }
     }
 
@@ -127,27 +171,61 @@ public class Master {
         String classpath = System.getProperty("java.class.path");
         String className = Worker.class.getName();
 
-        ProcessBuilder pb = new ProcessBuilder(
-                javaBin, "-cp", classpath, className, String.valueOf(port)
-        );
+        List<String> command = new ArrayList<>();
+        command.add(javaBin);
+        command.add("-D" + ExecutionMode.PROPERTY + "=" + executionMode);
+        // Worker settings given to Master (e.g. -Dworker.fsync=always) apply to the workers it starts
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("worker.")) {
+                command.add("-D" + name + "=" + System.getProperty(name));
+            }
+        }
+        command.addAll(Arrays.asList("-cp", classpath, className, String.valueOf(port)));
+        ProcessBuilder pb = new ProcessBuilder(command);
         pb.inheritIO();
         Process process = pb.start();
         workerProcesses.add(process);
+    }
 
-        try {
-            Thread.sleep(500);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+    private WorkerConnection connectToWorker(int port) throws IOException {
+        long deadline = System.currentTimeMillis() + WORKER_STARTUP_TIMEOUT_MS;
+        while (true) {
+            try {
+                return new WorkerConnection("localhost", port);
+            } catch (IOException e) {
+                if (System.currentTimeMillis() > deadline) throw e;
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for worker at " + port);
+                }
+            }
         }
     }
 
     public void start() {
+        MasterRequestHandler handler = new MasterRequestHandler(cluster);
+        if (executionMode != ExecutionMode.NIO) {
+            startThreadPerConnection(handler);
+            return;
+        }
+        try {
+            new NioMasterServer(PORT, handler, IO_THREADS, HANDLER_THREADS, HANDLER_QUEUE).run();
+        } catch (IOException e) {
+            System.err.println("Master server failed: " + e.getMessage());
+        } finally {
+            shutdownWorkers();
+        }
+    }
+
+    private void startThreadPerConnection(MasterRequestHandler handler) {
         try (ServerSocket serverSocket = new ServerSocket(PORT)) {
-            System.out.println("Master Server running on port " + PORT);
+            System.out.println("Master Server running on port " + PORT + " (" + executionMode + " threads)");
             while (true) {
                 Socket socket = serverSocket.accept();
                 System.out.println("New client connected: " + socket.getInetAddress());
-                new MasterThread(socket, workers, storeToWorkers, REPLICATION_FACTOR).start();
+                executionMode.startThread("master-client", new MasterThread(socket, handler));
             }
         } catch (IOException e) {
             System.err.println("Master server failed: " + e.getMessage());
@@ -160,7 +238,7 @@ public class Master {
         for (Process p : workerProcesses) {
             p.destroy();
         }
-        for (WorkerConnection wc : workers) {
+        for (WorkerConnection wc : cluster.getWorkers()) {
             try {
                 wc.close();
             } catch (IOException e) {
@@ -170,28 +248,21 @@ public class Master {
         heartbeatScheduler.shutdown();
     }
 
-    private List<WorkerConnection> getWorkersForStore(String storeName) {
-        int primaryIndex = Math.abs(storeName.hashCode()) % workers.size();
-        List<WorkerConnection> assignedWorkers = new ArrayList<>();
-        for (int i = 0; i < REPLICATION_FACTOR && i < workers.size(); i++) {
-            int index = (primaryIndex + i) % workers.size();
-            assignedWorkers.add(workers.get(index));
-        }
-        storeToWorkers.put(storeName, assignedWorkers);
-        return assignedWorkers;
-    }
-
     private void startHeartbeat() {
-        heartbeatScheduler = Executors.newScheduledThreadPool(1);
+        heartbeatScheduler = Executors.newScheduledThreadPool(2);
         heartbeatScheduler.scheduleAtFixedRate(() -> {
-            for (WorkerConnection w : workers) {
-                try {
-                    w.sendRequest("PING");
-                } catch (IOException e) {
-                    System.err.println("Worker at " + w.getPort() + " is down");
-                }
+            List<CompletableFuture<Void>> pings = new ArrayList<>();
+            for (WorkerConnection w : cluster.getWorkers()) {
+                pings.add(w.sendRequestAsync("PING")
+                        .orTimeout(HEARTBEAT_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                        .handle((reply, error) -> {
+                            cluster.recordHeartbeat(w, error == null ? reply : null);
+                            return null;
+                        }));
             }
-        }, 0, 5, TimeUnit.SECONDS);
+            CompletableFuture.allOf(pings.toArray(new CompletableFuture<?>[0])).join();
+        }, 0, HEARTBEAT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        heartbeatScheduler.scheduleWithFixedDelay(cluster::repairIfNeeded, 1, 1, TimeUnit.SECONDS);
     }
 
     public static void main(String[] args) {
@@ -206,17 +277,13 @@ public class Master {
     }
 }
 
-class MasterThread extends Thread {
+class MasterThread implements Runnable {
     private Socket socket;
-    private List<WorkerConnection> workers;
-    private Map<String, List<WorkerConnection>> storeToWorkers;
-    private final int replicationFactor;
+    private MasterRequestHandler handler;
 
-    public MasterThread(Socket socket, List<WorkerConnection> workers, Map<String, List<WorkerConnection>> storeToWorkers, int replicationFactor) {
+    public MasterThread(Socket socket, MasterRequestHandler handler) {
         this.socket = socket;
-        this.workers = workers;
-        this.storeToWorkers = storeToWorkers;
-        this.replicationFactor = replicationFactor;
+        this.handler = handler;
     }
 
     @Override
@@ -225,309 +292,14 @@ class MasterThread extends Thread {
              PrintWriter out = new PrintWriter(socket.getOutputStream(), true)) {
             String request;
             while ((request = in.readLine()) != null) {
-                System.out.println("Received command: " + request);
-                if (workers.isEmpty()) {
-                    out.println("No workers available to process request: " + request);
-                    continue;
-                }
-                String[] parts = request.split(" ", 2);
-                String command = parts[0];
-                String data = parts.length > 1 ? parts[1] : "";
-
-                Map<String, Integer> salesByStore = new HashMap<>();
-
-                switch (command) {
-                    case "ADD_STORE":
-                        String storeName = extractField(data, "StoreName");
-                        System.out.println("ADD_STORE storeName: [" + storeName + "]");
-                        if (storeName.isEmpty()) {
-                            out.println("Error: Invalid store JSON");
-                            out.println("END");
-                            continue;
-                        }
-                        List<WorkerConnection> assignedWorkers = getWorkersForStore(storeName);
-                        for (WorkerConnection worker : assignedWorkers) {
-                            try {
-                                worker.sendRequest("ADD_STORE " + data);
-                            } catch (IOException e) {
-                                System.err.println("Failed to send store to worker: " + e.getMessage());
-                            }
-                        }
-                        StringBuilder storeResult = new StringBuilder();
-                        storeResult.append("Store added: ").append(storeName).append("\n");
-                        storeResult.append("END");
-                        out.println(storeResult.toString());
-                        break;
-
-                    case "ADD_PRODUCT":
-                        String[] productParts = data.split(",");
-                        if (productParts.length < 5) {
-                            out.println("Invalid ADD_PRODUCT format");
-                            out.println("END");
-                            continue;
-                        }
-                        String storeNameProd = productParts[0].trim();
-
-                        // Check the store name with and without quotes
-                        List<WorkerConnection> prodWorkers = storeToWorkers.get(storeNameProd);
-                        if (prodWorkers == null) {
-                            // Try with quotes
-                            prodWorkers = storeToWorkers.get("\"" + storeNameProd + "\"");
-                        }
-
-                        if (prodWorkers == null) {
-                            out.println("Store not found: " + storeNameProd);
-                            out.println("END");
-                            continue;
-                        }
-                        for (WorkerConnection worker : prodWorkers) {
-                            try {
-                                worker.sendRequest(request);
-                            } catch (IOException e) {
-                                System.err.println("Failed to add product to worker: " + e.getMessage());
-                            }
-                        }
-                        StringBuilder prodResult = new StringBuilder();
-                        prodResult.append("Product added to store: ").append(storeNameProd).append("\n");
-                        prodResult.append("END");
-                        out.println(prodResult.toString());
-                        break;
-
-                    case "REMOVE_PRODUCT":
-                        String[] removeParts = data.split(",");
-                        if (removeParts.length < 2) {
-                            out.println("Invalid REMOVE_PRODUCT format");
-                            out.println("END");
-                            continue;
-                        }
-                        String removeStoreName = removeParts[0].trim();
-
-                        // Check the store name with and without quotes
-                        List<WorkerConnection> removeWorkers = storeToWorkers.get(removeStoreName);
-                        if (removeWorkers == null) {
-                            // Try with quotes
-                            removeWorkers = storeToWorkers.get("\"" + removeStoreName + "\"");
-                        }
-
-                        if (removeWorkers == null) {
-                            out.println("Store not found: " + removeStoreName);
-                            out.println("END");
-                            continue;
-                        }
-                        // Rest of the code remains the same...
-                        for (WorkerConnection worker : removeWorkers) {
-                            try {
-                                worker.sendRequest(request);
-                            } catch (IOException e) {
-                                System.err.println("Failed to remove product from worker: " + e.getMessage());
-                            }
-                        }
-                        StringBuilder removeResult = new StringBuilder();
-                        removeResult.append("Product removed from store: ").append(removeStoreName).append("\n");
-                        removeResult.append("END");
-                        out.println(removeResult.toString());
-                        break;
-                    case "GET_SALES_BY_STORE_TYPE_CATEGORY":
-                            String foodCategory = parts.length > 1 ? parts[1].trim() : "";
-                            System.out.println("Processing GET_SALES_BY_STORE_TYPE_CATEGORY request for category: " + foodCategory);
-
-                            // Use MapReduce to get and aggregate sales data by store type category
-
-                            Set<String> processedStores = new HashSet<>();
-                            int total = 0;
-
-
-                            for (WorkerConnection worker : workers) {
-                                try {
-                                    String response = worker.sendRequest("GET_SALES_BY_STORE_TYPE_CATEGORY " + foodCategory);
-
-
-                                    if (!response.isEmpty()) {
-                                        String[] storesSales = response.split("\\|");
-                                        for (String storeSale : storesSales) {
-                                            if (!storeSale.isEmpty()) {
-                                                String[] storeParts = storeSale.split(":");
-                                                if (storeParts.length == 2) {
-                                                    String store = storeParts[0];
-                                                    int amount = Integer.parseInt(storeParts[1]);
-
-                                                    // Only process this store if we haven't seen it before
-                                                    if (!processedStores.contains(store)) {
-                                                        salesByStore.put(store, amount);
-                                                        total += amount;
-                                                        processedStores.add(store);
-                                                    }
-                                                }
-                                            }
-                                        }
-                                    }
-                                } catch (IOException e) {
-                                    System.err.println("Error communicating with worker for sales by store type: " + e.getMessage());
-                                }
-                            }
-
-
-                            StringBuilder result = new StringBuilder();
-                            for (Map.Entry<String, Integer> entry : salesByStore.entrySet()) {
-                                if (result.length() > 0) {
-                                    result.append("\n");
-                                }
-                                result.append("\"").append(entry.getKey()).append("\": ").append(entry.getValue());
-                            }
-                            if (!salesByStore.isEmpty()) {
-                                result.append("\n");
-                            }
-                            result.append("\"total\": ").append(total);
-
-                            System.out.println("Sending sales by store type category results: " + result);
-                            out.println(result.toString());
-                            out.println("END");
-                            break;
-                    case "GET_SALES_BY_PRODUCT_CATEGORY":
-                                String productCategory = parts.length > 1 ? parts[1].trim() : "";
-                                System.out.println("Processing GET_SALES_BY_PRODUCT_CATEGORY request for category: " + productCategory);
-
-                                // Use MapReduce to get and aggregate sales data by product category
-                                Map<String, Integer> salesByStoreProdCat = new HashMap<>();
-                                Set<String> processedStoresProdCat = new HashSet<>();
-                                int totalProdCat = 0;
-
-                                for (WorkerConnection worker : workers) {
-                                    try {
-                                        String response = worker.sendRequest("GET_SALES_BY_PRODUCT_CATEGORY " + productCategory);
-
-                                        if (!response.isEmpty()) {
-                                            String[] storesSales = response.split("\\|");
-                                            for (String storeSale : storesSales) {
-                                                if (!storeSale.isEmpty()) {
-                                                    String[] storeParts = storeSale.split(":");
-                                                    if (storeParts.length == 2) {
-                                                        String store = storeParts[0];
-                                                        int amount = Integer.parseInt(storeParts[1]);
-
-                                                        // Only process this store if we haven't seen it before
-                                                        if (!processedStoresProdCat.contains(store)) {
-                                                            salesByStoreProdCat.put(store, amount);
-                                                            totalProdCat += amount;
-                                                            processedStoresProdCat.add(store);
-                                                        }
-                                                    }
-                                                }
-                                            }
-                                        }
-                                    } catch (IOException e) {
-                                        System.err.println("Error communicating with worker for sales by product category: " + e.getMessage());
-                                    }
-                                }
-
-                                StringBuilder resultProdCat = new StringBuilder();
-                                for (Map.Entry<String, Integer> entry : salesByStoreProdCat.entrySet()) {
-                                    if (resultProdCat.length() > 0) {
-                                        resultProdCat.append("\n");
-                                    }
-                                    resultProdCat.append("\"").append(entry.getKey()).append("\": ").append(entry.getValue());
-                                }
-                                if (!salesByStoreProdCat.isEmpty()) {
-                                    resultProdCat.append("\n");
-                                }
-                                resultProdCat.append("\"total\": ").append(totalProdCat);
-
-                                System.out.println("Sending sales by product category results: " + resultProdCat);
-                                out.println(resultProdCat.toString());
-                                out.println("END");
-                                break;
-
-                        case "GET_SALES_BY_PRODUCT":
-                                String productName = parts.length > 1 ? parts[1].trim() : "";
-                                System.out.println("Processing GET_SALES_BY_PRODUCT request for product: " + productName);
-
-                                // Use MapReduce to get and aggregate sales data by product
-                                Map<String, Integer> salesByStoreProd = new HashMap<>();
-                                Set<String> processedStoresProd = new HashSet<>();
-                                int totalProd = 0;
-
-                                for (WorkerConnection worker : workers) {
-                                    try {
-                                        String response = worker.sendRequest("GET_SALES_BY_PRODUCT " + productName);
-
-                                        if (!response.isEmpty()) {
-                                            String[] storesSales = response.split("\\|");
-                                            for (String storeSale : storesSales) {
-                                                if (!storeSale.isEmpty()) {
-                                                    String[] storeParts = storeSale.split(":");
-                                                    if (storeParts.length == 2) {
-                                                        String store = storeParts[0];
-                                                        int amount = Integer.parseInt(storeParts[1]);
-
-                                                        // Only process this store if we haven't seen it before
-                                                        if (!processedStoresProd.contains(store)) {
-                                                            salesByStoreProd.put(store, amount);
-                                                            totalProd += amount;
-                                                            processedStoresProd.add(store);
-                                                        }
-                                                    }
-                                                }
-                                            }
-                                        }
-                                    } catch (IOException e) {
-                                        System.err.println("Error communicating with worker for sales by product: " + e.getMessage());
-                                    }
-                                }
-
-                                StringBuilder resultProd = new StringBuilder();
-                                for (Map.Entry<String, Integer> entry : salesByStoreProd.entrySet()) {
-                                    if (resultProd.length() > 0) {
-                                        resultProd.append("\n");
-                                    }
-                                    resultProd.append("\"").append(entry.getKey()).append("\": ").append(entry.getValue());
-                                }
-                                if (!salesByStoreProd.isEmpty()) {
-                                    resultProd.append("\n");
-                                }
-                                resultProd.append("\"total\": ").append(totalProd);
-
-                                System.out.println("Sending sales by product results: " + resultProd);
-                                out.println(resultProd.toString());
-                                out.println("END");
-                                break;
-                    case "BUY":
-                        String[] buyParts = data.split(",");
-                        if (buyParts.length < 3) {
-                            out.println("Invalid BUY format");
-                            out.println("END");
-                            continue;
-                        }
-                        String buyStoreName = buyParts[0].trim();
-                        String buyProductName = buyParts[1].trim();
-                        int buyQuantity = Integer.parseInt(buyParts[2].trim());
-
-                        // Find the appropriate workers
-                        List<WorkerConnection> buyWorkers = storeToWorkers.get(buyStoreName);
-                        if (buyWorkers == null) {
-                            buyWorkers = storeToWorkers.get("\"" + buyStoreName + "\"");
-                        }
-
-                        if (buyWorkers == null) {
-                            out.println("Store not found: " + buyStoreName);
-                            out.println("END");
-                            continue;
-                        }
-
-                        // Forward purchase request to all relevant workers
-                        for (WorkerConnection worker : buyWorkers) {
-                            try {
-                                worker.sendRequest("BUY " + data);
-                            } catch (IOException e) {
-                                System.err.println("Failed to send purchase to worker: " + e.getMessage());
-                            }
-                        }
-
-                        out.println("Purchase completed: " + buyQuantity + " of " + buyProductName + " from " + buyStoreName);
-                        out.println("END");
-                        break;
-                    default:
-                        out.println("Unknown command: " + command);
+                String response;
+                try {
+                    response = handler.handle(request);
+                } catch (RuntimeException e) {
+                    response = MasterRequestHandler.errorReply(request, e);
                 }
+                out.print(response);
+                out.flush();
             }
         } catch (IOException e) {
             System.err.println("Error handling client: " + e.getMessage());
@@ -539,32 +311,4 @@ class MasterThread extends Thread {
             }
         }
     }
-
-    private String extractField(String json, String field) {
-        String search = "\"" + field + "\":";
-        int start = json.indexOf(search);
-        if (start == -1) return "";
-        start += search.length();
-        if (json.charAt(start) == '"') {
-            start++;
-            int end = json.indexOf("\"", start);
-            return json.substring(start, end);
-        } else {
-            int end = json.indexOf(",", start);
-            if (end == -1) end = json.indexOf("}", start);
-            return json.substring(start, end).trim();
-        }
-    }
-
-    private List<WorkerConnection> getWorkersForStore(String storeName) {
-        return storeToWorkers.computeIfAbsent(storeName, k -> {
-            int primaryIndex = Math.abs(storeName.hashCode()) % workers.size();
-            List<WorkerConnection> assigned = new ArrayList<>();
-            for (int i = 0; i < replicationFactor && i < workers.size(); i++) {
-                int index = (primaryIndex + i) % workers.size();
-                assigned.add(workers.get(index));
-            }
-            return assigned;
-        });
-    }
-}
\ No newline at end of file
+}
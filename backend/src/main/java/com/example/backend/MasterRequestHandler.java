@@ -0,0 +1,585 @@
+package com.example.backend;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+
+// Executes one client command against the worker cluster and returns the full reply text,
+// including the END terminator where the command has one. Shared by every front end.
+class MasterRequestHandler {
+    // Printing every command serializes the handler threads on stdout; only for debugging
+    private static final boolean LOG_REQUESTS = Boolean.getBoolean("master.logRequests");
+
+    private final Cluster cluster;
+
+    MasterRequestHandler(Cluster cluster) {
+        this.cluster = cluster;
+    }
+
+    String handle(String request) {
+        String[] parts = request.split(" ", 2);
+        String storeName = mutatedStore(parts[0], parts.length > 1 ? parts[1] : "");
+        if (storeName == null) {
+            return execute(request);
+        }
+        // Keeps a migration of the store's partition from starting until every replica has the change
+        Lock lock = cluster.storeLock(storeName);
+        lock.lock();
+        try {
+            return execute(request);
+        } finally {
+            cluster.recordWrite(storeName);
+            lock.unlock();
+        }
+    }
+
+    // The reply to a request whose handling failed, so the client still gets its END
+    static String errorReply(String request, RuntimeException e) {
+        System.err.println("Error handling request " + request + ": " + e);
+        return "Error: " + (e.getMessage() != null ? e.getMessage() : e.toString()) + "\nEND\n";
+    }
+
+    private String mutatedStore(String command, String data) {
+        switch (command) {
+            case "ADD_STORE":
+                String storeName = StoreJson.readStoreName(data);
+                return storeName.isEmpty() ? null : storeName;
+            case "ADD_PRODUCT":
+            case "REMOVE_PRODUCT":
+            case "BUY":
+                try {
+                    String name = WireProtocol.splitFields(data).get(0);
+                    return name.isEmpty() ? null : name;
+                } catch (IllegalArgumentException e) {
+                    return null; // execute reports it
+                }
+            default:
+                return null;
+        }
+    }
+
+    private String execute(String request) {
+        StringWriter response = new StringWriter();
+        PrintWriter out = new PrintWriter(response);
+        if (LOG_REQUESTS) System.out.println("Received command: " + request);
+        String[] parts = request.split(" ", 2);
+        String command = parts[0];
+        String data = parts.length > 1 ? parts[1] : "";
+        List<WorkerConnection> workers = cluster.getWorkers();
+        // A drained-out cluster can still take workers
+        if (workers.isEmpty() && !command.equals("ADD_WORKER")) {
+            return "No workers available to process request: " + request + "\nEND\n";
+        }
+        // Store and product names may be JSON strings holding commas (see WireProtocol.splitFields)
+        List<String> fields = List.of();
+        if (WireProtocol.FIELDED.contains(command)) {
+            try {
+                fields = WireProtocol.splitFields(data);
+            } catch (IllegalArgumentException e) {
+                return "Invalid " + command + " format: " + e.getMessage() + "\nEND\n";
+            }
+        }
+
+        switch (command) {
+            case "ADD_STORE":
+                String storeName = StoreJson.readStoreName(data);
+                if (LOG_REQUESTS) System.out.println("ADD_STORE storeName: [" + storeName + "]");
+                if (storeName.isEmpty()) {
+                    out.println("Error: Invalid store JSON");
+                    out.println("END");
+                    break;
+                }
+                List<WorkerConnection> assignedWorkers = cluster.getWorkersForStore(storeName);
+                if (assignedWorkers.isEmpty()) {
+                    out.println("No live replica for store: " + storeName);
+                    out.println("END");
+                    break;
+                }
+                for (WorkerConnection worker : assignedWorkers) {
+                    try {
+                        worker.sendRequest("ADD_STORE " + data);
+                    } catch (IOException e) {
+                        System.err.println("Failed to send store to worker: " + e.getMessage());
+                    }
+                }
+                StringBuilder storeResult = new StringBuilder();
+                storeResult.append("Store added: ").append(storeName).append("\n");
+                storeResult.append("END");
+                out.println(storeResult.toString());
+                break;
+
+            case "ADD_PRODUCT":
+                if (fields.size() < 5) {
+                    out.println("Invalid ADD_PRODUCT format");
+                    out.println("END");
+                    break;
+                }
+                String storeNameProd = fields.get(0);
+
+                // Stores may have been added with or without surrounding quotes
+                List<WorkerConnection> prodWorkers = cluster.findWorkersForStore(storeNameProd);
+
+                if (prodWorkers == null) {
+                    out.println("Store not found: " + storeNameProd);
+                    out.println("END");
+                    break;
+                }
+                if (prodWorkers.isEmpty()) {
+                    out.println("No live replica for store: " + storeNameProd);
+                    out.println("END");
+                    break;
+                }
+                for (WorkerConnection worker : prodWorkers) {
+                    try {
+                        worker.sendRequest(command, fields);
+                    } catch (IOException e) {
+                        System.err.println("Failed to add product to worker: " + e.getMessage());
+                    }
+                }
+                StringBuilder prodResult = new StringBuilder();
+                prodResult.append("Product added to store: ").append(storeNameProd).append("\n");
+                prodResult.append("END");
+                out.println(prodResult.toString());
+                break;
+
+            case "REMOVE_PRODUCT":
+                if (fields.size() < 2) {
+                    out.println("Invalid REMOVE_PRODUCT format");
+                    out.println("END");
+                    break;
+                }
+                String removeStoreName = fields.get(0);
+
+                // Stores may have been added with or without surrounding quotes
+                List<WorkerConnection> removeWorkers = cluster.findWorkersForStore(removeStoreName);
+
+                if (removeWorkers == null) {
+                    out.println("Store not found: " + removeStoreName);
+                    out.println("END");
+                    break;
+                }
+                if (removeWorkers.isEmpty()) {
+                    out.println("No live replica for store: " + removeStoreName);
+                    out.println("END");
+                    break;
+                }
+                // Rest of the code remains the same...
+                for (WorkerConnection worker : removeWorkers) {
+                    try {
+                        worker.sendRequest(command, fields);
+                    } catch (IOException e) {
+                        System.err.println("Failed to remove product from worker: " + e.getMessage());
+                    }
+                }
+                StringBuilder removeResult = new StringBuilder();
+                removeResult.append("Product removed from store: ").append(removeStoreName).append("\n");
+                removeResult.append("END");
+                out.println(removeResult.toString());
+                break;
+            case "GET_SALES_BY_STORE_TYPE_CATEGORY":
+                String foodCategory = parts.length > 1 ? parts[1].trim() : "";
+                if (LOG_REQUESTS) System.out.println("Processing GET_SALES_BY_STORE_TYPE_CATEGORY request for category: " + foodCategory);
+                String result = aggregateSales(command, foodCategory);
+                if (LOG_REQUESTS) System.out.println("Sending sales by store type category results: " + result);
+                out.println(result);
+                out.println("END");
+                break;
+            case "GET_SALES_BY_PRODUCT_CATEGORY":
+                String productCategory = parts.length > 1 ? parts[1].trim() : "";
+                if (LOG_REQUESTS) System.out.println("Processing GET_SALES_BY_PRODUCT_CATEGORY request for category: " + productCategory);
+                String resultProdCat = aggregateSales(command, productCategory);
+                if (LOG_REQUESTS) System.out.println("Sending sales by product category results: " + resultProdCat);
+                out.println(resultProdCat);
+                out.println("END");
+                break;
+            case "GET_SALES_BY_PRODUCT":
+                String productName = parts.length > 1 ? parts[1].trim() : "";
+                if (LOG_REQUESTS) System.out.println("Processing GET_SALES_BY_PRODUCT request for product: " + productName);
+                String resultProd = aggregateSales(command, productName);
+                if (LOG_REQUESTS) System.out.println("Sending sales by product results: " + resultProd);
+                out.println(resultProd);
+                out.println("END");
+                break;
+            case "SEARCH":
+                StoreSearch search;
+                try {
+                    search = StoreSearch.parse(data);
+                } catch (IllegalArgumentException e) {
+                    out.println("Invalid SEARCH: " + e.getMessage());
+                    out.println("END");
+                    break;
+                }
+                out.println(search(search));
+                out.println("END");
+                break;
+            case "NEARBY":
+                NearbySearch nearby;
+                try {
+                    nearby = NearbySearch.parse(data);
+                } catch (IllegalArgumentException e) {
+                    out.println("Invalid NEARBY: " + e.getMessage());
+                    out.println("END");
+                    break;
+                }
+                out.println(nearby(nearby));
+                out.println("END");
+                break;
+            case "PRODUCTS_BY_PRICE":
+                PriceRangeSearch priceRange;
+                try {
+                    priceRange = PriceRangeSearch.parse(data);
+                } catch (IllegalArgumentException e) {
+                    out.println("Invalid PRODUCTS_BY_PRICE: " + e.getMessage());
+                    out.println("END");
+                    break;
+                }
+                out.println(productsByPrice(priceRange));
+                out.println("END");
+                break;
+            case "TOP_SALES":
+                TopSales top;
+                try {
+                    top = TopSales.parse(data);
+                } catch (IllegalArgumentException e) {
+                    out.println("Invalid TOP_SALES: " + e.getMessage());
+                    out.println("END");
+                    break;
+                }
+                out.println(topSales(top));
+                out.println("END");
+                break;
+            case "BUY":
+                if (fields.size() < 3) {
+                    out.println("Invalid BUY format");
+                    out.println("END");
+                    break;
+                }
+                String buyStoreName = fields.get(0);
+                String buyProductName = fields.get(1);
+                int buyQuantity;
+                try {
+                    buyQuantity = Integer.parseInt(fields.get(2).trim());
+                } catch (NumberFormatException e) {
+                    out.println("Invalid BUY quantity: " + fields.get(2).trim());
+                    out.println("END");
+                    break;
+                }
+
+                // Find the appropriate workers
+                List<WorkerConnection> buyWorkers = cluster.findWorkersForStore(buyStoreName);
+
+                if (buyWorkers == null) {
+                    out.println("Store not found: " + buyStoreName);
+                    out.println("END");
+                    break;
+                }
+                if (buyWorkers.isEmpty()) {
+                    out.println("No live replica for store: " + buyStoreName);
+                    out.println("END");
+                    break;
+                }
+
+                // The first replica that answers decides: it reserves the stock or says it is sold
+                // out. Only a completed purchase goes on to the other replicas, which hold the same
+                // stock, so every copy agrees with what the client was told.
+                String decision = null;
+                int decider = 0;
+                for (; decider < buyWorkers.size() && decision == null; decider++) {
+                    try {
+                        decision = buyWorkers.get(decider).sendRequest(command, fields);
+                    } catch (IOException e) {
+                        System.err.println("Failed to send purchase to worker: " + e.getMessage());
+                    }
+                }
+                if (decision == null) {
+                    out.println("No live replica for store: " + buyStoreName);
+                    out.println("END");
+                    break;
+                }
+                if (!decision.startsWith(Worker.PURCHASE_PROCESSED)) {
+                    out.println(decision); // sold out, unknown product or an error
+                    out.println("END");
+                    break;
+                }
+                for (int i = decider; i < buyWorkers.size(); i++) {
+                    try {
+                        String applied = buyWorkers.get(i).sendRequest(command, fields);
+                        if (!applied.startsWith(Worker.PURCHASE_PROCESSED)) {
+                            System.err.println("Replica " + buyWorkers.get(i).getId() + " disagrees on purchase from "
+                                    + buyStoreName + ": " + applied);
+                        }
+                    } catch (IOException e) {
+                        System.err.println("Failed to send purchase to worker: " + e.getMessage());
+                    }
+                }
+
+                out.println("Purchase completed: " + buyQuantity + " of " + buyProductName + " from " + buyStoreName);
+                out.println("END");
+                break;
+            case "ADD_WORKER":
+                String[] joinArgs = data.trim().split("\\s+");
+                String[] joinAddress = joinArgs[0].split(":");
+                if (joinAddress.length != 2) {
+                    out.println("Invalid ADD_WORKER format, expected host:port [weight]");
+                    out.println("END");
+                    break;
+                }
+                int joinPort;
+                int weight;
+                try {
+                    joinPort = Integer.parseInt(joinAddress[1]);
+                    weight = joinArgs.length > 1 ? Integer.parseInt(joinArgs[1]) : 1;
+                } catch (NumberFormatException e) {
+                    out.println("Invalid ADD_WORKER port or weight, expected host:port [weight]");
+                    out.println("END");
+                    break;
+                }
+                try {
+                    WorkerConnection joining = new WorkerConnection(joinAddress[0], joinPort);
+                    out.println(cluster.joinWorker(joining, weight));
+                } catch (IOException e) {
+                    out.println("Cannot connect to worker at " + joinArgs[0] + ": " + e.getMessage());
+                }
+                out.println("END");
+                break;
+            case "DRAIN_WORKER":
+                WorkerConnection draining = cluster.findWorker(data.trim());
+                if (draining == null) {
+                    out.println("Worker not found: " + data.trim());
+                } else {
+                    out.println(cluster.drainWorker(draining));
+                }
+                out.println("END");
+                break;
+            case "PLACEMENT_STATS":
+                out.println(cluster.loadReport());
+                out.println("END");
+                break;
+            default:
+                out.println("Unknown command: " + command);
+                out.println("END");
+        }
+        out.flush();
+        return response.toString();
+    }
+
+    // Map-reduce over the live workers. Each worker only scans the partitions it is the
+    // designated reader of for this query, so every store is read once; partitions in the
+    // middle of a move are read by everyone and SalesReduction keeps one copy per store.
+    // An argument starting WINDOW=<30s|5m> asks for the sales in that window (see SalesWindow).
+    private String aggregateSales(String command, String argument) {
+        if (argument.startsWith(SalesWindow.PREFIX)) {
+            int space = argument.indexOf(' ');
+            try {
+                SalesWindow.parseWindow(argument.substring(SalesWindow.PREFIX.length(), space == -1 ? argument.length() : space));
+            } catch (IllegalArgumentException e) {
+                return "Invalid sales window: " + e.getMessage();
+            }
+        }
+        Map<WorkerConnection, String> requests = new LinkedHashMap<>();
+        for (Map.Entry<WorkerConnection, BitSet> reader : cluster.assignReaders().entrySet()) {
+            requests.put(reader.getKey(), command + " " + Placement.PARTITIONS_PREFIX
+                    + Placement.encodePartitions(reader.getValue()) + " " + argument);
+        }
+        SalesReduction reduction = ScatterGather.gather(requests, WorkerConnection::sendSalesQueryAsync,
+                ScatterGather.DEFAULT_DEADLINE_MS, new SalesReduction(), SalesReduction::merge);
+        return reduction.format() + reduction.partialNote();
+    }
+
+    // Scatter-gather like aggregateSales. Each reader returns its best matches up to the end
+    // of the page, so the page is among them; the merge keeps one copy of stores read twice.
+    private String search(StoreSearch search) {
+        Map<WorkerConnection, String> requests = new LinkedHashMap<>();
+        for (Map.Entry<WorkerConnection, BitSet> reader : cluster.assignReaders().entrySet()) {
+            requests.put(reader.getKey(), "SEARCH " + Placement.PARTITIONS_PREFIX
+                    + Placement.encodePartitions(reader.getValue()) + " " + search.forWorkers());
+        }
+        SearchMerge merge = ScatterGather.gather(requests, WorkerConnection::sendRequestAsync,
+                ScatterGather.DEFAULT_DEADLINE_MS, new SearchMerge(), SearchMerge::merge);
+        return merge.format(search) + merge.partialNote();
+    }
+
+    // Scatter-gather like search: the k nearest of each reader's k nearest
+    private String nearby(NearbySearch nearby) {
+        Map<WorkerConnection, String> requests = new LinkedHashMap<>();
+        for (Map.Entry<WorkerConnection, BitSet> reader : cluster.assignReaders().entrySet()) {
+            requests.put(reader.getKey(), "NEARBY " + Placement.PARTITIONS_PREFIX
+                    + Placement.encodePartitions(reader.getValue()) + " " + nearby.forWorkers());
+        }
+        SearchMerge merge = ScatterGather.gather(requests, WorkerConnection::sendRequestAsync,
+                ScatterGather.DEFAULT_DEADLINE_MS, new SearchMerge(), SearchMerge::merge);
+        return merge.formatNearest(nearby) + merge.partialNote();
+    }
+
+    // Scatter-gather like search: the cheapest limit of each reader's cheapest limit
+    private String productsByPrice(PriceRangeSearch search) {
+        Map<WorkerConnection, String> requests = new LinkedHashMap<>();
+        for (Map.Entry<WorkerConnection, BitSet> reader : cluster.assignReaders().entrySet()) {
+            requests.put(reader.getKey(), "PRODUCTS_BY_PRICE " + Placement.PARTITIONS_PREFIX
+                    + Placement.encodePartitions(reader.getValue()) + " " + search.forWorkers());
+        }
+        PriceMerge merge = ScatterGather.gather(requests, WorkerConnection::sendRequestAsync,
+                ScatterGather.DEFAULT_DEADLINE_MS, new PriceMerge(), PriceMerge::merge);
+        return merge.format(search) + merge.partialNote();
+    }
+
+    // TOP_SALES (see TopSales). A store is counted by one reader, so the cluster's k best
+    // stores are among the readers' k best. Products are summed over the readers, which takes
+    // more rounds (see TopSales.mergeProducts). Stores being moved are read by every reader;
+    // their sales come back per store and are counted once.
+    private String topSales(TopSales query) {
+        Map<WorkerConnection, BitSet> readers = cluster.assignReaders();
+        BitSet read = new BitSet(Placement.PARTITIONS);
+        BitSet shared = new BitSet(Placement.PARTITIONS);
+        for (BitSet partitions : readers.values()) {
+            BitSet again = (BitSet) partitions.clone();
+            again.and(read);
+            shared.or(again);
+            read.or(partitions);
+        }
+        Map<String, Integer> sharedSales = new HashMap<>();
+        Map<WorkerConnection, String> requests = new LinkedHashMap<>();
+        for (Map.Entry<WorkerConnection, BitSet> reader : readers.entrySet()) {
+            requests.put(reader.getKey(), "GET_SALES_TOP " + Placement.PARTITIONS_PREFIX
+                    + Placement.encodePartitions(withoutShared(reader.getValue(), shared))
+                    + " " + TopSales.SHARED_PREFIX + Placement.encodePartitions(shared) + " " + query.forWorkers());
+        }
+        ScatterGather.Partial missing = new ScatterGather.Partial();
+        Map<WorkerConnection, Map<String, Integer>> known = topSalesRound(requests, sharedSales, missing);
+        if (!query.products) {
+            Map<String, Integer> units = new HashMap<>();
+            for (Map<String, Integer> reply : known.values()) {
+                for (Map.Entry<String, Integer> entry : reply.entrySet()) units.putIfAbsent(entry.getKey(), entry.getValue());
+            }
+            return formatTopSales(units, query, "stores") + missing.partialNote();
+        }
+
+        Map<String, Integer> sharedUnits = new HashMap<>();
+        for (Map.Entry<String, Integer> entry : sharedSales.entrySet()) {
+            sharedUnits.merge(entry.getKey().substring(entry.getKey().indexOf('\t') + 1), entry.getValue(), Integer::sum);
+        }
+        Map<String, Integer> sums = query.mergeProducts(known, sharedUnits, terms -> {
+            Map<WorkerConnection, String> round = new LinkedHashMap<>();
+            for (Map.Entry<WorkerConnection, String> term : terms.entrySet()) {
+                round.put(term.getKey(), "GET_SALES_TOP " + Placement.PARTITIONS_PREFIX
+                        + Placement.encodePartitions(withoutShared(readers.get(term.getKey()), shared)) + " "
+                        + query.forWorkers() + term.getValue());
+            }
+            return topSalesRound(round, new HashMap<>(), missing); // shared stores are counted from the first round
+        });
+        return formatTopSales(sums, query, "products") + missing.partialNote();
+    }
+
+    // One round of GET_SALES_TOP; each reader's reply, with per-store sales of shared stores
+    // set aside and the readers that did not answer added to missing
+    private static Map<WorkerConnection, Map<String, Integer>> topSalesRound(Map<WorkerConnection, String> requests,
+                                                                           Map<String, Integer> sharedSales,
+                                                                           ScatterGather.Partial missing) {
+        TopSalesRound round = ScatterGather.gather(requests,
+                (worker, request) -> worker.sendSalesQueryAsync(request).thenApply(reply -> Map.entry(worker, reply)),
+                ScatterGather.DEFAULT_DEADLINE_MS, new TopSalesRound(), (replies, reply) -> {
+                    Map<String, Integer> units = new HashMap<>();
+                    for (Map.Entry<String, Integer> entry : reply.getValue().entrySet()) {
+                        if (entry.getKey().indexOf('\t') != -1) {
+                            sharedSales.putIfAbsent(entry.getKey(), entry.getValue());
+                        } else {
+                            units.put(entry.getKey(), entry.getValue());
+                        }
+                    }
+                    replies.byReader.put(reply.getKey(), units);
+                });
+        missing.missedAll(round);
+        return round.byReader;
+    }
+
+    private static class TopSalesRound extends ScatterGather.Partial {
+        final Map<WorkerConnection, Map<String, Integer>> byReader = new HashMap<>();
+    }
+
+    private static BitSet withoutShared(BitSet partitions, BitSet shared) {
+        BitSet own = (BitSet) partitions.clone();
+        own.andNot(shared);
+        return own;
+    }
+
+    // The k best, most units first, then how many there are
+    private static String formatTopSales(Map<String, Integer> units, TopSales query, String what) {
+        StringBuilder result = new StringBuilder();
+        List<Map.Entry<String, Integer>> best = TopSales.best(units, query.k);
+        for (Map.Entry<String, Integer> entry : best) {
+            result.append("\"").append(entry.getKey()).append("\": ").append(entry.getValue()).append("\n");
+        }
+        result.append("\"").append(what).append("\": ").append(best.size());
+        return result.toString();
+    }
+
+    private static class PriceMerge extends ScatterGather.Partial {
+        private final Map<String, PriceRangeSearch.Match> byProduct = new HashMap<>();
+
+        void merge(String response) {
+            try {
+                for (PriceRangeSearch.Match match : PriceRangeSearch.readAll(response)) {
+                    byProduct.putIfAbsent(match.storeName + "\n" + match.productName + "\n" + match.price, match);
+                }
+            } catch (IOException e) {
+                System.err.println("Invalid PRODUCTS_BY_PRICE reply from worker: " + response);
+            }
+        }
+
+        String format(PriceRangeSearch search) {
+            return search.format(byProduct.values());
+        }
+    }
+
+    private static class SearchMerge extends ScatterGather.Partial {
+        private final Map<String, StoreSearch.Summary> byStore = new HashMap<>();
+
+        void merge(String response) {
+            try {
+                for (StoreSearch.Summary summary : StoreSearch.readAll(response)) {
+                    byStore.putIfAbsent(summary.storeName, summary);
+                }
+            } catch (IOException e) {
+                System.err.println("Invalid search reply from worker: " + response);
+            }
+        }
+
+        String format(StoreSearch search) {
+            return search.formatPage(byStore.values());
+        }
+
+        // The k nearest, one per line with its distance
+        String formatNearest(NearbySearch nearby) {
+            List<StoreSearch.Summary> matches = new ArrayList<>(byStore.values());
+            matches.sort(Comparator.comparingDouble(nearby::distanceKm).thenComparing(s -> s.storeName));
+            StringBuilder result = new StringBuilder();
+            for (StoreSearch.Summary summary : matches.subList(0, Math.min(matches.size(), nearby.k))) {
+                result.append(NearbySearch.toJson(summary, nearby.distanceKm(summary))).append("\n");
+            }
+            result.append("\"stores\": ").append(Math.min(matches.size(), nearby.k));
+            return result.toString();
+        }
+    }
+
+    private static class SalesReduction extends ScatterGather.Partial {
+        private final Map<String, Integer> salesByStore = new HashMap<>();
+        private int total = 0;
+
+        void merge(Map<String, Integer> response) {
+            for (Map.Entry<String, Integer> storeSale : response.entrySet()) {
+                if (salesByStore.putIfAbsent(storeSale.getKey(), storeSale.getValue()) == null) {
+                    total += storeSale.getValue();
+                }
+            }
+        }
+
+        String format() {
+            StringBuilder result = new StringBuilder();
+            for (Map.Entry<String, Integer> entry : salesByStore.entrySet()) {
+                result.append("\"").append(entry.getKey()).append("\": ").append(entry.getValue()).append("\n");
+            }
+            result.append("\"total\": ").append(total);
+            return result.toString();
+        }
+    }
+}
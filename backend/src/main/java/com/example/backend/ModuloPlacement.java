@@ -0,0 +1,29 @@
+package com.example.backend;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// The original scheme: primary is partition % nodeCount, replicas are the next nodes in
+// order. Ignores weights and remaps almost every partition when the node count changes.
+class ModuloPlacement<N> implements Placement<N> {
+    private final List<N> nodes = new ArrayList<>();
+
+    @Override
+    public void addNode(N node, String nodeId, int weight) {
+        if (!nodes.contains(node)) nodes.add(node);
+    }
+
+    @Override
+    public void removeNode(N node) {
+        nodes.remove(node);
+    }
+
+    @Override
+    public List<N> replicasFor(int partition, int replicas) {
+        List<N> result = new ArrayList<>();
+        for (int i = 0; i < replicas && i < nodes.size(); i++) {
+            result.add(nodes.get((partition + i) % nodes.size()));
+        }
+        return result;
+    }
+}
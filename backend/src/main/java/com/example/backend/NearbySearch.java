@@ -0,0 +1,98 @@
+package com.example.backend;
+
+import java.util.*;
+
+// NEARBY: the k stores nearest to a point, optionally only those within a radius and those
+// matching SEARCH's predicates, nearest first. Each Worker finds its k nearest with its
+// GeoIndex and returns them as SEARCH summaries; Master works out the distances again from
+// the summaries' coordinates and keeps the k nearest of them all, since the cluster's k
+// nearest are among each reader's k nearest.
+//
+// Query: latitude and longitude first, then SEARCH's terms plus radiusKm and k, e.g.
+//   NEARBY 37.9838,23.7275,radiusKm=2,k=10,pizzeria,minStars=4
+class NearbySearch {
+    static final int DEFAULT_K = 20;
+    static final int MAX_K = StoreSearch.MAX_PAGE_SIZE;
+
+    final double latitude;
+    final double longitude;
+    final double radiusKm; // Double.MAX_VALUE for any distance
+    final int k;
+    final StoreSearch filter;
+
+    private NearbySearch(double latitude, double longitude, double radiusKm, int k, StoreSearch filter) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.radiusKm = radiusKm;
+        this.k = k;
+        this.filter = filter;
+    }
+
+    static NearbySearch parse(String query) {
+        String[] terms = query.split(",");
+        if (terms.length < 2) throw new IllegalArgumentException("expected latitude,longitude first");
+        double latitude;
+        double longitude;
+        double radiusKm = Double.MAX_VALUE;
+        int k = DEFAULT_K;
+        try {
+            latitude = Double.parseDouble(terms[0].trim());
+            longitude = Double.parseDouble(terms[1].trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("expected latitude,longitude first");
+        }
+        if (!(Math.abs(latitude) <= 90) || !(Math.abs(longitude) <= 180)) {
+            throw new IllegalArgumentException("latitude must be -90 to 90 and longitude -180 to 180");
+        }
+        StringBuilder predicates = new StringBuilder();
+        for (int i = 2; i < terms.length; i++) {
+            String term = terms[i].trim();
+            String key = term.indexOf('=') == -1 ? "" : term.substring(0, term.indexOf('=')).trim();
+            String value = term.substring(term.indexOf('=') + 1).trim();
+            try {
+                switch (key) {
+                    case "radiusKm":
+                        radiusKm = Double.parseDouble(value);
+                        break;
+                    case "k":
+                        k = Integer.parseInt(value);
+                        break;
+                    case "page":
+                    case "pageSize":
+                    case "limit":
+                        throw new IllegalArgumentException("unknown term " + term);
+                    default:
+                        predicates.append(term).append(',');
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("not a number in " + term);
+            }
+        }
+        if (!(radiusKm >= 0) || k < 1 || k > MAX_K) {
+            throw new IllegalArgumentException("radiusKm must be 0 or more and k 1 to " + MAX_K);
+        }
+        return new NearbySearch(latitude, longitude, radiusKm, k, StoreSearch.parse(predicates.toString()));
+    }
+
+    // The query as Master sends it to Workers
+    String forWorkers() {
+        StringBuilder query = new StringBuilder().append(latitude).append(',').append(longitude);
+        if (radiusKm != Double.MAX_VALUE) query.append(",radiusKm=").append(radiusKm);
+        query.append(",k=").append(k);
+        if (filter.category != null) query.append(",category=").append(filter.category);
+        if (filter.priceCategory != null) query.append(",price=").append(filter.priceCategory);
+        return query.append(",minStars=").append(filter.minStars)
+                .append(",available=").append(filter.available).toString();
+    }
+
+    double distanceKm(StoreSearch.Summary summary) {
+        return GeoIndex.distanceKm(latitude, longitude, summary.latitude, summary.longitude);
+    }
+
+    // A summary with its distance, as Master prints it
+    static String toJson(StoreSearch.Summary summary, double distanceKm) {
+        String json = summary.toJson();
+        return json.substring(0, json.length() - 1)
+                + String.format(Locale.ROOT, ", \"DistanceKm\": %.3f}", distanceKm);
+    }
+}
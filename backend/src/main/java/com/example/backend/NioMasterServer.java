@@ -0,0 +1,263 @@
+package com.example.backend;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.*;
+
+// Event-loop front end for client connections. A few selector threads own all sockets and
+// only move bytes; complete request lines are handed to a bounded handler pool. Requests
+// of one client are still answered one at a time and in order, so the line protocol and
+// END terminator seen by ManagerConsoleApp and the app are unchanged.
+class NioMasterServer {
+    private static final int READ_BUFFER_SIZE = 8192;
+    private static final int MAX_LINE_LENGTH = 16 * 1024 * 1024;
+    private static final int MAX_QUEUED_REQUESTS = 32;
+
+    private final int port;
+    private final MasterRequestHandler handler;
+    private final ExecutorService handlerPool;
+    private final EventLoop[] loops;
+    private int nextLoop = 0;
+
+    NioMasterServer(int port, MasterRequestHandler handler, int ioThreads, int handlerThreads, int handlerQueue) throws IOException {
+        this.port = port;
+        this.handler = handler;
+        this.handlerPool = new ThreadPoolExecutor(handlerThreads, handlerThreads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(handlerQueue), runnable -> {
+                    Thread thread = new Thread(runnable, "master-handler");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.loops = new EventLoop[ioThreads];
+        for (int i = 0; i < ioThreads; i++) {
+            loops[i] = new EventLoop();
+        }
+    }
+
+    void run() throws IOException {
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(port), 1024);
+            for (int i = 0; i < loops.length; i++) {
+                Thread thread = new Thread(loops[i], "master-io-" + i);
+                thread.setDaemon(true);
+                thread.start();
+            }
+            System.out.println("Master Server running on port " + port + " (" + loops.length + " I/O threads)");
+            while (true) {
+                SocketChannel channel = server.accept();
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                EventLoop loop = loops[nextLoop];
+                nextLoop = (nextLoop + 1) % loops.length;
+                loop.register(channel);
+            }
+        } finally {
+            handlerPool.shutdownNow();
+            for (EventLoop loop : loops) {
+                loop.selector.close();
+            }
+        }
+    }
+
+    private class EventLoop implements Runnable {
+        private final Selector selector;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+
+        EventLoop() throws IOException {
+            this.selector = Selector.open();
+        }
+
+        void register(SocketChannel channel) {
+            execute(() -> {
+                try {
+                    SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                    key.attach(new ClientSession(this, key, channel));
+                } catch (IOException e) {
+                    System.err.println("Error registering client: " + e.getMessage());
+                    closeQuietly(channel);
+                }
+            });
+        }
+
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (selector.isOpen()) {
+                try {
+                    selector.select();
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        task.run();
+                    }
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        ClientSession session = (ClientSession) key.attachment();
+                        if (session == null || !key.isValid()) continue;
+                        try {
+                            if (key.isReadable()) session.onReadable(readBuffer);
+                            if (key.isValid() && key.isWritable()) session.onWritable();
+                        } catch (IOException | CancelledKeyException e) {
+                            session.close();
+                        }
+                    }
+                } catch (ClosedSelectorException e) {
+                    return;
+                } catch (IOException e) {
+                    System.err.println("Master I/O loop error: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private class ClientSession {
+        private final EventLoop loop;
+        private final SelectionKey key;
+        private final SocketChannel channel;
+        private final ByteArrayOutputStream partialLine = new ByteArrayOutputStream();
+        private final Queue<String> requests = new ArrayDeque<>();
+        private final Queue<ByteBuffer> replies = new ConcurrentLinkedQueue<>();
+        private boolean processing = false;
+
+        ClientSession(EventLoop loop, SelectionKey key, SocketChannel channel) {
+            this.loop = loop;
+            this.key = key;
+            this.channel = channel;
+            System.out.println("New client connected: " + channel.socket().getInetAddress());
+        }
+
+        // Runs on the I/O thread
+        void onReadable(ByteBuffer buffer) throws IOException {
+            buffer.clear();
+            int read = channel.read(buffer);
+            if (read == -1) {
+                close();
+                return;
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                byte b = buffer.get();
+                if (b == '\n') {
+                    String line = partialLine.toString(StandardCharsets.UTF_8);
+                    partialLine.reset();
+                    if (line.endsWith("\r")) line = line.substring(0, line.length() - 1);
+                    enqueue(line);
+                } else if (partialLine.size() >= MAX_LINE_LENGTH) {
+                    System.err.println("Dropping client sending an oversized request: " + channel.socket().getInetAddress());
+                    close();
+                    return;
+                } else {
+                    partialLine.write(b);
+                }
+            }
+        }
+
+        private void enqueue(String line) {
+            synchronized (this) {
+                requests.add(line);
+                if (requests.size() >= MAX_QUEUED_REQUESTS) {
+                    // Stop reading from a client that pipelines faster than we answer
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                }
+                if (processing) return;
+                processing = true;
+            }
+            dispatch();
+        }
+
+        private void dispatch() {
+            try {
+                handlerPool.execute(this::processRequests);
+            } catch (RejectedExecutionException e) {
+                String request;
+                synchronized (this) {
+                    while ((request = requests.poll()) != null) {
+                        reply("Server busy, could not process request: " + request + "\nEND\n");
+                    }
+                    processing = false;
+                }
+                loop.execute(this::resumeReading);
+            }
+        }
+
+        // Runs on a handler thread, one request at a time per client
+        private void processRequests() {
+            String request;
+            synchronized (this) {
+                request = requests.poll();
+                if (request == null) {
+                    processing = false;
+                    return;
+                }
+            }
+            String response;
+            try {
+                response = handler.handle(request);
+            } catch (RuntimeException e) {
+                response = MasterRequestHandler.errorReply(request, e);
+            }
+            reply(response);
+            loop.execute(this::resumeReading);
+            synchronized (this) {
+                if (requests.isEmpty()) {
+                    processing = false;
+                    return;
+                }
+            }
+            dispatch();
+        }
+
+        private void resumeReading() {
+            if (!key.isValid()) return;
+            synchronized (this) {
+                if (requests.size() < MAX_QUEUED_REQUESTS) {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+                }
+            }
+        }
+
+        private void reply(String response) {
+            replies.add(ByteBuffer.wrap(response.getBytes(StandardCharsets.UTF_8)));
+            loop.execute(() -> {
+                if (key.isValid()) key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            });
+        }
+
+        // Runs on the I/O thread
+        void onWritable() throws IOException {
+            ByteBuffer buffer;
+            while ((buffer = replies.peek()) != null) {
+                channel.write(buffer);
+                if (buffer.hasRemaining()) return;
+                replies.poll();
+            }
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        }
+
+        void close() {
+            key.cancel();
+            closeQuietly(channel);
+        }
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Error closing socket: " + e.getMessage());
+        }
+    }
+}
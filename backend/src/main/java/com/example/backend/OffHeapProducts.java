@@ -0,0 +1,288 @@
+package com.example.backend;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// A store's products and sales outside the Java heap, for -Dworker.catalog=offheap. Each
+// product id (see Store) is a fixed-width record in a direct buffer:
+//   0 name id, 4 type id (NOT_LISTED unless listed), 8 stock, 16 price, 24 sales
+// followed by an open-addressing table from name id to product id. Names and types are
+// interned once per process in a string dictionary, so the heap holds each distinct string
+// once and a Store holds a single block handle, however many products it has.
+//
+// Blocks are carved out of shared 4 MB segments (larger ones get a buffer of their own).
+// Store grows its block under its exclusive lock by copying into a new one; lock-free
+// readers may still be reading the old one, so a block's memory is reused only once the GC
+// finds its handle unreachable.
+class OffHeapProducts {
+    static final boolean ENABLED = "offheap".equalsIgnoreCase(System.getProperty("worker.catalog", "objects"));
+    static final int NOT_LISTED = -1;
+    private static final int RECORD_BYTES = 32;
+    private static final int NAME = 0, TYPE = 4, STOCK = 8, PRICE = 16, SALES = 24;
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+    private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private volatile Block block = Block.allocate(4);
+
+    // Product id of the name, or -1
+    int find(String productName) {
+        Integer nameId = Dictionary.ids.get(productName);
+        return nameId == null ? -1 : block.find(nameId);
+    }
+
+    // Product id of the name, added if new; called under the store's exclusive lock
+    int idOf(String productName) {
+        int nameId = Dictionary.intern(productName);
+        Block b = block;
+        int id = b.find(nameId);
+        if (id >= 0) return id;
+        if (b.size == b.capacity) {
+            b = b.grow();
+        }
+        id = b.size;
+        b.buffer.putInt(b.record(id) + NAME, nameId);
+        b.buffer.putInt(b.record(id) + TYPE, NOT_LISTED);
+        b.index(nameId, id);
+        b.size = id + 1;
+        block = b; // publishes the record
+        return id;
+    }
+
+    int size() {
+        return block.size;
+    }
+
+    String name(int id) {
+        Block b = block;
+        return Dictionary.string(b.buffer.getInt(b.record(id) + NAME));
+    }
+
+    boolean isListed(int id) {
+        Block b = block;
+        return b.buffer.getInt(b.record(id) + TYPE) != NOT_LISTED;
+    }
+
+    // The product type if listed, else null
+    String type(int id) {
+        Block b = block;
+        int type = b.buffer.getInt(b.record(id) + TYPE);
+        return type == NOT_LISTED ? null : Dictionary.string(type);
+    }
+
+    void list(int id, String productType, int stock, double price) {
+        Block b = block;
+        int record = b.record(id);
+        b.buffer.putInt(record + STOCK, stock);
+        b.buffer.putDouble(record + PRICE, price);
+        b.buffer.putInt(record + TYPE, Dictionary.intern(productType));
+    }
+
+    void unlist(int id) {
+        Block b = block;
+        b.buffer.putInt(b.record(id) + TYPE, NOT_LISTED);
+    }
+
+    int stock(int id) {
+        Block b = block;
+        return (int) INT.getVolatile(b.buffer, b.record(id) + STOCK);
+    }
+
+    double price(int id) {
+        Block b = block;
+        return b.buffer.getDouble(b.record(id) + PRICE);
+    }
+
+    // Takes quantity out of the stock with a compare-and-set, unless that would leave it negative
+    boolean tryReserve(int id, int quantity) {
+        Block b = block;
+        int offset = b.record(id) + STOCK;
+        while (true) {
+            int available = (int) INT.getVolatile(b.buffer, offset);
+            if (available < quantity) return false;
+            if (INT.compareAndSet(b.buffer, offset, available, available - quantity)) return true;
+        }
+    }
+
+    long sales(int id) {
+        Block b = block;
+        return (long) LONG.getVolatile(b.buffer, b.record(id) + SALES);
+    }
+
+    void addSales(int id, long quantity) {
+        Block b = block;
+        LONG.getAndAdd(b.buffer, b.record(id) + SALES, quantity);
+    }
+
+    // Bytes of direct memory taken by product blocks, for benchmarks
+    static long reservedBytes() {
+        return Arena.reserved();
+    }
+
+    // Records, then the name id -> product id table (twice the record capacity, 0 = empty,
+    // else product id + 1)
+    private static final class Block {
+        final ByteBuffer buffer;
+        final int base;
+        final int capacity;
+        int size; // written under the store's exclusive lock, read through the volatile block field
+
+        private Block(ByteBuffer buffer, int base, int capacity) {
+            this.buffer = buffer;
+            this.base = base;
+            this.capacity = capacity;
+        }
+
+        static Block allocate(int capacity) {
+            int bytes = capacity * (RECORD_BYTES + 8);
+            Arena.Region region = Arena.allocate(bytes);
+            Block block = new Block(region.buffer, region.base, capacity);
+            Arena.reuseWhenUnreachable(block, region);
+            return block;
+        }
+
+        int record(int id) {
+            return base + id * RECORD_BYTES;
+        }
+
+        private int slots() {
+            return capacity * 2;
+        }
+
+        private int slot(int index) {
+            return base + capacity * RECORD_BYTES + index * 4;
+        }
+
+        int find(int nameId) {
+            int mask = slots() - 1;
+            for (int i = mix(nameId) & mask; ; i = (i + 1) & mask) {
+                int entry = buffer.getInt(slot(i));
+                if (entry == 0) return -1;
+                if (buffer.getInt(record(entry - 1) + NAME) == nameId) return entry - 1;
+            }
+        }
+
+        void index(int nameId, int id) {
+            int mask = slots() - 1;
+            int i = mix(nameId) & mask;
+            while (buffer.getInt(slot(i)) != 0) i = (i + 1) & mask;
+            buffer.putInt(slot(i), id + 1);
+        }
+
+        // A copy with twice the room; purchases are held off by the exclusive lock meanwhile
+        Block grow() {
+            Block grown = allocate(capacity * 2);
+            for (int id = 0; id < size; id++) {
+                for (int field = 0; field < RECORD_BYTES; field += 8) {
+                    grown.buffer.putLong(grown.record(id) + field, buffer.getLong(record(id) + field));
+                }
+                grown.index(buffer.getInt(record(id) + NAME), id);
+            }
+            grown.size = size;
+            return grown;
+        }
+
+        private static int mix(int h) {
+            h *= 0x9e3779b9;
+            return h ^ (h >>> 16);
+        }
+    }
+
+    // Hands out zeroed regions of direct memory, by size class (each block size is a power of two
+    // times the bytes of four records)
+    private static final class Arena {
+        private static final int SEGMENT_BYTES = 1 << 22;
+        private static final Cleaner CLEANER = Cleaner.create();
+        private static final Map<Integer, Deque<Region>> free = new HashMap<>();
+        private static ByteBuffer segment;
+        private static int used;
+        private static long reserved;
+
+        static final class Region {
+            final ByteBuffer buffer;
+            final int base;
+            final int bytes;
+
+            Region(ByteBuffer buffer, int base, int bytes) {
+                this.buffer = buffer;
+                this.base = base;
+                this.bytes = bytes;
+            }
+        }
+
+        static synchronized Region allocate(int bytes) {
+            Deque<Region> reusable = free.get(bytes);
+            Region region = reusable == null ? null : reusable.poll();
+            if (region != null) {
+                for (int i = 0; i < bytes; i += 8) {
+                    region.buffer.putLong(region.base + i, 0);
+                }
+                return region;
+            }
+            if (bytes > SEGMENT_BYTES / 4) {
+                reserved += bytes;
+                return new Region(ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder()), 0, bytes);
+            }
+            if (segment == null || used + bytes > SEGMENT_BYTES) {
+                segment = ByteBuffer.allocateDirect(SEGMENT_BYTES).order(ByteOrder.nativeOrder());
+                used = 0;
+                reserved += SEGMENT_BYTES;
+            }
+            region = new Region(segment, used, bytes);
+            used += bytes;
+            return region;
+        }
+
+        // The action must not reference the block, or it would never become unreachable
+        static void reuseWhenUnreachable(Object block, Region region) {
+            if (region.bytes > SEGMENT_BYTES / 4) {
+                int bytes = region.bytes;
+                CLEANER.register(block, () -> release(bytes)); // its buffer goes with it
+            } else {
+                CLEANER.register(block, () -> free(region));
+            }
+        }
+
+        private static synchronized void free(Region region) {
+            free.computeIfAbsent(region.bytes, k -> new ArrayDeque<>()).push(region);
+        }
+
+        private static synchronized void release(int bytes) {
+            reserved -= bytes;
+        }
+
+        static synchronized long reserved() {
+            return reserved;
+        }
+    }
+
+    // Process-wide interned names and types; ids are never reused
+    private static final class Dictionary {
+        static final Map<String, Integer> ids = new ConcurrentHashMap<>();
+        private static volatile String[] strings = new String[1024];
+        private static int count;
+
+        static int intern(String value) {
+            Integer id = ids.get(value);
+            return id != null ? id : add(value);
+        }
+
+        private static synchronized int add(String value) {
+            Integer id = ids.get(value);
+            if (id != null) return id;
+            if (count == strings.length) strings = Arrays.copyOf(strings, count * 2);
+            strings[count] = value;
+            strings = strings; // publishes the new entry
+            ids.put(value, count);
+            return count++;
+        }
+
+        static String string(int id) {
+            return strings[id];
+        }
+    }
+}
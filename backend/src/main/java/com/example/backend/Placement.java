@@ -0,0 +1,78 @@
+package com.example.backend;
+
+import java.util.BitSet;
+import java.util.List;
+
+// Decides which nodes hold the replicas of each partition. Stores are hashed onto a fixed
+// number of partitions, so a placement only has to spread PARTITIONS keys over the nodes
+// and membership changes move whole partitions. Implementations need not be thread-safe;
+// Cluster serializes membership changes.
+interface Placement<N> {
+    int PARTITIONS = 4096;
+    // Restricts a worker query to some partitions: "PARTITIONS=0-12,40,77-80 <argument>"
+    String PARTITIONS_PREFIX = "PARTITIONS=";
+
+    void addNode(N node, String nodeId, int weight);
+
+    void removeNode(N node);
+
+    // Distinct nodes, primary first; fewer than replicas only if there are fewer nodes
+    List<N> replicasFor(int partition, int replicas);
+
+    static int partitionOf(String storeName) {
+        return (int) Long.remainderUnsigned(hash(normalizeStoreName(storeName)), PARTITIONS);
+    }
+
+    static String normalizeStoreName(String storeName) {
+        return storeName.trim().replaceAll("^\"|\"$", "");
+    }
+
+    // 64-bit FNV-1a followed by a murmur3 finalizer, stable across JVMs unlike String.hashCode
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    static String encodePartitions(BitSet partitions) {
+        StringBuilder ranges = new StringBuilder();
+        int start = partitions.nextSetBit(0);
+        while (start >= 0) {
+            int end = partitions.nextClearBit(start) - 1;
+            if (ranges.length() > 0) ranges.append(',');
+            ranges.append(start);
+            if (end > start) ranges.append('-').append(end);
+            start = partitions.nextSetBit(end + 1);
+        }
+        return ranges.toString();
+    }
+
+    static BitSet decodePartitions(String ranges) {
+        BitSet partitions = new BitSet(PARTITIONS);
+        for (String range : ranges.split(",")) {
+            if (range.isEmpty()) continue;
+            int dash = range.indexOf('-');
+            if (dash == -1) {
+                partitions.set(Integer.parseInt(range));
+            } else {
+                partitions.set(Integer.parseInt(range.substring(0, dash)), Integer.parseInt(range.substring(dash + 1)) + 1);
+            }
+        }
+        return partitions;
+    }
+
+    static <N> Placement<N> create(String name) {
+        if ("modulo".equalsIgnoreCase(name)) {
+            return new ModuloPlacement<>();
+        }
+        return new ConsistentHashPlacement<>();
+    }
+}
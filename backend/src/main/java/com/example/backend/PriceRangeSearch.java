@@ -0,0 +1,196 @@
+package com.example.backend;
+
+import java.io.IOException;
+import java.util.*;
+
+// PRODUCTS_BY_PRICE: listed products priced from min to max, cheapest first (then by store
+// and product name), optionally only of a product type, from stores of a food category, or
+// in stock. Each Worker walks its StoreIndex's price entries from min upwards and stops at
+// the limit; Master merges the readers' lists and keeps the cheapest limit of them, which
+// are among each reader's cheapest limit.
+//
+// Query: comma-separated key=value, e.g.
+//   PRODUCTS_BY_PRICE min=0,max=6,type=pizza,category=pizzeria,available=true,limit=20
+class PriceRangeSearch {
+    static final int DEFAULT_LIMIT = 20;
+    static final int MAX_LIMIT = 100;
+    static final Comparator<Match> ORDER = Comparator.comparingDouble((Match m) -> m.price)
+            .thenComparing(m -> m.storeName)
+            .thenComparing(m -> m.productName);
+
+    final double min;
+    final double max;
+    final String productType;  // null for any
+    final String category;     // null for any
+    private final String categoryKey;
+    final boolean available;
+    final int limit;
+
+    private PriceRangeSearch(double min, double max, String productType, String category, boolean available, int limit) {
+        this.min = min;
+        this.max = max;
+        this.productType = productType;
+        this.category = category;
+        this.categoryKey = category == null ? null : StoreIndex.categoryKey(category);
+        this.available = available;
+        this.limit = limit;
+    }
+
+    static PriceRangeSearch parse(String query) {
+        double min = 0;
+        double max = Double.MAX_VALUE;
+        String productType = null;
+        String category = null;
+        boolean available = false;
+        int limit = DEFAULT_LIMIT;
+        for (String term : query.split(",")) {
+            term = term.trim();
+            if (term.isEmpty()) continue;
+            int equals = term.indexOf('=');
+            if (equals == -1) throw new IllegalArgumentException("expected key=value, not " + term);
+            String value = term.substring(equals + 1).trim();
+            try {
+                switch (term.substring(0, equals).trim()) {
+                    case "min":
+                        min = Double.parseDouble(value);
+                        break;
+                    case "max":
+                        max = Double.parseDouble(value);
+                        break;
+                    case "type":
+                        productType = value.isEmpty() ? null : value;
+                        break;
+                    case "category":
+                        category = value.isEmpty() ? null : value;
+                        break;
+                    case "available":
+                        available = Boolean.parseBoolean(value);
+                        break;
+                    case "limit":
+                        limit = Integer.parseInt(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unknown term " + term);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("not a number in " + term);
+            }
+        }
+        if (!(min <= max) || limit < 1 || limit > MAX_LIMIT) {
+            throw new IllegalArgumentException("min must not be above max and limit must be 1 to " + MAX_LIMIT);
+        }
+        return new PriceRangeSearch(min, max, productType, category, available, limit);
+    }
+
+    // The query as Master sends it to Workers
+    String forWorkers() {
+        StringBuilder query = new StringBuilder().append("min=").append(min);
+        if (max != Double.MAX_VALUE) query.append(",max=").append(max);
+        if (productType != null) query.append(",type=").append(productType);
+        if (category != null) query.append(",category=").append(category);
+        return query.append(",available=").append(available).append(",limit=").append(limit).toString();
+    }
+
+    // Master's reply from the readers' matches (one copy of each): the cheapest limit of them,
+    // one product per line
+    String format(Collection<Match> merged) {
+        List<Match> matches = new ArrayList<>(merged);
+        matches.sort(ORDER);
+        StringBuilder result = new StringBuilder();
+        for (Match match : matches.subList(0, Math.min(matches.size(), limit))) {
+            result.append(match.toJson()).append("\n");
+        }
+        result.append("\"products\": ").append(Math.min(matches.size(), limit));
+        return result.toString();
+    }
+
+    // The predicates other than the price
+    boolean matches(Store store, Product product) {
+        if (productType != null && !productType.equals(product.getProductType())) return false;
+        if (categoryKey != null && !StoreIndex.categoryKey(store.getFoodCategory()).equals(categoryKey)) return false;
+        return !available || product.getAvailableAmount() > 0;
+    }
+
+    static class Match {
+        final String storeName;
+        final String productName;
+        final String productType;
+        final double price;
+        final int availableAmount;
+
+        Match(String storeName, String productName, String productType, double price, int availableAmount) {
+            this.storeName = storeName;
+            this.productName = productName;
+            this.productType = productType;
+            this.price = price;
+            this.availableAmount = availableAmount;
+        }
+
+        static Match of(Store store, Product product) {
+            return new Match(store.getStoreName(), product.getProductName(), product.getProductType(),
+                    product.getPrice(), product.getAvailableAmount());
+        }
+
+        // One line of JSON, keys as in stores.json
+        String toJson() {
+            return "{\"StoreName\": " + StoreJson.quote(storeName)
+                    + ", \"ProductName\": " + StoreJson.quote(productName)
+                    + ", \"ProductType\": " + StoreJson.quote(productType)
+                    + ", \"Price\": " + price
+                    + ", \"Available Amount\": " + availableAmount + "}";
+        }
+
+        static Match read(JsonReader reader) throws IOException {
+            String storeName = "";
+            String productName = "";
+            String productType = "";
+            double price = 0;
+            int availableAmount = 0;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "StoreName":
+                        storeName = reader.nextString();
+                        break;
+                    case "ProductName":
+                        productName = reader.nextString();
+                        break;
+                    case "ProductType":
+                        productType = reader.nextString();
+                        break;
+                    case "Price":
+                        price = reader.nextDouble();
+                        break;
+                    case "Available Amount":
+                        availableAmount = reader.nextInt();
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return new Match(storeName, productName, productType, price, availableAmount);
+        }
+    }
+
+    // A Worker's reply: its matches in order, as a JSON array on one line
+    static String toJson(List<Match> matches) {
+        StringBuilder json = new StringBuilder("[");
+        for (Match match : matches) {
+            if (json.length() > 1) json.append(", ");
+            json.append(match.toJson());
+        }
+        return json.append(']').toString();
+    }
+
+    static List<Match> readAll(String json) throws IOException {
+        List<Match> matches = new ArrayList<>();
+        JsonReader reader = new JsonReader(json);
+        reader.beginArray();
+        while (reader.hasNext()) {
+            matches.add(Match.read(reader));
+        }
+        reader.endArray();
+        return matches;
+    }
+}
@@ -1,15 +1,17 @@
 package com.example.backend;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class Product {
     private String productName;
     private String productType;
-    private int availableAmount;
+    private final AtomicInteger availableAmount;
     private double price;
 
     public Product(String productName, String productType, int availableAmount, double price) {
         this.productName = productName;
         this.productType = productType;
-        this.availableAmount = availableAmount;
+        this.availableAmount = new AtomicInteger(availableAmount);
         this.price = price;
     }
 
@@ -17,8 +19,17 @@ public class Product {
     public void setProductName(String productName) { this.productName = productName; }
     public String getProductType() { return productType; }
     public void setProductType(String productType) { this.productType = productType; }
-    public int getAvailableAmount() { return availableAmount; }
-    public void setAvailableAmount(int availableAmount) { this.availableAmount = availableAmount; }
+    public int getAvailableAmount() { return availableAmount.get(); }
+    public void setAvailableAmount(int availableAmount) { this.availableAmount.set(availableAmount); }
     public double getPrice() { return price; }
     public void setPrice(double price) { this.price = price; }
-}
\ No newline at end of file
+
+    // Takes quantity out of the stock with a compare-and-set, unless that would leave it negative
+    public boolean tryReserve(int quantity) {
+        while (true) {
+            int available = availableAmount.get();
+            if (available < quantity) return false;
+            if (availableAmount.compareAndSet(available, available - quantity)) return true;
+        }
+    }
+}
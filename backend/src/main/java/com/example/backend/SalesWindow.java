@@ -0,0 +1,76 @@
+package com.example.backend;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Recent units sold of one product in one store, in two rings of fixed size: one bucket per
+// second for the last minute, and one per minute for the last -Dworker.salesWindowMinutes
+// (60 by default). A bucket is a long: the second (or minute) it counts in the high half,
+// units in the low half. A sale adds to its second's and its minute's bucket with a
+// compare-and-set, resetting a bucket left over from an earlier turn of the ring, so buyers
+// never lock and the memory is the same however many sales there are.
+//
+// A window of up to 60 seconds is counted by the second. Longer ones are whole minutes:
+// "the last 5 minutes" is the current minute so far and the 4 before it.
+class SalesWindow {
+    static final int MINUTES = Integer.getInteger("worker.salesWindowMinutes", 60);
+    static final String PREFIX = "WINDOW=";
+    private static final int SECONDS = 60;
+
+    private final AtomicLongArray seconds = new AtomicLongArray(SECONDS);
+    private final AtomicLongArray minutes = new AtomicLongArray(MINUTES);
+
+    static long now() {
+        return System.currentTimeMillis() / 1000;
+    }
+
+    void record(long second, int quantity) {
+        add(seconds, second, quantity);
+        add(minutes, second / 60, quantity);
+    }
+
+    // Units in the window of this many seconds ending at second
+    int units(long second, int windowSeconds) {
+        if (windowSeconds <= SECONDS) return sum(seconds, second, windowSeconds);
+        return sum(minutes, second / 60, (windowSeconds + 59) / 60);
+    }
+
+    private static void add(AtomicLongArray ring, long stamp, int quantity) {
+        int slot = (int) (stamp % ring.length());
+        while (true) {
+            long bucket = ring.get(slot);
+            long updated = (bucket >>> 32) == stamp ? bucket + quantity : (stamp << 32) | quantity;
+            if (ring.compareAndSet(slot, bucket, updated)) return;
+        }
+    }
+
+    // The buckets stamped with the last count stamps up to stamp
+    private static int sum(AtomicLongArray ring, long stamp, int count) {
+        int units = 0;
+        for (int i = 0; i < count; i++) {
+            long bucket = ring.get((int) ((stamp - i) % ring.length()));
+            if ((bucket >>> 32) == stamp - i) units += (int) bucket;
+        }
+        return units;
+    }
+
+    // "30s", "5m": the window in seconds; up to the minutes the rings keep
+    static int parseWindow(String window) {
+        int seconds;
+        try {
+            int amount = Integer.parseInt(window.substring(0, window.length() - 1));
+            if (window.endsWith("s")) {
+                seconds = amount;
+            } else if (window.endsWith("m")) {
+                seconds = amount * 60;
+            } else {
+                throw new IllegalArgumentException("expected a window like 30s or 5m, not " + window);
+            }
+        } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("expected a window like 30s or 5m, not " + window);
+        }
+        if (seconds < 1 || seconds > MINUTES * 60) {
+            throw new IllegalArgumentException("window must be 1s to " + MINUTES + "m");
+        }
+        return seconds;
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.backend;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+
+// Fans a request out to many workers at once and folds each reply into a shared
+// accumulator as soon as it arrives. A worker that misses its deadline is dropped from
+// the result instead of holding up the whole query; an accumulator that is a Partial is told,
+// so that the reply can say it is incomplete.
+class ScatterGather {
+    static final long DEFAULT_DEADLINE_MS = Long.getLong("master.workerDeadlineMs", 5000);
+
+    private ScatterGather() {
+    }
+
+    // The workers left out of a result
+    static class Partial {
+        private final Set<WorkerConnection> missing = new HashSet<>();
+
+        void missed(WorkerConnection worker) {
+            missing.add(worker);
+        }
+
+        void missedAll(Partial other) {
+            missing.addAll(other.missing);
+        }
+
+        // The line a reply ends with when workers are missing, after a newline; else ""
+        String partialNote() {
+            return missing.isEmpty() ? "" : "\nPartial result: " + missing.size() + " worker(s) did not answer";
+        }
+    }
+
+    // Each worker gets its own request, e.g. a query restricted to the partitions it reads.
+    // The call decides how a reply is decoded, e.g. WorkerConnection::sendSalesQueryAsync.
+    static <R, A> A gather(Map<WorkerConnection, String> requests,
+                           BiFunction<WorkerConnection, String, CompletableFuture<R>> call,
+                           long deadlineMs, A accumulator, BiConsumer<A, R> reducer) {
+        List<CompletableFuture<Void>> calls = new ArrayList<>(requests.size());
+        for (Map.Entry<WorkerConnection, String> entry : requests.entrySet()) {
+            WorkerConnection worker = entry.getKey();
+            String request = entry.getValue();
+            calls.add(call.apply(worker, request)
+                    .orTimeout(deadlineMs, TimeUnit.MILLISECONDS)
+                    .handle((reply, error) -> {
+                        if (error != null) {
+                            Throwable cause = error instanceof CompletionException && error.getCause() != null
+                                    ? error.getCause() : error;
+                            if (cause instanceof TimeoutException) {
+                                System.err.println("Worker at " + worker.getPort() + " missed the " + deadlineMs
+                                        + "ms deadline for: " + request);
+                            } else {
+                                System.err.println("Error communicating with worker at " + worker.getPort()
+                                        + ": " + cause.getMessage());
+                            }
+                            if (accumulator instanceof Partial) {
+                                synchronized (accumulator) {
+                                    ((Partial) accumulator).missed(worker);
+                                }
+                            }
+                            return null;
+                        }
+                        synchronized (accumulator) {
+                            reducer.accept(accumulator, reply);
+                        }
+                        return null;
+                    }));
+        }
+        CompletableFuture.allOf(calls.toArray(new CompletableFuture<?>[0])).join();
+        return accumulator;
+    }
+}
@@ -1,11 +1,36 @@
 package com.example.backend;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.ObjIntConsumer;
 
+// Purchases hold the store's lock shared, so any number of them run at once: stock is
+// reserved with a compare-and-set on the product and sales are atomic counters. Everything
+// else that changes the store, or must see it whole (snapshots, exports, digests), holds the
+// lock exclusively. Reads for analytics take no lock. The product list is copy-on-write
+// (products change rarely) and handed out as a read-only view.
+// Every product name the store lists or has sales of gets a dense id; sales are a long per
+// id, so recording and reading them neither boxes nor allocates. Sales are also rolled up
+// as they are recorded: the store's total and the total per product type of its listed
+// products, so analytics read one counter instead of summing. The price category is kept
+// the same way, from the sum and count of listed prices, as products are added and removed.
+// With -Dworker.catalog=offheap the per-id data (listed product, stock, price, sales) lives
+// in OffHeapProducts instead of objects; only products listed again under a name already
+// listed are kept as objects. Products are then handed out as copies.
 public class Store {
+    // The outcome of a purchase; only COMPLETED changes the store
+    public enum Purchase { COMPLETED, SOLD_OUT, UNKNOWN_PRODUCT }
+
     private String storeName;
     private double latitude;
     private double longitude;
@@ -13,11 +38,55 @@ public class Store {
     private int stars;
     private int noOfVotes;
     private String storeLogo;
-    private List<Product> products;
-    private Map<String, Integer> sales;
+    private final List<Product> products = new CopyOnWriteArrayList<>();
+    private final List<Product> productsView = Collections.unmodifiableList(products);
+    private final Map<String, Integer> productIds = new ConcurrentHashMap<>();
+    private volatile ProductTable table = new ProductTable(4);
+    private final OffHeapProducts offHeap;
+    private final Map<String, LongAdder> salesByType = new ConcurrentHashMap<>();
+    private final LongAdder totalSales = new LongAdder();
+    // Listed prices in cents, so that removing a product takes off exactly what adding it put on
+    private long listedPriceCents;
+    private int listedPrices;
+    private volatile String priceCategory = "";
+    // Units bought through the Worker by time, per product name; not carried over by snapshots,
+    // recovery or moves to another worker
+    private final Map<String, SalesWindow> recentSales = new ConcurrentHashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final int partition;
+    private final AtomicLong walSeq = new AtomicLong(); // last WorkerStorage record applied to this store
+
+    // Per product id. Replaced by a larger copy under the exclusive lock; an id is put in
+    // productIds only once the table has room for it.
+    private static class ProductTable {
+        final String[] names;
+        final Product[] listed;       // first listed product with the name, null if not listed
+        final LongAdder[] typeSales;  // the product type rollup its sales count toward, null if not listed
+        final AtomicLongArray sales;
+        final int size;
+
+        ProductTable(int capacity) {
+            this(new String[capacity], new Product[capacity], new LongAdder[capacity], new AtomicLongArray(capacity), 0);
+        }
+
+        ProductTable(String[] names, Product[] listed, LongAdder[] typeSales, AtomicLongArray sales, int size) {
+            this.names = names;
+            this.listed = listed;
+            this.typeSales = typeSales;
+            this.sales = sales;
+            this.size = size;
+        }
+    }
 
     public Store(String storeName, double latitude, double longitude, String foodCategory,
                  int stars, int noOfVotes, String storeLogo) {
+        this(storeName, latitude, longitude, foodCategory, stars, noOfVotes, storeLogo, OffHeapProducts.ENABLED);
+    }
+
+    // With either catalog regardless of -Dworker.catalog, for tests
+    Store(String storeName, double latitude, double longitude, String foodCategory,
+          int stars, int noOfVotes, String storeLogo, boolean offHeap) {
+        this.offHeap = offHeap ? new OffHeapProducts() : null;
         this.storeName = storeName;
         this.latitude = latitude;
         this.longitude = longitude;
@@ -25,51 +94,355 @@ public class Store {
         this.stars = stars;
         this.noOfVotes = noOfVotes;
         this.storeLogo = storeLogo;
-        this.products = new ArrayList<>();
-        this.sales = new ConcurrentHashMap<>();
+        this.partition = Placement.partitionOf(storeName);
+    }
+
+    // Held shared by purchases (see purchaseProduct)
+    public Lock purchaseLock() {
+        return lock.readLock();
     }
 
-    public synchronized void addProduct(Product product) {
-        products.add(product);
+    // Held by every other change, and by readers that need products, stock and sales to agree
+    public Lock exclusiveLock() {
+        return lock.writeLock();
     }
 
-    public synchronized void removeProduct(String productName) {
+    public void addProduct(Product product) {
+        Lock exclusive = exclusiveLock();
+        exclusive.lock();
+        try {
+            countPrice(product.getPrice(), 1);
+            if (offHeap != null) {
+                addOffHeap(product);
+                return;
+            }
+            products.add(product);
+            int id = idOf(product.getProductName());
+            ProductTable t = table;
+            if (t.listed[id] == null) {
+                t.listed[id] = product;
+                t.typeSales[id] = salesByType.computeIfAbsent(product.getProductType(), k -> new LongAdder());
+                t.typeSales[id].add(t.sales.get(id));
+            }
+        } finally {
+            exclusive.unlock();
+        }
+    }
+
+    public void removeProduct(String productName) {
+        Lock exclusive = exclusiveLock();
+        exclusive.lock();
+        try {
+            for (Product product : getProducts()) {
+                if (product.getProductName().equals(productName)) countPrice(product.getPrice(), -1);
+            }
+            if (offHeap != null) {
+                removeOffHeap(productName);
+                return;
+            }
+            Integer id = productIds.get(productName);
+            ProductTable t = table;
+            if (id != null && t.listed[id] != null) {
+                t.typeSales[id].add(-t.sales.get(id));
+                t.listed[id] = null;
+                t.typeSales[id] = null;
+            }
+            products.removeIf(p -> p.getProductName().equals(productName));
+        } finally {
+            exclusive.unlock();
+        }
+    }
+
+    // Read-only and live; iterating it sees the products as of when the iteration began.
+    // Off-heap, a read-only copy.
+    public List<Product> getProducts() {
+        if (offHeap == null) return productsView;
+        List<Product> copy = new ArrayList<>();
+        for (int id = 0; id < offHeap.size(); id++) {
+            if (offHeap.isListed(id)) copy.add(offHeapProduct(id));
+        }
+        copy.addAll(products);
+        return Collections.unmodifiableList(copy);
+    }
+
+    // The listed product with this name (the first, if several share it), or null. Off-heap,
+    // a copy.
+    public Product getProduct(String productName) {
+        if (offHeap != null) {
+            int id = offHeap.find(productName);
+            return id < 0 || !offHeap.isListed(id) ? null : offHeapProduct(id);
+        }
+        Integer id = productIds.get(productName);
+        return id == null ? null : table.listed[id];
+    }
+
+    // The dense id of a product name the store lists or has sales of, or -1
+    int productId(String productName) {
+        if (offHeap != null) return offHeap.find(productName);
+        Integer id = productIds.get(productName);
+        return id == null ? -1 : id;
+    }
+
+    // Sales carried over from elsewhere (a snapshot, a migrated store); stock is not touched
+    public void recordSale(String productName, int quantity) {
+        Lock exclusive = exclusiveLock();
+        exclusive.lock();
+        try {
+            if (offHeap != null) {
+                addOffHeapSale(offHeap.idOf(productName), quantity);
+                return;
+            }
+            int id = idOf(productName);
+            addSale(table, id, quantity);
+        } finally {
+            exclusive.unlock();
+        }
+    }
+
+    // Call with purchaseLock() held, or while nothing else uses the store (recovery).
+    // Lock-free otherwise: concurrent buyers of one product race on its stock with
+    // compare-and-set, and the store never sells more than it has.
+    public Purchase purchaseProduct(String productName, int quantity) {
+        if (offHeap != null) {
+            int id = offHeap.find(productName);
+            if (id < 0 || !offHeap.isListed(id)) return Purchase.UNKNOWN_PRODUCT;
+            if (!offHeap.tryReserve(id, quantity)) return Purchase.SOLD_OUT;
+            addOffHeapSale(id, quantity);
+            return Purchase.COMPLETED;
+        }
+        Integer id = productIds.get(productName);
+        if (id == null) return Purchase.UNKNOWN_PRODUCT;
+        ProductTable t = table;
+        Product product = t.listed[id];
+        if (product == null) return Purchase.UNKNOWN_PRODUCT;
+        if (!product.tryReserve(quantity)) return Purchase.SOLD_OUT;
+        addSale(t, id, quantity);
+        return Purchase.COMPLETED;
+    }
+
+    private void addSale(ProductTable t, int id, int quantity) {
+        t.sales.addAndGet(id, quantity);
+        totalSales.add(quantity);
+        if (t.typeSales[id] != null) t.typeSales[id].add(quantity);
+    }
+
+    // Off-heap counterparts of the above; called under the exclusive lock, except sales from purchases
+
+    private void addOffHeap(Product product) {
+        int id = offHeap.idOf(product.getProductName());
+        if (offHeap.isListed(id)) {
+            products.add(product); // listed again under the same name: kept, but never bought from
+            return;
+        }
+        offHeap.list(id, product.getProductType(), product.getAvailableAmount(), product.getPrice());
+        salesByType.computeIfAbsent(product.getProductType(), k -> new LongAdder()).add(offHeap.sales(id));
+    }
+
+    private void removeOffHeap(String productName) {
+        int id = offHeap.find(productName);
+        if (id >= 0 && offHeap.isListed(id)) {
+            salesByType.get(offHeap.type(id)).add(-offHeap.sales(id));
+            offHeap.unlist(id);
+        }
         products.removeIf(p -> p.getProductName().equals(productName));
     }
 
-    public synchronized List<Product> getProducts() {
-        return new ArrayList<>(products);
+    private void addOffHeapSale(int id, int quantity) {
+        offHeap.addSales(id, quantity);
+        totalSales.add(quantity);
+        String type = offHeap.type(id);
+        if (type != null) salesByType.get(type).add(quantity);
     }
 
-    public synchronized void recordSale(String productName, int quantity) {
-        sales.put(productName, sales.getOrDefault(productName, 0) + quantity);
+    private Product offHeapProduct(int id) {
+        return new Product(offHeap.name(id), offHeap.type(id), offHeap.stock(id), offHeap.price(id));
     }
 
-    public synchronized Map<String, Integer> getSales() {
-        return new ConcurrentHashMap<>(sales);
+    // Called under the exclusive lock
+    private int idOf(String productName) {
+        Integer existing = productIds.get(productName);
+        if (existing != null) return existing;
+        ProductTable t = table;
+        if (t.size == t.names.length) {
+            int capacity = t.size * 2;
+            AtomicLongArray sales = new AtomicLongArray(capacity);
+            for (int i = 0; i < t.size; i++) {
+                sales.set(i, t.sales.get(i));
+            }
+            t = new ProductTable(Arrays.copyOf(t.names, capacity), Arrays.copyOf(t.listed, capacity),
+                    Arrays.copyOf(t.typeSales, capacity), sales, t.size);
+        }
+        int id = t.size;
+        t.names[id] = productName;
+        table = new ProductTable(t.names, t.listed, t.typeSales, t.sales, id + 1);
+        productIds.put(productName, id);
+        return id;
     }
 
-    // Getters
-    public String getStoreName() { return storeName; }
-    public String getFoodCategory() { return foodCategory; }
-    public int getStars() { return stars; }
-    public int getNoOfVotes() { return noOfVotes; }
-    public String getStoreLogo() { return storeLogo; }
-    public double getLatitude() { return latitude; }
-    public double getLongitude() { return longitude; }
+    // The products with sales, and how many of each were sold; boxes nothing
+    public void forEachSale(ObjIntConsumer<String> action) {
+        if (offHeap != null) {
+            for (int id = 0; id < offHeap.size(); id++) {
+                long sold = offHeap.sales(id);
+                if (sold != 0) action.accept(offHeap.name(id), (int) sold);
+            }
+            return;
+        }
+        ProductTable t = table;
+        for (int id = 0; id < t.size; id++) {
+            long sold = t.sales.get(id);
+            if (sold != 0) action.accept(t.names[id], (int) sold);
+        }
+    }
+
+    public int getSalesCount() {
+        if (offHeap != null) {
+            int count = 0;
+            for (int id = 0; id < offHeap.size(); id++) {
+                if (offHeap.sales(id) != 0) count++;
+            }
+            return count;
+        }
+        ProductTable t = table;
+        int count = 0;
+        for (int id = 0; id < t.size; id++) {
+            if (t.sales.get(id) != 0) count++;
+        }
+        return count;
+    }
+
+    // Lock-free reads for analytics, without allocating
+    public int getSalesOf(String productName) {
+        if (offHeap != null) {
+            int id = offHeap.find(productName);
+            return id < 0 ? 0 : (int) offHeap.sales(id);
+        }
+        Integer id = productIds.get(productName);
+        return id == null ? 0 : (int) table.sales.get(id);
+    }
+
+    public int getTotalSales() {
+        return totalSales.intValue();
+    }
+
+    // A completed purchase, for the windowed queries; lock-free like the purchase
+    public void recordRecentSale(String productName, int quantity) {
+        recordRecentSale(productName, quantity, SalesWindow.now());
+    }
+
+    void recordRecentSale(String productName, int quantity, long second) {
+        recentSales.computeIfAbsent(productName, k -> new SalesWindow()).record(second, quantity);
+    }
+
+    // Units sold in the last windowSeconds (see SalesWindow)
+    public int getRecentSalesOf(String productName, int windowSeconds) {
+        return getRecentSalesOf(productName, windowSeconds, SalesWindow.now());
+    }
+
+    int getRecentSalesOf(String productName, int windowSeconds, long now) {
+        SalesWindow window = recentSales.get(productName);
+        return window == null ? 0 : window.units(now, windowSeconds);
+    }
+
+    public int getRecentTotalSales(int windowSeconds) {
+        return getRecentTotalSales(windowSeconds, SalesWindow.now());
+    }
+
+    int getRecentTotalSales(int windowSeconds, long now) {
+        int total = 0;
+        for (SalesWindow window : recentSales.values()) {
+            total += window.units(now, windowSeconds);
+        }
+        return total;
+    }
 
+    // Of the listed products of this type, as getSalesOfType
+    public int getRecentSalesOfType(String productType, int windowSeconds) {
+        return getRecentSalesOfType(productType, windowSeconds, SalesWindow.now());
+    }
 
-    public void purchaseProduct(String productName, int quantity) {
+    int getRecentSalesOfType(String productType, int windowSeconds, long now) {
+        int total = 0;
+        for (Map.Entry<String, SalesWindow> recent : recentSales.entrySet()) {
+            Product listed = getProduct(recent.getKey());
+            if (listed != null && listed.getProductType().equals(productType)) {
+                total += recent.getValue().units(now, windowSeconds);
+            }
+        }
+        return total;
+    }
 
-        int currentSales = sales.getOrDefault(productName, 0);
-        sales.put(productName, currentSales + quantity);
+    // Sales of the listed products of this type; a removed product's sales stop counting
+    public int getSalesOfType(String productType) {
+        LongAdder sold = salesByType.get(productType);
+        return sold == null ? 0 : sold.intValue();
+    }
+
+    // "$", "$$" or "$$$" by the average price of the listed products (up to 5, up to 15,
+    // above), or "" while none are listed
+    public String getPriceCategory() {
+        return priceCategory;
+    }
+
+    // Called under the exclusive lock as a product is listed (count 1) or removed (-1)
+    private void countPrice(double price, int count) {
+        listedPriceCents += count * Math.round(price * 100);
+        listedPrices += count;
+        priceCategory = listedPrices == 0 ? "" : priceCategoryOf(listedPriceCents, listedPrices);
+    }
+
+    static String priceCategoryOf(long totalCents, int count) {
+        return totalCents <= 500L * count ? "$" : totalCents <= 1500L * count ? "$$" : "$$$";
+    }
 
+    // Whether any listed product is in stock
+    public boolean isAvailable() {
+        for (Product product : getProducts()) {
+            if (product.getAvailableAmount() > 0) return true;
+        }
+        return false;
+    }
 
-        for (Product product : products) {
-            if (product.getProductName().equals(productName)) {
-                product.setAvailableAmount(product.getAvailableAmount() - quantity);
-                break;
+    // Hash of the store's contents. Replicas that applied the same changes have the same
+    // digest, which lets Master find the stores a restarted worker is missing changes for.
+    // Entries are combined by addition so the order of products and sales does not matter.
+    public int digest() {
+        long hash = mix(mix(mix(storeName.hashCode()) ^ foodCategory.hashCode()) ^ storeLogo.hashCode());
+        hash = mix(hash ^ Double.doubleToLongBits(latitude)) + mix(Double.doubleToLongBits(longitude) ^ stars)
+                + mix(noOfVotes);
+        Lock exclusive = exclusiveLock();
+        exclusive.lock();
+        try {
+            for (Product p : getProducts()) {
+                hash += mix(mix(mix(mix(p.getProductName().hashCode()) ^ p.getProductType().hashCode())
+                        ^ p.getAvailableAmount()) ^ Double.doubleToLongBits(p.getPrice()));
             }
+            long[] sales = {0};
+            forEachSale((productName, sold) -> sales[0] += mix(mix(~(long) productName.hashCode()) ^ sold));
+            hash += sales[0];
+        } finally {
+            exclusive.unlock();
         }
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
     }
+
+    // Getters
+    public String getStoreName() { return storeName; }
+    public String getFoodCategory() { return foodCategory; }
+    public int getStars() { return stars; }
+    public int getNoOfVotes() { return noOfVotes; }
+    public String getStoreLogo() { return storeLogo; }
+    public double getLatitude() { return latitude; }
+    public double getLongitude() { return longitude; }
+    public int getPartition() { return partition; }
+    public long getWalSeq() { return walSeq.get(); }
+    // Purchases log concurrently, so their sequence numbers may arrive out of order
+    public void setWalSeq(long walSeq) { this.walSeq.accumulateAndGet(walSeq, Math::max); }
 }
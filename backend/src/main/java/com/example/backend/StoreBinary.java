@@ -0,0 +1,156 @@
+package com.example.backend;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Store <-> compact binary records, used by WorkerStorage for log records and snapshot.bin.
+// Strings go through a dictionary: the first occurrence is written inline and later ones
+// as a back reference, so the categories, product types and product names repeated across
+// a snapshot are stored, and allocated on load, once.
+//
+// Store:   ref name, double latitude, double longitude, ref category, varint stars,
+//          varint votes, ref logo, varint product count, products,
+//          varint sales count, (ref product, zigzag quantity) pairs
+// Product: ref name, ref type, zigzag available amount, double price
+// Ref:     varint 0 followed by a string (a new dictionary entry), or varint index + 1
+// Doubles are 8 bytes big-endian; strings and varints are as in WireProtocol.
+class StoreBinary {
+    private StoreBinary() {
+    }
+
+    static class Writer {
+        private final Map<String, Integer> dictionary = new HashMap<>();
+
+        // Call with the store's exclusive lock held so products and sales are from the same moment
+        void write(WireProtocol.Encoder out, Store store) {
+            ref(out, store.getStoreName());
+            out.putLong(Double.doubleToRawLongBits(store.getLatitude()));
+            out.putLong(Double.doubleToRawLongBits(store.getLongitude()));
+            ref(out, store.getFoodCategory());
+            out.varint(store.getStars());
+            out.varint(store.getNoOfVotes());
+            ref(out, store.getStoreLogo());
+            List<Product> products = store.getProducts();
+            out.varint(products.size());
+            for (Product product : products) {
+                ref(out, product.getProductName());
+                ref(out, product.getProductType());
+                out.varint(zigZag(product.getAvailableAmount()));
+                out.putLong(Double.doubleToRawLongBits(product.getPrice()));
+            }
+            out.varint(store.getSalesCount());
+            store.forEachSale((productName, quantity) -> {
+                ref(out, productName);
+                out.varint(zigZag(quantity));
+            });
+        }
+
+        private void ref(WireProtocol.Encoder out, String value) {
+            Integer id = dictionary.get(value);
+            if (id != null) {
+                out.varint(id + 1);
+                return;
+            }
+            dictionary.put(value, dictionary.size());
+            out.varint(0).string(value);
+        }
+    }
+
+    // Decodes from a heap or mapped buffer; the buffer's position advances past what is read
+    static class Reader {
+        private final ByteBuffer in;
+        private final List<String> dictionary = new ArrayList<>();
+        private byte[] scratch = new byte[256];
+
+        Reader(ByteBuffer in) {
+            this.in = in;
+        }
+
+        boolean hasRemaining() {
+            return in.hasRemaining();
+        }
+
+        Store readStore() throws IOException {
+            try {
+                Store store = new Store(ref(), in.getDouble(), in.getDouble(), ref(),
+                        (int) varint(), (int) varint(), ref());
+                int productCount = count();
+                for (int i = 0; i < productCount; i++) {
+                    String name = ref();
+                    String type = ref();
+                    int amount = unZigZag(varint());
+                    store.addProduct(new Product(name, type, amount, in.getDouble()));
+                }
+                int salesCount = count();
+                for (int i = 0; i < salesCount; i++) {
+                    store.recordSale(ref(), unZigZag(varint()));
+                }
+                return store;
+            } catch (BufferUnderflowException e) {
+                throw new EOFException("Truncated store record");
+            }
+        }
+
+        byte get() throws IOException {
+            if (!in.hasRemaining()) throw new EOFException("Truncated record");
+            return in.get();
+        }
+
+        long varint() throws IOException {
+            byte first = get();
+            if (first >= 0) return first; // most counts, amounts and dictionary references
+            long value = first & 0x7F;
+            for (int shift = 7; shift < 64; shift += 7) {
+                byte b = get();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new IOException("Varint too long");
+        }
+
+        String string() throws IOException {
+            int length = (int) varint();
+            if (length < 0 || length > in.remaining()) throw new EOFException("Truncated string");
+            if (in.hasArray()) {
+                String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+                in.position(in.position() + length);
+                return value;
+            }
+            if (scratch.length < length) scratch = new byte[Math.max(length, scratch.length * 2)];
+            in.get(scratch, 0, length);
+            return new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+
+        private String ref() throws IOException {
+            long id = varint();
+            if (id == 0) {
+                String value = string();
+                dictionary.add(value);
+                return value;
+            }
+            if (id > dictionary.size()) throw new IOException("Unknown dictionary entry " + (id - 1));
+            return dictionary.get((int) (id - 1));
+        }
+
+        private int count() throws IOException {
+            long count = varint();
+            if (count > in.remaining()) throw new EOFException("Truncated store record");
+            return (int) count;
+        }
+    }
+
+    static long zigZag(int value) {
+        return ((long) value << 1) ^ (value >> 31);
+    }
+
+    static int unZigZag(long value) {
+        return (int) ((value >>> 1) ^ -(value & 1));
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.backend;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Secondary indexes over a Worker's stores, so GET_SALES_* queries visit only the stores
+// (and products) that match instead of scanning every store:
+//   food category -> stores
+//   product type  -> store -> names of its products of that type (a short copy-on-write list)
+//   product name  -> stores that list the product or have sales of it
+//   price         -> the products listed at that price and their stores, in price order
+// Writers update the index while holding the store's lock stripe, so changes to one store
+// are applied in order; readers take no lock. A replaced store's new entries are added
+// before the old ones are removed, so a concurrent query sees at least one of the two.
+//
+// A key goes away with its last entry, so churn does not leave empty sets behind. Stores of
+// different stripes share keys, so an entry is added and a key removed inside the map's
+// compute for that key (for prices, under the price's lock stripe, as the skip list's
+// compute is not atomic): an entry is never added to a set that is being removed.
+class StoreIndex {
+    private final Map<String, Set<Store>> byCategory = new ConcurrentHashMap<>();
+    private final Map<String, Map<Store, List<String>>> byProductType = new ConcurrentHashMap<>();
+    private final Map<String, Set<Store>> byProductName = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Double, Set<PricedProduct>> byPrice = new ConcurrentSkipListMap<>();
+    private final LockStripes priceLocks = new LockStripes(64);
+
+    static final class PricedProduct {
+        final Store store;
+        final Product product;
+
+        PricedProduct(Store store, Product product) {
+            this.store = store;
+            this.product = product;
+        }
+    }
+
+    void rebuild(Collection<Store> stores) {
+        byCategory.clear();
+        byProductType.clear();
+        byProductName.clear();
+        byPrice.clear();
+        for (Store store : stores) {
+            add(store);
+        }
+    }
+
+    // Adds a new store, then forgets the one it replaces (if any)
+    void replace(Store previous, Store store) {
+        add(store);
+        if (previous != null && previous != store) remove(previous);
+    }
+
+    void add(Store store) {
+        addTo(byCategory, categoryKey(store.getFoodCategory()), store);
+        for (Product product : store.getProducts()) {
+            addProduct(store, product);
+        }
+        store.forEachSale((productName, quantity) -> addSale(store, productName));
+    }
+
+    void remove(Store store) {
+        removeFrom(byCategory, categoryKey(store.getFoodCategory()), store);
+        for (Product product : store.getProducts()) {
+            byProductType.computeIfPresent(product.getProductType(), (type, ofType) -> {
+                ofType.remove(store);
+                return ofType.isEmpty() ? null : ofType;
+            });
+            removeFrom(byProductName, product.getProductName(), store);
+            removePrice(store, product);
+        }
+        store.forEachSale((productName, quantity) -> removeFrom(byProductName, productName, store));
+    }
+
+    void addProduct(Store store, Product product) {
+        byProductType.compute(product.getProductType(), (type, ofType) -> {
+            if (ofType == null) ofType = new ConcurrentHashMap<>();
+            List<String> names = ofType.computeIfAbsent(store, k -> new CopyOnWriteArrayList<>());
+            if (!names.contains(product.getProductName())) names.add(product.getProductName());
+            return ofType;
+        });
+        addSale(store, product.getProductName());
+        synchronized (priceLocks.forHash(Double.hashCode(product.getPrice()))) {
+            byPrice.computeIfAbsent(product.getPrice(), k -> ConcurrentHashMap.newKeySet()).add(new PricedProduct(store, product));
+        }
+    }
+
+    // Call after the products are removed from the store; removed are the products taken off
+    void removeProduct(Store store, String productName, Collection<Product> removed) {
+        for (Product product : removed) {
+            removePrice(store, product);
+            byProductType.computeIfPresent(product.getProductType(), (type, ofType) -> {
+                List<String> names = ofType.get(store);
+                if (names != null) {
+                    names.remove(productName);
+                    if (names.isEmpty()) ofType.remove(store);
+                }
+                return ofType.isEmpty() ? null : ofType;
+            });
+        }
+        // Sales of a removed product still count for GET_SALES_BY_PRODUCT
+        if (store.getSalesOf(productName) == 0) {
+            removeFrom(byProductName, productName, store);
+        }
+    }
+
+    // A purchase may record sales of a product the store does not list
+    void addSale(Store store, String productName) {
+        Set<Store> selling = byProductName.get(productName);
+        if (selling != null && selling.contains(store)) return; // the usual case on a BUY
+        addTo(byProductName, productName, store);
+    }
+
+    private static void addTo(Map<String, Set<Store>> index, String key, Store store) {
+        index.compute(key, (k, stores) -> {
+            if (stores == null) stores = ConcurrentHashMap.newKeySet();
+            stores.add(store);
+            return stores;
+        });
+    }
+
+    private static void removeFrom(Map<String, Set<Store>> index, String key, Store store) {
+        index.computeIfPresent(key, (k, stores) -> {
+            stores.remove(store);
+            return stores.isEmpty() ? null : stores;
+        });
+    }
+
+    // Keys across the indexes; emptied keys are removed
+    int keyCount() {
+        return byCategory.size() + byProductType.size() + byProductName.size() + byPrice.size();
+    }
+
+    Set<Store> storesInCategory(String foodCategory) {
+        return byCategory.getOrDefault(categoryKey(foodCategory), Collections.emptySet());
+    }
+
+    Set<Store> storesWithType(String productType) {
+        return byProductType.getOrDefault(productType, Collections.emptyMap()).keySet();
+    }
+
+    Set<Store> storesSelling(String productName) {
+        return byProductName.getOrDefault(productName, Collections.emptySet());
+    }
+
+    // Prices from min to max, cheapest first, each with the products listed at it
+    NavigableMap<Double, Set<PricedProduct>> productsPricedBetween(double min, double max) {
+        return byPrice.subMap(min, true, max, true);
+    }
+
+    // Every entry for the store's products of that name at the product's price
+    private void removePrice(Store store, Product product) {
+        synchronized (priceLocks.forHash(Double.hashCode(product.getPrice()))) {
+            Set<PricedProduct> atPrice = byPrice.get(product.getPrice());
+            if (atPrice != null) {
+                atPrice.removeIf(p -> p.store == store && p.product.getProductName().equals(product.getProductName()));
+                if (atPrice.isEmpty()) byPrice.remove(product.getPrice());
+            }
+        }
+    }
+
+    // Walking an entry that lists most of the stores costs more than a scan of the stores map
+    // (its hash set visits them in a cache-unfriendly order), so queries scan instead
+    static boolean isBroad(int matches, int stores) {
+        return matches * 2L > stores;
+    }
+
+    // Categories match case-insensitively and without surrounding quotes
+    static String categoryKey(String foodCategory) {
+        return foodCategory.replaceAll("^\"|\"$", "").toLowerCase(Locale.ROOT);
+    }
+}
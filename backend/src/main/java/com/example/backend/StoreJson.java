@@ -0,0 +1,207 @@
+package com.example.backend;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Store <-> JSON in the stores.json layout, shared by Master and Worker.
+// "Sales" is only present on stores exported for migration.
+class StoreJson {
+    private StoreJson() {
+    }
+
+    // Reads one store object; returns null (after consuming it) if it has no StoreName
+    static Store read(JsonReader reader) throws IOException {
+        String storeName = null;
+        double latitude = 0;
+        double longitude = 0;
+        String foodCategory = "";
+        int stars = 0;
+        int noOfVotes = 0;
+        String storeLogo = "";
+        List<Product> products = new ArrayList<>();
+        Map<String, Integer> sales = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "StoreName":
+                    storeName = reader.nextString();
+                    break;
+                case "Latitude":
+                    latitude = reader.nextDouble();
+                    break;
+                case "Longitude":
+                    longitude = reader.nextDouble();
+                    break;
+                case "FoodCategory":
+                    foodCategory = orEmpty(reader.nextString());
+                    break;
+                case "Stars":
+                    stars = reader.nextInt();
+                    break;
+                case "NoOfVotes":
+                    noOfVotes = reader.nextInt();
+                    break;
+                case "StoreLogo":
+                    storeLogo = orEmpty(reader.nextString());
+                    break;
+                case "Products":
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        products.add(readProduct(reader));
+                    }
+                    reader.endArray();
+                    break;
+                case "Sales":
+                    sales = new HashMap<>();
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        sales.put(reader.nextName(), reader.nextInt());
+                    }
+                    reader.endObject();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (storeName == null || storeName.isEmpty()) return null;
+        Store store = new Store(storeName, latitude, longitude, foodCategory, stars, noOfVotes, storeLogo);
+        for (Product product : products) {
+            store.addProduct(product);
+        }
+        if (sales != null) {
+            for (Map.Entry<String, Integer> sale : sales.entrySet()) {
+                store.recordSale(sale.getKey(), sale.getValue());
+            }
+        }
+        return store;
+    }
+
+    static Store read(String json) throws IOException {
+        return read(new JsonReader(json));
+    }
+
+    // StoreName of a store object without building the store, or "" if it has none
+    static String readStoreName(String json) {
+        try {
+            JsonReader reader = new JsonReader(json);
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals("StoreName")) {
+                    return orEmpty(reader.nextString());
+                }
+                reader.skipValue();
+            }
+        } catch (IOException e) {
+            System.err.println("Invalid store JSON: " + e.getMessage());
+        }
+        return "";
+    }
+
+    private static Product readProduct(JsonReader reader) throws IOException {
+        String name = "";
+        String type = "";
+        int amount = 0;
+        double price = 0;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "ProductName":
+                    name = orEmpty(reader.nextString());
+                    break;
+                case "ProductType":
+                    type = orEmpty(reader.nextString());
+                    break;
+                case "Available Amount":
+                    amount = reader.nextInt();
+                    break;
+                case "Price":
+                    price = reader.nextDouble();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new Product(name, type, amount, price);
+    }
+
+    static String write(Store store, boolean includeSales) {
+        StringBuilder json = new StringBuilder(256);
+        json.append("  {\n");
+        json.append("    \"StoreName\": ").append(quote(store.getStoreName())).append(",\n");
+        json.append("    \"Latitude\": ").append(store.getLatitude()).append(",\n");
+        json.append("    \"Longitude\": ").append(store.getLongitude()).append(",\n");
+        json.append("    \"FoodCategory\": ").append(quote(store.getFoodCategory())).append(",\n");
+        json.append("    \"Stars\": ").append(store.getStars()).append(",\n");
+        json.append("    \"NoOfVotes\": ").append(store.getNoOfVotes()).append(",\n");
+        json.append("    \"StoreLogo\": ").append(quote(store.getStoreLogo())).append(",\n");
+        json.append("    \"Products\": [\n");
+        List<Product> products = store.getProducts();
+        for (int i = 0; i < products.size(); i++) {
+            Product p = products.get(i);
+            json.append("      {");
+            json.append("\"ProductName\": ").append(quote(p.getProductName())).append(", ");
+            json.append("\"ProductType\": ").append(quote(p.getProductType())).append(", ");
+            json.append("\"Available Amount\": ").append(p.getAvailableAmount()).append(", ");
+            json.append("\"Price\": ").append(p.getPrice());
+            json.append("}");
+            if (i < products.size() - 1) json.append(",");
+            json.append("\n");
+        }
+        json.append("    ]");
+        if (includeSales) {
+            json.append(",\n    \"Sales\": {");
+            int start = json.length();
+            store.forEachSale((productName, quantity) -> {
+                if (json.length() > start) json.append(", ");
+                json.append(quote(productName)).append(": ").append(quantity);
+            });
+            json.append("}");
+        }
+        json.append("\n  }");
+        return json.toString();
+    }
+
+    static String quote(String value) {
+        StringBuilder quoted = new StringBuilder(value == null ? 2 : value.length() + 2).append('"');
+        if (value != null) {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '"':
+                        quoted.append("\\\"");
+                        break;
+                    case '\\':
+                        quoted.append("\\\\");
+                        break;
+                    case '\n':
+                        quoted.append("\\n");
+                        break;
+                    case '\r':
+                        quoted.append("\\r");
+                        break;
+                    case '\t':
+                        quoted.append("\\t");
+                        break;
+                    default:
+                        if (c < 0x20) {
+                            quoted.append(String.format("\\u%04x", (int) c));
+                        } else {
+                            quoted.append(c);
+                        }
+                }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    private static String orEmpty(String value) {
+        return value == null ? "" : value;
+    }
+}
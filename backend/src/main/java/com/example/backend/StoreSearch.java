@@ -0,0 +1,250 @@
+package com.example.backend;
+
+import java.io.IOException;
+import java.util.*;
+
+// SEARCH: the stores matching a food category, a minimum of stars, a price category and
+// whether they have anything in stock, as compact summaries (no products or sales), best
+// first: most stars, then most votes, then by name. Master sends the predicates to the
+// designated reader of each partition with a limit (everything up to the end of the page
+// asked for, plus one to tell whether another page follows); each Worker returns its best
+// matches in order and Master merges them and cuts out the page.
+//
+// Query: comma-separated; a bare word is the food category, the rest are key=value, e.g.
+//   SEARCH pizzeria,minStars=4,price=$$,available=true,page=1,pageSize=20
+// The limit is Master's, worked out from the page; only Workers' queries carry it.
+class StoreSearch {
+    static final int DEFAULT_PAGE_SIZE = 20;
+    static final int MAX_PAGE_SIZE = 100;
+    static final Comparator<Summary> ORDER = Comparator.comparingInt((Summary s) -> -s.stars)
+            .thenComparingInt(s -> -s.noOfVotes)
+            .thenComparing(s -> s.storeName);
+
+    final String category;      // null for any
+    private final String categoryKey;
+    final int minStars;
+    final String priceCategory; // null for any
+    final boolean available;
+    final int page;
+    final int pageSize;
+    final int limit;            // the most matches a Worker returns
+
+    private StoreSearch(String category, int minStars, String priceCategory, boolean available,
+                        int page, int pageSize, int limit) {
+        this.category = category;
+        this.categoryKey = category == null ? null : StoreIndex.categoryKey(category);
+        this.minStars = minStars;
+        this.priceCategory = priceCategory;
+        this.available = available;
+        this.page = page;
+        this.pageSize = pageSize;
+        this.limit = limit;
+    }
+
+    static StoreSearch parse(String query) {
+        return parse(query, false);
+    }
+
+    // A query as Master sends it (see forWorkers)
+    static StoreSearch parseForWorker(String query) {
+        return parse(query, true);
+    }
+
+    private static StoreSearch parse(String query, boolean fromMaster) {
+        String category = null;
+        String priceCategory = null;
+        int minStars = 0;
+        boolean available = false;
+        int page = 0;
+        int pageSize = DEFAULT_PAGE_SIZE;
+        int limit = -1;
+        for (String term : query.split(",")) {
+            term = term.trim();
+            if (term.isEmpty()) continue;
+            int equals = term.indexOf('=');
+            if (equals == -1) {
+                category = term;
+                continue;
+            }
+            String value = term.substring(equals + 1).trim();
+            try {
+                switch (term.substring(0, equals).trim()) {
+                    case "category":
+                        category = value.isEmpty() ? null : value;
+                        break;
+                    case "minStars":
+                        minStars = Integer.parseInt(value);
+                        break;
+                    case "price":
+                        priceCategory = value.isEmpty() ? null : value;
+                        break;
+                    case "available":
+                        available = Boolean.parseBoolean(value);
+                        break;
+                    case "page":
+                        page = Integer.parseInt(value);
+                        break;
+                    case "pageSize":
+                        pageSize = Integer.parseInt(value);
+                        break;
+                    case "limit":
+                        if (!fromMaster) throw new IllegalArgumentException("unknown term " + term);
+                        limit = Integer.parseInt(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unknown term " + term);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("not a number in " + term);
+            }
+        }
+        if (page < 0 || pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("page must be 0 or more and pageSize 1 to " + MAX_PAGE_SIZE);
+        }
+        if ((page + 1L) * pageSize >= Integer.MAX_VALUE) throw new IllegalArgumentException("page out of range");
+        if (limit < 0) limit = (page + 1) * pageSize + 1;
+        if (limit < 1) throw new IllegalArgumentException("limit must be 1 or more");
+        return new StoreSearch(category, minStars, priceCategory, available, page, pageSize, limit);
+    }
+
+    // The predicates and limit as Master sends them to Workers
+    String forWorkers() {
+        StringBuilder query = new StringBuilder();
+        if (category != null) query.append("category=").append(category).append(',');
+        if (priceCategory != null) query.append("price=").append(priceCategory).append(',');
+        return query.append("minStars=").append(minStars)
+                .append(",available=").append(available)
+                .append(",limit=").append(limit).toString();
+    }
+
+    // Master's reply from the readers' matches (one copy of each store): the page asked for,
+    // one summary per line, then the next page's number if there are more matches
+    String formatPage(Collection<Summary> merged) {
+        List<Summary> matches = new ArrayList<>(merged);
+        matches.sort(ORDER);
+        int from = Math.min(matches.size(), page * pageSize);
+        int to = Math.min(matches.size(), from + pageSize);
+        StringBuilder result = new StringBuilder();
+        for (Summary summary : matches.subList(from, to)) {
+            result.append(summary.toJson()).append("\n");
+        }
+        if (matches.size() > to) result.append("\"nextPage\": ").append(page + 1).append("\n");
+        result.append("\"stores\": ").append(to - from);
+        return result.toString();
+    }
+
+    // Cheapest predicates first; price category and stock look at the products
+    boolean matches(Store store) {
+        if (store.getStars() < minStars) return false;
+        if (categoryKey != null && !StoreIndex.categoryKey(store.getFoodCategory()).equals(categoryKey)) {
+            return false;
+        }
+        if (priceCategory != null && !priceCategory.equals(store.getPriceCategory())) return false;
+        return !available || store.isAvailable();
+    }
+
+    static class Summary {
+        final String storeName;
+        final String foodCategory;
+        final int stars;
+        final int noOfVotes;
+        final String priceCategory;
+        final double latitude;
+        final double longitude;
+        final String storeLogo;
+
+        Summary(String storeName, String foodCategory, int stars, int noOfVotes, String priceCategory,
+                double latitude, double longitude, String storeLogo) {
+            this.storeName = storeName;
+            this.foodCategory = foodCategory;
+            this.stars = stars;
+            this.noOfVotes = noOfVotes;
+            this.priceCategory = priceCategory;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.storeLogo = storeLogo;
+        }
+
+        static Summary of(Store store) {
+            return new Summary(store.getStoreName(), store.getFoodCategory(), store.getStars(), store.getNoOfVotes(),
+                    store.getPriceCategory(), store.getLatitude(), store.getLongitude(), store.getStoreLogo());
+        }
+
+        // One line of JSON, keys as in stores.json
+        String toJson() {
+            return "{\"StoreName\": " + StoreJson.quote(storeName)
+                    + ", \"FoodCategory\": " + StoreJson.quote(foodCategory)
+                    + ", \"Stars\": " + stars
+                    + ", \"NoOfVotes\": " + noOfVotes
+                    + ", \"PriceCategory\": " + StoreJson.quote(priceCategory)
+                    + ", \"Latitude\": " + latitude
+                    + ", \"Longitude\": " + longitude
+                    + ", \"StoreLogo\": " + StoreJson.quote(storeLogo) + "}";
+        }
+
+        static Summary read(JsonReader reader) throws IOException {
+            String storeName = "";
+            String foodCategory = "";
+            int stars = 0;
+            int noOfVotes = 0;
+            String priceCategory = "";
+            double latitude = 0;
+            double longitude = 0;
+            String storeLogo = "";
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "StoreName":
+                        storeName = reader.nextString();
+                        break;
+                    case "FoodCategory":
+                        foodCategory = reader.nextString();
+                        break;
+                    case "Stars":
+                        stars = reader.nextInt();
+                        break;
+                    case "NoOfVotes":
+                        noOfVotes = reader.nextInt();
+                        break;
+                    case "PriceCategory":
+                        priceCategory = reader.nextString();
+                        break;
+                    case "Latitude":
+                        latitude = reader.nextDouble();
+                        break;
+                    case "Longitude":
+                        longitude = reader.nextDouble();
+                        break;
+                    case "StoreLogo":
+                        storeLogo = reader.nextString();
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return new Summary(storeName, foodCategory, stars, noOfVotes, priceCategory, latitude, longitude, storeLogo);
+        }
+    }
+
+    // A Worker's reply: its matches in order, as a JSON array on one line
+    static String toJson(List<Summary> summaries) {
+        StringBuilder json = new StringBuilder("[");
+        for (Summary summary : summaries) {
+            if (json.length() > 1) json.append(", ");
+            json.append(summary.toJson());
+        }
+        return json.append(']').toString();
+    }
+
+    static List<Summary> readAll(String json) throws IOException {
+        List<Summary> summaries = new ArrayList<>();
+        JsonReader reader = new JsonReader(json);
+        reader.beginArray();
+        while (reader.hasNext()) {
+            summaries.add(Summary.read(reader));
+        }
+        reader.endArray();
+        return summaries;
+    }
+}
@@ -0,0 +1,262 @@
+package com.example.backend;
+
+import java.util.*;
+import java.util.function.Function;
+
+// TOP_SALES: the k stores, or the k products (by name, over all stores), with the most
+// units sold, optionally only stores of a food category and sales of a product type, e.g.
+//   TOP_SALES stores,k=10,category=pizzeria
+//   TOP_SALES products,k=10,type=pizza
+// Workers answer GET_SALES_TOP with a bounded heap of their best. Master sends them the
+// same terms plus, for products, the rounds of its merge (see MasterRequestHandler):
+//   min=<units>        every product with at least that many units
+//   names=<n>:<name>...  the units of just those products, each after its length in chars
+//                        (last, and length-prefixed, as names may hold any character)
+class TopSales {
+    static final String SHARED_PREFIX = "SHARED=";
+    static final int DEFAULT_K = 10;
+    static final int MAX_K = 100;
+    // Most units first, then by name
+    static final Comparator<Map.Entry<String, Integer>> ORDER =
+            Comparator.comparingInt((Map.Entry<String, Integer> e) -> -e.getValue()).thenComparing(Map.Entry::getKey);
+
+    final boolean products;    // else stores
+    final int k;
+    final String category;     // null for any
+    private final String categoryKey;
+    final String productType;  // null for any
+    final double min;          // -1 unless asked for every product with at least min units
+    final Set<String> names;   // null unless asked for these products
+
+    private TopSales(boolean products, int k, String category, String productType, double min, Set<String> names) {
+        this.products = products;
+        this.k = k;
+        this.category = category;
+        this.categoryKey = category == null ? null : StoreIndex.categoryKey(category);
+        this.productType = productType;
+        this.min = min;
+        this.names = names;
+    }
+
+    static TopSales parse(String query) {
+        Boolean products = null;
+        int k = DEFAULT_K;
+        String category = null;
+        String productType = null;
+        double min = -1;
+        Set<String> names = null;
+        // The other terms hold no commas, so the first ",names=" starts the names
+        int namesAt = query.startsWith("names=") ? 0 : query.indexOf(",names=");
+        if (namesAt != -1) {
+            names = decodeNames(query.substring(query.indexOf("names=", namesAt) + "names=".length()));
+            query = query.substring(0, namesAt);
+        }
+        for (String term : query.split(",")) {
+            term = term.trim();
+            if (term.isEmpty()) continue;
+            int equals = term.indexOf('=');
+            if (equals == -1) {
+                if (!term.equals("stores") && !term.equals("products")) {
+                    throw new IllegalArgumentException("expected stores or products, not " + term);
+                }
+                products = term.equals("products");
+                continue;
+            }
+            String value = term.substring(equals + 1).trim();
+            try {
+                switch (term.substring(0, equals).trim()) {
+                    case "k":
+                        k = Integer.parseInt(value);
+                        break;
+                    case "category":
+                        category = value.isEmpty() ? null : value;
+                        break;
+                    case "type":
+                        productType = value.isEmpty() ? null : value;
+                        break;
+                    case "min":
+                        min = Double.parseDouble(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unknown term " + term);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("not a number in " + term);
+            }
+        }
+        if (products == null) throw new IllegalArgumentException("expected stores or products first");
+        if (k < 1 || k > MAX_K) throw new IllegalArgumentException("k must be 1 to " + MAX_K);
+        return new TopSales(products, k, category, productType, min, names);
+    }
+
+    // The query as Master sends it to Workers; a round's term goes at the end
+    String forWorkers() {
+        StringBuilder query = new StringBuilder(products ? "products" : "stores").append(",k=").append(k);
+        if (category != null) query.append(",category=").append(category);
+        if (productType != null) query.append(",type=").append(productType);
+        return query.toString();
+    }
+
+    static String encodeNames(Collection<String> names) {
+        StringBuilder encoded = new StringBuilder();
+        for (String name : names) {
+            encoded.append(name.length()).append(':').append(name);
+        }
+        return encoded.toString();
+    }
+
+    private static Set<String> decodeNames(String encoded) {
+        Set<String> names = new LinkedHashSet<>();
+        int at = 0;
+        while (at < encoded.length()) {
+            int colon = encoded.indexOf(':', at);
+            int length;
+            try {
+                length = colon == -1 ? -1 : Integer.parseInt(encoded.substring(at, colon));
+            } catch (NumberFormatException e) {
+                length = -1;
+            }
+            if (length < 0 || colon + 1 + length > encoded.length()) {
+                throw new IllegalArgumentException("malformed names at " + at);
+            }
+            names.add(encoded.substring(colon + 1, colon + 1 + length));
+            at = colon + 1 + length;
+        }
+        return names;
+    }
+
+    boolean inCategory(Store store) {
+        return categoryKey == null || StoreIndex.categoryKey(store.getFoodCategory()).equals(categoryKey);
+    }
+
+    // A worker's units per product, cut down to what the query asks for: the named products,
+    // every product with at least min units, or the k best
+    void select(Map<String, Integer> units, Map<String, Integer> result) {
+        if (names != null) {
+            for (String name : names) {
+                Integer sold = units.get(name);
+                if (sold != null) result.put(name, sold);
+            }
+        } else if (min >= 0) {
+            for (Map.Entry<String, Integer> entry : units.entrySet()) {
+                if (entry.getValue() >= min) result.put(entry.getKey(), entry.getValue());
+            }
+        } else {
+            for (Map.Entry<String, Integer> entry : best(units, k)) {
+                result.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    // Master's merge of the products' units, which are summed over the readers: a product can
+    // be among the cluster's k best without being among any reader's, so it takes up to three
+    // rounds (the TPUT threshold algorithm), each sending only a few names:
+    //   1. each reader's k best (known, as they came back); the k-th best of the sums so far,
+    //      tau, is a floor for the answer
+    //   2. from each reader, every product with at least tau / readers units; one that no
+    //      reader names now sold less than tau overall
+    //   3. the exact units of the products whose best possible sum still reaches the k-th
+    //      best known sum, from the readers that have not reported them
+    // sharedUnits are the units of the stores every reader reads, counted once, like one more
+    // reader whose numbers are all known. round sends each reader in its map the term to add to
+    // forWorkers() and returns their replies, which are added to known. Returns the exact units
+    // of a set of products that holds the k best.
+    <R> Map<String, Integer> mergeProducts(Map<R, Map<String, Integer>> known, Map<String, Integer> sharedUnits,
+                                           Function<Map<R, String>, Map<R, Map<String, Integer>>> round) {
+        // The most units a product a reader has not reported may have there
+        Map<R, Double> unreportedAtMost = new HashMap<>();
+        for (Map.Entry<R, Map<String, Integer>> reply : known.entrySet()) {
+            Collection<Integer> units = reply.getValue().values();
+            unreportedAtMost.put(reply.getKey(), units.size() < k ? 0 : (double) Collections.min(units));
+        }
+
+        double threshold = kthBest(knownSums(known, sharedUnits), k) / Math.max(1, known.size());
+        Map<R, String> requests = new LinkedHashMap<>();
+        for (R reader : known.keySet()) {
+            if (unreportedAtMost.get(reader) > 0 && unreportedAtMost.get(reader) >= threshold) {
+                requests.put(reader, ",min=" + threshold);
+            }
+        }
+        for (Map.Entry<R, Map<String, Integer>> reply : round.apply(requests).entrySet()) {
+            known.get(reply.getKey()).putAll(reply.getValue());
+            unreportedAtMost.put(reply.getKey(), Math.min(unreportedAtMost.get(reply.getKey()), threshold));
+        }
+
+        Map<String, Integer> sums = knownSums(known, sharedUnits);
+        double kth = kthBest(sums, k);
+        Set<String> candidates = new HashSet<>();
+        for (Map.Entry<String, Integer> sum : sums.entrySet()) {
+            double atMost = sum.getValue();
+            for (Map.Entry<R, Map<String, Integer>> reader : known.entrySet()) {
+                if (!reader.getValue().containsKey(sum.getKey())) atMost += unreportedAtMost.get(reader.getKey());
+            }
+            if (atMost >= kth) candidates.add(sum.getKey());
+        }
+        requests.clear();
+        for (Map.Entry<R, Map<String, Integer>> reader : known.entrySet()) {
+            if (unreportedAtMost.get(reader.getKey()) == 0) continue;
+            List<String> missing = new ArrayList<>();
+            for (String candidate : candidates) {
+                if (!reader.getValue().containsKey(candidate)) missing.add(candidate);
+            }
+            if (!missing.isEmpty()) requests.put(reader.getKey(), ",names=" + encodeNames(missing));
+        }
+        for (Map.Entry<R, Map<String, Integer>> reply : round.apply(requests).entrySet()) {
+            known.get(reply.getKey()).putAll(reply.getValue());
+        }
+        sums = knownSums(known, sharedUnits);
+        sums.keySet().retainAll(candidates);
+        return sums;
+    }
+
+    private static <R> Map<String, Integer> knownSums(Map<R, Map<String, Integer>> known, Map<String, Integer> sharedUnits) {
+        Map<String, Integer> sums = new HashMap<>(sharedUnits);
+        for (Map<String, Integer> reply : known.values()) {
+            for (Map.Entry<String, Integer> entry : reply.entrySet()) sums.merge(entry.getKey(), entry.getValue(), Integer::sum);
+        }
+        return sums;
+    }
+
+    // The k-th most units, or 0 if there are fewer than k
+    private static double kthBest(Map<String, Integer> units, int k) {
+        List<Map.Entry<String, Integer>> best = best(units, k);
+        return best.size() < k ? 0 : best.get(k - 1).getValue();
+    }
+
+    // The k best of the units, best first
+    static List<Map.Entry<String, Integer>> best(Map<String, Integer> units, int k) {
+        Best best = new Best(k);
+        for (Map.Entry<String, Integer> entry : units.entrySet()) {
+            best.offer(entry.getKey(), entry.getValue());
+        }
+        return best.sorted();
+    }
+
+    // The k best offered so far
+    static class Best {
+        private final int k;
+        // The worst of the best so far is on top, and goes when a better one comes
+        private final PriorityQueue<Map.Entry<String, Integer>> heap;
+
+        Best(int k) {
+            this.k = k;
+            this.heap = new PriorityQueue<>(k + 1, ORDER.reversed());
+        }
+
+        void offer(String name, int units) {
+            if (heap.size() == k) {
+                Map.Entry<String, Integer> worst = heap.peek();
+                if (units < worst.getValue() || (units == worst.getValue() && name.compareTo(worst.getKey()) > 0)) return;
+            }
+            heap.add(Map.entry(name, units));
+            if (heap.size() > k) heap.poll();
+        }
+
+        // Best first
+        List<Map.Entry<String, Integer>> sorted() {
+            List<Map.Entry<String, Integer>> sorted = new ArrayList<>(heap);
+            sorted.sort(ORDER);
+            return sorted;
+        }
+    }
+}
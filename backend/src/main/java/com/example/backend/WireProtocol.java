@@ -0,0 +1,323 @@
+package com.example.backend;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Framed binary protocol between Master and Worker. Master opens a connection with the
+// HANDSHAKE line; a Worker that answers with the same line switches to frames, anything
+// else (an older Worker answers "Unknown command") keeps the connection on text lines.
+//
+// Frame:   varint payload length, payload
+// Request: varint id, string command, varint count, count strings: the fields of a
+//          FIELDED command, else one string holding its data
+// Reply:   varint id, byte type, then a string (TEXT) or a varint count of
+//          (string store, varint amount) pairs (SALES)
+// Strings are a varint byte length followed by UTF-8, so names may contain ':', '|' or newlines.
+class WireProtocol {
+    static final String HANDSHAKE = "PROTOCOL binary/2";
+    static final String PROPERTY = "master.wireProtocol";
+
+    // Commands whose data is comma-separated fields (store, product, ...), sent as separate
+    // strings so a name may hold a comma
+    static final Set<String> FIELDED = Set.of("ADD_PRODUCT", "REMOVE_PRODUCT", "BUY");
+
+    static final byte TEXT = 0;
+    static final byte SALES = 1;
+
+    // Larger frames are refused by the reader; senders answer an error rather than send one
+    static final int MAX_FRAME = 64 * 1024 * 1024;
+
+    private WireProtocol() {
+    }
+
+    static boolean binaryPreferred() {
+        return !"text".equalsIgnoreCase(System.getProperty(PROPERTY, "binary"));
+    }
+
+    static byte[] request(long id, String command, List<String> arguments) {
+        Encoder encoder = new Encoder().varint(id).string(command).varint(arguments.size());
+        for (String argument : arguments) {
+            encoder.string(argument);
+        }
+        return encoder.toByteArray();
+    }
+
+    static byte[] textReply(long id, String text) {
+        return new Encoder().varint(id).put(TEXT).string(text).toByteArray();
+    }
+
+    static byte[] salesReply(long id, Map<String, Integer> sales) {
+        Encoder encoder = new Encoder().varint(id).put(SALES).varint(sales.size());
+        for (Map.Entry<String, Integer> sale : sales.entrySet()) {
+            encoder.string(sale.getKey()).varint(sale.getValue());
+        }
+        return encoder.toByteArray();
+    }
+
+    // A reply as the caller wants it, whichever protocol carried it
+    static class Reply {
+        private final String text;
+        private final Map<String, Integer> sales;
+
+        Reply(String text) {
+            this.text = text;
+            this.sales = null;
+        }
+
+        Reply(Map<String, Integer> sales) {
+            this.text = null;
+            this.sales = sales;
+        }
+
+        static Reply decode(Decoder payload) throws IOException {
+            byte type = payload.get();
+            if (type == TEXT) return new Reply(payload.string());
+            if (type != SALES) throw new IOException("Unknown reply type " + type);
+            int count = (int) payload.varint();
+            Map<String, Integer> sales = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                sales.put(payload.string(), (int) payload.varint());
+            }
+            return new Reply(sales);
+        }
+
+        String text() {
+            return text != null ? text : formatSales(sales);
+        }
+
+        // A Worker answers a query it could not run with an "Error: " text instead of sales
+        Map<String, Integer> sales() {
+            if (sales != null) return sales;
+            if (text.startsWith("Error: ")) throw new IllegalStateException(text);
+            return parseSales(text);
+        }
+    }
+
+    // Text protocol encoding of sales results: "store:amount|store:amount"
+    static String formatSales(Map<String, Integer> sales) {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, Integer> sale : sales.entrySet()) {
+            if (text.length() > 0) text.append('|');
+            text.append(sale.getKey()).append(':').append(sale.getValue());
+        }
+        return text.toString();
+    }
+
+    static Map<String, Integer> parseSales(String text) {
+        Map<String, Integer> sales = new LinkedHashMap<>();
+        if (text.isEmpty()) return sales;
+        for (String storeSale : text.split("\\|")) {
+            int colon = storeSale.lastIndexOf(':');
+            if (colon <= 0) continue;
+            try {
+                sales.put(storeSale.substring(0, colon), Integer.parseInt(storeSale.substring(colon + 1)));
+            } catch (NumberFormatException e) {
+                System.err.println("Malformed sales entry: " + storeSale);
+            }
+        }
+        return sales;
+    }
+
+    // Text encoding of a FIELDED command's fields: comma-separated and trimmed, except that a
+    // field may be a JSON string, e.g. BUY "Pizza, Pasta & Co",Margherita,2
+    static List<String> splitFields(String data) {
+        List<String> fields = new ArrayList<>();
+        int start = 0;
+        while (true) {
+            int end = start;
+            while (end < data.length() && Character.isWhitespace(data.charAt(end))) end++;
+            String field;
+            if (end < data.length() && data.charAt(end) == '"') {
+                JsonReader reader = new JsonReader(data.substring(end));
+                try {
+                    field = reader.nextString();
+                } catch (IOException e) {
+                    throw new IllegalArgumentException(e.getMessage());
+                }
+                end += (int) reader.offset();
+                while (end < data.length() && Character.isWhitespace(data.charAt(end))) end++;
+                if (end < data.length() && data.charAt(end) != ',') {
+                    throw new IllegalArgumentException("expected ',' after " + StoreJson.quote(field));
+                }
+            } else {
+                end = data.indexOf(',', start);
+                if (end == -1) end = data.length();
+                field = data.substring(start, end).trim();
+            }
+            fields.add(field);
+            if (end >= data.length()) return fields;
+            start = end + 1;
+        }
+    }
+
+    static String joinFields(List<String> fields) {
+        StringBuilder data = new StringBuilder();
+        for (String field : fields) {
+            if (data.length() > 0) data.append(',');
+            boolean plain = field.equals(field.trim()) && !field.startsWith("\"")
+                    && field.indexOf(',') == -1 && field.indexOf('\n') == -1 && field.indexOf('\r') == -1;
+            data.append(plain ? field : StoreJson.quote(field));
+        }
+        return data.toString();
+    }
+
+    // Bytes of the string in UTF-8, without encoding it
+    static int utf8Length(String value) {
+        int bytes = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    static void writeFrame(OutputStream out, byte[] payload) throws IOException {
+        long length = payload.length;
+        while ((length & ~0x7FL) != 0) {
+            out.write((int) ((length & 0x7F) | 0x80));
+            length >>>= 7;
+        }
+        out.write((int) length);
+        out.write(payload);
+    }
+
+    // Returns null at end of stream
+    static byte[] readFrame(InputStream in) throws IOException {
+        int length = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.read();
+            if (b == -1) {
+                if (shift == 0) return null;
+                throw new EOFException("Connection closed inside a frame header");
+            }
+            if (shift > 28) throw new IOException("Frame length varint too long");
+            length |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) break;
+        }
+        if (length < 0 || length > MAX_FRAME) throw new IOException("Frame too large: " + length);
+        byte[] payload = new byte[length];
+        int read = 0;
+        while (read < length) {
+            int n = in.read(payload, read, length - read);
+            if (n == -1) throw new EOFException("Connection closed inside a frame");
+            read += n;
+        }
+        return payload;
+    }
+
+    // Reads one '\n' terminated line without buffering past it, so the same stream can
+    // carry frames afterwards. Returns null at end of stream.
+    static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') {
+            if (b != '\r') line.write(b);
+        }
+        if (b == -1 && line.size() == 0) return null;
+        return line.toString(StandardCharsets.UTF_8);
+    }
+
+    static class Encoder {
+        private byte[] buffer = new byte[64];
+        private int size;
+
+        Encoder put(byte b) {
+            ensure(1);
+            buffer[size++] = b;
+            return this;
+        }
+
+        Encoder put(byte[] bytes) {
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buffer, size, bytes.length);
+            size += bytes.length;
+            return this;
+        }
+
+        // Fixed 8 bytes, big-endian
+        Encoder putLong(long value) {
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buffer[size++] = (byte) (value >>> shift);
+            }
+            return this;
+        }
+
+        Encoder varint(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[size++] = (byte) value;
+            return this;
+        }
+
+        Encoder string(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            varint(bytes.length);
+            return put(bytes);
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, size);
+        }
+
+        void writeTo(OutputStream out) throws IOException {
+            out.write(buffer, 0, size);
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+            }
+        }
+    }
+
+    static class Decoder {
+        private final byte[] buffer;
+        private int position;
+
+        Decoder(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        byte get() throws IOException {
+            if (position >= buffer.length) throw new EOFException("Truncated frame");
+            return buffer[position++];
+        }
+
+        long varint() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = get();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new IOException("Varint too long");
+        }
+
+        String string() throws IOException {
+            int length = (int) varint();
+            if (length < 0 || length > buffer.length - position) throw new EOFException("Truncated string");
+            String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
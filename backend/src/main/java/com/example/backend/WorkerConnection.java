@@ -2,13 +2,30 @@ package com.example.backend;
 
 import java.io.*;
 import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
+// Pipelined connection to a Worker: each request carries an id that the Worker echoes on
+// its reply, so many Master threads can share one socket and replies may come back in any
+// order. The connection speaks WireProtocol frames when the Worker accepts the handshake
+// and falls back to id-prefixed text lines otherwise. A request the Worker has not answered
+// within master.requestTimeoutMs fails with a timeout, so a hung Worker cannot block its callers.
 public class WorkerConnection {
+    private static final int CONNECT_TIMEOUT_MS = Integer.getInteger("master.connectTimeoutMs", 1000);
+    private static final long REQUEST_TIMEOUT_MS = Long.getLong("master.requestTimeoutMs", 30000);
+    private static final boolean PREFER_BINARY = WireProtocol.binaryPreferred();
     private String host;
     private int port;
-    private Socket socket;
-    private PrintWriter out;
-    private BufferedReader in;
+    private Channel channel;
+    private final Object connectLock = new Object();
+    private final AtomicLong nextRequestId = new AtomicLong();
 
     public WorkerConnection(String host, int port) throws IOException {
         this.host = host;
@@ -16,32 +33,245 @@ public class WorkerConnection {
         connect();
     }
 
-    private void connect() throws IOException {
-        socket = new Socket(host, port);
-        out = new PrintWriter(socket.getOutputStream(), true);
-        in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+    private Channel connect() throws IOException {
+        synchronized (connectLock) {
+            if (channel == null || channel.closed) {
+                Socket socket = new Socket();
+                socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MS);
+                channel = new Channel(socket);
+            }
+            return channel;
+        }
     }
 
-    public String sendRequest(String request) throws IOException {
+    public CompletableFuture<String> sendRequestAsync(String request) {
+        return send(request).thenApply(WireProtocol.Reply::text);
+    }
+
+    // GET_SALES_* or GET_DIGESTS query; the reply is store name to number
+    public CompletableFuture<Map<String, Integer>> sendSalesQueryAsync(String request) {
+        return send(request).thenApply(WireProtocol.Reply::sales);
+    }
+
+    private CompletableFuture<WireProtocol.Reply> send(String request) {
+        int space = request.indexOf(' ');
+        String command = space == -1 ? request : request.substring(0, space);
+        String data = space == -1 ? "" : request.substring(space + 1);
+        if (!WireProtocol.FIELDED.contains(command)) return send(command, List.of(data));
         try {
-            request = request.replace("\n", " ").replace("\r", "");
-            out.println(request);
-            return in.readLine();
+            return send(command, WireProtocol.splitFields(data));
+        } catch (IllegalArgumentException e) {
+            CompletableFuture<WireProtocol.Reply> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new IOException("Invalid " + command + " fields: " + e.getMessage()));
+            return failed;
+        }
+    }
+
+    // The fields of a FIELDED command, or the one data string of any other
+    private CompletableFuture<WireProtocol.Reply> send(String command, List<String> arguments) {
+        long id = nextRequestId.incrementAndGet();
+        try {
+            return connect().send(id, command, arguments);
         } catch (IOException e) {
-            connect(); // Reconnect on failure
-            request = request.replace("\n", " ").replace("\r", "");
-            out.println(request);
-            return in.readLine();
+            try {
+                return reconnect().send(id, command, arguments); // Reconnect on failure
+            } catch (IOException retryFailure) {
+                CompletableFuture<WireProtocol.Reply> failed = new CompletableFuture<>();
+                failed.completeExceptionally(retryFailure);
+                return failed;
+            }
+        }
+    }
+
+    public String sendRequest(String request) throws IOException {
+        return await(sendRequestAsync(request));
+    }
+
+    // A FIELDED command (see WireProtocol); names may hold commas
+    public String sendRequest(String command, List<String> fields) throws IOException {
+        return await(send(command, fields).thenApply(WireProtocol.Reply::text));
+    }
+
+    private String await(CompletableFuture<String> reply) throws IOException {
+        try {
+            return reply.get(REQUEST_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new SocketTimeoutException("Worker at " + port + " did not answer within " + REQUEST_TIMEOUT_MS + " ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for worker at " + port);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof TimeoutException) {
+                throw new SocketTimeoutException("Worker at " + port + " did not answer within " + REQUEST_TIMEOUT_MS + " ms");
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private Channel reconnect() throws IOException {
+        synchronized (connectLock) {
+            if (channel != null) channel.close();
+            return connect();
         }
     }
 
     public void close() throws IOException {
-        if (socket != null) socket.close();
-        if (out != null) out.close();
-        if (in != null) in.close();
+        synchronized (connectLock) {
+            if (channel != null) channel.close();
+        }
     }
 
     public int getPort() {
         return port;
     }
-}
\ No newline at end of file
+
+    public String getId() {
+        return host + ":" + port;
+    }
+
+    public boolean isBinary() {
+        synchronized (connectLock) {
+            return channel != null && channel.binary;
+        }
+    }
+
+    private class Channel {
+        private final Socket socket;
+        private final InputStream in;
+        private final OutputStream out;
+        private final boolean binary;
+        private final Map<Long, CompletableFuture<WireProtocol.Reply>> pending = new ConcurrentHashMap<>();
+        private volatile boolean closed;
+
+        Channel(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new BufferedInputStream(socket.getInputStream());
+            this.out = new BufferedOutputStream(socket.getOutputStream());
+            this.binary = PREFER_BINARY && negotiateBinary();
+            ExecutionMode.current().startThread("worker-" + port + "-reader", this::readReplies);
+        }
+
+        private boolean negotiateBinary() throws IOException {
+            out.write((WireProtocol.HANDSHAKE + "\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            socket.setSoTimeout(CONNECT_TIMEOUT_MS);
+            try {
+                String answer = WireProtocol.readLine(in);
+                if (answer == null) throw new EOFException("Worker at " + port + " closed during handshake");
+                if (WireProtocol.HANDSHAKE.equals(answer)) return true;
+                System.out.println("Worker at " + port + " does not speak the binary protocol, using text");
+                return false;
+            } finally {
+                socket.setSoTimeout(0);
+            }
+        }
+
+        CompletableFuture<WireProtocol.Reply> send(long id, String command, List<String> arguments) throws IOException {
+            CompletableFuture<WireProtocol.Reply> future = new CompletableFuture<>();
+            pending.put(id, future);
+            // A reply that never comes must not keep its entry, even when the caller gave up sooner
+            future.orTimeout(REQUEST_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                    .whenComplete((reply, error) -> {
+                        if (error != null) pending.remove(id, future);
+                    });
+            byte[] encoded;
+            if (binary) {
+                encoded = WireProtocol.request(id, command, arguments);
+            } else {
+                String data = WireProtocol.FIELDED.contains(command) ? WireProtocol.joinFields(arguments)
+                        : arguments.get(0).replace("\n", " ").replace("\r", "");
+                String line = id + " " + command + (data.isEmpty() ? "" : " " + data) + "\n";
+                encoded = line.getBytes(StandardCharsets.UTF_8);
+            }
+            if (binary && encoded.length > WireProtocol.MAX_FRAME) {
+                // The Worker would drop the whole connection on it; fails just this request
+                pending.remove(id);
+                future.completeExceptionally(new IOException("Request of " + encoded.length + " bytes is over the "
+                        + WireProtocol.MAX_FRAME + " byte frame limit of worker at " + port));
+                return future;
+            }
+            synchronized (out) {
+                try {
+                    if (binary) {
+                        WireProtocol.writeFrame(out, encoded);
+                    } else {
+                        out.write(encoded);
+                    }
+                    out.flush();
+                } catch (IOException e) {
+                    pending.remove(id);
+                    close();
+                    throw new IOException("Failed to write to worker at " + port, e);
+                }
+            }
+            if (closed && pending.remove(id) != null) {
+                throw new IOException("Connection to worker at " + port + " closed");
+            }
+            return future;
+        }
+
+        private void readReplies() {
+            try {
+                if (binary) {
+                    readFrames();
+                } else {
+                    readLines();
+                }
+            } catch (IOException e) {
+                if (!closed) {
+                    System.err.println("Lost connection to worker at " + port + ": " + e.getMessage());
+                }
+            }
+            close();
+        }
+
+        private void readFrames() throws IOException {
+            byte[] frame;
+            while ((frame = WireProtocol.readFrame(in)) != null) {
+                WireProtocol.Decoder payload = new WireProtocol.Decoder(frame);
+                CompletableFuture<WireProtocol.Reply> future = pending.remove(payload.varint());
+                if (future != null) {
+                    future.complete(WireProtocol.Reply.decode(payload));
+                }
+            }
+        }
+
+        private void readLines() throws IOException {
+            BufferedReader lines = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            String line;
+            while ((line = lines.readLine()) != null) {
+                int space = line.indexOf(' ');
+                String idPart = space == -1 ? line : line.substring(0, space);
+                String reply = space == -1 ? "" : line.substring(space + 1);
+                CompletableFuture<WireProtocol.Reply> future;
+                try {
+                    future = pending.remove(Long.parseLong(idPart));
+                } catch (NumberFormatException e) {
+                    System.err.println("Worker at " + port + " sent a reply without request id: " + line);
+                    continue;
+                }
+                if (future != null) {
+                    future.complete(new WireProtocol.Reply(reply));
+                }
+            }
+        }
+
+        void close() {
+            closed = true;
+            try {
+                socket.close();
+            } catch (IOException e) {
+                System.err.println("Error closing worker socket: " + e.getMessage());
+            }
+            IOException cause = new IOException("Connection to worker at " + port + " closed");
+            for (Long id : pending.keySet()) {
+                CompletableFuture<WireProtocol.Reply> future = pending.remove(id);
+                if (future != null) {
+                    future.completeExceptionally(cause);
+                }
+            }
+        }
+    }
+}
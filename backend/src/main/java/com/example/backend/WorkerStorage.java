@@ -0,0 +1,640 @@
+package com.example.backend;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+// Durability for one Worker: every change is appended to the log and a background
+// compactor periodically writes snapshot.bin. Recovery maps the snapshot and replays the
+// log tail, so a mutation costs one log record, not a rewrite of every store, and a
+// restarted worker is back in about the time it takes to decode the snapshot (see
+// StoreBinary for the record layout).
+//
+// The log is a run of segments, wal-1.log, wal-2.log, ... (wal.log from older workers comes
+// first). A snapshot has the committer start the next segment after its current batch,
+// and once the snapshot is written the compactor deletes the segments before that one,
+// which hold only records it covers; the committer never copies the log.
+//
+// Callers apply a change in memory and log it while holding the store's lock (shared for
+// purchases, exclusive otherwise; the snapshot takes it exclusively); stores are put in
+// (or removed from) the concurrent stores map before their record is logged, so a
+// snapshot that covers a record also sees its effect. Each store remembers the sequence
+// number of its last logged change, which lets the compactor snapshot stores one at a
+// time while mutations go on: on replay a record is skipped if the snapshot already
+// contains it.
+//
+// Log records are frames (see WireProtocol) followed by a CRC32 of the payload; replay
+// stops at the first torn or corrupt record and the log is cut there, dropping any later
+// segments. A batch that cannot be written (or fsynced under ALWAYS) is cut from the log
+// the same way and its writers are told, so a change is acknowledged only once it is in
+// the log.
+//
+// snapshot.bin: int magic, long seq, int store count, (varint walSeq, store) per store
+// sharing one string dictionary, then a CRC32 of everything before it; one that fails the
+// CRC or magic check is set aside and the log replayed without it. snapshot.json and JSON
+// store records from older workers are still read.
+class WorkerStorage {
+    enum FsyncPolicy { ALWAYS, INTERVAL, NEVER }
+
+    static final FsyncPolicy FSYNC = fsyncPolicy(System.getProperty("worker.fsync", "interval"));
+    private static final long FSYNC_INTERVAL_MS = Long.getLong("worker.fsyncIntervalMs", 200);
+    private static final long SNAPSHOT_INTERVAL_MS = Long.getLong("worker.snapshotIntervalMs", 60000);
+    private static final long COMPACT_AFTER_BYTES = Long.getLong("worker.walCompactBytes", 64L * 1024 * 1024);
+
+    private static final byte PUT_STORE_JSON = 1;
+    private static final byte DROP_STORE = 2;
+    private static final byte ADD_PRODUCT = 3;
+    private static final byte REMOVE_PRODUCT = 4;
+    private static final byte PURCHASE = 5;
+    private static final byte PUT_STORE = 6;
+
+    private static final int SNAPSHOT_MAGIC = 0x45465331; // "EFS1"
+    private static final int SNAPSHOT_HEADER = 16;
+
+    private final Map<String, Store> stores;
+    private final Path directory;
+    private final Path snapshotFile;
+    private final Path jsonSnapshotFile;
+    private String epoch = "";
+
+    // Appends: lastSeq and queue are guarded by queueLock
+    private final Object queueLock = new Object();
+    private long lastSeq;
+    private List<byte[]> queue = new ArrayList<>();
+    // A snapshot's request for a new segment, also guarded by queueLock; the committer
+    // answers with the last seq in the segments before the new one and its number (-1 if
+    // it could not start it)
+    private boolean rotateRequested;
+    private long rotatedSeq;
+    private long rotatedSegment;
+
+    // Group commit progress, guarded by this: records up to writtenSeq are done with, and
+    // those in a failed range (first seq to last, merged when adjacent) did not make it
+    private long writtenSeq;
+    private final TreeMap<Long, Long> failedSeqs = new TreeMap<>();
+    private IOException lastFailure;
+    // The first and last record each thread logged since its last awaitLogged
+    private final ThreadLocal<long[]> appendedSeqs = new ThreadLocal<>();
+
+    // The committer's: the segment it appends to and its length
+    private long segment;
+    private FileOutputStream log;
+    private long logBytes;
+    private final Object compactSignal = new Object();
+
+    private static FsyncPolicy fsyncPolicy(String value) {
+        try {
+            return FsyncPolicy.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown fsync policy " + value + ", using " + FsyncPolicy.INTERVAL);
+            return FsyncPolicy.INTERVAL;
+        }
+    }
+
+    WorkerStorage(String directory, Map<String, Store> stores) {
+        this.stores = stores;
+        this.directory = Paths.get(directory);
+        this.snapshotFile = Paths.get(directory, "snapshot.bin");
+        this.jsonSnapshotFile = Paths.get(directory, "snapshot.json");
+    }
+
+    // Rebuilds the stores map from disk; call before start() and before serving requests
+    void recover() throws IOException {
+        long start = System.currentTimeMillis();
+        Map<String, Long> snapshotSeqs = new HashMap<>();
+        long snapshotSeq = Files.exists(snapshotFile)
+                ? readSnapshotOrSetAside(snapshotSeqs) : readJsonSnapshot(snapshotSeqs);
+        long loaded = System.currentTimeMillis() - start;
+        int replayed = 0;
+        long goodBytes = 0;
+        long maxSeq = snapshotSeq;
+        TreeMap<Long, Path> segments = segments();
+        segment = segments.isEmpty() ? 1 : segments.lastKey();
+        for (Map.Entry<Long, Path> entry : segments.entrySet()) {
+            Path file = entry.getValue();
+            goodBytes = 0;
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+                byte[] payload;
+                while ((payload = readRecord(in)) != null) {
+                    goodBytes += recordSize(payload);
+                    StoreBinary.Reader record = new StoreBinary.Reader(ByteBuffer.wrap(payload));
+                    long seq = record.varint();
+                    maxSeq = Math.max(maxSeq, seq);
+                    if (replay(seq, record, snapshotSeq, snapshotSeqs)) replayed++;
+                }
+            }
+            long size = Files.size(file);
+            if (goodBytes < size) {
+                System.err.println("Cutting " + (size - goodBytes) + " bytes of torn or corrupt log at " + file);
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    channel.truncate(goodBytes);
+                }
+                // Later records would be applied without the ones lost here
+                for (Path later : segments.tailMap(entry.getKey(), false).values()) {
+                    System.err.println("Dropping log segment " + later + " after the cut");
+                    Files.delete(later);
+                }
+                segment = entry.getKey();
+                break;
+            }
+        }
+        lastSeq = maxSeq;
+        writtenSeq = maxSeq;
+        logBytes = goodBytes;
+        epoch = maxSeq + "@" + start;
+        System.out.println("Recovered " + stores.size() + " stores (snapshot seq " + snapshotSeq + " loaded in "
+                + loaded + " ms, replayed " + replayed + " log records) in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    // Identifies this run of the worker: the log position it recovered to and when it started.
+    // Master sees a new epoch after a restart and re-syncs the stores that changed meanwhile.
+    String epoch() {
+        return epoch;
+    }
+
+    void start() throws IOException {
+        log = openSegment(segment);
+        ExecutionMode.current().startThread("wal-committer", this::commitLoop);
+        ExecutionMode.current().startThread("wal-compactor", this::compactLoop);
+    }
+
+    long logStore(Store store) {
+        WireProtocol.Encoder body = new WireProtocol.Encoder();
+        new StoreBinary.Writer().write(body, store);
+        byte[] encoded = body.toByteArray();
+        return append(seq -> new WireProtocol.Encoder().varint(seq).put(PUT_STORE).put(encoded));
+    }
+
+    long logDrop(String storeName) {
+        return append(seq -> new WireProtocol.Encoder().varint(seq).put(DROP_STORE).string(storeName));
+    }
+
+    long logAddProduct(String storeName, Product product) {
+        return append(seq -> new WireProtocol.Encoder().varint(seq).put(ADD_PRODUCT).string(storeName)
+                .string(product.getProductName()).string(product.getProductType())
+                .varint(product.getAvailableAmount()).string(Double.toString(product.getPrice())));
+    }
+
+    long logRemoveProduct(String storeName, String productName) {
+        return append(seq -> new WireProtocol.Encoder().varint(seq).put(REMOVE_PRODUCT)
+                .string(storeName).string(productName));
+    }
+
+    long logPurchase(String storeName, String productName, int quantity) {
+        return append(seq -> new WireProtocol.Encoder().varint(seq).put(PURCHASE)
+                .string(storeName).string(productName).varint(StoreBinary.zigZag(quantity)));
+    }
+
+    // Blocks until the changes this thread logged are written (and fsynced under ALWAYS);
+    // throws if they could not be
+    void awaitLogged() throws IOException {
+        long[] appended = appendedSeqs.get();
+        if (appended == null) return;
+        appendedSeqs.remove();
+        synchronized (this) {
+            while (writtenSeq < appended[1]) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for log in " + directory);
+                }
+            }
+            Map.Entry<Long, Long> failed = failedSeqs.floorEntry(appended[1]);
+            if (failed != null && failed.getValue() >= appended[0]) {
+                throw new IOException("Change not logged: " + lastFailure.getMessage(), lastFailure);
+            }
+        }
+    }
+
+    private interface RecordEncoder {
+        WireProtocol.Encoder encode(long seq);
+    }
+
+    private long append(RecordEncoder encoder) {
+        synchronized (queueLock) {
+            long seq = ++lastSeq;
+            queue.add(encoder.encode(seq).toByteArray());
+            queueLock.notifyAll();
+            long[] appended = appendedSeqs.get();
+            if (appended == null) {
+                appendedSeqs.set(new long[] {seq, seq});
+            } else {
+                appended[1] = seq;
+            }
+            return seq;
+        }
+    }
+
+    // Group commit: everything queued while the previous write was in progress goes out
+    // in one write and at most one fsync
+    private void commitLoop() {
+        long lastSync = System.currentTimeMillis();
+        boolean dirty = false;
+        while (true) {
+            List<byte[]> batch;
+            long batchSeq;
+            boolean rotate;
+            long firstSeq;
+            synchronized (queueLock) {
+                while (queue.isEmpty() && !rotateRequested) {
+                    try {
+                        if (dirty && FSYNC == FsyncPolicy.INTERVAL) {
+                            long remaining = FSYNC_INTERVAL_MS - (System.currentTimeMillis() - lastSync);
+                            if (remaining <= 0) break;
+                            queueLock.wait(remaining);
+                        } else {
+                            queueLock.wait();
+                        }
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                batch = queue;
+                queue = new ArrayList<>();
+                firstSeq = lastSeq - batch.size() + 1;
+                batchSeq = lastSeq;
+                rotate = rotateRequested;
+            }
+            long goodBytes = logBytes;
+            IOException failure = null;
+            try {
+                if (!batch.isEmpty()) {
+                    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                    for (byte[] payload : batch) {
+                        writeRecord(buffer, payload);
+                    }
+                    buffer.writeTo(log);
+                    logBytes += buffer.size();
+                    dirty = true;
+                }
+                long now = System.currentTimeMillis();
+                if (dirty && (FSYNC == FsyncPolicy.ALWAYS
+                        || (FSYNC == FsyncPolicy.INTERVAL && now - lastSync >= FSYNC_INTERVAL_MS))) {
+                    log.getChannel().force(false);
+                    lastSync = now;
+                    dirty = false;
+                }
+            } catch (IOException e) {
+                System.err.println("Error writing log " + segmentFile(segment) + ": " + e.getMessage());
+                failure = e;
+                // Whatever part of the batch got out must not be replayed, or be followed by later batches
+                cutLog(goodBytes);
+            }
+            synchronized (this) {
+                if (failure != null && !batch.isEmpty()) {
+                    Map.Entry<Long, Long> previous = failedSeqs.lastEntry();
+                    if (previous != null && previous.getValue() == firstSeq - 1) {
+                        failedSeqs.put(previous.getKey(), batchSeq);
+                    } else {
+                        failedSeqs.put(firstSeq, batchSeq);
+                    }
+                    lastFailure = failure;
+                }
+                writtenSeq = batchSeq;
+                notifyAll();
+            }
+            // After the writers are on their way: every record up to batchSeq is in the segments so far
+            if (rotate) {
+                long next = -1;
+                try {
+                    startSegment();
+                    next = segment;
+                    dirty = false;
+                } catch (IOException e) {
+                    System.err.println("Error starting log segment " + segmentFile(segment + 1) + ": " + e.getMessage());
+                }
+                synchronized (queueLock) {
+                    rotateRequested = false;
+                    rotatedSeq = batchSeq;
+                    rotatedSegment = next;
+                    queueLock.notifyAll();
+                }
+            }
+            if (logBytes > COMPACT_AFTER_BYTES) {
+                synchronized (compactSignal) {
+                    compactSignal.notifyAll();
+                }
+            }
+        }
+    }
+
+    private void compactLoop() {
+        long snapshotSeq = 0;
+        while (true) {
+            synchronized (compactSignal) {
+                try {
+                    compactSignal.wait(SNAPSHOT_INTERVAL_MS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            synchronized (queueLock) {
+                if (lastSeq == snapshotSeq) continue;
+            }
+            try {
+                snapshotSeq = writeSnapshot();
+            } catch (IOException e) {
+                System.err.println("Error writing snapshot " + snapshotFile + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // Returns the sequence number the snapshot covers. Needs the committer (see start).
+    long writeSnapshot() throws IOException {
+        long start = System.currentTimeMillis();
+        long seq;
+        long covered; // the segments before this one
+        synchronized (queueLock) {
+            rotateRequested = true;
+            queueLock.notifyAll();
+            while (rotateRequested) {
+                try {
+                    queueLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for a new log segment in " + directory);
+                }
+            }
+            if (rotatedSegment < 0) throw new IOException("No new log segment to snapshot from");
+            seq = rotatedSeq;
+            covered = rotatedSegment;
+        }
+        // Every store added up to seq is already in the map
+        List<Store> copy = new ArrayList<>(stores.values());
+        Path temp = snapshotFile.resolveSibling("snapshot.bin.tmp");
+        CRC32 crc = new CRC32();
+        try (FileOutputStream file = new FileOutputStream(temp.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+            CheckedOutputStream checked = new CheckedOutputStream(out, crc);
+            DataOutputStream body = new DataOutputStream(checked);
+            body.writeInt(SNAPSHOT_MAGIC);
+            body.writeLong(seq);
+            body.writeInt(copy.size());
+            StoreBinary.Writer writer = new StoreBinary.Writer();
+            for (Store store : copy) {
+                WireProtocol.Encoder record = new WireProtocol.Encoder();
+                Lock exclusive = store.exclusiveLock();
+                exclusive.lock();
+                try {
+                    record.varint(store.getWalSeq());
+                    writer.write(record, store);
+                } finally {
+                    exclusive.unlock();
+                }
+                record.writeTo(checked);
+            }
+            out.writeInt((int) crc.getValue());
+            out.flush();
+            file.getChannel().force(false);
+        }
+        Files.move(temp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.deleteIfExists(jsonSnapshotFile);
+        for (Path file : segments().headMap(covered).values()) {
+            Files.delete(file);
+        }
+        System.out.println("Snapshot of " + copy.size() + " stores at seq " + seq + " written in "
+                + (System.currentTimeMillis() - start) + " ms (" + Files.size(snapshotFile) + " bytes)");
+        return seq;
+    }
+
+    // Runs on the committer thread: the current segment is complete (synced unless the
+    // policy is NEVER) before the next one exists
+    private void startSegment() throws IOException {
+        if (FSYNC != FsyncPolicy.NEVER) log.getChannel().force(false);
+        FileOutputStream next = openSegment(segment + 1);
+        try {
+            log.close();
+        } catch (IOException e) {
+            // Its records are synced or were never acknowledged
+        }
+        log = next;
+        segment++;
+        logBytes = 0;
+    }
+
+    // For appending; tests make its writes fail
+    FileOutputStream openSegment(long number) throws IOException {
+        return new FileOutputStream(segmentFile(number).toFile(), true);
+    }
+
+    private Path segmentFile(long number) {
+        return directory.resolve(number == 0 ? "wal.log" : "wal-" + number + ".log");
+    }
+
+    // The log segments on disk in order; wal.log, from older workers, is number 0
+    private TreeMap<Long, Path> segments() throws IOException {
+        TreeMap<Long, Path> segments = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "wal*.log")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.equals("wal.log")) {
+                    segments.put(0L, file);
+                } else if (name.startsWith("wal-")) {
+                    try {
+                        segments.put(Long.parseLong(name.substring(4, name.length() - 4)), file);
+                    } catch (NumberFormatException e) {
+                        // Not a segment
+                    }
+                }
+            }
+        }
+        return segments;
+    }
+
+    // Runs on the committer thread: reopens the log cut back to its last good length. If that
+    // fails the log stays closed, so later batches fail (and retry this) rather than follow garbage.
+    private void cutLog(long length) {
+        try {
+            log.close();
+        } catch (IOException e) {
+            // Reopened below either way
+        }
+        try {
+            FileOutputStream reopened = openSegment(segment);
+            try {
+                reopened.getChannel().truncate(length);
+            } catch (IOException e) {
+                reopened.close();
+                throw e;
+            }
+            log = reopened;
+            logBytes = length;
+        } catch (IOException e) {
+            System.err.println("Error restoring log " + segmentFile(segment) + ": " + e.getMessage());
+        }
+    }
+
+    // A snapshot that fails its checks is moved to snapshot.bin.corrupt and the log on disk
+    // replayed alone. Stores only the snapshot held are missing until Master re-syncs them
+    // after the restart (see Cluster).
+    private long readSnapshotOrSetAside(Map<String, Long> storeSeqs) throws IOException {
+        try {
+            return readSnapshot(storeSeqs);
+        } catch (IOException e) {
+            System.err.println("Replaying the log without the snapshot: " + e.getMessage());
+            stores.clear();
+            storeSeqs.clear();
+            Files.move(snapshotFile, snapshotFile.resolveSibling("snapshot.bin.corrupt"),
+                    StandardCopyOption.REPLACE_EXISTING);
+            return 0;
+        }
+    }
+
+    // Maps the snapshot instead of reading it through a stream: the stores are decoded
+    // straight from the page cache
+    private long readSnapshot(Map<String, Long> storeSeqs) throws IOException {
+        try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < SNAPSHOT_HEADER + 4) throw new IOException("Snapshot " + snapshotFile + " is truncated");
+            if (size > Integer.MAX_VALUE) throw new IOException("Snapshot " + snapshotFile + " is too large to map");
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int end = (int) size - 4;
+            CRC32 crc = new CRC32();
+            crc.update(map.duplicate().limit(end));
+            if ((int) crc.getValue() != map.getInt(end)) throw new IOException("Snapshot " + snapshotFile + " is corrupt");
+            if (map.getInt(0) != SNAPSHOT_MAGIC) throw new IOException("Snapshot " + snapshotFile + " has an unknown format");
+            long seq = map.getLong(4);
+            int count = map.getInt(12);
+            StoreBinary.Reader reader = new StoreBinary.Reader(map.position(SNAPSHOT_HEADER).limit(end));
+            for (int i = 0; i < count; i++) {
+                long storeSeq = reader.varint();
+                Store store = reader.readStore();
+                store.setWalSeq(storeSeq);
+                stores.put(store.getStoreName(), store);
+                storeSeqs.put(store.getStoreName(), storeSeq);
+            }
+            return seq;
+        }
+    }
+
+    // Snapshot written by workers before snapshot.bin
+    private long readJsonSnapshot(Map<String, Long> storeSeqs) throws IOException {
+        if (!Files.exists(jsonSnapshotFile)) return 0;
+        long seq = 0;
+        try (JsonReader reader = new JsonReader(Files.newBufferedReader(jsonSnapshotFile, StandardCharsets.UTF_8))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (name.equals("Seq")) {
+                    seq = (long) reader.nextDouble();
+                } else if (name.equals("Stores")) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        long storeSeq = 0;
+                        Store store = null;
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            String field = reader.nextName();
+                            if (field.equals("WalSeq")) storeSeq = (long) reader.nextDouble();
+                            else if (field.equals("Store")) store = StoreJson.read(reader);
+                            else reader.skipValue();
+                        }
+                        reader.endObject();
+                        if (store != null) {
+                            store.setWalSeq(storeSeq);
+                            stores.put(store.getStoreName(), store);
+                            storeSeqs.put(store.getStoreName(), storeSeq);
+                        }
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        return seq;
+    }
+
+    // Applies one log record unless the snapshot already contains it
+    private boolean replay(long seq, StoreBinary.Reader record, long snapshotSeq, Map<String, Long> snapshotSeqs)
+            throws IOException {
+        if (seq <= snapshotSeq) return false;
+        byte type = record.get();
+        if (type == PUT_STORE || type == PUT_STORE_JSON) {
+            Store store = type == PUT_STORE ? record.readStore() : StoreJson.read(record.string());
+            if (store == null || seq <= snapshotSeqs.getOrDefault(store.getStoreName(), 0L)) return false;
+            store.setWalSeq(seq);
+            stores.put(store.getStoreName(), store);
+            return true;
+        }
+        String storeName = record.string();
+        if (seq <= snapshotSeqs.getOrDefault(storeName, 0L)) return false;
+        if (type == DROP_STORE) {
+            stores.remove(storeName);
+            return true;
+        }
+        Store store = stores.get(storeName);
+        if (store == null) return false;
+        switch (type) {
+            case ADD_PRODUCT:
+                String productName = record.string();
+                String productType = record.string();
+                int amount = (int) record.varint();
+                double price = Double.parseDouble(record.string());
+                store.addProduct(new Product(productName, productType, amount, price));
+                break;
+            case REMOVE_PRODUCT:
+                store.removeProduct(record.string());
+                break;
+            case PURCHASE:
+                String purchased = record.string();
+                int quantity = StoreBinary.unZigZag(record.varint());
+                if (store.purchaseProduct(purchased, quantity) != Store.Purchase.COMPLETED) {
+                    // Logged before purchases checked stock; keep the sale, as that worker did
+                    System.err.println("Replayed purchase of " + purchased + " from " + storeName
+                            + " without stock; recording the sale only");
+                    store.recordSale(purchased, quantity);
+                }
+                break;
+            default:
+                throw new IOException("Unknown log record type " + type);
+        }
+        store.setWalSeq(seq);
+        return true;
+    }
+
+    private static void writeRecord(OutputStream out, byte[] payload) throws IOException {
+        WireProtocol.writeFrame(out, payload);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        long value = crc.getValue();
+        out.write((int) (value >>> 24));
+        out.write((int) (value >>> 16));
+        out.write((int) (value >>> 8));
+        out.write((int) value);
+    }
+
+    // Returns null at the end of the log or at a torn or corrupt record
+    private static byte[] readRecord(InputStream in) {
+        try {
+            byte[] payload = WireProtocol.readFrame(in);
+            if (payload == null) return null;
+            long stored = 0;
+            for (int i = 0; i < 4; i++) {
+                int b = in.read();
+                if (b == -1) return null;
+                stored = (stored << 8) | b;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            return crc.getValue() == stored ? payload : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static long recordSize(byte[] payload) {
+        int header = 1;
+        for (long length = payload.length; (length & ~0x7FL) != 0; length >>>= 7) header++;
+        return header + payload.length + 4;
+    }
+}
@@ -0,0 +1,615 @@
+package com.example.backend;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.locks.Lock;
+
+class WorkerThread implements Runnable {
+    private static final int MAX_LOGGED_DATA = 200;
+    // Printing every request serializes the request pool on stdout; only for debugging
+    private static final boolean LOG_REQUESTS = Boolean.getBoolean("worker.logRequests");
+    private static final Set<String> MUTATIONS = new HashSet<>(Arrays.asList(
+            "ADD_STORE", "ADD_STORES", "IMPORT_STORE", "DROP_STORE", "ADD_PRODUCT", "REMOVE_PRODUCT", "BUY"));
+    private Socket socket;
+    private Map<String, Store> stores;
+    private final LockStripes storeLocks;
+    private final StoreIndex index; // null off-heap
+    private final ColumnarCatalog catalog; // null unless -Dworker.catalog=columnar
+    private final GeoIndex geo;
+    private final WorkerStorage storage;
+    private final ExecutorService requestPool;
+
+    public WorkerThread(Socket socket, Map<String, Store> stores, LockStripes storeLocks, StoreIndex index,
+                        ColumnarCatalog catalog, GeoIndex geo, WorkerStorage storage, ExecutorService requestPool) {
+        this.socket = socket;
+        this.stores = stores;
+        this.storeLocks = storeLocks;
+        this.index = index;
+        this.catalog = catalog;
+        this.geo = geo;
+        this.storage = storage;
+        this.requestPool = requestPool;
+    }
+
+    @Override
+    public void run() {
+        try (InputStream in = new BufferedInputStream(socket.getInputStream());
+             OutputStream out = new BufferedOutputStream(socket.getOutputStream())) {
+            // Master asks for the binary protocol with its first line; other clients speak text
+            String firstLine = WireProtocol.readLine(in);
+            if (firstLine == null) return;
+            if (firstLine.equals(WireProtocol.HANDSHAKE)) {
+                out.write((WireProtocol.HANDSHAKE + "\n").getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                serveFrames(in, out);
+            } else {
+                serveLines(firstLine, new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)),
+                        new PrintWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))));
+            }
+        } catch (IOException e) {
+            System.err.println("Error handling request: " + e.getMessage());
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                System.err.println("Error closing socket: " + e.getMessage());
+            }
+        }
+    }
+
+    private void serveFrames(InputStream in, OutputStream out) throws IOException {
+        byte[] frame;
+        while ((frame = WireProtocol.readFrame(in)) != null) {
+            WireProtocol.Decoder request = new WireProtocol.Decoder(frame);
+            long requestId = request.varint();
+            String command = request.string();
+            int count = (int) request.varint();
+            List<String> arguments = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                arguments.add(request.string());
+            }
+            requestPool.execute(() -> {
+                byte[] reply;
+                if (!WireProtocol.FIELDED.contains(command) && arguments.size() != 1) {
+                    reply = WireProtocol.textReply(requestId, "Error: " + command + " takes one argument, not "
+                            + arguments.size());
+                } else if (isStoreMapQuery(command)) {
+                    try {
+                        reply = WireProtocol.salesReply(requestId, queryStores(command, arguments.get(0)));
+                    } catch (RuntimeException e) {
+                        reply = WireProtocol.textReply(requestId, queryError(e));
+                    }
+                } else {
+                    reply = WireProtocol.textReply(requestId, handleRequest(command, arguments));
+                }
+                if (reply.length > WireProtocol.MAX_FRAME) {
+                    // Master would drop the whole connection on it
+                    reply = WireProtocol.textReply(requestId, "Error: reply of " + reply.length + " bytes is over the "
+                            + WireProtocol.MAX_FRAME + " byte frame limit");
+                }
+                synchronized (out) {
+                    try {
+                        WireProtocol.writeFrame(out, reply);
+                        out.flush();
+                    } catch (IOException e) {
+                        System.err.println("Error sending reply to master: " + e.getMessage());
+                    }
+                }
+            });
+        }
+    }
+
+    private void serveLines(String line, BufferedReader in, PrintWriter out) throws IOException {
+        while (line != null) {
+            // Master prefixes every request with an id; replies carry it back so they may leave out of order
+            int space = line.indexOf(' ');
+            String requestId = space > 0 && isRequestId(line.substring(0, space)) ? line.substring(0, space) : null;
+            String request = requestId == null ? line : line.substring(space + 1);
+            if (requestId == null) {
+                reply(out, null, handleRequest(request));
+            } else {
+                requestPool.execute(() -> reply(out, requestId, handleRequest(request)));
+            }
+            line = in.readLine();
+        }
+    }
+
+    private static boolean isRequestId(String token) {
+        for (int i = 0; i < token.length(); i++) {
+            if (!Character.isDigit(token.charAt(i))) return false;
+        }
+        return !token.isEmpty();
+    }
+
+    private void reply(PrintWriter out, String requestId, String response) {
+        synchronized (out) {
+            if (requestId != null) {
+                out.print(requestId);
+                out.print(' ');
+            }
+            out.println(response);
+            out.flush();
+        }
+    }
+
+    private String handleRequest(String request) {
+        String[] parts = request.split(" ", 2);
+        String data = parts.length > 1 ? parts[1] : "";
+        if (!WireProtocol.FIELDED.contains(parts[0])) return handleRequest(parts[0], List.of(data));
+        try {
+            return handleRequest(parts[0], WireProtocol.splitFields(data));
+        } catch (IllegalArgumentException e) {
+            return "Invalid " + parts[0] + " format: " + e.getMessage();
+        }
+    }
+
+    // The fields of a FIELDED command (see WireProtocol), else its one data string
+    private String handleRequest(String command, List<String> arguments) {
+        boolean fielded = WireProtocol.FIELDED.contains(command);
+        String data = fielded ? "" : arguments.get(0);
+        if (LOG_REQUESTS) {
+            String logged = fielded ? WireProtocol.joinFields(arguments) : data;
+            System.out.println("Worker on port " + socket.getLocalPort() + " received request: " + command + " "
+                    + (logged.length() > MAX_LOGGED_DATA ? logged.substring(0, MAX_LOGGED_DATA) + "... (" + logged.length() + " chars)" : logged));
+        }
+        if (isStoreMapQuery(command)) {
+            try {
+                return WireProtocol.formatSales(queryStores(command, data));
+            } catch (RuntimeException e) {
+                return queryError(e);
+            }
+        }
+
+        try {
+            String response = apply(command, data, fielded ? arguments : List.of());
+            // Replies only once the change is in the log; other requests' changes share the write
+            if (MUTATIONS.contains(command)) {
+                storage.awaitLogged();
+            }
+            return response;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error handling request: " + e.getMessage());
+            return "Error: " + e.getMessage();
+        }
+    }
+
+    // A malformed query (e.g. its PARTITIONS= or SHARED= ranges) still gets a reply, so Master
+    // does not wait out its deadline for one
+    private static String queryError(RuntimeException e) {
+        System.err.println("Error handling query: " + e);
+        return "Error: " + (e.getMessage() != null ? e.getMessage() : e.toString());
+    }
+
+    // Requests that change a store's products, or replace or drop it, run under its lock
+    // stripe, so they apply (and log) in the order they arrive while other stores proceed in
+    // parallel, and hold the store's exclusive lock so snapshots see a change and its log
+    // record together. BUYs take neither: they share the store's purchase lock, so buyers of
+    // one store run at once (see Store.purchaseProduct). New stores are put in the map before
+    // they are logged (see WorkerStorage). The StoreIndex is updated along with the store.
+    private String apply(String command, String data, List<String> fields) throws IOException {
+        switch (command) {
+            case "ADD_STORE":
+                Store store = StoreJson.read(data);
+                if (store == null) {
+                    return "Error: Invalid store JSON - missing StoreName";
+                }
+                putStore(store);
+                return "Store added: " + store.getStoreName();
+            case "ADD_STORES":
+                // Bootstrap batch from Master: a JSON array of stores, committed to the log as one group
+                int added = 0;
+                JsonReader batch = new JsonReader(data);
+                batch.beginArray();
+                while (batch.hasNext()) {
+                    Store batchStore = StoreJson.read(batch);
+                    if (batchStore == null) {
+                        System.err.println("Skipping store without StoreName in batch");
+                        continue;
+                    }
+                    putStore(batchStore);
+                    added++;
+                }
+                batch.endArray();
+                return "Stores added: " + added;
+            case "IMPORT_STORE":
+                // A store migrated from another worker, carrying its sales
+                Store imported = StoreJson.read(data);
+                if (imported == null) {
+                    return "Error: Invalid store JSON - missing StoreName";
+                }
+                putStore(imported);
+                return "Store imported: " + imported.getStoreName();
+            case "EXPORT_STORE":
+                String exportName = data.trim();
+                synchronized (storeLocks.forKey(exportName)) {
+                    Store exported = stores.get(exportName);
+                    if (exported == null) {
+                        return "Store not found: " + exportName;
+                    }
+                    Lock exporting = exported.exclusiveLock();
+                    exporting.lock();
+                    try {
+                        return StoreJson.write(exported, true).replace("\n", " ").trim();
+                    } finally {
+                        exporting.unlock();
+                    }
+                }
+            case "DROP_STORE":
+                String dropName = data.trim();
+                synchronized (storeLocks.forKey(dropName)) {
+                    Store dropped = stores.get(dropName);
+                    if (dropped == null) {
+                        return "Store not found: " + dropName;
+                    }
+                    Lock dropping = dropped.exclusiveLock();
+                    dropping.lock();
+                    try {
+                        stores.remove(dropName);
+                        if (index != null) index.remove(dropped);
+                        if (catalog != null) catalog.remove(dropped);
+                        geo.remove(dropped);
+                        storage.logDrop(dropped.getStoreName());
+                    } finally {
+                        dropping.unlock();
+                    }
+                }
+                return "Store dropped: " + dropName;
+            case "ADD_PRODUCT":
+                if (fields.size() < 5) {
+                    return "Invalid ADD_PRODUCT format";
+                }
+                String storeNameProd = fields.get(0);
+                String productNameAdd = fields.get(1);
+                String productType = fields.get(2);
+                int amount = Integer.parseInt(fields.get(3).trim());
+                double price = Double.parseDouble(fields.get(4).trim());
+                synchronized (storeLocks.forKey(storeNameProd)) {
+                    Store storeAdd = stores.get(storeNameProd);
+                    if (storeAdd == null) {
+                        return "Store not found: " + storeNameProd;
+                    }
+                    Product newProduct = new Product(productNameAdd, productType, amount, price);
+                    Lock adding = storeAdd.exclusiveLock();
+                    adding.lock();
+                    try {
+                        storeAdd.addProduct(newProduct);
+                        if (index != null) index.addProduct(storeAdd, newProduct);
+                        if (catalog != null) catalog.addProduct(storeAdd, newProduct);
+                        storeAdd.setWalSeq(storage.logAddProduct(storeNameProd, newProduct));
+                    } finally {
+                        adding.unlock();
+                    }
+                }
+                return "Product added to store: " + storeNameProd;
+            case "REMOVE_PRODUCT":
+                if (fields.size() < 2) {
+                    return "Invalid REMOVE_PRODUCT format";
+                }
+                String removeStoreName = fields.get(0);
+                String removeProductName = fields.get(1);
+                synchronized (storeLocks.forKey(removeStoreName)) {
+                    Store removeStore = stores.get(removeStoreName);
+                    if (removeStore == null) {
+                        return "Store not found: " + removeStoreName;
+                    }
+                    Lock removing = removeStore.exclusiveLock();
+                    removing.lock();
+                    try {
+                        List<Product> removed = new ArrayList<>();
+                        for (Product p : index == null ? List.<Product>of() : removeStore.getProducts()) {
+                            if (p.getProductName().equals(removeProductName)) removed.add(p);
+                        }
+                        removeStore.removeProduct(removeProductName);
+                        if (index != null) index.removeProduct(removeStore, removeProductName, removed);
+                        if (catalog != null) catalog.removeProduct(removeStore, removeProductName);
+                        removeStore.setWalSeq(storage.logRemoveProduct(removeStoreName, removeProductName));
+                    } finally {
+                        removing.unlock();
+                    }
+                }
+                return "Product removed from store: " + removeStoreName;
+            case "BUY":
+                if (fields.size() < 3) {
+                    return "Invalid BUY format";
+                }
+                String buyStoreName = fields.get(0);
+                String buyProductName = fields.get(1);
+                int buyQuantity = Integer.parseInt(fields.get(2).trim());
+                if (buyQuantity <= 0) {
+                    return "Invalid BUY quantity: " + buyQuantity;
+                }
+
+                while (true) {
+                    Store buyStore = stores.get(buyStoreName);
+                    if (buyStore == null) {
+                        return "Store not found: " + buyStoreName;
+                    }
+                    Lock purchasing = buyStore.purchaseLock();
+                    purchasing.lock();
+                    try {
+                        // Replaced (or dropped) before we got the lock: buy from what is in the map now
+                        if (stores.get(buyStoreName) != buyStore) continue;
+                        switch (buyStore.purchaseProduct(buyProductName, buyQuantity)) {
+                            case SOLD_OUT:
+                                return Worker.SOLD_OUT + buyProductName + " from " + buyStoreName;
+                            case UNKNOWN_PRODUCT:
+                                return "Product not found: " + buyProductName + " in " + buyStoreName;
+                            default:
+                                if (catalog != null) catalog.purchase(buyStore, buyProductName, buyQuantity);
+                                buyStore.recordRecentSale(buyProductName, buyQuantity);
+                                buyStore.setWalSeq(storage.logPurchase(buyStoreName, buyProductName, buyQuantity));
+                        }
+                    } finally {
+                        purchasing.unlock();
+                    }
+                    return Worker.PURCHASE_PROCESSED;
+                }
+            case "SEARCH":
+                return search(data);
+            case "NEARBY":
+                return nearby(data);
+            case "PRODUCTS_BY_PRICE":
+                return productsByPrice(data);
+            case "PING":
+                // The epoch tells Master whether this is still the run it last talked to
+                return "PONG " + storage.epoch();
+            default:
+                return "Unknown command: " + command;
+        }
+    }
+
+    // Adds or replaces a store and logs it. Purchases on the store being replaced finish
+    // first, and purchases on the new one wait until it is logged, so the log has them in order.
+    private void putStore(Store store) {
+        synchronized (storeLocks.forKey(store.getStoreName())) {
+            Store previous = stores.get(store.getStoreName());
+            Lock adding = store.exclusiveLock();
+            Lock replacing = previous == null ? null : previous.exclusiveLock();
+            adding.lock();
+            if (replacing != null) replacing.lock();
+            try {
+                stores.put(store.getStoreName(), store);
+                if (index != null) index.replace(previous, store);
+                if (catalog != null) catalog.replace(previous, store);
+                geo.replace(previous, store);
+                store.setWalSeq(storage.logStore(store));
+            } finally {
+                if (replacing != null) replacing.unlock();
+                adding.unlock();
+            }
+        }
+    }
+
+    // Analytics queries from Master name the partitions this worker is the designated reader of;
+    // null if the query does not (every store is read)
+    private static BitSet partitionsOf(String data) {
+        if (!data.startsWith(Placement.PARTITIONS_PREFIX)) return null;
+        int space = data.indexOf(' ');
+        return Placement.decodePartitions(data.substring(Placement.PARTITIONS_PREFIX.length(),
+                space == -1 ? data.length() : space));
+    }
+
+    private static String withoutPartitions(String data) {
+        if (!data.startsWith(Placement.PARTITIONS_PREFIX)) return data;
+        int space = data.indexOf(' ');
+        return space == -1 ? "" : data.substring(space + 1);
+    }
+
+    // The best matches among this worker's stores (see StoreSearch), as a JSON array. Like
+    // the sales queries it takes no lock, and uses the category index unless the category
+    // covers most stores.
+    private String search(String data) {
+        BitSet partitions = partitionsOf(data);
+        StoreSearch search = StoreSearch.parseForWorker(withoutPartitions(data));
+        Collection<Store> candidates = stores.values();
+        if (search.category != null && index != null) {
+            Set<Store> inCategory = index.storesInCategory(search.category);
+            if (!StoreIndex.isBroad(inCategory.size(), stores.size())) candidates = inCategory;
+        }
+        // Bounded: the worst of the best so far is on top, and goes when a better one comes
+        PriorityQueue<StoreSearch.Summary> best = new PriorityQueue<>(StoreSearch.ORDER.reversed());
+        for (Store s : candidates) {
+            if (partitions != null && !partitions.get(s.getPartition())) continue;
+            if (!search.matches(s)) continue;
+            best.add(StoreSearch.Summary.of(s));
+            if (best.size() > search.limit) best.poll();
+        }
+        List<StoreSearch.Summary> matches = new ArrayList<>(best);
+        matches.sort(StoreSearch.ORDER);
+        return StoreSearch.toJson(matches);
+    }
+
+    // This worker's nearest matches (see NearbySearch), nearest first, as SEARCH summaries
+    private String nearby(String data) {
+        BitSet partitions = partitionsOf(data);
+        NearbySearch nearby = NearbySearch.parse(withoutPartitions(data));
+        List<StoreSearch.Summary> matches = new ArrayList<>();
+        for (GeoIndex.Hit hit : geo.nearest(nearby.latitude, nearby.longitude, nearby.k, nearby.radiusKm,
+                s -> (partitions == null || partitions.get(s.getPartition())) && nearby.filter.matches(s))) {
+            matches.add(StoreSearch.Summary.of(hit.store));
+        }
+        return StoreSearch.toJson(matches);
+    }
+
+    // This worker's cheapest matches in the price range (see PriceRangeSearch), as a JSON
+    // array. Walks the price index up from the bottom of the range until it has enough;
+    // off-heap, where there is no index, scans every product.
+    private String productsByPrice(String data) {
+        BitSet partitions = partitionsOf(data);
+        PriceRangeSearch search = PriceRangeSearch.parse(withoutPartitions(data));
+        List<PriceRangeSearch.Match> matches = new ArrayList<>();
+        if (index != null) {
+            for (Set<StoreIndex.PricedProduct> atPrice : index.productsPricedBetween(search.min, search.max).values()) {
+                List<PriceRangeSearch.Match> tied = new ArrayList<>();
+                for (StoreIndex.PricedProduct priced : atPrice) {
+                    if (partitions != null && !partitions.get(priced.store.getPartition())) continue;
+                    if (search.matches(priced.store, priced.product)) tied.add(PriceRangeSearch.Match.of(priced.store, priced.product));
+                }
+                tied.sort(PriceRangeSearch.ORDER);
+                matches.addAll(tied);
+                if (matches.size() >= search.limit) break;
+            }
+        } else {
+            for (Store s : stores.values()) {
+                if (partitions != null && !partitions.get(s.getPartition())) continue;
+                for (Product p : s.getProducts()) {
+                    if (p.getPrice() >= search.min && p.getPrice() <= search.max && search.matches(s, p)) {
+                        matches.add(PriceRangeSearch.Match.of(s, p));
+                    }
+                }
+            }
+            matches.sort(PriceRangeSearch.ORDER);
+        }
+        return PriceRangeSearch.toJson(matches.subList(0, Math.min(matches.size(), search.limit)));
+    }
+
+    // GET_SALES_TOP (see TopSales): units per store, or per product name summed over this
+    // worker's stores, cut down to what the query asks for. Master names the partitions every
+    // reader reads (stores being moved) with SHARED=; sales of products in those come back
+    // per store, as "store<TAB>product", so that Master can count each store once.
+    private void topSales(BitSet partitions, String data, Map<String, Integer> result) {
+        BitSet shared = null;
+        if (data.startsWith(TopSales.SHARED_PREFIX)) {
+            int space = data.indexOf(' ');
+            shared = Placement.decodePartitions(data.substring(TopSales.SHARED_PREFIX.length(),
+                    space == -1 ? data.length() : space));
+            data = space == -1 ? "" : data.substring(space + 1);
+        }
+        TopSales query = TopSales.parse(data);
+        Collection<Store> candidates = stores.values();
+        if (index != null && query.category != null) {
+            Set<Store> inCategory = index.storesInCategory(query.category);
+            if (!StoreIndex.isBroad(inCategory.size(), stores.size())) candidates = inCategory;
+        } else if (index != null && query.productType != null) {
+            Set<Store> withType = index.storesWithType(query.productType);
+            if (!StoreIndex.isBroad(withType.size(), stores.size())) candidates = withType;
+        }
+        TopSales.Best best = new TopSales.Best(query.k);
+        Map<String, Integer> units = new HashMap<>();
+        for (Store s : candidates) {
+            boolean inShared = shared != null && shared.get(s.getPartition());
+            if (partitions != null && !partitions.get(s.getPartition()) && !inShared) continue;
+            if (!query.inCategory(s)) continue;
+            if (!query.products) {
+                int sold = query.productType == null ? s.getTotalSales() : s.getSalesOfType(query.productType);
+                if (sold > 0) best.offer(s.getStoreName(), sold);
+                continue;
+            }
+            s.forEachSale((productName, sold) -> {
+                if (query.productType != null) {
+                    Product listed = s.getProduct(productName);
+                    if (listed == null || !query.productType.equals(listed.getProductType())) return;
+                }
+                if (inShared) {
+                    result.put(s.getStoreName() + "\t" + productName, sold);
+                } else {
+                    units.merge(productName, sold, Integer::sum);
+                }
+            });
+        }
+        if (query.products) {
+            query.select(units, result);
+            return;
+        }
+        for (Map.Entry<String, Integer> entry : best.sorted()) {
+            result.put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    // Queries answered with a number per store
+    private static boolean isStoreMapQuery(String command) {
+        return command.startsWith("GET_SALES_") || command.equals("GET_DIGESTS");
+    }
+
+    // Sales (or digests) per store, in the order the stores were scanned
+    private Map<String, Integer> queryStores(String command, String data) {
+        Map<String, Integer> sales = new LinkedHashMap<>();
+        BitSet partitions = partitionsOf(data);
+        data = withoutPartitions(data);
+        // Windowed GET_SALES_* count the last seconds or minutes of sales (see SalesWindow)
+        int window = 0;
+        if (data.startsWith(SalesWindow.PREFIX)) {
+            int space = data.indexOf(' ');
+            try {
+                window = SalesWindow.parseWindow(data.substring(SalesWindow.PREFIX.length(), space == -1 ? data.length() : space));
+            } catch (IllegalArgumentException e) {
+                System.err.println("Invalid sales window: " + e.getMessage());
+                return sales;
+            }
+            data = space == -1 ? "" : data.substring(space + 1);
+        }
+
+        // No lock: the map, the index and the stores' sales are concurrent, so queries run
+        // alongside BUYs. Each query visits only the stores its index entry lists, unless the
+        // entry covers most stores (or there is no index): then walking the map in order is the
+        // cheaper scan, or, in columnar mode, scanning the catalog's columns (which only hold
+        // all-time sales). Per-store numbers are the stores' running sales rollups, not sums
+        // over their sales, except in a window, where they are summed over the recent products.
+        switch (command) {
+            case "GET_SALES_BY_STORE_TYPE_CATEGORY":
+                Set<Store> inCategory = index == null ? null : index.storesInCategory(data);
+                if (catalog != null && window == 0 && StoreIndex.isBroad(inCategory.size(), stores.size())) {
+                    catalog.salesByCategory(data, partitions, sales);
+                    break;
+                }
+                if (inCategory == null || StoreIndex.isBroad(inCategory.size(), stores.size())) {
+                    String category = StoreIndex.categoryKey(data);
+                    for (Store s : stores.values()) {
+                        if (partitions != null && !partitions.get(s.getPartition())) continue;
+                        if (StoreIndex.categoryKey(s.getFoodCategory()).equals(category)) {
+                            sales.put(s.getStoreName(), window == 0 ? s.getTotalSales() : s.getRecentTotalSales(window));
+                        }
+                    }
+                    break;
+                }
+                for (Store s : inCategory) {
+                    if (partitions != null && !partitions.get(s.getPartition())) continue;
+                    sales.put(s.getStoreName(), window == 0 ? s.getTotalSales() : s.getRecentTotalSales(window));
+                }
+                break;
+            case "GET_SALES_BY_PRODUCT_CATEGORY":
+                Set<Store> withType = index == null ? null : index.storesWithType(data);
+                if (catalog != null && window == 0 && StoreIndex.isBroad(withType.size(), stores.size())) {
+                    catalog.salesByProductType(data, partitions, sales);
+                    break;
+                }
+                for (Store s : withType == null || StoreIndex.isBroad(withType.size(), stores.size()) ? stores.values() : withType) {
+                    if (partitions != null && !partitions.get(s.getPartition())) continue;
+                    int storeTotal = window == 0 ? s.getSalesOfType(data) : s.getRecentSalesOfType(data, window);
+                    if (storeTotal > 0) {
+                        sales.put(s.getStoreName(), storeTotal);
+                    }
+                }
+                break;
+            case "GET_SALES_BY_PRODUCT":
+                Set<Store> selling = index == null ? null : index.storesSelling(data);
+                if (catalog != null && window == 0 && StoreIndex.isBroad(selling.size(), stores.size())) {
+                    catalog.salesByProductName(data, partitions, sales);
+                    break;
+                }
+                for (Store s : selling == null || StoreIndex.isBroad(selling.size(), stores.size()) ? stores.values() : selling) {
+                    if (partitions != null && !partitions.get(s.getPartition())) continue;
+                    int storeTotal = window == 0 ? s.getSalesOf(data) : s.getRecentSalesOf(data, window);
+                    if (storeTotal > 0) {
+                        sales.put(s.getStoreName(), storeTotal);
+                    }
+                }
+                break;
+            case "GET_SALES_TOP":
+                topSales(partitions, data, sales);
+                break;
+            case "GET_DIGESTS":
+                for (Store s : stores.values()) {
+                    if (partitions != null && !partitions.get(s.getPartition())) continue;
+                    sales.put(s.getStoreName(), s.digest());
+                }
+                break;
+            default:
+                System.err.println("Unknown sales query: " + command);
+        }
+        return sales;
+    }
+}
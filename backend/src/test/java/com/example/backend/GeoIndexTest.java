@@ -0,0 +1,113 @@
+package com.example.backend;
+
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+// Checks nearest() against every store sorted by distance, and that cells go away with
+// their last store.
+public class GeoIndexTest {
+
+    @Test
+    public void nearestMatchesABruteForceSort() {
+        Random random = new Random(7);
+        GeoIndex geo = new GeoIndex();
+        List<Store> stores = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            // Most around Athens, some anywhere, a few near the antimeridian
+            double latitude = i % 10 == 0 ? random.nextDouble() * 170 - 85 : 37.9 + random.nextGaussian() * 0.2;
+            double longitude = i % 10 == 0 ? random.nextDouble() * 360 - 180
+                    : i % 10 == 1 ? 179.95 + random.nextDouble() * 0.1 : 23.7 + random.nextGaussian() * 0.2;
+            longitude = ((longitude + 180) % 360 + 360) % 360 - 180;
+            Store store = store("S" + i, latitude, longitude);
+            stores.add(store);
+            geo.add(store);
+        }
+        for (int query = 0; query < 200; query++) {
+            double latitude = query % 4 == 0 ? random.nextDouble() * 170 - 85 : 37.9 + random.nextGaussian() * 0.3;
+            double longitude = query % 4 == 1 ? -179.99 : query % 4 == 0 ? random.nextDouble() * 360 - 180
+                    : 23.7 + random.nextGaussian() * 0.3;
+            int k = 1 + random.nextInt(20);
+            double radiusKm = query % 3 == 0 ? Double.MAX_VALUE : random.nextDouble() * 50;
+            boolean oddOnly = query % 5 == 0;
+            List<GeoIndex.Hit> hits = geo.nearest(latitude, longitude, k, radiusKm,
+                    s -> !oddOnly || s.getStoreName().hashCode() % 2 != 0);
+            assertEquals("query " + query, names(bruteForce(stores, latitude, longitude, k, radiusKm, oddOnly)),
+                    names(hits));
+        }
+    }
+
+    @Test
+    public void cellsGoAwayWithTheirLastStore() {
+        GeoIndex geo = new GeoIndex();
+        Store a = store("A", 37.9, 23.7);
+        Store b = store("B", 37.9001, 23.7001);
+        Store moved = store("A", 40.6, 22.9);
+        geo.add(a);
+        geo.add(b);
+        assertEquals(1, geo.cellCount());
+        geo.replace(a, moved);
+        assertEquals(2, geo.cellCount());
+        geo.remove(b);
+        assertEquals(1, geo.cellCount());
+        assertEquals(List.of("A"), names(geo.nearest(37.9, 23.7, 5, Double.MAX_VALUE, s -> true)));
+        geo.remove(moved);
+        assertEquals(0, geo.cellCount());
+    }
+
+    // Stores of different lock stripes share a cell; churning them must not lose one
+    @Test
+    public void concurrentChurnOfOneCellLosesNoStore() throws Exception {
+        GeoIndex geo = new GeoIndex();
+        int threads = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Store>> running = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            running.add(pool.submit(() -> {
+                Store current = null;
+                for (int i = 0; i < 5000; i++) {
+                    Store next = store("S" + thread, 37.9, 23.7);
+                    if (current != null) geo.remove(current);
+                    geo.add(next);
+                    current = next;
+                }
+                return current;
+            }));
+        }
+        Set<String> last = new HashSet<>();
+        for (Future<Store> call : running) {
+            last.add(call.get(60, TimeUnit.SECONDS).getStoreName());
+        }
+        pool.shutdown();
+
+        assertEquals(last, new HashSet<>(names(geo.nearest(37.9, 23.7, 100, 1, s -> true))));
+    }
+
+    private static List<GeoIndex.Hit> bruteForce(List<Store> stores, double latitude, double longitude, int k,
+                                                 double radiusKm, boolean oddOnly) {
+        List<GeoIndex.Hit> hits = new ArrayList<>();
+        for (Store store : stores) {
+            if (oddOnly && store.getStoreName().hashCode() % 2 == 0) continue;
+            double distance = GeoIndex.distanceKm(latitude, longitude, store.getLatitude(), store.getLongitude());
+            if (distance <= radiusKm) hits.add(new GeoIndex.Hit(store, distance));
+        }
+        hits.sort(GeoIndex.NEAREST);
+        return hits.subList(0, Math.min(k, hits.size()));
+    }
+
+    private static List<String> names(List<GeoIndex.Hit> hits) {
+        List<String> names = new ArrayList<>();
+        for (GeoIndex.Hit hit : hits) {
+            names.add(hit.store.getStoreName());
+        }
+        return names;
+    }
+
+    private static Store store(String name, double latitude, double longitude) {
+        return new Store(name, latitude, longitude, "pizzeria", 4, 2, "x.png");
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.backend;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+// How evenly each placement spreads the partitions' replicas over the nodes, and, for the
+// consistent-hash ring, that a node joining or leaving only moves the replicas it takes or
+// gives up.
+public class PlacementTest {
+    private static final int NODES = 16;
+    private static final int REPLICAS = 2;
+
+    @Test
+    public void ringSpreadsReplicasEvenly() {
+        Placement<String> ring = placement("consistent", NODES);
+        Map<String, Integer> copies = copiesPerNode(ring);
+        assertEquals(NODES, copies.size());
+        double mean = (double) Placement.PARTITIONS * REPLICAS / NODES;
+        for (Map.Entry<String, Integer> node : copies.entrySet()) {
+            assertTrue(node + " vs mean " + mean, node.getValue() < mean * 1.25 && node.getValue() > mean * 0.75);
+        }
+    }
+
+    @Test
+    public void ringGivesHeavierNodesMore() {
+        Placement<String> ring = placement("consistent", NODES);
+        ring.addNode("heavy", "localhost:9999", 3);
+        Map<String, Integer> copies = copiesPerNode(ring);
+        double mean = (double) Placement.PARTITIONS * REPLICAS / (NODES + 3);
+        assertTrue(copies.get("heavy") + " vs mean " + mean, copies.get("heavy") > mean * 2.2);
+    }
+
+    @Test
+    public void ringJoinOnlyMovesReplicasToTheNewNode() {
+        Placement<String> ring = placement("consistent", NODES);
+        List<List<String>> before = replicas(ring);
+        ring.addNode("node-" + NODES, "localhost:" + (8081 + NODES), 1);
+        List<List<String>> after = replicas(ring);
+        int moved = 0;
+        for (int p = 0; p < Placement.PARTITIONS; p++) {
+            if (before.get(p).equals(after.get(p))) continue;
+            moved++;
+            // The old replicas in order, with the new node put in and the last one pushed out
+            List<String> expected = new ArrayList<>(before.get(p));
+            expected.add(after.get(p).indexOf("node-" + NODES), "node-" + NODES);
+            assertEquals("partition " + p, expected.subList(0, REPLICAS), after.get(p));
+        }
+        // About REPLICAS / (NODES + 1) of the partitions take the new node
+        double share = (double) moved / Placement.PARTITIONS;
+        assertTrue("moved " + share, share > 0.5 * REPLICAS / (NODES + 1) && share < 1.5 * REPLICAS / (NODES + 1));
+    }
+
+    @Test
+    public void ringLeaveOnlyMovesTheLeavingNodesReplicas() {
+        Placement<String> ring = placement("consistent", NODES);
+        List<List<String>> before = replicas(ring);
+        ring.removeNode("node-3");
+        List<List<String>> after = replicas(ring);
+        for (int p = 0; p < Placement.PARTITIONS; p++) {
+            List<String> kept = new ArrayList<>(before.get(p));
+            boolean held = kept.remove("node-3");
+            if (!held) {
+                assertEquals("partition " + p, before.get(p), after.get(p));
+            } else {
+                assertEquals("partition " + p, kept, after.get(p).subList(0, kept.size()));
+                assertFalse(after.get(p).contains("node-3"));
+            }
+        }
+    }
+
+    @Test
+    public void moduloSpreadsEvenlyButRemapsOnJoin() {
+        Placement<String> modulo = placement("modulo", NODES);
+        for (int copies : copiesPerNode(modulo).values()) {
+            assertEquals((double) Placement.PARTITIONS * REPLICAS / NODES, copies, 1);
+        }
+        List<List<String>> before = replicas(modulo);
+        modulo.addNode("node-" + NODES, "localhost:" + (8081 + NODES), 1);
+        List<List<String>> after = replicas(modulo);
+        int moved = 0;
+        for (int p = 0; p < Placement.PARTITIONS; p++) {
+            if (!before.get(p).equals(after.get(p))) moved++;
+        }
+        assertTrue("moved " + moved, moved > Placement.PARTITIONS / 2);
+    }
+
+    @Test
+    public void replicasAreDistinctAndCappedByTheNodes() {
+        for (String name : new String[]{"consistent", "modulo"}) {
+            Placement<String> placement = placement(name, 3);
+            for (int p = 0; p < Placement.PARTITIONS; p++) {
+                List<String> replicas = placement.replicasFor(p, 5);
+                assertEquals(name, 3, replicas.size());
+                assertEquals(name, 3, new HashSet<>(replicas).size());
+            }
+            assertTrue(placement(name, 0).replicasFor(7, REPLICAS).isEmpty());
+        }
+    }
+
+    @Test
+    public void partitionsRoundTripThroughTheirEncoding() {
+        BitSet partitions = new BitSet(Placement.PARTITIONS);
+        partitions.set(0, 13);
+        partitions.set(40);
+        partitions.set(77, 81);
+        partitions.set(Placement.PARTITIONS - 1);
+        String encoded = Placement.encodePartitions(partitions);
+        assertEquals("0-12,40,77-80," + (Placement.PARTITIONS - 1), encoded);
+        assertEquals(partitions, Placement.decodePartitions(encoded));
+        assertTrue(Placement.decodePartitions("").isEmpty());
+        assertEquals(Placement.partitionOf("Pizza Palace"), Placement.partitionOf(" \"Pizza Palace\" "));
+    }
+
+    private static Placement<String> placement(String name, int nodes) {
+        Placement<String> placement = Placement.create(name);
+        for (int n = 0; n < nodes; n++) {
+            placement.addNode("node-" + n, "localhost:" + (8081 + n), 1);
+        }
+        return placement;
+    }
+
+    private static List<List<String>> replicas(Placement<String> placement) {
+        List<List<String>> replicas = new ArrayList<>();
+        for (int p = 0; p < Placement.PARTITIONS; p++) {
+            replicas.add(placement.replicasFor(p, REPLICAS));
+        }
+        return replicas;
+    }
+
+    private static Map<String, Integer> copiesPerNode(Placement<String> placement) {
+        Map<String, Integer> copies = new HashMap<>();
+        for (List<String> replicas : replicas(placement)) {
+            for (String node : replicas) copies.merge(node, 1, Integer::sum);
+        }
+        return copies;
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.backend;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+// PRODUCTS_BY_PRICE's parsing and Master's merge of the readers' cheapest matches, and the
+// store price category as products are listed and removed in either catalog.
+public class PriceRangeSearchTest {
+
+    @Test
+    public void parsesTermsAndRoundTripsToWorkers() {
+        PriceRangeSearch search = PriceRangeSearch.parse("min=2,max=6.5,type=pizza,category=pizzeria,limit=7");
+        PriceRangeSearch forWorker = PriceRangeSearch.parse(search.forWorkers());
+        assertEquals(2, forWorker.min, 0);
+        assertEquals(6.5, forWorker.max, 0);
+        assertEquals("pizza", forWorker.productType);
+        assertEquals("pizzeria", forWorker.category);
+        assertEquals(7, forWorker.limit);
+        assertEquals(Double.MAX_VALUE, PriceRangeSearch.parse(PriceRangeSearch.parse("").forWorkers()).max, 0);
+    }
+
+    @Test
+    public void rejectsBadQueries() {
+        for (String query : new String[]{"pizza", "min=7,max=6", "min=NaN", "limit=0",
+                "limit=" + (PriceRangeSearch.MAX_LIMIT + 1), "colour=red", "max=six"}) {
+            try {
+                PriceRangeSearch.parse(query);
+                fail(query);
+            } catch (IllegalArgumentException expected) {
+                // as intended
+            }
+        }
+    }
+
+    // Each reader returns its cheapest limit; the merge must be the cheapest limit of them all
+    @Test
+    public void mergeKeepsTheCheapestOverall() throws IOException {
+        Random random = new Random(11);
+        PriceRangeSearch search = PriceRangeSearch.parse("limit=15");
+        List<PriceRangeSearch.Match> all = new ArrayList<>();
+        List<List<PriceRangeSearch.Match>> readers = List.of(new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+        for (int i = 0; i < 80; i++) {
+            // Prices in whole euros so ties fall back to the store and product names
+            PriceRangeSearch.Match match = new PriceRangeSearch.Match("S" + i % 9, "P" + i, "pizza",
+                    1 + random.nextInt(6), 5);
+            all.add(match);
+            readers.get(i % 9 % 3).add(match);
+        }
+        Map<String, PriceRangeSearch.Match> merged = new HashMap<>();
+        for (List<PriceRangeSearch.Match> reader : readers) {
+            List<PriceRangeSearch.Match> cheapest = new ArrayList<>(reader);
+            cheapest.sort(PriceRangeSearch.ORDER);
+            for (PriceRangeSearch.Match match : cheapest.subList(0, Math.min(cheapest.size(), search.limit))) {
+                merged.putIfAbsent(match.storeName + "|" + match.productName, match);
+            }
+        }
+        all.sort(PriceRangeSearch.ORDER);
+        List<String> expected = new ArrayList<>();
+        for (PriceRangeSearch.Match match : all.subList(0, search.limit)) expected.add(match.productName);
+
+        List<String> got = new ArrayList<>();
+        String[] lines = search.format(merged.values()).split("\n");
+        for (String line : lines) {
+            if (line.startsWith("{")) got.add(PriceRangeSearch.Match.read(new JsonReader(line)).productName);
+        }
+        assertEquals(expected, got);
+        assertEquals("\"products\": 15", lines[lines.length - 1]);
+        assertEquals("\"products\": 0", search.format(List.of()));
+    }
+
+    @Test
+    public void priceCategoryBoundaries() {
+        assertEquals("$", Store.priceCategoryOf(500, 1));
+        assertEquals("$$", Store.priceCategoryOf(501, 1));
+        assertEquals("$$", Store.priceCategoryOf(3000, 2));
+        assertEquals("$$$", Store.priceCategoryOf(3001, 2));
+    }
+
+    @Test
+    public void priceCategoryFollowsTheListedProducts() {
+        for (boolean offHeap : new boolean[]{false, true}) {
+            Store store = StorePurchaseTest.store(offHeap);
+            assertEquals("", store.getPriceCategory());
+            store.addProduct(new Product("Pita", "souvlaki", 10, 3.0));
+            assertEquals("$", store.getPriceCategory());
+            store.addProduct(new Product("Platter", "souvlaki", 10, 9.0));
+            assertEquals("$$", store.getPriceCategory());
+            store.addProduct(new Product("Feast", "souvlaki", 10, 40.0));
+            assertEquals("$$$", store.getPriceCategory());
+            store.removeProduct("Feast");
+            assertEquals("$$", store.getPriceCategory());
+            store.removeProduct("Platter");
+            assertEquals("$", store.getPriceCategory());
+            store.removeProduct("Gyros"); // never listed
+            assertEquals("$", store.getPriceCategory());
+            store.removeProduct("Pita");
+            assertEquals("", store.getPriceCategory());
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.backend;
+
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+// The rings of recent sales at explicit seconds: windows by the second and by the minute,
+// buckets left over from an earlier turn of a ring, and the windows a query may ask for.
+public class SalesWindowTest {
+    // A whole minute, well away from zero
+    private static final long BASE = 60L * 28_000_000;
+
+    @Test
+    public void shortWindowsCountBySecond() {
+        SalesWindow window = new SalesWindow();
+        window.record(BASE, 1);
+        window.record(BASE + 1, 2);
+        window.record(BASE + 1, 3);
+        window.record(BASE + 30, 4);
+        assertEquals(10, window.units(BASE + 30, 31));
+        assertEquals(9, window.units(BASE + 30, 30));
+        assertEquals(4, window.units(BASE + 30, 1));
+        assertEquals(0, window.units(BASE + 31, 1));
+        // The first second drops out once the window no longer reaches back to it
+        assertEquals(10, window.units(BASE + 59, 60));
+        assertEquals(9, window.units(BASE + 60, 60));
+        assertEquals(0, window.units(BASE + 200, 60));
+    }
+
+    @Test
+    public void aSecondBucketIsResetOnTheRingsNextTurn() {
+        SalesWindow window = new SalesWindow();
+        window.record(BASE + 5, 7);
+        window.record(BASE + 65, 2); // the same slot, a minute on
+        assertEquals(2, window.units(BASE + 65, 1));
+        assertEquals(2, window.units(BASE + 65, 60));
+        // Asking about the earlier second finds a bucket stamped with another
+        assertEquals(0, window.units(BASE + 5, 1));
+    }
+
+    @Test
+    public void longWindowsCountWholeMinutes() {
+        SalesWindow window = new SalesWindow();
+        window.record(BASE + 10, 2);      // minute 0
+        window.record(BASE + 70, 3);      // minute 1
+        window.record(BASE + 250, 5);     // minute 4
+        // 61 seconds round up to the current minute and the one before
+        assertEquals(5, window.units(BASE + 250, 61));
+        assertEquals(10, window.units(BASE + 250, 300));
+        assertEquals(8, window.units(BASE + 300, 300));
+        assertEquals(0, window.units(BASE + 60 * 10, 300));
+    }
+
+    @Test
+    public void aMinuteBucketIsResetOnTheRingsNextTurn() {
+        SalesWindow window = new SalesWindow();
+        window.record(BASE, 1);
+        window.record(BASE + SalesWindow.MINUTES * 60L, 4);
+        assertEquals(4, window.units(BASE + SalesWindow.MINUTES * 60L, SalesWindow.MINUTES * 60));
+        assertEquals(0, window.units(BASE + 59, 120));
+    }
+
+    @Test
+    public void concurrentSalesInOneSecondAreAllCounted() throws Exception {
+        SalesWindow window = new SalesWindow();
+        int threads = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> running = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            running.add(pool.submit(() -> {
+                for (int i = 0; i < 10_000; i++) window.record(BASE + 3, 1);
+                return null;
+            }));
+        }
+        for (Future<?> call : running) {
+            call.get(60, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+        assertEquals(threads * 10_000, window.units(BASE + 3, 1));
+        assertEquals(threads * 10_000, window.units(BASE + 3, 120));
+    }
+
+    @Test
+    public void parsesWindows() {
+        assertEquals(30, SalesWindow.parseWindow("30s"));
+        assertEquals(300, SalesWindow.parseWindow("5m"));
+        assertEquals(SalesWindow.MINUTES * 60, SalesWindow.parseWindow(SalesWindow.MINUTES + "m"));
+        for (String bad : new String[]{"", "s", "5", "5h", "five m", "0s", "-1m", (SalesWindow.MINUTES + 1) + "m",
+                SalesWindow.MINUTES * 60 + 1 + "s"}) {
+            try {
+                SalesWindow.parseWindow(bad);
+                fail(bad);
+            } catch (IllegalArgumentException expected) {
+                // as intended
+            }
+        }
+    }
+
+    @Test
+    public void storeSumsItsProductsWindows() {
+        Store store = StorePurchaseTest.store(false);
+        store.addProduct(new Product("Margherita", "pizza", 10, 8.0));
+        store.addProduct(new Product("Caesar", "salad", 10, 6.0));
+        store.recordRecentSale("Margherita", 2, BASE + 10);
+        store.recordRecentSale("Caesar", 1, BASE + 70);
+        store.recordRecentSale("Margherita", 4, BASE + 200);
+        store.recordRecentSale("Calzone", 5, BASE + 200); // never listed
+        assertEquals(12, store.getRecentTotalSales(300, BASE + 200));
+        assertEquals(10, store.getRecentTotalSales(180, BASE + 200));
+        assertEquals(9, store.getRecentTotalSales(30, BASE + 200));
+        assertEquals(6, store.getRecentSalesOf("Margherita", 300, BASE + 200));
+        assertEquals(6, store.getRecentSalesOfType("pizza", 300, BASE + 200));
+        assertEquals(1, store.getRecentSalesOfType("salad", 300, BASE + 200));
+        assertEquals(0, store.getRecentSalesOf("Gyros", 300, BASE + 200));
+        assertEquals(0, store.getRecentTotalSales(300, BASE + 60 * 20));
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.backend;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+// Stores through the binary codec of log records and snapshot.bin, from heap arrays and
+// from direct buffers as a mapped snapshot is, with the shared string dictionary.
+public class StoreBinaryTest {
+
+    @Test
+    public void storesRoundTripFromHeapAndDirectBuffers() throws IOException {
+        for (boolean offHeap : new boolean[]{false, true}) {
+            Store store = napoli(offHeap);
+            WireProtocol.Encoder out = new WireProtocol.Encoder();
+            new StoreBinary.Writer().write(out, store);
+            byte[] bytes = out.toByteArray();
+
+            assertSameStore(store, new StoreBinary.Reader(ByteBuffer.wrap(bytes)).readStore());
+            ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+            StoreBinary.Reader reader = new StoreBinary.Reader(direct);
+            assertSameStore(store, reader.readStore());
+            assertFalse(reader.hasRemaining());
+        }
+    }
+
+    // As in a snapshot: the second store's repeated strings are back references
+    @Test
+    public void storesShareTheDictionary() throws IOException {
+        Store first = napoli(false);
+        Store second = new Store("Napoli 2", 38.0, 23.8, "pizzeria", 3, 1, "x.png", true);
+        second.addProduct(new Product("Margherita", "pizza", 4, 8.5));
+        StoreBinary.Writer writer = new StoreBinary.Writer();
+        WireProtocol.Encoder out = new WireProtocol.Encoder();
+        writer.write(out, first);
+        int firstLength = out.toByteArray().length;
+        writer.write(out, second);
+        WireProtocol.Encoder alone = new WireProtocol.Encoder();
+        new StoreBinary.Writer().write(alone, second);
+        assertTrue(out.toByteArray().length - firstLength < alone.toByteArray().length);
+
+        byte[] both = out.toByteArray();
+        StoreBinary.Reader reader = new StoreBinary.Reader(ByteBuffer.wrap(both));
+        assertSameStore(first, reader.readStore());
+        assertSameStore(second, reader.readStore());
+        // Without the first store a back reference has nothing to point to
+        try {
+            new StoreBinary.Reader(ByteBuffer.wrap(both, firstLength, both.length - firstLength)).readStore();
+            fail("back reference without its entry");
+        } catch (IOException expected) {
+            // as intended
+        }
+    }
+
+    @Test
+    public void truncatedStoresAreRefused() {
+        WireProtocol.Encoder out = new WireProtocol.Encoder();
+        new StoreBinary.Writer().write(out, napoli(true));
+        byte[] bytes = out.toByteArray();
+        for (int length = 0; length < bytes.length; length++) {
+            try {
+                new StoreBinary.Reader(ByteBuffer.wrap(Arrays.copyOf(bytes, length))).readStore();
+                fail("cut at " + length);
+            } catch (IOException expected) {
+                // as intended
+            }
+        }
+    }
+
+    @Test
+    public void zigZagKeepsSmallNegativesShort() {
+        int[] values = {0, -1, 1, -64, 63, Integer.MIN_VALUE, Integer.MAX_VALUE};
+        long[] encoded = {0, 1, 2, 127, 126, 0xFFFFFFFFL, 0xFFFFFFFEL};
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(encoded[i], StoreBinary.zigZag(values[i]));
+            assertEquals(values[i], StoreBinary.unZigZag(encoded[i]));
+        }
+    }
+
+    // A Greek name, a product sold out, a negative amount, and sales of a product no longer listed
+    private static Store napoli(boolean offHeap) {
+        Store store = StorePurchaseTest.store(offHeap);
+        store.addProduct(new Product("Margherita", "pizza", 10, 8.5));
+        store.addProduct(new Product("\u039c\u03bf\u03c5\u03c3\u03b1\u03ba\u03ac\u03c2", "oven", 0, 12.25));
+        store.addProduct(new Product("Calzone", "pizza", -2, 9.0));
+        store.addProduct(new Product("Marinara", "pizza", 5, 7.0));
+        store.recordSale("Margherita", 3);
+        store.recordSale("Marinara", 1);
+        store.removeProduct("Marinara");
+        return store;
+    }
+
+    private static void assertSameStore(Store expected, Store actual) {
+        assertEquals(expected.getStoreName(), actual.getStoreName());
+        assertEquals(expected.getLatitude(), actual.getLatitude(), 0);
+        assertEquals(expected.getLongitude(), actual.getLongitude(), 0);
+        assertEquals(expected.getFoodCategory(), actual.getFoodCategory());
+        assertEquals(expected.getStars(), actual.getStars());
+        assertEquals(expected.getNoOfVotes(), actual.getNoOfVotes());
+        assertEquals(expected.getStoreLogo(), actual.getStoreLogo());
+        assertEquals(expected.getPriceCategory(), actual.getPriceCategory());
+        assertEquals(products(expected), products(actual));
+        assertEquals(sales(expected), sales(actual));
+        assertEquals(expected.digest(), actual.digest());
+    }
+
+    private static List<String> products(Store store) {
+        List<String> products = new ArrayList<>();
+        for (Product product : store.getProducts()) {
+            products.add(product.getProductName() + "/" + product.getProductType() + "/"
+                    + product.getAvailableAmount() + "/" + product.getPrice());
+        }
+        return products;
+    }
+
+    private static Map<String, Integer> sales(Store store) {
+        Map<String, Integer> sales = new HashMap<>();
+        store.forEachSale(sales::put);
+        return sales;
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.backend;
+
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+// Adds, replaces and removes stores and products and checks that every index agrees with
+// the stores it holds, and that a key goes away with its last store.
+public class StoreIndexTest {
+
+    @Test
+    public void addReplaceAndRemoveKeepTheIndexesInStep() {
+        StoreIndex index = new StoreIndex();
+        Store pizzeria = store("Napoli", "pizzeria", new Product("Margherita", "pizza", 10, 8.0),
+                new Product("Greek", "salad", 10, 5.5));
+        Store grill = store("Grill", "\"Souvlaki\"", new Product("Gyros", "pita", 10, 4.0),
+                new Product("Greek", "salad", 10, 5.5));
+        index.add(pizzeria);
+        index.add(grill);
+
+        assertEquals(Set.of(pizzeria), index.storesInCategory("PIZZERIA"));
+        assertEquals(Set.of(grill), index.storesInCategory("souvlaki"));
+        assertEquals(Set.of(pizzeria, grill), index.storesWithType("salad"));
+        assertEquals(Set.of(pizzeria, grill), index.storesSelling("Greek"));
+        assertEquals(List.of(4.0, 5.5), new ArrayList<>(index.productsPricedBetween(4.0, 6.0).keySet()));
+        assertEquals(2, index.productsPricedBetween(5.5, 5.5).get(5.5).size());
+
+        // The replacement moves to another category and drops the salad
+        Store moved = store("Napoli", "trattoria", new Product("Margherita", "pizza", 10, 9.0));
+        index.replace(pizzeria, moved);
+        assertTrue(index.storesInCategory("pizzeria").isEmpty());
+        assertEquals(Set.of(moved), index.storesInCategory("trattoria"));
+        assertEquals(Set.of(moved), index.storesWithType("pizza"));
+        assertEquals(Set.of(grill), index.storesWithType("salad"));
+        assertEquals(Set.of(grill), index.storesSelling("Greek"));
+        assertTrue(index.productsPricedBetween(8.0, 8.0).isEmpty());
+        assertEquals(moved, index.productsPricedBetween(9.0, 9.0).get(9.0).iterator().next().store);
+
+        Product greek = grill.getProduct("Greek");
+        grill.removeProduct("Greek");
+        index.removeProduct(grill, "Greek", List.of(greek));
+        assertTrue(index.storesWithType("salad").isEmpty());
+        assertTrue(index.storesSelling("Greek").isEmpty());
+        assertTrue(index.productsPricedBetween(5.5, 5.5).isEmpty());
+
+        index.remove(moved);
+        index.remove(grill);
+        assertEquals(0, index.keyCount());
+    }
+
+    @Test
+    public void soldProductsStayIndexedUntilTheStoreLeaves() {
+        StoreIndex index = new StoreIndex();
+        Store store = store("Napoli", "pizzeria", new Product("Margherita", "pizza", 10, 8.0));
+        index.add(store);
+        store.recordSale("Margherita", 2);
+        index.addSale(store, "Margherita");
+
+        Product margherita = store.getProduct("Margherita");
+        store.removeProduct("Margherita");
+        index.removeProduct(store, "Margherita", List.of(margherita));
+        assertEquals(Set.of(store), index.storesSelling("Margherita"));
+        assertTrue(index.storesWithType("pizza").isEmpty());
+
+        index.remove(store);
+        assertEquals(0, index.keyCount());
+    }
+
+    // Stores of different lock stripes share every key; churning them from many threads must
+    // neither lose a store nor leave an emptied key behind
+    @Test
+    public void concurrentChurnOfSharedKeysLosesNothing() throws Exception {
+        StoreIndex index = new StoreIndex();
+        int threads = 8;
+        int rounds = 2000;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Store>> running = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            running.add(pool.submit(() -> {
+                Store current = null;
+                for (int i = 0; i < rounds; i++) {
+                    Store next = store("S" + thread, "pizzeria", new Product("Margherita", "pizza", 10, 8.0));
+                    if (i % 3 == 0) {
+                        if (current != null) index.remove(current);
+                        index.add(next);
+                    } else {
+                        index.replace(current, next);
+                    }
+                    current = next;
+                    assertTrue(index.storesInCategory("pizzeria").contains(current));
+                }
+                return current;
+            }));
+        }
+        Set<Store> last = new HashSet<>();
+        for (Future<Store> call : running) {
+            last.add(call.get(60, TimeUnit.SECONDS));
+        }
+        pool.shutdown();
+
+        assertEquals(last, index.storesInCategory("pizzeria"));
+        assertEquals(last, index.storesWithType("pizza"));
+        assertEquals(last, index.storesSelling("Margherita"));
+        assertEquals(threads, index.productsPricedBetween(8.0, 8.0).get(8.0).size());
+        for (Store store : last) {
+            index.remove(store);
+        }
+        assertEquals(0, index.keyCount());
+    }
+
+    private static Store store(String name, String category, Product... products) {
+        Store store = new Store(name, 37.9, 23.7, category, 4, 2, "x.png");
+        for (Product product : products) {
+            store.addProduct(product);
+        }
+        return store;
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.backend;
+
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.Lock;
+
+import static org.junit.Assert.*;
+
+// Sales are a long per product id in the store's product table, which is replaced by a
+// larger copy as products are added. Buyers hitting the table while it grows must not lose
+// sales, and ids and the read-only views must stay consistent.
+public class StoreProductTableTest {
+    private static final int THREADS = 8;
+    private static final int PRODUCTS = 300;
+
+    @Test
+    public void salesSurviveTheTableGrowingUnderBuyers() throws Exception {
+        Store store = StorePurchaseTest.store(false);
+        store.addProduct(new Product("P0", "pizza", Integer.MAX_VALUE, 5.0));
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS + 1);
+        long[][] bought = new long[THREADS][PRODUCTS];
+        CountDownLatch listed = new CountDownLatch(1);
+        List<Future<?>> running = new ArrayList<>();
+        // Lists the products one by one, doubling the table several times
+        running.add(pool.submit(() -> {
+            for (int p = 1; p < PRODUCTS; p++) {
+                store.addProduct(new Product("P" + p, p % 2 == 0 ? "pizza" : "salad", Integer.MAX_VALUE, 5.0));
+            }
+            listed.countDown();
+            return null;
+        }));
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            running.add(pool.submit(() -> {
+                Random random = new Random(thread);
+                int afterListing = 0;
+                while (listed.getCount() > 0 || afterListing++ < 2000) {
+                    int product = random.nextInt(PRODUCTS);
+                    Lock shared = store.purchaseLock();
+                    shared.lock();
+                    try {
+                        if (store.purchaseProduct("P" + product, 1) == Store.Purchase.COMPLETED) {
+                            bought[thread][product]++;
+                        }
+                    } finally {
+                        shared.unlock();
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> call : running) {
+            call.get(60, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        long total = 0;
+        long pizza = 0;
+        Map<String, Integer> sales = new HashMap<>();
+        store.forEachSale(sales::put);
+        for (int p = 0; p < PRODUCTS; p++) {
+            long expected = 0;
+            for (long[] perThread : bought) expected += perThread[p];
+            String name = "P" + p;
+            assertEquals(name, expected, store.getSalesOf(name));
+            assertEquals(name, expected == 0 ? null : Integer.valueOf((int) expected), sales.get(name));
+            assertEquals(name, Integer.MAX_VALUE - expected, store.getProduct(name).getAvailableAmount());
+            assertEquals(name, p, store.productId(name));
+            total += expected;
+            if (p % 2 == 0) pizza += expected;
+        }
+        assertEquals(sales.size(), store.getSalesCount());
+        assertEquals(total, store.getTotalSales());
+        assertEquals(pizza, store.getSalesOfType("pizza"));
+        assertEquals(total - pizza, store.getSalesOfType("salad"));
+    }
+
+    @Test
+    public void productsAreALiveReadOnlyView() {
+        Store store = StorePurchaseTest.store(false);
+        List<Product> products = store.getProducts();
+        store.addProduct(new Product("Margherita", "pizza", 10, 8.0));
+        assertEquals(1, products.size());
+        try {
+            products.clear();
+            fail("the view is read-only");
+        } catch (UnsupportedOperationException expected) {
+            // as intended
+        }
+        store.recordSale("Calzone", 2); // an id for a product the store never listed
+        assertEquals(1, store.productId("Calzone"));
+        assertNull(store.getProduct("Calzone"));
+        assertEquals(-1, store.productId("Gyros"));
+        assertEquals(1, store.getSalesCount());
+    }
+}
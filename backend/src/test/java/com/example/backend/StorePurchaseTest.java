@@ -0,0 +1,138 @@
+package com.example.backend;
+
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+
+import static org.junit.Assert.*;
+
+// Many buyers race for one product until it is sold out, on both catalogs, while other
+// products are listed (growing the store's product table or off-heap block under them).
+// Every unit must be sold exactly once.
+public class StorePurchaseTest {
+    private static final int THREADS = 16;
+    private static final int STOCK = 20_000;
+
+    @Test
+    public void buyersSellOutExactlyTheStockOnTheHeap() throws Exception {
+        buyUntilSoldOut(false);
+    }
+
+    @Test
+    public void buyersSellOutExactlyTheStockOffHeap() throws Exception {
+        buyUntilSoldOut(true);
+    }
+
+    @Test
+    public void offHeapReservationsNeverGoNegative() throws Exception {
+        OffHeapProducts products = new OffHeapProducts();
+        int id = products.idOf("Margherita");
+        products.list(id, "pizza", STOCK, 8.0);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Future<Long>> running = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            running.add(pool.submit(() -> {
+                Random random = new Random(thread);
+                long reserved = 0;
+                while (true) {
+                    int quantity = 1 + random.nextInt(5);
+                    if (products.tryReserve(id, quantity)) {
+                        products.addSales(id, quantity);
+                        reserved += quantity;
+                    } else if (!products.tryReserve(id, 1)) {
+                        return reserved;
+                    } else {
+                        products.addSales(id, 1);
+                        reserved++;
+                    }
+                }
+            }));
+        }
+        long reserved = 0;
+        for (Future<Long> call : running) {
+            reserved += call.get(60, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        assertEquals(STOCK, reserved);
+        assertEquals(0, products.stock(id));
+        assertEquals(STOCK, products.sales(id));
+        assertFalse(products.tryReserve(id, 1));
+    }
+
+    @Test
+    public void unknownAndUnlistedProductsAreNotBought() {
+        for (boolean offHeap : new boolean[]{false, true}) {
+            Store store = store(offHeap);
+            store.addProduct(new Product("Margherita", "pizza", 1, 8.0));
+            assertEquals(Store.Purchase.UNKNOWN_PRODUCT, store.purchaseProduct("Calzone", 1));
+            assertEquals(Store.Purchase.SOLD_OUT, store.purchaseProduct("Margherita", 2));
+            assertEquals(Store.Purchase.COMPLETED, store.purchaseProduct("Margherita", 1));
+            assertEquals(Store.Purchase.SOLD_OUT, store.purchaseProduct("Margherita", 1));
+            store.removeProduct("Margherita");
+            assertEquals(Store.Purchase.UNKNOWN_PRODUCT, store.purchaseProduct("Margherita", 1));
+            assertEquals(1, store.getSalesOf("Margherita"));
+        }
+    }
+
+    private static void buyUntilSoldOut(boolean offHeap) throws Exception {
+        Store store = store(offHeap);
+        store.addProduct(new Product("Margherita", "pizza", STOCK, 8.0));
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS + 1);
+        AtomicLong sold = new AtomicLong();
+        List<Future<?>> running = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            running.add(pool.submit(() -> {
+                Random random = new Random(thread);
+                while (true) {
+                    int quantity = 1 + random.nextInt(3);
+                    Store.Purchase purchase = purchase(store, quantity);
+                    if (purchase == Store.Purchase.SOLD_OUT && quantity > 1) {
+                        quantity = 1;
+                        purchase = purchase(store, quantity);
+                    }
+                    if (purchase == Store.Purchase.SOLD_OUT) return null;
+                    assertEquals(Store.Purchase.COMPLETED, purchase);
+                    sold.addAndGet(quantity);
+                }
+            }));
+        }
+        running.add(pool.submit(() -> {
+            for (int i = 0; i < 200; i++) {
+                store.addProduct(new Product("Extra" + i, "salad", 10, 4.0));
+            }
+            return null;
+        }));
+        for (Future<?> call : running) {
+            call.get(60, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        assertEquals(STOCK, sold.get());
+        assertEquals(0, store.getProduct("Margherita").getAvailableAmount());
+        assertEquals(STOCK, store.getSalesOf("Margherita"));
+        assertEquals(STOCK, store.getTotalSales());
+        assertEquals(STOCK, store.getSalesOfType("pizza"));
+        assertEquals(201, store.getProducts().size());
+    }
+
+    // As the Worker buys: under the store's shared lock
+    private static Store.Purchase purchase(Store store, int quantity) {
+        Lock shared = store.purchaseLock();
+        shared.lock();
+        try {
+            return store.purchaseProduct("Margherita", quantity);
+        } finally {
+            shared.unlock();
+        }
+    }
+
+    static Store store(boolean offHeap) {
+        return new Store("Napoli", 37.9, 23.7, "pizzeria", 4, 2, "x.png", offHeap);
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.backend;
+
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.Lock;
+
+import static org.junit.Assert.*;
+
+// The store's running total and per-type rollups must match the per-product sales they roll
+// up, with purchases, carried-over sales and product changes running at once.
+public class StoreSalesRollupTest {
+    private static final String[][] PRODUCTS = {
+            {"Margherita", "pizza"}, {"Pepperoni", "pizza"}, {"Greek", "salad"}, {"Gyros", "pita"}};
+    private static final int THREADS = 8;
+    private static final int BUYS_PER_THREAD = 5000;
+
+    @Test
+    public void rollupsLoseNoUpdatesOnTheHeap() throws Exception {
+        rollupsLoseNoUpdates(false);
+    }
+
+    @Test
+    public void rollupsLoseNoUpdatesOffHeap() throws Exception {
+        rollupsLoseNoUpdates(true);
+    }
+
+    @Test
+    public void removedProductsStopCountingTowardTheirType() {
+        for (boolean offHeap : new boolean[]{false, true}) {
+            Store store = StorePurchaseTest.store(offHeap);
+            store.addProduct(new Product("Margherita", "pizza", 10, 8.0));
+            store.addProduct(new Product("Pepperoni", "pizza", 10, 9.0));
+            store.purchaseProduct("Margherita", 3);
+            store.purchaseProduct("Pepperoni", 2);
+            store.recordSale("Calzone", 4); // sold, never listed
+            assertEquals(5, store.getSalesOfType("pizza"));
+            assertEquals(9, store.getTotalSales());
+
+            store.removeProduct("Margherita");
+            assertEquals(2, store.getSalesOfType("pizza"));
+            assertEquals(9, store.getTotalSales());
+            assertEquals(3, store.getSalesOf("Margherita"));
+
+            store.addProduct(new Product("Margherita", "pizza", 10, 8.0));
+            store.addProduct(new Product("Calzone", "pizza", 10, 10.0));
+            assertEquals(9, store.getSalesOfType("pizza"));
+        }
+    }
+
+    private static void rollupsLoseNoUpdates(boolean offHeap) throws Exception {
+        Store store = StorePurchaseTest.store(offHeap);
+        for (String[] product : PRODUCTS) {
+            store.addProduct(new Product(product[0], product[1], Integer.MAX_VALUE, 5.0));
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS + 1);
+        long[][] bought = new long[THREADS][PRODUCTS.length];
+        List<Future<?>> running = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            running.add(pool.submit(() -> {
+                Random random = new Random(thread);
+                for (int i = 0; i < BUYS_PER_THREAD; i++) {
+                    int product = random.nextInt(PRODUCTS.length);
+                    int quantity = 1 + random.nextInt(3);
+                    Lock shared = store.purchaseLock();
+                    shared.lock();
+                    try {
+                        assertEquals(Store.Purchase.COMPLETED, store.purchaseProduct(PRODUCTS[product][0], quantity));
+                    } finally {
+                        shared.unlock();
+                    }
+                    bought[thread][product] += quantity;
+                }
+                return null;
+            }));
+        }
+        // Carried-over sales and a product listed and removed again, under the exclusive lock
+        running.add(pool.submit(() -> {
+            for (int i = 0; i < 500; i++) {
+                store.recordSale("Margherita", 1);
+                store.addProduct(new Product("Extra", "pizza", 10, 4.0));
+                store.removeProduct("Extra");
+            }
+            return null;
+        }));
+        for (Future<?> call : running) {
+            call.get(60, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        long total = 0;
+        Map<String, Long> byType = new HashMap<>();
+        for (int p = 0; p < PRODUCTS.length; p++) {
+            long expected = p == 0 ? 500 : 0;
+            for (long[] perThread : bought) expected += perThread[p];
+            assertEquals(PRODUCTS[p][0], expected, store.getSalesOf(PRODUCTS[p][0]));
+            total += expected;
+            byType.merge(PRODUCTS[p][1], expected, Long::sum);
+        }
+        assertEquals(total, store.getTotalSales());
+        for (Map.Entry<String, Long> type : byType.entrySet()) {
+            assertEquals(type.getKey(), (long) type.getValue(), store.getSalesOfType(type.getKey()));
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.backend;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+// SEARCH's query parsing, its predicates, and Master's paging over the readers' merged
+// matches, walked page by page against the full ordered list.
+public class StoreSearchTest {
+
+    @Test
+    public void parsesTermsAndDerivesTheLimitFromThePage() {
+        StoreSearch search = StoreSearch.parse("pizzeria, minStars=4,price=$$,available=true,page=2,pageSize=10");
+        assertEquals("pizzeria", search.category);
+        assertEquals(4, search.minStars);
+        assertEquals("$$", search.priceCategory);
+        assertTrue(search.available);
+        assertEquals(2, search.page);
+        assertEquals(10, search.pageSize);
+        assertEquals(31, search.limit);
+
+        StoreSearch defaults = StoreSearch.parse("");
+        assertNull(defaults.category);
+        assertEquals(0, defaults.page);
+        assertEquals(StoreSearch.DEFAULT_PAGE_SIZE, defaults.pageSize);
+        assertEquals(StoreSearch.DEFAULT_PAGE_SIZE + 1, defaults.limit);
+    }
+
+    @Test
+    public void workersGetTheQueryMasterWorkedOut() {
+        StoreSearch search = StoreSearch.parse("category=sushi,minStars=3,page=1,pageSize=5");
+        StoreSearch forWorker = StoreSearch.parseForWorker(search.forWorkers());
+        assertEquals("sushi", forWorker.category);
+        assertEquals(3, forWorker.minStars);
+        assertEquals(11, forWorker.limit);
+    }
+
+    @Test
+    public void rejectsBadQueries() {
+        for (String query : new String[]{"limit=5", "pizzeria,limit=100000", "color=red", "minStars=four",
+                "page=-1", "pageSize=0", "pageSize=" + (StoreSearch.MAX_PAGE_SIZE + 1), "page=" + Integer.MAX_VALUE}) {
+            try {
+                StoreSearch.parse(query);
+                fail(query);
+            } catch (IllegalArgumentException expected) {
+                // as intended
+            }
+        }
+        try {
+            StoreSearch.parseForWorker("limit=0");
+            fail("limit=0");
+        } catch (IllegalArgumentException expected) {
+            // as intended
+        }
+    }
+
+    @Test
+    public void matchesThePredicates() {
+        Store store = new Store("Napoli", 37.9, 23.7, "\"Pizzeria\"", 4, 10, "x.png");
+        store.addProduct(new Product("Margherita", "pizza", 0, 8.0));
+        assertTrue(StoreSearch.parse("pizzeria,minStars=4,price=$$").matches(store));
+        assertFalse(StoreSearch.parse("minStars=5").matches(store));
+        assertFalse(StoreSearch.parse("sushi").matches(store));
+        assertFalse(StoreSearch.parse("price=$").matches(store));
+        assertFalse(StoreSearch.parse("available=true").matches(store));
+        store.addProduct(new Product("Marinara", "pizza", 3, 7.0));
+        assertTrue(StoreSearch.parse("available=true").matches(store));
+    }
+
+    // Readers share some stores (partitions being moved); each returns its best up to the
+    // limit, and walking nextPage over the merge must give every store once, in order
+    @Test
+    public void pagesOverMergedReadersCoverEveryStoreInOrder() throws IOException {
+        Random random = new Random(3);
+        List<StoreSearch.Summary> all = new ArrayList<>();
+        for (int i = 0; i < 57; i++) {
+            all.add(new StoreSearch.Summary("S" + i, "pizzeria", random.nextInt(5), random.nextInt(3), "$",
+                    37.9, 23.7, "x.png"));
+        }
+        List<List<StoreSearch.Summary>> readers = List.of(new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+        for (StoreSearch.Summary summary : all) {
+            readers.get(random.nextInt(3)).add(summary);
+            if (random.nextInt(5) == 0) readers.get(random.nextInt(3)).add(summary);
+        }
+        List<StoreSearch.Summary> ordered = new ArrayList<>(all);
+        ordered.sort(StoreSearch.ORDER);
+
+        List<String> paged = new ArrayList<>();
+        int page = 0;
+        int pages = 0;
+        while (page != -1) {
+            StoreSearch search = StoreSearch.parse("page=" + page + ",pageSize=10");
+            Map<String, StoreSearch.Summary> merged = new HashMap<>();
+            for (List<StoreSearch.Summary> reader : readers) {
+                List<StoreSearch.Summary> best = new ArrayList<>(reader);
+                best.sort(StoreSearch.ORDER);
+                for (StoreSearch.Summary summary : best.subList(0, Math.min(best.size(), search.limit))) {
+                    merged.putIfAbsent(summary.storeName, summary);
+                }
+            }
+            page = -1;
+            for (String line : search.formatPage(merged.values()).split("\n")) {
+                if (line.startsWith("{")) {
+                    paged.add(StoreSearch.Summary.read(new JsonReader(line)).storeName);
+                } else if (line.startsWith("\"nextPage\"")) {
+                    page = Integer.parseInt(line.substring(line.indexOf(':') + 1).trim());
+                }
+            }
+            pages++;
+        }
+        assertEquals(6, pages);
+        List<String> expected = new ArrayList<>();
+        for (StoreSearch.Summary summary : ordered) expected.add(summary.storeName);
+        assertEquals(expected, paged);
+
+        String pastTheEnd = StoreSearch.parse("page=9,pageSize=10").formatPage(all);
+        assertEquals("\"stores\": 0", pastTheEnd);
+    }
+}
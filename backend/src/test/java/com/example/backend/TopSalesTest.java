@@ -0,0 +1,90 @@
+package com.example.backend;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+// Runs Master's three-round product merge against simulated readers, each answering from its
+// own units as a Worker does, and compares the result with a brute-force top k over the sums.
+public class TopSalesTest {
+
+    @Test
+    public void mergeMatchesBruteForceTopK() {
+        Random random = new Random(42);
+        for (int trial = 0; trial < 2000; trial++) {
+            int readers = 1 + random.nextInt(5);
+            int products = 1 + random.nextInt(40);
+            // Small unit ranges make ties common; large k often exceeds the products sold
+            int maxUnits = trial % 2 == 0 ? 4 : 1000;
+            int k = 1 + random.nextInt(trial % 3 == 0 ? 60 : 10);
+            List<Map<String, Integer>> partials = new ArrayList<>();
+            for (int r = 0; r < readers; r++) {
+                Map<String, Integer> units = new HashMap<>();
+                for (int p = 0; p < products; p++) {
+                    if (random.nextInt(3) != 0) units.put("P" + p, 1 + random.nextInt(maxUnits));
+                }
+                partials.add(units);
+            }
+            Map<String, Integer> sharedUnits = new HashMap<>();
+            if (trial % 4 == 0) {
+                for (int p = 0; p < products; p += 3) sharedUnits.put("P" + p, 1 + random.nextInt(maxUnits));
+            }
+
+            assertEquals("trial " + trial, bruteForce(partials, sharedUnits, k), merge(partials, sharedUnits, k));
+        }
+    }
+
+    @Test
+    public void namesMayHoldAnyCharacter() {
+        List<String> names = List.of("Pita|Gyros", "Salad, Greek", "12:3", "names=x", "");
+        TopSales query = TopSales.parse("products,k=5,category=pizzeria,names=" + TopSales.encodeNames(names));
+        assertEquals(new ArrayList<>(names), new ArrayList<>(query.names));
+        assertEquals("pizzeria", query.category);
+
+        Map<String, Integer> units = new HashMap<>();
+        units.put("Pita|Gyros", 3);
+        units.put("Pita", 9);
+        Map<String, Integer> result = new HashMap<>();
+        query.select(units, result);
+        assertEquals(Map.of("Pita|Gyros", 3), result);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void truncatedNamesAreRejected() {
+        TopSales.parse("products,k=5,names=10:short");
+    }
+
+    private static List<Map.Entry<String, Integer>> merge(List<Map<String, Integer>> partials,
+                                                          Map<String, Integer> sharedUnits, int k) {
+        TopSales query = TopSales.parse("products,k=" + k);
+        Map<Integer, Map<String, Integer>> known = new HashMap<>();
+        for (int r = 0; r < partials.size(); r++) {
+            Map<String, Integer> reply = new HashMap<>();
+            query.select(partials.get(r), reply);
+            known.put(r, reply);
+        }
+        Map<String, Integer> sums = query.mergeProducts(known, sharedUnits, terms -> {
+            Map<Integer, Map<String, Integer>> replies = new HashMap<>();
+            for (Map.Entry<Integer, String> term : terms.entrySet()) {
+                Map<String, Integer> reply = new HashMap<>();
+                TopSales.parse(query.forWorkers() + term.getValue()).select(partials.get(term.getKey()), reply);
+                replies.put(term.getKey(), reply);
+            }
+            return replies;
+        });
+        return TopSales.best(sums, k);
+    }
+
+    private static List<Map.Entry<String, Integer>> bruteForce(List<Map<String, Integer>> partials,
+                                                               Map<String, Integer> sharedUnits, int k) {
+        Map<String, Integer> sums = new HashMap<>(sharedUnits);
+        for (Map<String, Integer> units : partials) {
+            for (Map.Entry<String, Integer> entry : units.entrySet()) sums.merge(entry.getKey(), entry.getValue(), Integer::sum);
+        }
+        List<Map.Entry<String, Integer>> all = new ArrayList<>(sums.entrySet());
+        all.sort(TopSales.ORDER);
+        return all.subList(0, Math.min(k, all.size()));
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.backend;
+
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+// The binary codec: varints at their byte boundaries and for negative values, frames and
+// the frame limit, requests and replies carrying names the text protocol cannot, and the
+// text form of a command's fields.
+public class WireProtocolTest {
+
+    @Test
+    public void varintsTakeOneByteMorePerSevenBits() throws IOException {
+        long[] values = {0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE, -1, Integer.MIN_VALUE, Long.MAX_VALUE};
+        int[] lengths = {1, 1, 1, 2, 2, 3, 5, 10, 10, 9};
+        for (int i = 0; i < values.length; i++) {
+            byte[] encoded = new WireProtocol.Encoder().varint(values[i]).toByteArray();
+            assertEquals(Long.toString(values[i]), lengths[i], encoded.length);
+            assertEquals(values[i], new WireProtocol.Decoder(encoded).varint());
+        }
+        assertArrayEquals(new byte[]{(byte) 0x80, 0x01}, new WireProtocol.Encoder().varint(128).toByteArray());
+    }
+
+    @Test
+    public void malformedVarintsAndStringsAreRefused() {
+        byte[] tooLong = new byte[11];
+        Arrays.fill(tooLong, (byte) 0x80);
+        assertDecodeFails(tooLong);
+        assertDecodeFails(new byte[]{(byte) 0x80});
+        // A string claiming more bytes than the payload holds
+        byte[] truncated = new WireProtocol.Encoder().varint(1).varint(50).put("short".getBytes(StandardCharsets.UTF_8))
+                .toByteArray();
+        try {
+            WireProtocol.Decoder decoder = new WireProtocol.Decoder(truncated);
+            decoder.varint();
+            decoder.string();
+            fail("truncated string");
+        } catch (IOException expected) {
+            // as intended
+        }
+    }
+
+    @Test
+    public void framesRoundTripAndEndCleanly() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] small = WireProtocol.textReply(1, "ok");
+        byte[] large = new byte[300];
+        Arrays.fill(large, (byte) 7);
+        WireProtocol.writeFrame(out, small);
+        WireProtocol.writeFrame(out, large);
+        WireProtocol.writeFrame(out, new byte[0]);
+        InputStream in = new ByteArrayInputStream(out.toByteArray());
+        assertArrayEquals(small, WireProtocol.readFrame(in));
+        assertArrayEquals(large, WireProtocol.readFrame(in));
+        assertArrayEquals(new byte[0], WireProtocol.readFrame(in));
+        assertNull(WireProtocol.readFrame(in));
+
+        byte[] cut = Arrays.copyOf(out.toByteArray(), small.length + 3);
+        InputStream partial = new ByteArrayInputStream(cut);
+        WireProtocol.readFrame(partial);
+        try {
+            WireProtocol.readFrame(partial);
+            fail("frame cut short");
+        } catch (EOFException expected) {
+            // as intended
+        }
+    }
+
+    @Test
+    public void framesOverTheLimitAreRefusedBeforeReading() {
+        byte[] header = new WireProtocol.Encoder().varint(WireProtocol.MAX_FRAME + 1L).toByteArray();
+        assertFrameFails(header, "Frame too large");
+        byte[] endless = {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x01};
+        assertFrameFails(endless, "too long");
+    }
+
+    @Test
+    public void requestsAndTextRepliesRoundTrip() throws IOException {
+        WireProtocol.Decoder request = new WireProtocol.Decoder(
+                WireProtocol.request(300, "BUY", List.of("a:b|c\nd, e", "P", "2")));
+        assertEquals(300, request.varint());
+        assertEquals("BUY", request.string());
+        assertEquals(3, request.varint());
+        assertEquals("a:b|c\nd, e", request.string());
+        assertEquals("P", request.string());
+        assertEquals("2", request.string());
+
+        // Greek, and a pizza outside the Basic Multilingual Plane
+        String text = "\u0395\u03bb\u03bb\u03ac\u03b4\u03b1 \ud83c\udf55\nline two";
+        WireProtocol.Decoder reply = new WireProtocol.Decoder(WireProtocol.textReply(5, text));
+        assertEquals(5, reply.varint());
+        assertEquals(text, WireProtocol.Reply.decode(reply).text());
+        assertEquals(text.getBytes(StandardCharsets.UTF_8).length, WireProtocol.utf8Length(text));
+    }
+
+    // Names with the text protocol's separators, and negative values as digests are
+    @Test
+    public void salesRepliesKeepAnyName() throws IOException {
+        Map<String, Integer> sales = new LinkedHashMap<>();
+        sales.put("Pizza: Fun", 3);
+        sales.put("Gyros | Souvlaki", 0);
+        sales.put("Two\nLines", Integer.MAX_VALUE);
+        sales.put("Digest", -123456789);
+        sales.put("", Integer.MIN_VALUE);
+        WireProtocol.Decoder reply = new WireProtocol.Decoder(WireProtocol.salesReply(77, sales));
+        assertEquals(77, reply.varint());
+        WireProtocol.Reply decoded = WireProtocol.Reply.decode(reply);
+        assertEquals(sales, decoded.sales());
+        assertEquals(new ArrayList<>(sales.keySet()), new ArrayList<>(decoded.sales().keySet()));
+
+        // The text protocol splits on the last ':', so only '|' and newlines are lost there
+        Map<String, Integer> text = new LinkedHashMap<>();
+        text.put("Pizza: Fun", 3);
+        text.put("Grill", -5);
+        assertEquals("Pizza: Fun:3|Grill:-5", WireProtocol.formatSales(text));
+        assertEquals(text, WireProtocol.parseSales(WireProtocol.formatSales(text)));
+    }
+
+    // The text form of BUY and the product commands, as clients and text-protocol Workers get it
+    @Test
+    public void fieldsMayBeJsonStringsHoldingCommas() {
+        assertEquals(List.of("Pizza Fun", "Margherita", "2"), WireProtocol.splitFields(" Pizza Fun , Margherita,2"));
+        assertEquals(List.of("Pasta, Pizza & Co", "Salad \"Greek\"", " 2"),
+                WireProtocol.splitFields("\"Pasta, Pizza & Co\" , \"Salad \\\"Greek\\\"\",\" 2\""));
+        assertEquals(List.of(""), WireProtocol.splitFields(""));
+        assertEquals(List.of("a", "", "b"), WireProtocol.splitFields("a,,b"));
+
+        List<String> fields = List.of("Pasta, Pizza & Co", "Two\nLines", "\"Quoted\"", " padded ", "plain", "");
+        assertEquals(fields, WireProtocol.splitFields(WireProtocol.joinFields(fields)));
+        assertEquals("S,P,3", WireProtocol.joinFields(List.of("S", "P", "3")));
+        assertFalse(WireProtocol.joinFields(fields).contains("\n"));
+
+        for (String bad : new String[]{"\"unterminated,P,1", "\"S\" trailing,P,1"}) {
+            try {
+                WireProtocol.splitFields(bad);
+                fail(bad);
+            } catch (IllegalArgumentException expected) {
+                // as intended
+            }
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void anErrorTextIsNotSales() throws IOException {
+        WireProtocol.Decoder reply = new WireProtocol.Decoder(WireProtocol.textReply(1, "Error: bad query"));
+        reply.varint();
+        WireProtocol.Reply.decode(reply).sales();
+    }
+
+    @Test
+    public void unknownReplyTypesAreRefused() {
+        byte[] payload = new WireProtocol.Encoder().put((byte) 9).string("x").toByteArray();
+        try {
+            WireProtocol.Reply.decode(new WireProtocol.Decoder(payload));
+            fail("type 9");
+        } catch (IOException expected) {
+            // as intended
+        }
+    }
+
+    private static void assertDecodeFails(byte[] payload) {
+        try {
+            new WireProtocol.Decoder(payload).varint();
+            fail(Arrays.toString(payload));
+        } catch (IOException expected) {
+            // as intended
+        }
+    }
+
+    private static void assertFrameFails(byte[] frame, String message) {
+        try {
+            WireProtocol.readFrame(new ByteArrayInputStream(frame));
+            fail(message);
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains(message));
+        }
+    }
+}
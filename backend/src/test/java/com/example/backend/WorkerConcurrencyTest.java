@@ -0,0 +1,192 @@
+package com.example.backend;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+// Drives one WorkerThread over a pipelined WorkerConnection from many threads at once:
+// BUYs on a few stores race with product changes on the same stores and with sales
+// queries, and nothing may be lost, oversold or left out of the log.
+public class WorkerConcurrencyTest {
+    private static final int STORES = 4;
+    private static final int THREADS = 16;
+    private static final int BUYS_PER_THREAD = 300;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Map<String, Store> stores = new ConcurrentHashMap<>();
+    private ServerSocket server;
+    private ExecutorService requestPool;
+    private WorkerConnection worker;
+
+    @Before
+    public void startWorker() throws Exception {
+        WorkerStorage storage = new WorkerStorage(folder.getRoot().getPath(), stores);
+        storage.recover();
+        storage.start();
+        requestPool = Executors.newFixedThreadPool(8);
+        server = new ServerSocket(0);
+        Thread acceptor = new Thread(() -> {
+            try {
+                Socket socket = server.accept();
+                new WorkerThread(socket, stores, new LockStripes(64), new StoreIndex(), null, new GeoIndex(),
+                        storage, requestPool).run();
+            } catch (Exception e) {
+                // The test closed the server
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+        worker = new WorkerConnection("localhost", server.getLocalPort());
+    }
+
+    @After
+    public void stopWorker() throws Exception {
+        worker.close();
+        server.close();
+        requestPool.shutdownNow();
+    }
+
+    @Test
+    public void concurrentBuysLoseNoSalesAndReachTheLog() throws Exception {
+        for (int s = 0; s < STORES; s++) {
+            assertTrue(worker.sendRequest("ADD_STORE " + storeJson("S" + s, 1_000_000)).startsWith("Store added"));
+        }
+        ExecutorService clients = Executors.newFixedThreadPool(THREADS + 2);
+        int[][] bought = new int[THREADS][STORES];
+        List<Future<?>> running = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            running.add(clients.submit(() -> {
+                Random random = new Random(thread);
+                for (int i = 0; i < BUYS_PER_THREAD; i++) {
+                    int store = random.nextInt(STORES);
+                    int quantity = 1 + random.nextInt(3);
+                    String reply = worker.sendRequest("BUY S" + store + ",P," + quantity);
+                    assertTrue(reply, reply.startsWith(Worker.PURCHASE_PROCESSED));
+                    bought[thread][store] += quantity;
+                }
+                return null;
+            }));
+        }
+        // Mutations of the same stores and scans of them run alongside the BUYs
+        running.add(clients.submit(() -> {
+            for (int i = 0; i < 200; i++) {
+                String store = "S" + (i % STORES);
+                worker.sendRequest("ADD_PRODUCT " + store + ",Extra" + i + ",salad,10,2.5");
+                worker.sendRequest("REMOVE_PRODUCT " + store + ",Extra" + i);
+            }
+            return null;
+        }));
+        running.add(clients.submit(() -> {
+            for (int i = 0; i < 200; i++) {
+                worker.sendSalesQueryAsync("GET_SALES_BY_PRODUCT P").get();
+            }
+            return null;
+        }));
+        for (Future<?> call : running) {
+            call.get(60, TimeUnit.SECONDS);
+        }
+        clients.shutdown();
+
+        Map<String, Integer> sales = worker.sendSalesQueryAsync("GET_SALES_BY_PRODUCT P").get();
+        Map<String, Store> recovered = new ConcurrentHashMap<>();
+        new WorkerStorage(folder.getRoot().getPath(), recovered).recover();
+        for (int s = 0; s < STORES; s++) {
+            int expected = 0;
+            for (int[] perThread : bought) expected += perThread[s];
+            String name = "S" + s;
+            assertEquals(name, Integer.valueOf(expected), sales.get(name));
+            assertEquals(name, 1_000_000 - expected, stores.get(name).getProduct("P").getAvailableAmount());
+            assertEquals(name, 1, stores.get(name).getProducts().size());
+            assertEquals(name, expected, recovered.get(name).getSalesOf("P"));
+            assertEquals(name, 1_000_000 - expected, recovered.get(name).getProduct("P").getAvailableAmount());
+        }
+    }
+
+    @Test
+    public void concurrentBuysOfOneProductNeverOversell() throws Exception {
+        int stock = 500;
+        worker.sendRequest("ADD_STORE " + storeJson("Hot", stock));
+        ExecutorService clients = Executors.newFixedThreadPool(THREADS);
+        AtomicInteger processed = new AtomicInteger();
+        AtomicInteger soldOut = new AtomicInteger();
+        List<Future<?>> running = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            running.add(clients.submit(() -> {
+                for (int i = 0; i < 50; i++) {
+                    String reply = worker.sendRequest("BUY Hot,P,1");
+                    if (reply.startsWith(Worker.PURCHASE_PROCESSED)) {
+                        processed.incrementAndGet();
+                    } else {
+                        assertTrue(reply, reply.startsWith(Worker.SOLD_OUT));
+                        soldOut.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> call : running) {
+            call.get(60, TimeUnit.SECONDS);
+        }
+        clients.shutdown();
+
+        assertEquals(stock, processed.get());
+        assertEquals(THREADS * 50 - stock, soldOut.get());
+        assertEquals(0, stores.get("Hot").getProduct("P").getAvailableAmount());
+        assertEquals(stock, stores.get("Hot").getSalesOf("P"));
+    }
+
+    // Answered at once with an error, not left for Master to time out
+    @Test
+    public void malformedQueriesGetAnErrorReply() throws Exception {
+        for (String query : new String[]{"GET_SALES_BY_PRODUCT PARTITIONS=x-y P", "GET_SALES_TOP bogus,k=3"}) {
+            try {
+                worker.sendSalesQueryAsync(query).get(5, TimeUnit.SECONDS);
+                fail(query);
+            } catch (ExecutionException e) {
+                assertTrue(query, e.getCause().getMessage().startsWith("Error: "));
+            }
+        }
+        assertEquals(0, worker.sendSalesQueryAsync("GET_SALES_BY_PRODUCT P").get(5, TimeUnit.SECONDS).size());
+    }
+
+    // Sent as separate fields; the text form quotes them
+    @Test
+    public void namesWithCommasReachTheWorkerWhole() throws Exception {
+        String name = "Pasta, Pizza & Co";
+        worker.sendRequest("ADD_STORE " + storeJson(name, 5));
+        assertEquals(Worker.PURCHASE_PROCESSED, worker.sendRequest("BUY", List.of(name, "P", "2")));
+        assertEquals("Product added to store: " + name,
+                worker.sendRequest("ADD_PRODUCT", List.of(name, "Salad, Greek", "salad", "4", "6.5")));
+        assertEquals(Worker.PURCHASE_PROCESSED, worker.sendRequest("BUY \"" + name + "\",\"Salad, Greek\",1"));
+        assertEquals("Product removed from store: " + name,
+                worker.sendRequest("REMOVE_PRODUCT", List.of(name, "Salad, Greek")));
+        Map<String, Integer> sales = worker.sendSalesQueryAsync("GET_SALES_BY_PRODUCT P").get(5, TimeUnit.SECONDS);
+        assertEquals(Integer.valueOf(2), sales.get(name));
+        try {
+            worker.sendRequest("BUY \"" + name + ",P,1");
+            fail("unterminated name");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().startsWith("Invalid BUY fields"));
+        }
+    }
+
+    private static String storeJson(String name, int stock) {
+        return "{\"StoreName\": \"" + name + "\", \"Latitude\": 37.9, \"Longitude\": 23.7, \"FoodCategory\": \"pizzeria\","
+                + " \"Stars\": 4, \"NoOfVotes\": 2, \"StoreLogo\": \"x.png\", \"Products\": [{\"ProductName\": \"P\","
+                + " \"ProductType\": \"pizza\", \"Available Amount\": " + stock + ", \"Price\": 5.0}]}";
+    }
+}
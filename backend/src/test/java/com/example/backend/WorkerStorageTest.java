@@ -0,0 +1,307 @@
+package com.example.backend;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.*;
+
+// The log and its segments: every kind of record replays, a torn or corrupt tail is cut
+// (with any segments after it), a batch that could not be written is not acknowledged or
+// replayed, and a snapshot leaves only the segment started for it. A snapshot round-trips,
+// and one failing its checks is set aside for the log alone.
+public class WorkerStorageTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Map<String, Store> stores = new ConcurrentHashMap<>();
+
+    @Test
+    public void everyKindOfRecordReplays() throws IOException {
+        WorkerStorage storage = started(new WorkerStorage(directory(), stores));
+        addStore(storage, "S0");
+        addStore(storage, "S1");
+        addStore(storage, "S2");
+        buy(storage, "S0", "P", 3);
+        buy(storage, "S0", "P", 4);
+        Store s1 = stores.get("S1");
+        Product salad = new Product("Q, \"Greek\"", "salad", 10, 6.5);
+        s1.addProduct(salad);
+        s1.setWalSeq(storage.logAddProduct("S1", salad));
+        buy(storage, "S1", "Q, \"Greek\"", 2);
+        s1.removeProduct("P");
+        s1.setWalSeq(storage.logRemoveProduct("S1", "P"));
+        stores.remove("S2");
+        storage.logDrop("S2");
+        storage.awaitLogged();
+
+        Map<String, Store> recovered = recover();
+        assertSameStores(stores, recovered);
+        assertEquals(7, recovered.get("S0").getSalesOf("P"));
+        assertEquals(993, recovered.get("S0").getProduct("P").getAvailableAmount());
+        assertEquals(List.of("Q, \"Greek\""), names(recovered.get("S1").getProducts()));
+        assertEquals(2, recovered.get("S1").getSalesOf("Q, \"Greek\""));
+        assertEquals(stores.get("S1").getWalSeq(), recovered.get("S1").getWalSeq());
+    }
+
+    @Test
+    public void aTornTailIsCutAndTheLogGoesOnFromThere() throws IOException {
+        WorkerStorage storage = started(new WorkerStorage(directory(), stores));
+        addStore(storage, "S0");
+        buy(storage, "S0", "P", 1);
+        Path segment = folder.getRoot().toPath().resolve("wal-1.log");
+        long good = Files.size(segment);
+        buy(storage, "S0", "P", 2);
+        truncate(segment, Files.size(segment) - 3);
+
+        Map<String, Store> recovered = new ConcurrentHashMap<>();
+        WorkerStorage restarted = new WorkerStorage(directory(), recovered);
+        restarted.recover();
+        assertEquals(1, recovered.get("S0").getSalesOf("P"));
+        assertEquals(good, Files.size(segment));
+
+        restarted.start();
+        Store store = recovered.get("S0");
+        store.purchaseProduct("P", 5);
+        store.setWalSeq(restarted.logPurchase("S0", "P", 5));
+        restarted.awaitLogged();
+        assertEquals(6, recover().get("S0").getSalesOf("P"));
+    }
+
+    @Test
+    public void aCorruptRecordStopsReplay() throws IOException {
+        WorkerStorage storage = started(new WorkerStorage(directory(), stores));
+        addStore(storage, "S0");
+        buy(storage, "S0", "P", 1);
+        Path segment = folder.getRoot().toPath().resolve("wal-1.log");
+        long good = Files.size(segment);
+        buy(storage, "S0", "P", 2);
+        // The last payload byte, the quantity, ahead of the record's CRC
+        byte[] log = Files.readAllBytes(segment);
+        log[log.length - 5] ^= 0x01;
+        Files.write(segment, log);
+
+        assertEquals(1, recover().get("S0").getSalesOf("P"));
+        assertEquals(good, Files.size(segment));
+    }
+
+    @Test
+    public void changesThatFailToWriteAreNotAcknowledgedOrReplayed() throws IOException {
+        AtomicBoolean failing = new AtomicBoolean();
+        WorkerStorage storage = started(new WorkerStorage(directory(), stores) {
+            @Override
+            FileOutputStream openSegment(long number) throws IOException {
+                return new FileOutputStream(new File(folder.getRoot(), "wal-" + number + ".log"), true) {
+                    @Override
+                    public void write(byte[] bytes, int offset, int length) throws IOException {
+                        if (failing.get()) throw new IOException("disk full");
+                        super.write(bytes, offset, length);
+                    }
+                };
+            }
+        });
+        addStore(storage, "S0");
+        buy(storage, "S0", "P", 2);
+        failing.set(true);
+        try {
+            buy(storage, "S0", "P", 3);
+            fail("acknowledged a change that is not in the log");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().startsWith("Change not logged"));
+        }
+        failing.set(false);
+        buy(storage, "S0", "P", 4);
+
+        assertEquals(9, stores.get("S0").getSalesOf("P"));
+        assertEquals(6, recover().get("S0").getSalesOf("P"));
+    }
+
+    @Test
+    public void aSnapshotLeavesOnlyTheSegmentStartedForIt() throws IOException {
+        WorkerStorage storage = started(new WorkerStorage(directory(), stores));
+        addStore(storage, "S0");
+        addStore(storage, "S1");
+        buy(storage, "S0", "P", 1);
+        assertEquals(List.of("wal-1.log"), files());
+
+        assertEquals(stores.get("S0").getWalSeq(), storage.writeSnapshot());
+        assertEquals(List.of("snapshot.bin", "wal-2.log"), files());
+        assertEquals(0, Files.size(folder.getRoot().toPath().resolve("wal-2.log")));
+
+        buy(storage, "S1", "P", 2);
+        assertSameStores(stores, recover());
+        storage.writeSnapshot();
+        buy(storage, "S0", "P", 4);
+        assertEquals(List.of("snapshot.bin", "wal-3.log"), files());
+        Map<String, Store> recovered = recover();
+        assertSameStores(stores, recovered);
+        assertEquals(5, recovered.get("S0").getSalesOf("P"));
+    }
+
+    // The log of a worker from before segments
+    @Test
+    public void anOlderWorkersLogIsReplayedFirst() throws IOException {
+        WorkerStorage older = started(new WorkerStorage(directory(), stores));
+        addStore(older, "S0");
+        buy(older, "S0", "P", 1);
+        Path root = folder.getRoot().toPath();
+        Files.move(root.resolve("wal-1.log"), root.resolve("wal.log"));
+
+        stores.clear();
+        WorkerStorage storage = started(new WorkerStorage(directory(), stores));
+        assertEquals(1, stores.get("S0").getSalesOf("P"));
+        buy(storage, "S0", "P", 2);
+        assertEquals(List.of("wal.log"), files());
+        assertEquals(3, recover().get("S0").getSalesOf("P"));
+
+        storage.writeSnapshot();
+        buy(storage, "S0", "P", 4);
+        assertEquals(List.of("snapshot.bin", "wal-1.log"), files());
+        assertEquals(7, recover().get("S0").getSalesOf("P"));
+    }
+
+    // Records after a cut would be applied without the ones before them
+    @Test
+    public void segmentsAfterACutAreDropped() throws IOException {
+        WorkerStorage storage = started(new WorkerStorage(directory(), stores));
+        addStore(storage, "S0");
+        buy(storage, "S0", "P", 1);
+        buy(storage, "S0", "P", 2);
+        Path root = folder.getRoot().toPath();
+        byte[] first = Files.readAllBytes(root.resolve("wal-1.log"));
+        storage.writeSnapshot();
+        buy(storage, "S0", "P", 4);
+        // As if the snapshot had not been written
+        Files.delete(root.resolve("snapshot.bin"));
+        Files.write(root.resolve("wal-1.log"), first);
+        assertEquals(7, recover().get("S0").getSalesOf("P"));
+
+        truncate(root.resolve("wal-1.log"), first.length - 2);
+        assertEquals(1, recover().get("S0").getSalesOf("P"));
+        assertEquals(List.of("wal-1.log"), files());
+    }
+
+    @Test
+    public void aSnapshotRoundTripsWithTheRecordsAfterIt() throws IOException {
+        WorkerStorage storage = started(new WorkerStorage(directory(), stores));
+        addStore(storage, "S0");
+        addStore(storage, "S1");
+        buy(storage, "S0", "P", 3);
+        Store s1 = stores.get("S1");
+        Product salad = new Product("\u03a7\u03c9\u03c1\u03b9\u03ac\u03c4\u03b9\u03ba\u03b7", "salad", 0, 6.5);
+        s1.addProduct(salad);
+        s1.setWalSeq(storage.logAddProduct("S1", salad));
+        storage.awaitLogged();
+        storage.writeSnapshot();
+        Map<String, Store> recovered = recover();
+        assertSameStores(stores, recovered);
+        assertEquals(stores.get("S1").getWalSeq(), recovered.get("S1").getWalSeq());
+
+        buy(storage, "S1", "P", 2);
+        recovered = recover();
+        assertSameStores(stores, recovered);
+        assertEquals(2, recovered.get("S1").getSalesOf("P"));
+    }
+
+    // Only stores logged again since the snapshot come back; Master re-syncs the others
+    @Test
+    public void aSnapshotFailingItsChecksIsSetAsideAndTheLogReplayed() throws IOException {
+        WorkerStorage storage = started(new WorkerStorage(directory(), stores));
+        addStore(storage, "S0");
+        buy(storage, "S0", "P", 1);
+        storage.writeSnapshot();
+        addStore(storage, "S1");
+        buy(storage, "S0", "P", 2);
+        buy(storage, "S1", "P", 3);
+        Path root = folder.getRoot().toPath();
+        byte[] snapshot = Files.readAllBytes(root.resolve("snapshot.bin"));
+
+        byte[] badCrc = snapshot.clone();
+        badCrc[20] ^= 0x01;
+        byte[] badMagic = snapshot.clone();
+        badMagic[0] = 'X';
+        CRC32 crc = new CRC32();
+        crc.update(badMagic, 0, badMagic.length - 4);
+        ByteBuffer.wrap(badMagic).putInt(badMagic.length - 4, (int) crc.getValue());
+        for (byte[] bad : List.of(badCrc, badMagic, Arrays.copyOf(snapshot, 12))) {
+            Files.write(root.resolve("snapshot.bin"), bad);
+            Map<String, Store> recovered = recover();
+            assertEquals(Set.of("S1"), recovered.keySet());
+            assertEquals(3, recovered.get("S1").getSalesOf("P"));
+            assertEquals(stores.get("S1").getWalSeq(), recovered.get("S1").getWalSeq());
+            assertEquals(List.of("snapshot.bin.corrupt", "wal-2.log"), files());
+            assertArrayEquals(bad, Files.readAllBytes(root.resolve("snapshot.bin.corrupt")));
+        }
+
+        Files.write(root.resolve("snapshot.bin"), snapshot);
+        assertSameStores(stores, recover());
+    }
+
+    private String directory() {
+        return folder.getRoot().getPath();
+    }
+
+    private static WorkerStorage started(WorkerStorage storage) throws IOException {
+        storage.recover();
+        storage.start();
+        return storage;
+    }
+
+    private Map<String, Store> recover() throws IOException {
+        Map<String, Store> recovered = new HashMap<>();
+        new WorkerStorage(directory(), recovered).recover();
+        return recovered;
+    }
+
+    private void addStore(WorkerStorage storage, String name) throws IOException {
+        Store store = new Store(name, 37.9, 23.7, "pizzeria", 4, 2, "x.png");
+        store.addProduct(new Product("P", "pizza", 1000, 5.0));
+        stores.put(name, store);
+        store.setWalSeq(storage.logStore(store));
+        storage.awaitLogged();
+    }
+
+    private void buy(WorkerStorage storage, String name, String product, int quantity) throws IOException {
+        Store store = stores.get(name);
+        assertEquals(Store.Purchase.COMPLETED, store.purchaseProduct(product, quantity));
+        store.setWalSeq(storage.logPurchase(name, product, quantity));
+        storage.awaitLogged();
+    }
+
+    private List<String> files() throws IOException {
+        List<String> names = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder.getRoot().toPath())) {
+            for (Path file : files) names.add(file.getFileName().toString());
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    private static void truncate(Path file, long length) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(length);
+        }
+    }
+
+    private static void assertSameStores(Map<String, Store> expected, Map<String, Store> actual) {
+        assertEquals(expected.keySet(), actual.keySet());
+        for (Map.Entry<String, Store> store : expected.entrySet()) {
+            assertEquals(store.getKey(), store.getValue().digest(), actual.get(store.getKey()).digest());
+        }
+    }
+
+    private static List<String> names(List<Product> products) {
+        List<String> names = new ArrayList<>();
+        for (Product product : products) names.add(product.getProductName());
+        return names;
+    }
+}
@@ -4,8 +4,9 @@ plugins {
     id("java")
 }
 
-// Configure Java compatibility for the whole project
+// Configure Java compatibility for the whole project; backend sets its own Java 21 toolchain
 subprojects {
+    if (name == "backend") return@subprojects
     tasks.withType<JavaCompile> {
         sourceCompatibility = JavaVersion.VERSION_11.toString()
         targetCompatibility = JavaVersion.VERSION_11.toString()